@@ -44,7 +44,10 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Level;
 
 
@@ -56,6 +59,11 @@ import java.util.logging.Level;
  * bytes (or closing the connection). the SelectionKey will be expired and
  * its channel closed.
  *
+ * Keys are expired using a hashed timer wheel: each time a key is stamped
+ * it is queued for the selector thread, which puts it in the bucket of 
+ * the tick it expires at. Every tick only the keys of one bucket are 
+ * checked, instead of all the keys registered on the Selector.
+ *
  * @author Jeanfrancois Arcand
  */
 public class DefaultSelectionKeyHandler extends BaseSelectionKeyHandler {
@@ -67,6 +75,58 @@ public class DefaultSelectionKeyHandler extends BaseSelectionKeyHandler {
     protected long nextKeysExpiration = 0;
     
     
+    /**
+     * Resolution, in milliseconds, of the expiration timer wheel.
+     */
+    protected final static long EXPIRATION_TICK = 1000;
+    
+    
+    /**
+     * Number of buckets of the expiration timer wheel. Must be a power of two.
+     */
+    private final static int WHEEL_SIZE = 512;
+    
+    
+    /**
+     * Keys whose expiration stamp has been set, queued by any thread and 
+     * moved to the timer wheel by the selector thread.
+     */
+    private final ConcurrentLinkedQueue<SelectionKey> pendingExpirations =
+            new ConcurrentLinkedQueue<SelectionKey>();
+    
+    
+    /**
+     * The timer wheel buckets, only used by the selector thread.
+     */
+    private final ArrayList<ArrayList<SelectionKey>> wheel = newWheel();
+    
+    
+    /**
+     * Empty bucket swapped with the bucket being expired.
+     */
+    private ArrayList<SelectionKey> spareBucket = new ArrayList<SelectionKey>();
+    
+    
+    /**
+     * The tick each key of the timer wheel is due at. A key found in the 
+     * bucket of another tick is a stale entry.
+     */
+    private final HashMap<SelectionKey, Long> expirationTicks = 
+            new HashMap<SelectionKey, Long>();
+    
+    
+    /**
+     * The time of tick 0 of the timer wheel.
+     */
+    private final long wheelStartTime = System.currentTimeMillis();
+    
+    
+    /**
+     * The last tick expired.
+     */
+    private long currentTick = 0;
+    
+    
     /*
      * Number of seconds before idle keep-alive connections expire
      */
@@ -75,6 +135,16 @@ public class DefaultSelectionKeyHandler extends BaseSelectionKeyHandler {
     
     public DefaultSelectionKeyHandler() {
     }
+    
+    
+    private static ArrayList<ArrayList<SelectionKey>> newWheel() {
+        ArrayList<ArrayList<SelectionKey>> buckets = 
+                new ArrayList<ArrayList<SelectionKey>>(WHEEL_SIZE);
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            buckets.add(new ArrayList<SelectionKey>());
+        }
+        return buckets;
+    }
    
     
     public DefaultSelectionKeyHandler(SelectorHandler selectorHandler) {
@@ -163,6 +233,7 @@ public class DefaultSelectionKeyHandler extends BaseSelectionKeyHandler {
         
         if (key == null) {
             key = channel.register(selector, ops, time);
+            scheduleExpiration(key);
         } else {
             doRegisterKey(key, ops, time);
         }
@@ -190,36 +261,158 @@ public class DefaultSelectionKeyHandler extends BaseSelectionKeyHandler {
     
     /**
      * {@inheritDoc}
+     *
+     * Only the keys due at the elapsed ticks of the timer wheel are 
+     * visited, the <code>Iterator</code> is not used.
      */
     @Override
     public void expire(Iterator<SelectionKey> iterator) {
-        if (timeout <= 0) return;
+        expireKeys(System.currentTimeMillis());
+    }
+    
+    
+    /**
+     * Expire the keys due at the ticks elapsed until <code>currentTime</code>.
+     */
+    void expireKeys(long currentTime) {
+        SelectionKey key;
+        while ((key = pendingExpirations.poll()) != null) {
+            addToWheel(key);
+        }
         
-        long currentTime = System.currentTimeMillis();
         if (currentTime < nextKeysExpiration) {
             return;
         }
-        nextKeysExpiration = currentTime + timeout;        
-                
+        nextKeysExpiration = currentTime + EXPIRATION_TICK;
         
-        SelectionKey key;
-        while (iterator.hasNext()) {
-            key = iterator.next();
+        long tick = (currentTime - wheelStartTime) / EXPIRATION_TICK;
+        // After a long pause, visiting every bucket once is enough.
+        currentTick = Math.max(currentTick, tick - WHEEL_SIZE);
+        while (currentTick < tick) {
+            currentTick++;
+            expireBucket(currentTick, currentTime);
+        }
+    }
+    
+    
+    /**
+     * Queue a {@link SelectionKey} whose expiration stamp has been set, so
+     * the selector thread moves it to the timer wheel. May be invoked 
+     * from any thread.
+     * 
+     * @param key {@link SelectionKey}
+     */
+    public void scheduleExpiration(SelectionKey key) {
+        pendingExpirations.offer(key);
+    }
+    
+    
+    /**
+     * Return the time at which the {@link SelectionKey} expires, or
+     * {@link SelectionKeyAttachment#UNLIMITED_TIMEOUT} if it doesn't.
+     * 
+     * @param key {@link SelectionKey}
+     */
+    protected long getExpirationTime(SelectionKey key) {
+        if (timeout <= 0) {
+            return SelectionKeyAttachment.UNLIMITED_TIMEOUT;
+        }
+        
+        long expire = getExpirationStamp(key);
+        if (expire == SelectionKeyAttachment.UNLIMITED_TIMEOUT) {
+            return SelectionKeyAttachment.UNLIMITED_TIMEOUT;
+        }
+        return expire + timeout;
+    }
+    
+    
+    /**
+     * Invoked when a {@link SelectionKey} has expired. Cancel it.
+     * 
+     * @param key {@link SelectionKey}
+     */
+    protected void expireKey(SelectionKey key) {
+        cancel(key);
+    }
+    
+    
+    /**
+     * Add a {@link SelectionKey} to the bucket of the tick it expires at,
+     * unless it is already in an earlier bucket.
+     */
+    private void addToWheel(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        
+        long expiration = getExpirationTime(key);
+        if (expiration != SelectionKeyAttachment.UNLIMITED_TIMEOUT) {
+            addToWheel(key, expiration);
+        }
+    }
+    
+    
+    private void addToWheel(SelectionKey key, long expiration) {
+        long tick = (expiration - wheelStartTime + EXPIRATION_TICK - 1) 
+                / EXPIRATION_TICK;
+        tick = Math.max(tick, currentTick + 1);
+        
+        Long scheduled = expirationTicks.get(key);
+        if (scheduled != null && scheduled.longValue() <= tick) {
+            return;
+        }
+        expirationTicks.put(key, tick);
+        wheel.get((int) (tick & (WHEEL_SIZE - 1))).add(key);
+    }
+    
+    
+    /**
+     * Expire the keys of a bucket. Keys whose stamp moved since they were
+     * added are moved to the bucket of their new expiration, and keys due
+     * at a later revolution of the wheel are kept in the bucket.
+     */
+    private void expireBucket(long tick, long currentTime) {
+        int index = (int) (tick & (WHEEL_SIZE - 1));
+        ArrayList<SelectionKey> due = wheel.get(index);
+        if (due.isEmpty()) {
+            return;
+        }
+        wheel.set(index, spareBucket);
+        
+        for (SelectionKey key : due) {
+            Long scheduled = expirationTicks.get(key);
+            if (scheduled == null || 
+                    (scheduled.longValue() & (WHEEL_SIZE - 1)) != index) {
+                // Stale entry, the key has been moved to another bucket.
+                continue;
+            }
             
-            if (!key.isValid()){
+            if (scheduled.longValue() > tick) {
+                // Due at a later revolution.
+                spareBucket.add(key);
                 continue;
             }
-
-
-            long expire = getExpirationStamp(key);
-            if (expire != SelectionKeyAttachment.UNLIMITED_TIMEOUT){
-                if (currentTime - expire >= timeout) {
-                    cancel(key);
-                } else if (expire + timeout < nextKeysExpiration) {
-                    nextKeysExpiration = expire + timeout;
-                }
+            // Due now, or at a tick skipped after a long pause.
+            expirationTicks.remove(key);
+            
+            if (!key.isValid()) {
+                continue;
+            }
+            
+            long expiration = getExpirationTime(key);
+            if (expiration == SelectionKeyAttachment.UNLIMITED_TIMEOUT) {
+                // Processed, it will be scheduled again once registered.
+                continue;
+            }
+            
+            if (currentTime >= expiration) {
+                expireKey(key);
+            } else {
+                addToWheel(key, expiration);
             }
         }
+        due.clear();
+        spareBucket = due;
     }
     
     
@@ -265,6 +458,7 @@ public class DefaultSelectionKeyHandler extends BaseSelectionKeyHandler {
         } else if (attachment instanceof SelectionKeyAttachment) {
             ((SelectionKeyAttachment) attachment).setTimeout(currentTime);
         }    
+        scheduleExpiration(key);
     }
     
     /**
@@ -38,6 +38,7 @@
 
 package com.sun.grizzly;
 
+import com.sun.grizzly.util.ParkedIO;
 import java.nio.channels.SelectionKey;
 import java.util.logging.Level;
 
@@ -70,16 +71,23 @@ public abstract class SelectionKeyContextTask extends ContextTask {
     
     protected void beforeCall() {
         SelectionKey currentKey = context.getSelectionKey();
-        SelectionKeyHandler selectionKeyHandler = context.
-                getSelectorHandler().getSelectionKeyHandler();
+        SelectorHandler selectorHandler = context.getSelectorHandler();
+        SelectionKeyHandler selectionKeyHandler = 
+                selectorHandler.getSelectionKeyHandler();
         
         selectionKeyHandler.process(currentKey);
+
+        if (selectorHandler instanceof TCPSelectorHandler
+                && ((TCPSelectorHandler) selectorHandler).isParkBlockingIO()) {
+            ParkedIO.bind((TCPSelectorHandler) selectorHandler, currentKey);
+        }
     }
     
     protected void afterCall() {
         SelectionKey currentKey = context.getSelectionKey();
         SelectionKeyHandler selectionKeyHandler = context.
                 getSelectorHandler().getSelectionKeyHandler();
+        ParkedIO.unbind();
         selectionKeyHandler.postProcess(currentKey);
     }
     
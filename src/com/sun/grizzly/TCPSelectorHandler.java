@@ -48,6 +48,7 @@ import com.sun.grizzly.async.TCPAsyncQueueReader;
 import com.sun.grizzly.util.Cloner;
 import com.sun.grizzly.util.Copyable;
 import com.sun.grizzly.util.LinkedTransferQueue;
+import com.sun.grizzly.util.SelectorParker;
 import com.sun.grizzly.util.SelectionKeyAttachment;
 import com.sun.grizzly.util.State;
 import com.sun.grizzly.util.StateHolder;
@@ -73,8 +74,11 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -90,7 +94,7 @@ import java.util.logging.Logger;
  *
  * @author Jeanfrancois Arcand
  */
-public class TCPSelectorHandler implements SelectorHandler {
+public class TCPSelectorHandler implements SelectorHandler, SelectorParker {
 
 
     /**
@@ -125,6 +129,25 @@ public class TCPSelectorHandler implements SelectorHandler {
      */
     private final LinkedTransferQueue<SelectionKey> readWriteOpToRegister
             = new LinkedTransferQueue<SelectionKey>();
+
+    /**
+     * Parked worker threads whose interest must be registered, or removed
+     * once they timed out, in the next Selector.select();
+     */
+    private final LinkedTransferQueue<ParkedThread> parkOpToRegister
+            = new LinkedTransferQueue<ParkedThread>();
+
+    /**
+     * Worker threads parked until their SelectionKey becomes ready.
+     */
+    private final ConcurrentHashMap<SelectionKey, ParkedThread> parkedThreads
+            = new ConcurrentHashMap<SelectionKey, ParkedThread>();
+
+    /**
+     * <tt>true</tt> if blocking reads and writes made by a worker thread
+     * must park on this Selector instead of using a temporary Selector.
+     */
+    protected boolean parkBlockingIO = false;
     /**
      * The socket tcpDelay.
      *
@@ -302,6 +325,7 @@ public class TCPSelectorHandler implements SelectorHandler {
         copyHandler.reuseAddress = reuseAddress;
         copyHandler.connectorInstanceHandler = connectorInstanceHandler;
         copyHandler.stateHolder = stateHolder;
+        copyHandler.parkBlockingIO = parkBlockingIO;
     }
 
 
@@ -398,6 +422,33 @@ public class TCPSelectorHandler implements SelectorHandler {
         //investigate if its worthwile to swap LTQ references with a local one to completely avoid thread contention between the producers and the consumer
         //the cost for doing so is cheap, just a reference swap. volatile for contended LTQ and normal reference for the local one.
 
+        SelectionKey key;
+        // Parked interests must be applied before any other registration
+        ParkedThread parked;
+        while((parked=parkOpToRegister.poll()) != null){
+            key = parked.key;
+            synchronized(parked){
+                try {
+                    if (!parked.done){
+                        if (!parked.ready && key.isValid()){
+                            key.interestOps(key.interestOps() | parked.ops);
+                            parked.registered = true;
+                        }
+                    } else if (parked.registered){
+                        // The thread timed out and waits for the removal.
+                        if (key.isValid()){
+                            key.interestOps(key.interestOps() & ~parked.ops);
+                        }
+                        parked.unregistered = true;
+                        LockSupport.unpark(parked.thread);
+                    }
+                } catch (CancelledKeyException e) {
+                    parked.unregistered = true;
+                    LockSupport.unpark(parked.thread);
+                }
+            }
+        }
+
         SelectionKeyOP operation;
         while((operation = opToRegister.poll()) != null) {
             if ((operation.getOp() & SelectionKey.OP_CONNECT) != 0) {
@@ -409,7 +460,6 @@ public class TCPSelectorHandler implements SelectorHandler {
             }
         }
 
-        SelectionKey key;
         while((key=readWriteOpToRegister.poll()) != null){
             if (key.isValid()){
                 selectionKeyHandler.
@@ -634,6 +684,10 @@ public class TCPSelectorHandler implements SelectorHandler {
         readOpToRegister.clear();
         writeOpToRegister.clear();
         opToRegister.clear();
+        parkOpToRegister.clear();
+        for (ParkedThread parked: parkedThreads.values()){
+            LockSupport.unpark(parked.thread);
+        }
 
         attributes = null;
     }
@@ -662,6 +716,10 @@ public class TCPSelectorHandler implements SelectorHandler {
             SelectionKey readKey =
                     channel.register(selector, SelectionKey.OP_READ);
             readKey.attach(System.currentTimeMillis());
+            if (selectionKeyHandler instanceof DefaultSelectionKeyHandler) {
+                ((DefaultSelectionKeyHandler) selectionKeyHandler)
+                        .scheduleExpiration(readKey);
+            }
         }
         return false;
     }
@@ -676,6 +734,11 @@ public class TCPSelectorHandler implements SelectorHandler {
         // disable OP_READ on key before doing anything else
         key.interestOps(key.interestOps() & (~SelectionKey.OP_READ));
 
+        if (parkBlockingIO && !parkedThreads.isEmpty()
+                && unparkThread(key, SelectionKey.OP_READ)) {
+            return false;
+        }
+
         if (asyncQueueReader.isReady(key)) {
             invokeAsyncQueueReader(pollContext(ctx, key, Context.OpType.OP_READ));
             return false;
@@ -700,6 +763,11 @@ public class TCPSelectorHandler implements SelectorHandler {
         // disable OP_WRITE on key before doing anything else
         key.interestOps(key.interestOps() & (~SelectionKey.OP_WRITE));
 
+        if (parkBlockingIO && !parkedThreads.isEmpty()
+                && unparkThread(key, SelectionKey.OP_WRITE)) {
+            return false;
+        }
+
         if (asyncQueueWriter.isReady(key)) {
             invokeAsyncQueueWriter(pollContext(ctx, key, Context.OpType.OP_WRITE));
             return false;
@@ -714,6 +782,113 @@ public class TCPSelectorHandler implements SelectorHandler {
     }
 
 
+    /**
+     * Park the current worker thread until <tt>key</tt> is ready for
+     * <tt>ops</tt>. The interest is registered on this {@link Selector}
+     * and the thread is unparked by {@link #onReadInterest} or
+     * {@link #onWriteInterest}, so no temporary {@link Selector} is needed.
+     * @param key the {@link SelectionKey} owned by the current thread.
+     * @param ops OP_READ or OP_WRITE
+     * @param timeout the maximum time to wait, in milliseconds
+     * @return {@link SelectorParker#READY}, {@link SelectorParker#TIMEOUT}
+     *         or {@link SelectorParker#UNAVAILABLE}
+     */
+    public int park(SelectionKey key, int ops, long timeout)
+            throws IOException {
+        if (!parkBlockingIO || selector == null || !key.isValid()) {
+            return UNAVAILABLE;
+        }
+
+        ParkedThread parked = 
+                new ParkedThread(Thread.currentThread(), key, ops);
+        if (parkedThreads.putIfAbsent(key, parked) != null) {
+            return UNAVAILABLE;
+        }
+
+        try {
+            parkOpToRegister.offer(parked);
+            selector.wakeup();
+
+            long deadline = System.nanoTime()
+                    + TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (!parked.ready) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !key.isValid()
+                        || Thread.currentThread().isInterrupted()
+                        || !selector.isOpen()) {
+                    break;
+                }
+                LockSupport.parkNanos(remaining);
+            }
+
+            synchronized(parked) {
+                parked.done = true;
+                if (parked.ready) {
+                    return READY;
+                }
+                if (!parked.registered) {
+                    return TIMEOUT;
+                }
+            }
+
+            // Let the Selector thread remove the interest it registered, 
+            // so it doesn't dispatch a key we still own, and wait for it
+            // so the removal can't undo a later registration.
+            parkOpToRegister.offer(parked);
+            selector.wakeup();
+            while (!parked.unregistered && key.isValid() 
+                    && selector.isOpen() 
+                    && !Thread.currentThread().isInterrupted()) {
+                LockSupport.parkNanos(
+                        TimeUnit.MILLISECONDS.toNanos(timeout));
+            }
+            return TIMEOUT;
+        } finally {
+            parkedThreads.remove(key, parked);
+        }
+    }
+
+
+    /**
+     * Unpark the worker thread waiting for <tt>ops</tt> on <tt>key</tt>.
+     * @return <tt>true</tt> if the ready operation has been registered by
+     *         a parked worker thread, in which case it must not be 
+     *         dispatched.
+     */
+    private boolean unparkThread(SelectionKey key, int ops) {
+        ParkedThread parked = parkedThreads.get(key);
+        if (parked == null || (parked.ops & ops) == 0) {
+            return false;
+        }
+
+        synchronized(parked) {
+            if (!parked.done) {
+                parked.ready = true;
+                LockSupport.unpark(parked.thread);
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Is blocking I/O parked on this {@link Selector}.
+     */
+    public boolean isParkBlockingIO() {
+        return parkBlockingIO;
+    }
+
+
+    /**
+     * Set to <tt>true</tt> to park worker threads on this {@link Selector}
+     * when a blocking read or write can't make progress, instead of
+     * using a temporary {@link Selector}.
+     */
+    public void setParkBlockingIO(boolean parkBlockingIO) {
+        this.parkBlockingIO = parkBlockingIO;
+    }
+
+
     /**
      * Handle OP_CONNECT.
      * @param key {@link SelectionKey}
@@ -918,6 +1093,14 @@ public class TCPSelectorHandler implements SelectorHandler {
         return asyncQueueWriter;
     }
 
+    /**
+     * Set the {@link AsyncQueueWriter}, instead of the default 
+     * {@link TCPAsyncQueueWriter} created before the first select.
+     */
+    public void setAsyncQueueWriter(AsyncQueueWriter asyncQueueWriter) {
+        this.asyncQueueWriter = asyncQueueWriter;
+    }
+
     public long getSelectTimeout() {
         return selectTimeout;
     }
@@ -1283,4 +1466,24 @@ public class TCPSelectorHandler implements SelectorHandler {
 
         return Role.CLIENT_SERVER;
     }
+
+
+    /**
+     * A worker thread waiting for its {@link SelectionKey} to be ready.
+     */
+    private final static class ParkedThread {
+        final Thread thread;
+        final SelectionKey key;
+        final int ops;
+        volatile boolean ready;
+        volatile boolean unregistered;
+        boolean done;
+        boolean registered;
+
+        ParkedThread(Thread thread, SelectionKey key, int ops) {
+            this.thread = thread;
+            this.key = key;
+            this.ops = ops;
+        }
+    }
 }
@@ -46,6 +46,7 @@ import com.sun.grizzly.util.FutureImpl;
 import com.sun.grizzly.util.LinkedTransferQueue;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
@@ -101,8 +102,12 @@ public abstract class AbstractAsyncQueueReader implements AsyncQueueReader {
                 new FutureImpl<AsyncQueueReadUnit>();
         
         SelectableChannel channel = (SelectableChannel) key.channel();
-        AsyncQueueEntry channelEntry = 
-                readQueue.obtainAsyncQueueEntry(channel);
+        AsyncQueueEntry channelEntry = readQueue.obtainAsyncQueueEntry(channel);
+        // onClose may already have been called for a closed channel
+        if (!channel.isOpen()) {
+            onClose(channel);
+            throw new ClosedChannelException();
+        }
         
         // Update statistics
         channelEntry.totalElementsCount.incrementAndGet();
@@ -250,8 +255,11 @@ public abstract class AbstractAsyncQueueReader implements AsyncQueueReader {
     public void onRead(SelectionKey key) throws IOException {
         SelectableChannel channel = key.channel();
         
-        AsyncQueueEntry channelEntry = 
-                readQueue.obtainAsyncQueueEntry(channel);
+        AsyncQueueEntry channelEntry = readQueue.getAsyncQueueEntry(channel);
+        if (channelEntry == null) {
+            // Nothing was queued, or the channel was closed
+            return;
+        }
         
         LinkedTransferQueue<AsyncQueueReadUnit> queue = channelEntry.queue;
         AtomicReference<AsyncQueueReadUnit> currentElement = channelEntry.currentElement;
@@ -47,13 +47,21 @@ import com.sun.grizzly.SelectorHandler;
 import com.sun.grizzly.async.AsyncQueue.AsyncQueueEntry;
 import com.sun.grizzly.util.FutureImpl;
 import com.sun.grizzly.util.LinkedTransferQueue;
+import com.sun.grizzly.util.ParkedIO;
+import com.sun.grizzly.util.SelectorFactory;
+import com.sun.grizzly.util.SelectorParker;
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
@@ -65,12 +73,282 @@ import java.util.logging.Level;
 public abstract class AbstractAsyncQueueWriter implements AsyncQueueWriter {
     protected SelectorHandler selectorHandler;
     private AsyncQueue<SelectableChannel, AsyncQueueWriteUnit> writeQueue;
-    
+
+    /**
+     * Bytes waiting in the queues of all the channels.
+     */
+    private final AtomicLong queuedDataSize = new AtomicLong();
+
+    /**
+     * Per channel queued bytes above which the channel is not writable,
+     * and below which a blocked writer is released. -1 means no limit.
+     */
+    private volatile int highWatermark = -1;
+    private volatile int lowWatermark = -1;
+
+    /**
+     * Total queued bytes above which no channel is writable, and below
+     * which blocked writers are released. -1 means no limit.
+     */
+    private volatile long globalHighWatermark = -1;
+    private volatile long globalLowWatermark = -1;
+
+    /**
+     * Maximum time, in milliseconds, a writer waits for the queued data to
+     * drain below the watermarks.
+     */
+    private volatile long writableTimeout = 30000;
+
+    /**
+     * Monitor of the writers blocked in {@link #waitForWritable}.
+     */
+    private final Object writabilityMonitor = new Object();
+    private volatile int writabilityWaiters;
+
+    /**
+     * Maximum number of queued units, and of bytes, written by a single
+     * gathering write. A limit of one unit disables write coalescing.
+     */
+    private volatile int maxGatheringUnits = 16;
+    private volatile int maxGatheringBytes = 64 * 1024;
+
     public AbstractAsyncQueueWriter(SelectorHandler selectorHandler) {
         this.selectorHandler = selectorHandler;
         writeQueue = new AsyncQueue<SelectableChannel, AsyncQueueWriteUnit>();
     }
 
+    /**
+     * Return the number of bytes waiting in the queues of all the channels.
+     */
+    public long getQueuedDataSize() {
+        return queuedDataSize.get();
+    }
+
+    /**
+     * Return the number of bytes waiting in the queue of the channel.
+     */
+    public int getQueuedDataSize(SelectionKey key) {
+        AsyncQueue<SelectableChannel, AsyncQueueWriteUnit>.AsyncQueueEntry channelEntry =
+                writeQueue.getAsyncQueueEntry(key.channel());
+        return channelEntry == null ? 0 : channelEntry.queuedDataSize.get();
+    }
+
+    public int getHighWatermark() {
+        return highWatermark;
+    }
+
+    public int getLowWatermark() {
+        return lowWatermark;
+    }
+
+    /**
+     * Set the per channel watermarks, in bytes. A channel stops being 
+     * writable once <code>highWatermark</code> bytes are queued, and 
+     * writers blocked in {@link #waitForWritable} are released once its
+     * queue is down to <code>lowWatermark</code> bytes.
+     */
+    public void setWatermarks(int lowWatermark, int highWatermark) {
+        if (lowWatermark > highWatermark) {
+            throw new IllegalArgumentException("Low watermark " + lowWatermark
+                    + " is higher than high watermark " + highWatermark);
+        }
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+    }
+
+    public long getGlobalHighWatermark() {
+        return globalHighWatermark;
+    }
+
+    public long getGlobalLowWatermark() {
+        return globalLowWatermark;
+    }
+
+    /**
+     * Set the watermarks, in bytes, on the data queued for all the channels.
+     */
+    public void setGlobalWatermarks(long lowWatermark, long highWatermark) {
+        if (lowWatermark > highWatermark) {
+            throw new IllegalArgumentException("Low watermark " + lowWatermark
+                    + " is higher than high watermark " + highWatermark);
+        }
+        this.globalLowWatermark = lowWatermark;
+        this.globalHighWatermark = highWatermark;
+    }
+
+    public long getWritableTimeout() {
+        return writableTimeout;
+    }
+
+    /**
+     * Set the maximum time, in milliseconds, a writer waits for the queued
+     * data to drain below the watermarks.
+     */
+    public void setWritableTimeout(long writableTimeout) {
+        this.writableTimeout = writableTimeout;
+    }
+
+    public int getMaxGatheringUnits() {
+        return maxGatheringUnits;
+    }
+
+    /**
+     * Set the maximum number of queued units coalesced into a single
+     * gathering write. <tt>1</tt> writes the units one by one.
+     */
+    public void setMaxGatheringUnits(int maxGatheringUnits) {
+        if (maxGatheringUnits < 1) {
+            throw new IllegalArgumentException("Gathering units limit " +
+                    maxGatheringUnits + " is lower than 1");
+        }
+        this.maxGatheringUnits = maxGatheringUnits;
+    }
+
+    public int getMaxGatheringBytes() {
+        return maxGatheringBytes;
+    }
+
+    /**
+     * Set the number of bytes above which no more queued units are added
+     * to a gathering write.
+     */
+    public void setMaxGatheringBytes(int maxGatheringBytes) {
+        this.maxGatheringBytes = maxGatheringBytes;
+    }
+
+    /**
+     * Return <tt>true</tt> if neither the channel nor the global queued data
+     * has reached its high watermark.
+     */
+    public boolean isWritable(SelectionKey key) {
+        int high = highWatermark;
+        long globalHigh = globalHighWatermark;
+        return (high < 0 || getQueuedDataSize(key) < high) &&
+                (globalHigh < 0 || queuedDataSize.get() < globalHigh);
+    }
+
+    /**
+     * Block while the channel is not writable. Once a high watermark is 
+     * reached, wait until the queued data is down to the low watermarks.
+     * The calling thread writes the channel's queue itself, as the threads
+     * which would otherwise do it may all be blocked here.
+     *
+     * @return <tt>false</tt> if the timeout expired before
+     */
+    public boolean waitForWritable(SelectionKey key, long timeout)
+            throws IOException, InterruptedException {
+        if (isWritable(key)) {
+            return true;
+        }
+
+        long deadline = System.currentTimeMillis() + timeout;
+        while (!isDrained(key)) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            
+            if (getQueuedDataSize(key) > 0) {
+                onWrite(key);
+                if (getQueuedDataSize(key) > 0) {
+                    waitForChannel(key, remaining);
+                }
+            } else {
+                // Only the other channels can release the global watermark
+                synchronized (writabilityMonitor) {
+                    writabilityWaiters++;
+                    try {
+                        if (!isDrained(key)) {
+                            writabilityMonitor.wait(remaining);
+                        }
+                    } finally {
+                        writabilityWaiters--;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Wait until the channel can be written, on the main {@link Selector}
+     * when the channel's key is bound to the current thread (see 
+     * {@link ParkedIO}), on a temporary one otherwise.
+     */
+    private void waitForChannel(SelectionKey key, long timeout)
+            throws IOException, InterruptedException {
+        if (ParkedIO.park(key.channel(), SelectionKey.OP_WRITE, timeout)
+                != SelectorParker.UNAVAILABLE) {
+            return;
+        }
+
+        Selector writeSelector = SelectorFactory.getSelector();
+        if (writeSelector == null) {
+            Thread.sleep(Math.min(timeout, 10));
+            return;
+        }
+
+        SelectionKey writeKey = null;
+        try {
+            writeKey = key.channel().register(writeSelector, 
+                    SelectionKey.OP_WRITE);
+            writeSelector.select(timeout);
+        } finally {
+            if (writeKey != null) {
+                writeKey.cancel();
+            }
+            SelectorFactory.selectNowAndReturnSelector(writeSelector);
+        }
+    }
+
+    private boolean isDrained(SelectionKey key) {
+        int low = lowWatermark;
+        long globalLow = globalLowWatermark;
+        return !key.isValid() ||
+                (low < 0 || getQueuedDataSize(key) <= low) &&
+                (globalLow < 0 || queuedDataSize.get() <= globalLow);
+    }
+
+    /**
+     * Account the bytes of a queued unit.
+     */
+    private void onQueued(
+            AsyncQueue<SelectableChannel, AsyncQueueWriteUnit>.AsyncQueueEntry channelEntry,
+            AsyncQueueWriteUnit record, int size) {
+        record.queuedDataSize = size;
+        channelEntry.queuedDataSize.addAndGet(size);
+        queuedDataSize.addAndGet(size);
+    }
+
+    /**
+     * Release the bytes of a queued unit, and wake up the blocked writers.
+     * A channel entry removed on close was already released.
+     */
+    private void onDequeued(
+            AsyncQueue<SelectableChannel, AsyncQueueWriteUnit>.AsyncQueueEntry channelEntry,
+            int size) {
+        if (size == 0) {
+            return;
+        }
+        AtomicInteger entrySize = channelEntry.queuedDataSize;
+        int current;
+        int released;
+        do {
+            current = entrySize.get();
+            released = Math.min(current, size);
+        } while (!entrySize.compareAndSet(current, current - released));
+        queuedDataSize.addAndGet(-released);
+        notifyWritable();
+    }
+
+    private void notifyWritable() {
+        if (writabilityWaiters > 0) {
+            synchronized (writabilityMonitor) {
+                writabilityMonitor.notifyAll();
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -158,8 +436,8 @@ public abstract class AbstractAsyncQueueWriter implements AsyncQueueWriter {
         FutureImpl<AsyncQueueWriteUnit> future =
                 new FutureImpl<AsyncQueueWriteUnit>();
         SelectableChannel channel = key.channel();
-        AsyncQueueEntry channelEntry = 
-                writeQueue.obtainAsyncQueueEntry(channel);
+        AsyncQueue<SelectableChannel, AsyncQueueWriteUnit>.AsyncQueueEntry channelEntry =
+                obtainAsyncQueueEntry(channel);
         
         // Update statistics
         channelEntry.totalElementsCount.incrementAndGet();
@@ -201,6 +479,7 @@ public abstract class AbstractAsyncQueueWriter implements AsyncQueueWriter {
 
                 // Update statistics
                 channelEntry.queuedElementsCount.incrementAndGet();
+                onQueued(channelEntry, record, buffer.remaining());
 
                 record.set(buffer, callbackHandler, writePreProcessor,
                         dstAddress, cloner, future);
@@ -296,8 +575,12 @@ public abstract class AbstractAsyncQueueWriter implements AsyncQueueWriter {
     public void onWrite(SelectionKey key) throws IOException {
         SelectableChannel channel = key.channel();
         
-        AsyncQueueEntry channelEntry = 
-                writeQueue.obtainAsyncQueueEntry(channel);
+        AsyncQueue<SelectableChannel, AsyncQueueWriteUnit>.AsyncQueueEntry channelEntry =
+                writeQueue.getAsyncQueueEntry(channel);
+        if (channelEntry == null) {
+            // Nothing was queued, or the channel was closed
+            return;
+        }
         
         LinkedTransferQueue<AsyncQueueWriteUnit> queue = channelEntry.queue;
         AtomicReference<AsyncQueueWriteUnit> currentElement = channelEntry.currentElement;
@@ -319,19 +602,60 @@ public abstract class AbstractAsyncQueueWriter implements AsyncQueueWriter {
 
         try {
             OperationResult dstResult = channelEntry.tmpResult;
+            AsyncQueueWriteUnit[] batch = null;
+            ByteBuffer[] batchBuffers = null;
+            // The last write could not take all the data
+            boolean isChannelFull = false;
+
             while (currentElement.get() != null) {
                 AsyncQueueWriteUnit queueRecord = currentElement.get();
 
                 ByteBuffer byteBuffer = queueRecord.byteBuffer;
                 AsyncQueueDataProcessor writePreProcessor = queueRecord.writePreProcessor;
+
+                // units written ahead by a gathering write need no write
+                boolean isWriteRequired = writePreProcessor != null ||
+                        byteBuffer.hasRemaining();
+                if (isWriteRequired && isChannelFull) {
+                    lock.unlock();
+                    registerForWriting(key);
+                    break;
+                }
+
+                int batchSize = 0;
+                boolean isFailed = false;
                 try {
-                    doWrite((WritableByteChannel) channel,
-                            queueRecord.dstAddress, byteBuffer,
-                            writePreProcessor, dstResult);
-                    channelEntry.processedDataSize.addAndGet(dstResult.bytesProcessed);
+                    if (isWriteRequired) {
+                        if (isGatheringSupported() && maxGatheringUnits > 1 &&
+                                writePreProcessor == null) {
+                            if (batch == null) {
+                                batch = new AsyncQueueWriteUnit[maxGatheringUnits];
+                                batchBuffers = new ByteBuffer[batch.length];
+                            }
+                            batchSize = gather(queueRecord, queue, batch,
+                                    batchBuffers);
+                        }
+
+                        if (batchSize > 1) {
+                            doWrite((WritableByteChannel) channel,
+                                    batchBuffers, batchSize, dstResult);
+                            isChannelFull =
+                                    batchBuffers[batchSize - 1].hasRemaining();
+                        } else {
+                            doWrite((WritableByteChannel) channel,
+                                    queueRecord.dstAddress, byteBuffer,
+                                    writePreProcessor, dstResult);
+                        }
+                        channelEntry.processedDataSize.addAndGet(dstResult.bytesProcessed);
+                    }
                 } catch (Exception e) {
+                    if (batchSize > 1) {
+                        for (int i = 1; i < batchSize; i++) {
+                            onBatchException(e, key, batch[i], queue);
+                        }
+                    }
                     ((FutureImpl) queueRecord.future).setException(e);
-                    
+
                     if (queueRecord.callbackHandler != null) {
                         queueRecord.callbackHandler.onException(e, key,
                                 byteBuffer, queue);
@@ -342,6 +666,18 @@ public abstract class AbstractAsyncQueueWriter implements AsyncQueueWriter {
                     }
 
                     onClose(channel);
+                    isFailed = true;
+                } finally {
+                    if (batchSize > 1) {
+                        for (int i = 0; i < batchSize; i++) {
+                            batch[i] = null;
+                            batchBuffers[i] = null;
+                        }
+                    }
+                }
+
+                if (isFailed) {
+                    break;
                 }
 
                 // check if buffer was completely written
@@ -351,7 +687,10 @@ public abstract class AbstractAsyncQueueWriter implements AsyncQueueWriter {
 
                     // Update statistics
                     channelEntry.processedElementsCount.incrementAndGet();
+                    onDequeued(channelEntry, queueRecord.queuedDataSize);
 
+                    ((FutureImpl<AsyncQueueWriteUnit>) queueRecord.future)
+                            .setResult(queueRecord);
                     if (queueRecord.callbackHandler != null) {
                         queueRecord.callbackHandler.onWriteCompleted(key, queueRecord);
                     }
@@ -386,11 +725,40 @@ public abstract class AbstractAsyncQueueWriter implements AsyncQueueWriter {
         }
     }
     
+    /**
+     * Return the number of channels, which have a write queue.
+     */
+    public int getQueuedChannelsCount() {
+        return writeQueue.size();
+    }
+
+    /**
+     * Get the channel's queue, which is created if required. A queue is not
+     * kept for a closed channel, as {@link #onClose} may already have been
+     * called for it.
+     */
+    private AsyncQueue<SelectableChannel, AsyncQueueWriteUnit>.AsyncQueueEntry
+            obtainAsyncQueueEntry(SelectableChannel channel)
+            throws IOException {
+        AsyncQueue<SelectableChannel, AsyncQueueWriteUnit>.AsyncQueueEntry channelEntry =
+                writeQueue.obtainAsyncQueueEntry(channel);
+        if (!channel.isOpen()) {
+            onClose(channel);
+            throw new ClosedChannelException();
+        }
+        return channelEntry;
+    }
+
     /**
      * {@inheritDoc}
      */
     public void onClose(SelectableChannel channel) {
-        writeQueue.removeEntry(channel);
+        AsyncQueue<SelectableChannel, AsyncQueueWriteUnit>.AsyncQueueEntry channelEntry =
+                writeQueue.removeEntry(channel);
+        if (channelEntry != null) {
+            queuedDataSize.addAndGet(-channelEntry.queuedDataSize.getAndSet(0));
+            notifyWritable();
+        }
     }
     
     /**
@@ -398,8 +766,81 @@ public abstract class AbstractAsyncQueueWriter implements AsyncQueueWriter {
      */
     public void close() {
         writeQueue.clear();
+        queuedDataSize.set(0);
+        notifyWritable();
     }
     
+    /**
+     * Collect the current unit, and the units queued right after it, into a
+     * gathering write. Only the thread holding the queue lock removes units,
+     * so the collected units stay at the head of the queue.
+     *
+     * @return the number of collected units
+     */
+    private int gather(AsyncQueueWriteUnit first,
+            LinkedTransferQueue<AsyncQueueWriteUnit> queue,
+            AsyncQueueWriteUnit[] batch, ByteBuffer[] batchBuffers) {
+        batch[0] = first;
+        batchBuffers[0] = first.byteBuffer;
+        int size = 1;
+        int bytes = first.byteBuffer.remaining();
+        int maxBytes = maxGatheringBytes;
+
+        Iterator<AsyncQueueWriteUnit> it = queue.iterator();
+        while (size < batch.length && bytes < maxBytes && it.hasNext()) {
+            AsyncQueueWriteUnit unit = it.next();
+            if (unit.writePreProcessor != null || unit.dstAddress != null) {
+                break;
+            }
+            batch[size] = unit;
+            batchBuffers[size] = unit.byteBuffer;
+            bytes += unit.byteBuffer.remaining();
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Notify a unit of a gathering write which was not completed.
+     */
+    private void onBatchException(Exception e, SelectionKey key,
+            AsyncQueueWriteUnit unit,
+            LinkedTransferQueue<AsyncQueueWriteUnit> queue) {
+        ((FutureImpl) unit.future).setException(e);
+        if (unit.callbackHandler != null) {
+            unit.callbackHandler.onException(e, key, unit.byteBuffer, queue);
+        }
+    }
+
+    /**
+     * Return <tt>true</tt> if the queued units may be coalesced using
+     * {@link #doWrite(WritableByteChannel, ByteBuffer[], int, OperationResult)}.
+     */
+    protected boolean isGatheringSupported() {
+        return false;
+    }
+
+    /**
+     * Write the first <code>length</code> buffers with a single gathering
+     * write. By default the buffers are written one after the other,
+     * until one of them is not completely written.
+     */
+    protected OperationResult doWrite(WritableByteChannel channel,
+            ByteBuffer[] byteBuffers, int length, OperationResult dstResult)
+            throws IOException {
+        int written = 0;
+        for (int i = 0; i < length; i++) {
+            doWrite(channel, null, byteBuffers[i], dstResult);
+            written += dstResult.bytesProcessed;
+            if (byteBuffers[i].hasRemaining()) {
+                break;
+            }
+        }
+
+        dstResult.bytesProcessed = written;
+        return dstResult;
+    }
+
     protected OperationResult doWrite(WritableByteChannel channel,
             SocketAddress dstAddress, ByteBuffer byteBuffer,
             AsyncQueueDataProcessor writePreProcessor,
@@ -41,6 +41,7 @@ package com.sun.grizzly.async;
 import com.sun.grizzly.util.LinkedTransferQueue;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
@@ -52,7 +53,7 @@ import java.util.concurrent.locks.ReentrantLock;
  * @author Alexey Stashok
  */
 public class AsyncQueue<K, E> {
-    private Map<K, AsyncQueueEntry> queueMap =
+    private ConcurrentMap<K, AsyncQueueEntry> queueMap =
             new ConcurrentHashMap<K, AsyncQueueEntry>();
     
     /**
@@ -133,6 +134,15 @@ public class AsyncQueue<K, E> {
         return entry == null || entry.queue.isEmpty();
     }
 
+    /**
+     * Get the number of keys, which have a queue.
+     * 
+     * @return the number of keys, which have a queue.
+     */
+    public int size() {
+        return queueMap.size();
+    }
+
     public void clear() {
         queueMap.clear();
     }
@@ -140,12 +150,10 @@ public class AsyncQueue<K, E> {
     protected AsyncQueueEntry obtainAsyncQueueEntry(K key) {
         AsyncQueueEntry entry = queueMap.get(key);
         if (entry == null) {
-            synchronized(key) {
-                entry = queueMap.get(key);
-                if (entry == null) {
-                    entry = new AsyncQueueEntry();
-                    queueMap.put(key, entry);
-                }
+            entry = new AsyncQueueEntry();
+            AsyncQueueEntry existingEntry = queueMap.putIfAbsent(key, entry);
+            if (existingEntry != null) {
+                entry = existingEntry;
             }
         }
         return entry;
@@ -169,6 +177,8 @@ public class AsyncQueue<K, E> {
         public AtomicInteger totalElementsCount;
         // Number of elements passed throw the async queue (not processed directly)
         public AtomicInteger queuedElementsCount;
+        // Amount of data, waiting in the queue
+        public AtomicInteger queuedDataSize;
         
         protected OperationResult tmpResult;
 
@@ -180,6 +190,7 @@ public class AsyncQueue<K, E> {
             processedElementsCount = new AtomicInteger();
             totalElementsCount = new AtomicInteger();
             queuedElementsCount = new AtomicInteger();
+            queuedDataSize = new AtomicInteger();
             tmpResult = new OperationResult();
         }
     }    
@@ -55,6 +55,8 @@ public class AsyncQueueWriteUnit {
     protected Future<AsyncQueueWriteUnit> future;
     protected ByteBufferCloner byteBufferCloner;
     protected boolean isCloned;
+    // Bytes accounted in the queue, while the unit is queued
+    protected int queuedDataSize;
         
     public void set(ByteBuffer byteBuffer,
             AsyncWriteCallbackHandler callbackHandler,
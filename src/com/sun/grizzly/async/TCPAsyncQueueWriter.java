@@ -44,6 +44,7 @@ import com.sun.grizzly.SelectorHandler;
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.WritableByteChannel;
@@ -106,4 +107,41 @@ public class TCPAsyncQueueWriter extends AbstractAsyncQueueWriter {
         dstResult.bytesProcessed = written;
         return dstResult;
     }
+
+    @Override
+    protected boolean isGatheringSupported() {
+        return true;
+    }
+
+    @Override
+    protected OperationResult doWrite(WritableByteChannel channel,
+            ByteBuffer[] byteBuffers, int length, OperationResult dstResult)
+            throws IOException {
+        GatheringByteChannel gatheringChannel = (GatheringByteChannel) channel;
+        ByteBuffer lastBuffer = byteBuffers[length - 1];
+        long written = 0;
+        long lastWriteBytes = 0;
+        try {
+            do {
+                lastWriteBytes = gatheringChannel.write(byteBuffers, 0, length);
+                if (lastWriteBytes > 0) {
+                    written += lastWriteBytes;
+                }
+            } while (lastWriteBytes > 0 && lastBuffer.hasRemaining());
+        } catch (IOException ex) {
+            lastWriteBytes = -1;
+            throw ex;
+        } finally {
+            if (lastWriteBytes == -1) {
+                SelectionKeyHandler skh = selectorHandler.getSelectionKeyHandler();
+                if (skh instanceof BaseSelectionKeyHandler) {
+                    ((BaseSelectionKeyHandler) skh).notifyRemotlyClose(
+                            ((SelectableChannel) channel).keyFor(
+                            selectorHandler.getSelector()));
+                }
+            }
+        }
+        dstResult.bytesProcessed = (int) written;
+        return dstResult;
+    }
 }
@@ -0,0 +1,169 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.filter;
+
+import com.sun.grizzly.util.StripedCounter;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SSL handshake statistics of a {@link SSLReadFilter}: the number of
+ * started, completed and failed handshakes, their rate and duration, and
+ * the number of delegated task batches run off the worker threads.
+ *
+ * Counters are striped so worker threads updating them don't contend.
+ */
+public class SSLHandshakeStats {
+
+    private final StripedCounter countStarted = new StripedCounter();
+    private final StripedCounter countCompleted = new StripedCounter();
+    private final StripedCounter countFailed = new StripedCounter();
+    private final StripedCounter countOffloadedTasks = new StripedCounter();
+    private final StripedCounter totalDuration = new StripedCounter();
+    private final AtomicLong maxDuration = new AtomicLong();
+
+    private volatile long startTime = System.currentTimeMillis();
+
+
+    /**
+     * Gets the number of handshakes started.
+     */
+    public long getCountStarted() {
+        return countStarted.sum();
+    }
+
+
+    /**
+     * Gets the number of handshakes completed successfully.
+     */
+    public long getCountCompleted() {
+        return countCompleted.sum();
+    }
+
+
+    /**
+     * Gets the number of handshakes which failed, timed out, or were
+     * closed by the peer.
+     */
+    public long getCountFailed() {
+        return countFailed.sum();
+    }
+
+
+    /**
+     * Gets the number of delegated task batches executed off the
+     * worker threads.
+     */
+    public long getCountOffloadedTasks() {
+        return countOffloadedTasks.sum();
+    }
+
+
+    /**
+     * Gets the number of handshakes completed per second, since these
+     * statistics were created or reset.
+     */
+    public double getHandshakeRate() {
+        long elapsed = System.currentTimeMillis() - startTime;
+        return elapsed <= 0 ? 0 : getCountCompleted() * 1000.0 / elapsed;
+    }
+
+
+    /**
+     * Gets the average duration, in milliseconds, of the completed
+     * handshakes.
+     */
+    public long getAverageDuration() {
+        long completed = getCountCompleted();
+        return completed == 0 ? 0 : totalDuration.sum() / completed;
+    }
+
+
+    /**
+     * Gets the longest duration, in milliseconds, of a completed handshake.
+     */
+    public long getMaxDuration() {
+        return maxDuration.get();
+    }
+
+
+    /**
+     * Resets all the statistics.
+     */
+    public void reset() {
+        countStarted.reset();
+        countCompleted.reset();
+        countFailed.reset();
+        countOffloadedTasks.reset();
+        totalDuration.reset();
+        maxDuration.set(0);
+        startTime = System.currentTimeMillis();
+    }
+
+
+    protected void incrementCountStarted() {
+        countStarted.increment();
+    }
+
+
+    protected void incrementCountOffloadedTasks() {
+        countOffloadedTasks.increment();
+    }
+
+
+    protected void incrementCountFailed() {
+        countFailed.increment();
+    }
+
+
+    /**
+     * Records a completed handshake, which took <code>duration</code>
+     * milliseconds.
+     */
+    protected void handshakeCompleted(long duration) {
+        countCompleted.increment();
+        totalDuration.add(duration);
+
+        long max;
+        while (duration > (max = maxDuration.get())) {
+            if (maxDuration.compareAndSet(max, duration)) {
+                break;
+            }
+        }
+    }
+}
@@ -40,9 +40,14 @@ package com.sun.grizzly.filter;
 
 import com.sun.grizzly.Context;
 import com.sun.grizzly.Controller;
+import com.sun.grizzly.NIOContext;
+import com.sun.grizzly.ProtocolChain;
+import com.sun.grizzly.ProtocolChainContextTask;
 import com.sun.grizzly.ProtocolFilter;
 import com.sun.grizzly.SSLConfig;
+import com.sun.grizzly.SelectorHandler;
 import com.sun.grizzly.util.InputReader;
+import com.sun.grizzly.util.OutputWriter;
 import com.sun.grizzly.util.SSLUtils;
 import com.sun.grizzly.util.ThreadAttachment;
 import com.sun.grizzly.util.ThreadAttachment.Mode;
@@ -53,16 +58,29 @@ import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
 import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
 import javax.net.ssl.SSLException;
 
 /**
  * Simple ProtocolFilter implementation which execute an SSL handshake and
  * decrypt the bytes, the pass the control to the next filter.
+ * The handshake doesn't block the worker thread while waiting for the peer,
+ * and the {@link SSLEngine} delegated tasks are run by a dedicated
+ * {@link ExecutorService}.
  *
  * @author Jeanfrancois Arcand
  */
@@ -122,6 +140,54 @@ public class SSLReadFilter implements ProtocolFilter{
     protected int inputBBSize = 5 * 4096;
     
     
+    /**
+     * The maximum time, in milliseconds, a handshake may take. 
+     * A value of 0 or less disables the timeout.
+     */
+    private int handshakeTimeout = SSLUtils.getReadTimeout();
+    
+    
+    /**
+     * The {@link ExecutorService} running the {@link SSLEngine} delegated
+     * tasks, so they don't tie up the worker threads. <tt>null</tt> runs
+     * them on the worker thread.
+     */
+    private ExecutorService delegatedTaskExecutor = 
+            getDefaultDelegatedTaskExecutor();
+    
+    
+    /**
+     * The SSL handshake statistics.
+     */
+    private final SSLHandshakeStats handshakeStats = new SSLHandshakeStats();
+    
+    
+    /**
+     * The shared default delegated task {@link ExecutorService}.
+     */
+    private static ExecutorService defaultDelegatedTaskExecutor;
+    
+    
+    /**
+     * The {@link ThreadAttachment} attribute holding the handshake start time.
+     */
+    private final static String HANDSHAKE_START = "sslHandshakeStart";
+    
+    
+    /**
+     * Empty buffer used when wrapping handshake messages.
+     */
+    private final static ByteBuffer hsBB = ByteBuffer.allocate(0);
+    
+    
+    /**
+     * The progress of a non blocking handshake.
+     */
+    private enum HandshakeProgress {
+        FINISHED, NEED_READ, NEED_TASK
+    }
+    
+    
     public SSLReadFilter() {
     }
 
@@ -153,19 +219,33 @@ public class SSLReadFilter implements ProtocolFilter{
             key.attach(attachment);
         }
 
-        boolean hasHandshake = sslEngine.getSession().isValid();
+        // The session may be valid before a resumed handshake is finished
+        boolean hasHandshake = sslEngine.getSession().isValid() && 
+                workerThread.getAttachment().getAttribute(HANDSHAKE_START) == null;
         try {
             SSLUtils.allocateThreadBuffers(inputBBSize);
             
             if (hasHandshake) {
                 count = doRead(key);
-            } else if (doHandshake(key, SSLUtils.getReadTimeout())) {
-                hasHandshake = true;
-                // set "no available data" for secured output buffer
-                ByteBuffer outputBB = workerThread.getOutputBB();
-                outputBB.limit(outputBB.position());
             } else {
-                count = -1;
+                HandshakeProgress progress = doHandshake(ctx);
+                if (progress == HandshakeProgress.FINISHED) {
+                    hasHandshake = true;
+                    // set "no available data" for secured output buffer
+                    ByteBuffer outputBB = workerThread.getOutputBB();
+                    outputBB.limit(outputBB.position());
+                    if (doRead(key) == -1) {
+                        count = -1;
+                    }
+                } else {
+                    // Release the worker until the next flight
+                    if (progress == HandshakeProgress.NEED_TASK) {
+                        ctx.setKeyRegistrationState(
+                                Context.KeyRegistrationState.NONE);
+                    }
+                    saveSecuredBufferRemainders(key);
+                    result = false;
+                }
             }
         } catch (IOException ex) {
             exception = ex;
@@ -175,6 +255,9 @@ public class SSLReadFilter implements ProtocolFilter{
             log("SSLReadFilter.execute",ex);
         } finally {
             if (exception != null || count == -1){
+                if (!hasHandshake) {
+                    handshakeStats.incrementCountFailed();
+                }
                 ctx.setAttribute(Context.THROWABLE,exception);
                 ctx.setKeyRegistrationState(
                         Context.KeyRegistrationState.CANCEL);
@@ -210,38 +293,189 @@ public class SSLReadFilter implements ProtocolFilter{
     
     
     /**
-     * Execute a non blocking SSL handshake.
-     * @param key {@link SelectionKey}
-     * @param timeout 
-     * @return 
-     * @throws java.io.IOException 
-     */    
-    private static boolean doHandshake(SelectionKey key,int timeout) throws IOException{
+     * Advance the SSL handshake as far as possible without blocking on
+     * the peer. The {@link SSLEngine} and the secured buffers are kept in
+     * the {@link SelectionKey}'s {@link ThreadAttachment} between flights,
+     * so the next read event can resume the handshake on any worker thread.
+     * @param ctx {@link Context}
+     * @return the handshake progress
+     * @throws java.io.IOException if the handshake failed or timed out
+     */
+    private HandshakeProgress doHandshake(Context ctx) throws IOException {
         final WorkerThread workerThread = 
                 (WorkerThread)Thread.currentThread();
+        SelectionKey key = ctx.getSelectionKey();
+        SocketChannel channel = (SocketChannel) key.channel();
         ByteBuffer byteBuffer = workerThread.getByteBuffer();
         ByteBuffer outputBB = workerThread.getOutputBB();
         ByteBuffer inputBB = workerThread.getInputBB();
         SSLEngine sslEngine = workerThread.getSSLEngine();
-        
-        HandshakeStatus handshakeStatus = HandshakeStatus.NEED_UNWRAP;
-        
-        boolean OK = true;    
-        try{ 
-            byteBuffer = SSLUtils.doHandshake
-                         ((SocketChannel) key.channel(), byteBuffer, inputBB,
-                    outputBB, sslEngine, handshakeStatus, timeout);
-            if (doRead(key) == -1){
-                throw new EOFException();
+        ThreadAttachment attachment = workerThread.getAttachment();
+
+        Long startTime = (Long) attachment.getAttribute(HANDSHAKE_START);
+        if (startTime == null) {
+            startTime = System.currentTimeMillis();
+            attachment.setAttribute(HANDSHAKE_START, startTime);
+            handshakeStats.incrementCountStarted();
+        } else if (handshakeTimeout > 0 && 
+                System.currentTimeMillis() - startTime > handshakeTimeout) {
+            throw new IOException("Handshake timeout");
+        }
+
+        HandshakeStatus handshakeStatus = sslEngine.getHandshakeStatus();
+        if (handshakeStatus == HandshakeStatus.NOT_HANDSHAKING) {
+            sslEngine.beginHandshake();
+            handshakeStatus = sslEngine.getHandshakeStatus();
+        }
+
+        boolean isReadRequired = inputBB.position() == 0;
+        SSLEngineResult result;
+        while (true) {
+            switch (handshakeStatus) {
+                case NEED_UNWRAP:
+                    if (isReadRequired) {
+                        int count = channel.read(inputBB);
+                        if (count == -1) {
+                            try {
+                                sslEngine.closeInbound();
+                            } catch (SSLException ex) {
+                            }
+                            throw new EOFException("Connection closed");
+                        } else if (count == 0) {
+                            workerThread.setByteBuffer(byteBuffer);
+                            return HandshakeProgress.NEED_READ;
+                        }
+                    }
+
+                    result = SSLUtils.unwrap(byteBuffer, inputBB, sslEngine);
+                    handshakeStatus = result.getHandshakeStatus();
+                    switch (result.getStatus()) {
+                        case OK:
+                            isReadRequired = inputBB.position() == 0;
+                            break;
+                        case BUFFER_UNDERFLOW:
+                            isReadRequired = true;
+                            break;
+                        case BUFFER_OVERFLOW:
+                            byteBuffer = reallocate(byteBuffer);
+                            break;
+                        default:
+                            throw new IOException("Handshake exception: " + 
+                                    result.getStatus());
+                    }
+                    break;
+                case NEED_WRAP:
+                    result = SSLUtils.wrap(hsBB, outputBB, sslEngine);
+                    handshakeStatus = result.getHandshakeStatus();
+                    if (result.getStatus() != Status.OK) {
+                        throw new IOException("Handshaking error: " 
+                                + result.getStatus());
+                    }
+
+                    // Flush all Server bytes to the client.
+                    OutputWriter.flushChannel(channel, outputBB);
+                    outputBB.clear();
+                    break;
+                case NEED_TASK:
+                    if (offloadDelegatedTasks(ctx, sslEngine)) {
+                        workerThread.setByteBuffer(byteBuffer);
+                        return HandshakeProgress.NEED_TASK;
+                    }
+                    handshakeStatus = sslEngine.getHandshakeStatus();
+                    break;
+                default:
+                    // FINISHED or NOT_HANDSHAKING
+                    workerThread.setByteBuffer(byteBuffer);
+                    attachment.removeAttribute(HANDSHAKE_START);
+                    handshakeStats.handshakeCompleted(
+                            System.currentTimeMillis() - startTime);
+                    return HandshakeProgress.FINISHED;
             }
-        } catch (IOException ex) {
-            log("doHandshake", ex);
-            OK = false;
         }
-        return OK;
-    }    
-    
-    
+    }
+
+
+    /**
+     * Run the pending {@link SSLEngine} delegated tasks using the
+     * delegated task {@link ExecutorService}. Once they are done, the
+     * {@link ProtocolChain} is invoked again to resume the handshake.
+     * @return <tt>false</tt> if the tasks were executed by the current thread
+     */
+    private boolean offloadDelegatedTasks(Context ctx, SSLEngine sslEngine) {
+        final List<Runnable> tasks = new ArrayList<Runnable>(2);
+        Runnable task;
+        while ((task = sslEngine.getDelegatedTask()) != null) {
+            tasks.add(task);
+        }
+
+        ExecutorService executor = delegatedTaskExecutor;
+        if (executor != null) {
+            final Controller controller = ctx.getController();
+            final SelectorHandler selectorHandler = ctx.getSelectorHandler();
+            final SelectionKey key = ctx.getSelectionKey();
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            for (Runnable task : tasks) {
+                                task.run();
+                            }
+                        } finally {
+                            resumeHandshake(controller, selectorHandler, key);
+                        }
+                    }
+                });
+                handshakeStats.incrementCountOffloadedTasks();
+                return true;
+            } catch (RejectedExecutionException ex) {
+                log("Delegated task executor is busy", ex);
+            }
+        }
+
+        for (Runnable t : tasks) {
+            t.run();
+        }
+        return false;
+    }
+
+
+    /**
+     * Invoke the {@link ProtocolChain} of a {@link SelectionKey} from
+     * the {@link Controller}'s thread pool, as a read event would.
+     */
+    private static void resumeHandshake(Controller controller,
+            SelectorHandler selectorHandler, SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+
+        try {
+            NIOContext context = controller.pollContext(key, 
+                    Context.OpType.OP_READ);
+            controller.configureContext(context, selectorHandler);
+            context.execute(ProtocolChainContextTask.poll());
+        } catch (Throwable t) {
+            log("resumeHandshake", t);
+            selectorHandler.getSelectionKeyHandler().cancel(key);
+        }
+    }
+
+
+    /**
+     * Resize a ByteBuffer.
+     */
+    private static ByteBuffer reallocate(ByteBuffer byteBuffer) 
+            throws IOException {
+        if (byteBuffer.capacity() > SSLUtils.MAX_BB_SIZE) {
+            throw new IOException("Unwrap error: BUFFER_OVERFLOW");
+        }
+        ByteBuffer tmp = ByteBuffer.allocate(byteBuffer.capacity() * 2);
+        byteBuffer.flip();
+        tmp.put(byteBuffer);
+        return tmp;
+    }
+
+
     private static int doRead(SelectionKey key) {
         final WorkerThread workerThread =
                 (WorkerThread) Thread.currentThread();
@@ -415,6 +649,83 @@ public class SSLReadFilter implements ProtocolFilter{
     }
     
     
+    /**
+     * Return the maximum time, in milliseconds, a handshake may take.
+     * @return the handshake timeout
+     */
+    public int getHandshakeTimeout() {
+        return handshakeTimeout;
+    }
+    
+    
+    /**
+     * Set the maximum time, in milliseconds, a handshake may take. 
+     * A value of 0 or less disables the timeout.
+     * @param handshakeTimeout the handshake timeout
+     */
+    public void setHandshakeTimeout(int handshakeTimeout) {
+        this.handshakeTimeout = handshakeTimeout;
+    }
+    
+    
+    /**
+     * Return the {@link ExecutorService} running the {@link SSLEngine}
+     * delegated tasks.
+     * @return {@link ExecutorService}
+     */
+    public ExecutorService getDelegatedTaskExecutor() {
+        return delegatedTaskExecutor;
+    }
+    
+    
+    /**
+     * Set the {@link ExecutorService} running the {@link SSLEngine}
+     * delegated tasks. It should be bounded: when it rejects the tasks, 
+     * they are run on the worker thread. <tt>null</tt> always runs them 
+     * on the worker thread.
+     * @param delegatedTaskExecutor {@link ExecutorService}
+     */
+    public void setDelegatedTaskExecutor(ExecutorService delegatedTaskExecutor) {
+        this.delegatedTaskExecutor = delegatedTaskExecutor;
+    }
+    
+    
+    /**
+     * Return the SSL handshake statistics.
+     * @return {@link SSLHandshakeStats}
+     */
+    public SSLHandshakeStats getHandshakeStats() {
+        return handshakeStats;
+    }
+    
+    
+    /**
+     * Return the default delegated task {@link ExecutorService}, shared by
+     * all the {@link SSLReadFilter}s: one daemon thread per processor and a
+     * bounded queue.
+     * @return {@link ExecutorService}
+     */
+    public static synchronized ExecutorService getDefaultDelegatedTaskExecutor() {
+        if (defaultDelegatedTaskExecutor == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            defaultDelegatedTaskExecutor = new ThreadPoolExecutor(threads, 
+                    threads, 60, TimeUnit.SECONDS, 
+                    new LinkedBlockingQueue<Runnable>(threads * 256),
+                    new ThreadFactory() {
+                        private final AtomicInteger counter = new AtomicInteger();
+
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "Grizzly-SSLTask-" 
+                                    + counter.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+        return defaultDelegatedTaskExecutor;
+    }
+    
+    
     /**
      * Returns the list of cipher suites to be enabled when {@link SSLEngine}
      * is initialized.
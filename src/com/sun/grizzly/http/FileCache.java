@@ -40,6 +40,10 @@ package com.sun.grizzly.http;
 
 import com.sun.grizzly.util.OutputWriter;
 import com.sun.grizzly.util.WorkerThreadImpl;
+import com.sun.grizzly.util.buf.Ascii;
+import com.sun.grizzly.util.http.ByteRanges;
+import com.sun.grizzly.util.http.FastHttpDateFormat;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -47,12 +51,16 @@ import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.zip.GZIPOutputStream;
 import com.sun.grizzly.util.http.MimeHeaders;
 
 
@@ -104,6 +112,78 @@ public class FileCache{
      */
     public final static String OK = "HTTP/1.1 200 OK" + NEWLINE;    
 
+
+    /**
+     * HTTP Not Modified header
+     */
+    public final static String NOT_MODIFIED = 
+            "HTTP/1.1 304 Not Modified" + NEWLINE;    
+
+
+    /**
+     * HTTP Partial Content header
+     */
+    public final static String PARTIAL_CONTENT = 
+            "HTTP/1.1 206 Partial Content" + NEWLINE;    
+
+
+    /**
+     * HTTP Requested Range Not Satisfiable header
+     */
+    public final static String RANGE_NOT_SATISFIABLE = 
+            "HTTP/1.1 416 Requested Range Not Satisfiable" + NEWLINE;    
+
+
+    /**
+     * The extension of the precompressed variant of a file.
+     */
+    private final static String GZIP_EXTENSION = ".gz";
+
+
+    /**
+     * The lower case name of the Accept-Encoding header.
+     */
+    private final static byte[] ACCEPT_ENCODING_BYTES = 
+            "accept-encoding".getBytes();
+
+
+    /**
+     * The lower case name of the If-None-Match header.
+     */
+    private final static byte[] IF_NONE_MATCH_BYTES = 
+            "if-none-match".getBytes();
+
+
+    /**
+     * The lower case name of the If-Modified-Since header.
+     */
+    private final static byte[] IF_MODIFIED_SINCE_BYTES = 
+            "if-modified-since".getBytes();
+
+
+    /**
+     * The lower case name of the Range header.
+     */
+    private final static byte[] RANGE_BYTES = "range".getBytes();
+
+
+    /**
+     * The lower case name of the If-Range header.
+     */
+    private final static byte[] IF_RANGE_BYTES = "if-range".getBytes();
+
+
+    /**
+     * The lower case name of the User-Agent header.
+     */
+    private final static byte[] USER_AGENT_BYTES = "user-agent".getBytes();
+
+
+    /**
+     * The lower case gzip content coding.
+     */
+    private final static byte[] GZIP_BYTES = "gzip".getBytes();
+
     /**
      * The port associated with this cache.
      */
@@ -131,6 +211,20 @@ public class FileCache{
      * Timeout before remove the static resource from the cache.
      */
     private int secondsMaxAge = -1;
+
+
+    /**
+     * The interval in seconds between two checks of the cached files for
+     * modifications. When enabled, the entries of the files that changed
+     * are removed from the cache.
+     */
+    private int secondsCheckInterval = -1;
+
+
+    /**
+     * The task checking the cached files for modifications.
+     */
+    private Future modifiedChecker;
     
     
     /**
@@ -230,25 +324,25 @@ public class FileCache{
     
     
     /**
-     * Number of hits on cached file info
+     * Number of cache lookup hits on resources stored in the heap
      */
     private int countCacheHits;
     
     
     /**
-     * Number of misses on cached file info
+     * Number of cache lookup misses on resources stored in the heap
      */
     private int countCacheMisses;
         
     
     /**
-     * Number of hits on cached file info
+     * Number of cache lookup hits on resources stored in mapped memory
      */
     private int countMappedHits;
     
     
     /**
-     * Number of misses on cached file info
+     * Number of cache lookup misses on resources stored in mapped memory
      */
     private int countMappedMisses;
 
@@ -258,73 +352,426 @@ public class FileCache{
      */
     private int headerBBSize = 4096;
 
+
+    /**
+     * The MIME types for which a gzip variant of the resource is cached. 
+     * <tt>null</tt> if compressed variants are disabled.
+     */
+    private String[] compressableMimeTypes = null;
+
+
+    /**
+     * The minimum size of a resource to cache a gzip variant of it.
+     */
+    private int compressionMinSize = 2048;
+
+
+    /**
+     * The user agents which must not be served a gzip variant.
+     */
+    private String[] noCompressionUserAgents = null;
+
+    /**
+     * The {@link FileCacheEntry} stored in the heap.
+     */
+    private final CacheTier heapTier = new CacheTier(true);
+
+
+    /**
+     * The {@link FileCacheEntry} stored in mapped memory.
+     */
+    private final CacheTier mappedTier = new CacheTier(false);
+
+
+    /**
+     * Lock protecting the {@link CacheTier} lists and the cache sizes.
+     */
+    private final ReentrantLock policyLock = new ReentrantLock();
+
+
+    /**
+     * Recent access frequency of the requested resources, used to decide
+     * if a resource is worth caching over an already cached one.
+     */
+    private FrequencySketch frequencySketch = new FrequencySketch(maxCacheEntries);
+
+
+    /**
+     * The number of resources that cannot be cached currently stored in
+     * the {@link FileCache}.
+     */
+    private int uncacheableEntries = 0;
+
+
+    /**
+     * Number of entries evicted to make room for more frequently used ones.
+     */
+    private int countEvictions = 0;
+
     // ---------------------------------------------------- Methods ----------//
              
             
     /**
      * Add a resource to the cache. Currently, only static resources served
-     * by the DefaultServlet can be cached.
+     * by the DefaultServlet can be cached. When the cache is full, the
+     * least recently used entries are evicted if the resource has been
+     * requested more frequently than them, otherwise the resource isn't
+     * cached.
      */
-    public synchronized void add(String mappedServlet, String baseDir, 
+    public void add(String mappedServlet, String baseDir, 
             String requestURI, MimeHeaders headers, boolean xPoweredBy){
+        FileCacheEntry entry = addEntry(mappedServlet, baseDir, requestURI,
+                headers, xPoweredBy);
+
+        // Compressing may take a while, don't hold the other resources 
+        // from being added meanwhile.
+        if ( entry != null ) {
+            configGzip(entry);
+        }
+    }
+
+
+    /**
+     * Add a resource to the cache.
+     * @return the added entry if a gzip variant of it must be built, 
+     *         <tt>null</tt> otherwise.
+     */
+    private synchronized FileCacheEntry addEntry(String mappedServlet, 
+            String baseDir, String requestURI, MimeHeaders headers, 
+            boolean xPoweredBy){
         
-        if (requestURI == null || fileCache.get(requestURI) != null) return;
+        if (requestURI == null || fileCache.get(requestURI) != null) return null;
         
-        // cache is full.
-        if ( fileCache.size() > maxCacheEntries) {
+        if ( !mappedServlet.equals(DEFAULT_SERVLET_NAME) ){
+            return null;
+        }
+
+        frequencySketch.increment(requestURI);
+
+        File file = new File(baseDir + requestURI);
+        // Record the file state before mapping it so a modification done
+        // while mapping is detected by the next check.
+        long fileLastModified = file.lastModified();
+        long size = file.length();
+        boolean isInHeap = (size <= minEntrySize);
+        CacheTier tier = isInHeap ? heapTier : mappedTier;
+        ByteBuffer bb = null;
+
+        if ( isMonitoringEnabled ) {
+            if ( isInHeap ) 
+                countCacheMisses++;
+            else
+                countMappedMisses++;
+        }
+
+        String contentType = headers.getHeader("content-type");
+        boolean compress = isCompressable(contentType, size);
+
+        if ( isCacheable(file, size) ){
+            // Reserve room for the gzip variant, which is only kept when 
+            // smaller than the resource itself.
+            long reserved = compress ? 
+                Math.min(2 * size, tier.capacity()) : size;
+
+            // The resource isn't requested often enough to replace 
+            // cached resources. Don't remember it so it can be admitted
+            // once it gets popular.
+            if ( !makeRoom(tier, requestURI, reserved, null) ) {
+                return null;
+            }
+            bb = mapFile(file, size);
+        } else if ( uncacheableEntries >= maxCacheEntries ) {
+            return null;
+        }
+
+        // Always put the answer into the map. If it's null, then
+        // we know that it doesn't fit into the cache, so there's no
+        // reason to go through this code again.
+        if (bb == null)
+            bb = nullByteBuffer;
+
+        FileCacheEntry entry = new FileCacheEntry();
+        entry.bb = bb;
+        entry.requestURI = requestURI;
+        entry.file = file;
+        entry.fileLastModified = fileLastModified;
+        entry.fileLength = size;
+
+        if ( bb != nullByteBuffer){
+            entry.lastModified = headers.getHeader("Last-Modified");
+            entry.contentType = contentType;
+            entry.xPoweredBy = xPoweredBy;
+            entry.isInHeap = isInHeap;
+            entry.date = headers.getHeader("Date");
+            entry.Etag = headers.getHeader("Etag");
+            configHeaders(entry);
+
+            policyLock.lock();
+            try {
+                tier.add(entry);
+                openCacheEntries++;
+            } finally {
+                policyLock.unlock();
+            }
+
+            if ( isMonitoringEnabled ) {
+                if ( openCacheEntries > maxOpenCacheEntries){
+                    maxOpenCacheEntries = openCacheEntries;
+                }
+
+                if ( heapSize > maxHeapCacheSize){
+                    maxHeapCacheSize = heapSize;
+                }
+
+                if ( mappedMemorySize > maxMappedMemory){
+                    maxMappedMemory = mappedMemorySize;
+                }
+            }
+        } else {
+            policyLock.lock();
+            try {
+                uncacheableEntries++;
+            } finally {
+                policyLock.unlock();
+            }
+        }
+        fileCache.put(requestURI,entry);
+
+        // Only scheduled once in the map, so the entry can be removed.
+        if ( bb != nullByteBuffer && secondsMaxAge > 0 ) {
+            entry.future = cacheResourcesThread.schedule(entry, 
+                                        secondsMaxAge, TimeUnit.SECONDS);
+        }
+
+        if ( secondsCheckInterval > 0 && modifiedChecker == null ) {
+            modifiedChecker = cacheResourcesThread.scheduleWithFixedDelay(
+                    new Runnable(){
+                        public void run() {
+                            checkModified();
+                        }
+                    }, secondsCheckInterval, secondsCheckInterval, 
+                    TimeUnit.SECONDS);
+        }
+        return (bb != nullByteBuffer && compress) ? entry : null;
+    }
+
+
+    /**
+     * Remove from the cache the entries whose file has been modified,
+     * created or deleted since it was added. An entry evicted or expired 
+     * concurrently is only removed once.
+     */
+    protected void checkModified(){
+        for ( FileCacheEntry entry: fileCache.values() ) {
+            File file = entry.file;
+            if ( file == null ) continue;
+
+            File gzipFile = entry.gzipFile;
+            if ( file.lastModified() != entry.fileLastModified 
+                    || file.length() != entry.fileLength 
+                    || (gzipFile != null && gzipFile.lastModified() 
+                        != entry.gzipFileLastModified) ) {
+                if ( SelectorThread.logger().isLoggable(Level.FINE) ) {
+                    SelectorThread.logger().fine("File Cache: " 
+                            + entry.requestURI + " has been modified");
+                }
+                entry.remove();
+            }
+        }
+    }
+
+
+    /**
+     * Return <tt>true</tt> if a gzip variant of a resource of 
+     * <tt>contentType</tt> and <tt>size</tt> bytes must be cached.
+     */
+    private boolean isCompressable(String contentType, long size){
+        if ( compressableMimeTypes == null || contentType == null ) {
+            return false;
+        }
+
+        if ( size <= compressionMinSize ) {
+            return false;
+        }
+
+        for ( String mimeType: compressableMimeTypes ) {
+            if ( contentType.startsWith(mimeType) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Set the gzip variant of a cached entry, using the precompressed
+     * <tt>.gz</tt> file next to the cached file when it is up to date, 
+     * or compressing the cached bytes otherwise. The variant is dropped
+     * when it isn't smaller than the resource. Until it is set, the 
+     * entry is served uncompressed.
+     */
+    private void configGzip(FileCacheEntry entry){
+        File gzipFile = new File(entry.file.getPath() + GZIP_EXTENSION);
+        long gzipLastModified = gzipFile.lastModified();
+        ByteBuffer gzipBb = null;
+
+        if ( gzipLastModified >= entry.fileLastModified && gzipFile.isFile() ) {
+            gzipBb = mapFile(gzipFile, gzipFile.length());
+        }
+
+        if ( gzipBb == null ) {
+            gzipFile = null;
+            gzipBb = compress(entry.bb);
+        }
+
+        if ( gzipBb == null || gzipBb.limit() >= entry.bb.limit() ) {
             return;
         }
-        
-        if ( mappedServlet.equals(DEFAULT_SERVLET_NAME) ){                                     
-            File file = new File(baseDir + requestURI);
-            ByteBuffer bb = mapFile(file);
-
-            // Always put the answer into the map. If it's null, then
-            // we know that it doesn't fit into the cache, so there's no
-            // reason to go through this code again.
-            if (bb == null)
-                bb = nullByteBuffer;
-            
-            FileCacheEntry entry = cacheManager.poll();
-            if ( entry == null){
-                entry = new FileCacheEntry();
+
+        // Requests being served may read the current headers, build new 
+        // ones which advertise the variant.
+        ByteBuffer headerBuffer = 
+                configHeaders(entry, null, entry.bb, null, true);
+        ByteBuffer gzipHeaderBuffer = 
+                configHeaders(entry, null, gzipBb, "gzip", true);
+        ByteBuffer notModifiedHeaderBuffer = 
+                configNotModifiedHeaders(entry, true);
+
+        policyLock.lock();
+        try {
+            if ( entry.isRemoved ) return;
+
+            // The room reserved when the entry was added may have been 
+            // taken since, or was capped by the tier capacity. Drop the
+            // variant rather than exceed the capacity.
+            CacheTier tier = entry.isInHeap ? heapTier : mappedTier;
+            if ( !makeRoom(tier, entry.requestURI, gzipBb.limit(), entry) ) {
+                return;
             }
-            entry.bb = bb;
-            entry.requestURI = requestURI;
-            
-            if ( bb != nullByteBuffer){
-                entry.lastModified = headers.getHeader("Last-Modified");
-                entry.contentType = headers.getHeader("content-type");
-                entry.xPoweredBy = xPoweredBy;
-                entry.isInHeap = (file.length() < minEntrySize);
-                entry.date = headers.getHeader("Date");
-                entry.Etag = headers.getHeader("Etag");
 
-                configHeaders(entry);
+            entry.gzipFile = gzipFile;
+            entry.gzipFileLastModified = gzipLastModified;
+            entry.headerBuffer = headerBuffer;
+            entry.gzipHeaderBuffer = gzipHeaderBuffer;
+            entry.notModifiedHeaderBuffer = notModifiedHeaderBuffer;
+            entry.gzipBb = gzipBb;
+            tier.grow(entry, gzipBb.limit());
+        } finally {
+            policyLock.unlock();
+        }
+    }
 
-                if ( isMonitoringEnabled ) {
-                    openCacheEntries++;   
 
-                    if ( openCacheEntries > maxOpenCacheEntries){
-                        maxOpenCacheEntries = openCacheEntries;
-                    }
+    /**
+     * Compress <tt>bb</tt> using gzip.
+     * @return the compressed bytes, or <tt>null</tt> if the compression 
+     *         failed.
+     */
+    private ByteBuffer compress(ByteBuffer bb){
+        ByteBuffer source = bb.duplicate();
+        source.rewind();
+        try{
+            ByteArrayOutputStream out = 
+                    new ByteArrayOutputStream(source.remaining() / 2);
+            GZIPOutputStream gzip = new GZIPOutputStream(out);
+            byte[] chunk = new byte[8192];
+            while ( source.hasRemaining() ) {
+                int length = Math.min(chunk.length, source.remaining());
+                source.get(chunk, 0, length);
+                gzip.write(chunk, 0, length);
+            }
+            gzip.close();
 
-                    if ( heapSize > maxHeapCacheSize){
-                        maxHeapCacheSize = heapSize;
-                    }
+            byte[] compressed = out.toByteArray();
+            ByteBuffer gzipBb = ByteBuffer.allocateDirect(compressed.length);
+            gzipBb.put(compressed);
+            gzipBb.flip();
+            return gzipBb;
+        } catch (IOException ex){
+            SelectorThread.logger().fine("File Cache: " + ex.getMessage());
+            return null;
+        }
+    }
 
-                    if ( mappedMemorySize > maxMappedMemory){
-                        maxMappedMemory = mappedMemorySize;
-                    }
+
+    /**
+     * Return <tt>true</tt> if a file of <tt>size</tt> bytes can ever be 
+     * stored in this cache.
+     */
+    private boolean isCacheable(File file, long size){
+        if ( !file.isFile() ) {
+            return false;
+        }
+
+        if ( !isLargeFileCacheEnabled ) {
+            // Large file support are not enabled
+            if ( size > minEntrySize ) {
+                return false;
+            }
+        } else if ( size > maxEntrySize){
+            return false;
+        }
+
+        long capacity = (size <= minEntrySize) ? 
+            maxSmallFileCacheSize : maxLargeFileCacheSize;
+        return size <= capacity && maxCacheEntries > 0;
+    }
+
+
+    /**
+     * Evict enough entries to store a resource of <tt>size</tt> bytes into 
+     * <tt>tier</tt>, or to grow <tt>owner</tt> by <tt>size</tt> bytes when
+     * it isn't null. Nothing is evicted, and <tt>false</tt> returned, if
+     * one of the victims has been requested at least as frequently as 
+     * <tt>requestURI</tt>.
+     */
+    private boolean makeRoom(CacheTier tier, String requestURI, long size,
+            FileCacheEntry owner){
+        policyLock.lock();
+        try {
+            long bytesToFree = tier.size() + size - tier.capacity();
+            int entriesToFree = heapTier.count + mappedTier.count 
+                    + (owner == null ? 1 : 0) - maxCacheEntries;
+            if ( bytesToFree <= 0 && entriesToFree <= 0 ) {
+                return true;
+            }
+
+            int candidateFrequency = frequencySketch.frequency(requestURI);
+            ArrayList<FileCacheEntry> victims = new ArrayList<FileCacheEntry>();
+            CacheTier from = tier;
+            FileCacheEntry victim = null;
+            while ( bytesToFree > 0 || entriesToFree > 0 ) {
+                victim = from.nextVictim(victim);
+                if ( victim != null && victim == owner ) {
+                    victim = from.nextVictim(victim);
+                }
+                if ( victim == null && from == tier && bytesToFree <= 0 ) {
+                    // Only the number of entries is exceeded, the other
+                    // tier can give one up.
+                    from = (tier == heapTier) ? mappedTier : heapTier;
+                    victim = from.nextVictim(null);
+                }
+
+                if ( victim == null || frequencySketch.frequency(
+                        victim.requestURI) >= candidateFrequency ) {
+                    return false;
+                }
+                victims.add(victim);
+                if ( from == tier ) {
+                    bytesToFree -= victim.size;
                 }
+                entriesToFree--;
+            }
 
-                if ( secondsMaxAge > 0 ) {
-                    entry.future = cacheResourcesThread.schedule(entry, 
-                                                secondsMaxAge, TimeUnit.SECONDS);
+            for ( FileCacheEntry e: victims ) {
+                if ( e.remove() ) {
+                    countEvictions++;
                 }
             }
-            fileCache.put(requestURI,entry);
-        }            
+            return true;
+        } finally {
+            policyLock.unlock();
+        }
     }
        
     
@@ -332,42 +779,21 @@ public class FileCache{
      * Map the file to a {@link ByteBuffer}
      * @return the {@link ByteBuffer}
      */
-    private final ByteBuffer mapFile(File file){
+    private final ByteBuffer mapFile(File file, long size){
         FileChannel fileChannel = null;
         FileInputStream stream = null;
         try {
             stream = new FileInputStream(file);
             fileChannel = stream.getChannel();
              
-            long size = fileChannel.size();
-            
-            if ( !isLargeFileCacheEnabled ) {
-                // Large file support are not enabled
-                if ( size > minEntrySize ) {
-                    return null;
-                }
-            } else if ( size > maxEntrySize){
+            if ( fileChannel.size() != size ) {
                 return null;
             }
 
-            if ( size > minEntrySize )
-                mappedMemorySize+= size;
-            else
-                heapSize+= size;
- 
-            // Cache full
-            if ( mappedMemorySize > maxLargeFileCacheSize ) {
-                mappedMemorySize-= size;
-                return null;
-            } else  if ( heapSize > maxSmallFileCacheSize ) {
-                heapSize-= size;
-                return null;
-            }        
-            
             ByteBuffer bb = 
                     fileChannel.map(FileChannel.MapMode.READ_ONLY,0,size);
                                  
-            if ( size < minEntrySize) {
+            if ( size <= minEntrySize) {
                 ((MappedByteBuffer)bb).load();
             }
             return bb;
@@ -400,6 +826,11 @@ public class FileCache{
         if ( fileCache.size() != 0 ){
             uri = new String(requestBytes,start,length);
             entry = fileCache.get(uri);
+
+            if (entry != null && entry.bb != null
+                    && entry.bb != nullByteBuffer){
+                recordAccess(entry);
+            }
             
             if ( isMonitoringEnabled) {
                 if (entry != null && entry.bb != null 
@@ -420,16 +851,89 @@ public class FileCache{
     }
       
     
+    /**
+     * Record a cache hit. The entry is moved to the most recently used 
+     * position of its {@link CacheTier} unless another thread is already 
+     * updating the tiers, in which case the reordering is simply skipped 
+     * instead of blocking the request.
+     */
+    private void recordAccess(FileCacheEntry entry){
+        frequencySketch.increment(entry.requestURI);
+        if ( policyLock.tryLock() ) {
+            try {
+                CacheTier tier = entry.isInHeap ? heapTier : mappedTier;
+                tier.onHit(entry);
+            } finally {
+                policyLock.unlock();
+            }
+        }
+    }
+      
+    
     /**
      * Send the cache.
      */
     public boolean sendCache(byte[] req, int start, int length,
             SocketChannel socketChannel, boolean keepAlive){
+        return sendCache(req, start, length, -1, socketChannel, keepAlive);
+    }
+
+
+    /**
+     * Send the cache. The request headers are read from the bytes following
+     * the request line, up to <tt>end</tt>, to select the variant of the
+     * resource to send.
+     * @param req the bytes of the request
+     * @param start the start of the request URI
+     * @param length the length of the request URI
+     * @param end the end of the request bytes read so far, or -1 if the
+     *            request headers aren't available
+     * @param socketChannel the {@link SocketChannel} to write to
+     * @param keepAlive is the connection kept alive after the response
+     * @return <tt>true</tt> if the request has been served from the cache
+     */
+    public boolean sendCache(byte[] req, int start, int length, int end,
+            SocketChannel socketChannel, boolean keepAlive){
 
         try{
             FileCacheEntry entry = map(req,start,length);
             if ( entry != null && entry.bb != nullByteBuffer){
-                sendCache(socketChannel,entry,keepAlive); 
+                ByteBuffer gzipBb = entry.gzipBb;
+                ByteBuffer headerBuffer = entry.headerBuffer;
+                ByteBuffer bb = entry.bb;
+
+                if ( end != -1 ) {
+                    int headersStart = nextLine(req, start + length, end);
+                    if ( headersStart == -1 
+                            || headersEnd(req, headersStart, end) == -1 ) {
+                        // Not all the headers have been read.
+                        return false;
+                    }
+
+                    if ( isNotModified(entry, req, headersStart, end) ) {
+                        sendCache(socketChannel, entry.notModifiedHeaderBuffer,
+                                nullByteBuffer, keepAlive);
+                        return true;
+                    }
+
+                    int range = findHeader(req, headersStart, end, RANGE_BYTES);
+                    if ( range != -1 
+                            && isRangeValid(entry, req, headersStart, end) ) {
+                        long[] ranges = ByteRanges.parse(req, range, 
+                                valueEnd(req, range, end), bb.limit());
+                        if ( ranges != null ) {
+                            sendRanges(socketChannel, entry, ranges, keepAlive);
+                            return true;
+                        }
+                    }
+
+                    if ( gzipBb != null 
+                            && acceptsGzip(req, headersStart, end) ) {
+                        headerBuffer = entry.gzipHeaderBuffer;
+                        bb = gzipBb;
+                    }
+                }
+                sendCache(socketChannel, headerBuffer, bb, keepAlive); 
                 return true;
             }
         } catch (IOException ex){
@@ -444,10 +948,305 @@ public class FileCache{
         }
         return false;
     }    
+
+
+    /**
+     * Return <tt>true</tt> if the validators of the request headers, 
+     * between <tt>start</tt> and <tt>end</tt>, match the cached resource.
+     * As in RFC 2616, If-Modified-Since is ignored when If-None-Match is
+     * present.
+     */
+    private boolean isNotModified(FileCacheEntry entry, byte[] req, 
+            int start, int end){
+        int value = findHeader(req, start, end, IF_NONE_MATCH_BYTES);
+        if ( value != -1 ) {
+            return entry.etagBytes != null && matchesEtag(req, value, 
+                    valueEnd(req, value, end), entry.etagBytes);
+        }
+
+        value = findHeader(req, start, end, IF_MODIFIED_SINCE_BYTES);
+        if ( value == -1 || entry.lastModifiedBytes == null ) {
+            return false;
+        }
+
+        int valueEnd = valueEnd(req, value, end);
+        byte[] lastModified = entry.lastModifiedBytes;
+        if ( valueEnd - value == lastModified.length ) {
+            // Browsers usually send back the Last-Modified value as is.
+            int i = 0;
+            while ( i < lastModified.length 
+                    && req[value + i] == lastModified[i] ) {
+                i++;
+            }
+            if ( i == lastModified.length ) {
+                return true;
+            }
+        }
+
+        long ifModifiedSince = FastHttpDateFormat.parseDate(
+                new String(req, value, valueEnd - value), null);
+        return ifModifiedSince != -1 && entry.lastModifiedTime != -1
+                && entry.lastModifiedTime / 1000 <= ifModifiedSince / 1000;
+    }
+
+
+    /**
+     * Return <tt>true</tt> if the Range header must be honoured, i.e. there 
+     * is no If-Range header or its validator matches the cached resource
+     * using the strong comparison.
+     */
+    private boolean isRangeValid(FileCacheEntry entry, byte[] req, 
+            int start, int end){
+        int value = findHeader(req, start, end, IF_RANGE_BYTES);
+        if ( value == -1 ) {
+            return true;
+        }
+
+        int valueEnd = valueEnd(req, value, end);
+        byte[] validator;
+        if ( req[value] == '"' || req[value] == 'W' ) {
+            // Weak entity tags never match
+            if ( entry.Etag == null || entry.Etag.startsWith("W/") ) {
+                return false;
+            }
+            validator = entry.etagBytes;
+        } else {
+            validator = entry.lastModifiedBytes;
+        }
+
+        if ( validator == null || valueEnd - value != validator.length ) {
+            return false;
+        }
+        for ( int i = 0; i < validator.length; i++ ) {
+            if ( req[value + i] != validator[i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Send the requested ranges of a cached resource, as a 
+     * <tt>206 Partial Content</tt> response, or a 
+     * <tt>416 Requested Range Not Satisfiable</tt> response if none of them
+     * can be satisfied.
+     */
+    private void sendRanges(SocketChannel socketChannel, FileCacheEntry entry,
+            long[] ranges, boolean keepAlive) throws IOException{
+        ByteBuffer bb = entry.bb;
+        long length = bb.limit();
+        ByteBuffer[] body;
+
+        StringBuilder sb = new StringBuilder();
+        if ( ranges == ByteRanges.UNSATISFIABLE ) {
+            sb.append(RANGE_NOT_SATISFIABLE);
+            appendHeaderValue(sb,"Content-Range", 
+                    ByteRanges.unsatisfiedContentRange(length));
+            body = new ByteBuffer[0];
+        } else {
+            sb.append(PARTIAL_CONTENT);
+            appendHeaderValue(sb, "ETag", entry.Etag);   
+            appendHeaderValue(sb,"Last-Modified", entry.lastModified);
+            if ( entry.gzipBb != null ) {
+                appendHeaderValue(sb,"Vary", "Accept-Encoding");
+            }
+            if ( ranges.length == 2 ) {
+                appendHeaderValue(sb,"Content-Type", entry.contentType);
+                appendHeaderValue(sb,"Content-Range", ByteRanges.contentRange(
+                        ranges[0], ranges[1], length));
+                body = new ByteBuffer[]{slice(bb, ranges[0], ranges[1])};
+            } else {
+                // The parts are written as views of the cached bytes, 
+                // interleaved with their headers.
+                appendHeaderValue(sb,"Content-Type", 
+                        ByteRanges.MULTIPART_CONTENT_TYPE);
+                body = new ByteBuffer[ranges.length + 1];
+                for ( int i = 0; i < ranges.length; i += 2 ) {
+                    body[i] = ByteBuffer.wrap(ByteRanges.partHeader(
+                            entry.contentType, ranges[i], ranges[i + 1], 
+                            length).getBytes());
+                    body[i + 1] = slice(bb, ranges[i], ranges[i + 1]);
+                }
+                body[ranges.length] = 
+                        ByteBuffer.wrap(ByteRanges.MULTIPART_END.getBytes());
+            }
+        }
+        long contentLength = 0;
+        for ( ByteBuffer part : body ) {
+            contentLength += part.remaining();
+        }
+        appendHeaderValue(sb,"Content-Length", contentLength + "");
+        appendHeaderValue(sb,"Date", entry.date);
+        appendHeaderValue(sb,"Server", SelectorThread.SERVER_NAME);
+
+        sendCache(socketChannel, ByteBuffer.wrap(sb.toString().getBytes()),
+                body, keepAlive);
+    }
+
+
+    /**
+     * Return a view of the bytes of <tt>bb</tt> between the positions 
+     * <tt>first</tt> and <tt>last</tt>, both inclusive.
+     */
+    private static ByteBuffer slice(ByteBuffer bb, long first, long last){
+        ByteBuffer view = bb.duplicate();
+        view.limit((int)last + 1);
+        view.position((int)first);
+        return view.slice();
+    }
+
+
+    /**
+     * Return <tt>true</tt> if the list of entity tags between 
+     * <tt>start</tt> and <tt>end</tt> is <tt>*</tt> or contains 
+     * <tt>etag</tt>, using the weak comparison.
+     */
+    private static boolean matchesEtag(byte[] req, int start, int end, 
+            byte[] etag){
+        int i = start;
+        while ( i < end ) {
+            while ( i < end && (req[i] == ' ' || req[i] == ',') ) {
+                i++;
+            }
+            if ( i < end && req[i] == '*' ) {
+                return true;
+            }
+            if ( i + 1 < end && req[i] == 'W' && req[i + 1] == '/' ) {
+                i += 2;
+            }
+
+            int j = 0;
+            while ( j < etag.length && i + j < end && req[i + j] == etag[j] ) {
+                j++;
+            }
+            if ( j == etag.length && (i + j == end || req[i + j] == ' ' 
+                    || req[i + j] == ',') ) {
+                return true;
+            }
+
+            // Skip to the next entity tag.
+            boolean quoted = false;
+            while ( i < end && (quoted || req[i] != ',') ) {
+                if ( req[i] == '"' ) {
+                    quoted = !quoted;
+                }
+                i++;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Return <tt>true</tt> if the request headers, between <tt>start</tt>
+     * and <tt>end</tt>, allow a gzip variant to be sent.
+     */
+    private boolean acceptsGzip(byte[] req, int start, int end){
+        int value = findHeader(req, start, end, ACCEPT_ENCODING_BYTES);
+        if ( value == -1 || !acceptsCoding(req, value, 
+                valueEnd(req, value, end), GZIP_BYTES) ) {
+            return false;
+        }
+
+        if ( noCompressionUserAgents != null ) {
+            value = findHeader(req, start, end, USER_AGENT_BYTES);
+            if ( value != -1 ) {
+                String userAgent = 
+                        new String(req, value, valueEnd(req, value, end) - value);
+                for ( String noCompressionUserAgent: noCompressionUserAgents ) {
+                    if ( userAgent.equals(noCompressionUserAgent) ) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
      
     
     /**
-     * Set the cache manager used by this instance.
+     * Return <tt>true</tt> if the Accept-Encoding value between 
+     * <tt>start</tt> and <tt>end</tt> accepts the lower case 
+     * <tt>coding</tt>, either by name or through <tt>*</tt>. A coding 
+     * whose quality is 0 is refused.
+     */
+    static boolean acceptsCoding(byte[] req, int start, int end, 
+            byte[] coding){
+        boolean isWildcardAccepted = false;
+        int i = start;
+        while ( i < end ) {
+            int next = i;
+            while ( next < end && req[next] != ',' ) {
+                next++;
+            }
+            int params = i;
+            while ( params < next && req[params] != ';' ) {
+                params++;
+            }
+
+            int nameEnd = params;
+            while ( i < nameEnd && (req[i] == ' ' || req[i] == '\t') ) {
+                i++;
+            }
+            while ( nameEnd > i 
+                    && (req[nameEnd - 1] == ' ' || req[nameEnd - 1] == '\t') ) {
+                nameEnd--;
+            }
+
+            boolean isAccepted = !isZeroQuality(req, params, next);
+            if ( nameEnd - i == coding.length 
+                    && indexOf(req, i, nameEnd, coding) == i ) {
+                return isAccepted;
+            }
+            if ( nameEnd - i == 1 && req[i] == '*' ) {
+                isWildcardAccepted = isAccepted;
+            }
+            i = next + 1;
+        }
+        return isWildcardAccepted;
+    }
+
+
+    /**
+     * Return <tt>true</tt> if the parameters of a coding, between 
+     * <tt>start</tt> and <tt>end</tt>, set its quality to 0.
+     */
+    private static boolean isZeroQuality(byte[] req, int start, int end){
+        int i = start;
+        while ( i < end ) {
+            while ( i < end 
+                    && (req[i] == ';' || req[i] == ' ' || req[i] == '\t') ) {
+                i++;
+            }
+            if ( i + 1 < end && (req[i] == 'q' || req[i] == 'Q') 
+                    && req[i + 1] == '=' ) {
+                i += 2;
+                if ( i == end || req[i] != '0' ) {
+                    return false;
+                }
+                i++;
+                if ( i < end && req[i] == '.' ) {
+                    i++;
+                    while ( i < end && req[i] == '0' ) {
+                        i++;
+                    }
+                }
+                return i == end || req[i] == ' ' || req[i] == '\t' 
+                        || req[i] == ';';
+            }
+            while ( i < end && req[i] != ';' ) {
+                i++;
+            }
+        }
+        return false;
+    }
+     
+    
+    /**
+     * Set the cache manager used by this instance. Removed entries are
+     * no longer recycled through it, as requests being served may still 
+     * read them.
      */
     public void setCacheManager(ConcurrentLinkedQueue<FileCacheEntry> cacheManager){
         this.cacheManager = cacheManager;
@@ -462,12 +1261,41 @@ public class FileCache{
      */
     protected void sendCache(SocketChannel socketChannel,  FileCacheEntry entry,
             boolean keepAlive) throws IOException{
+        sendCache(socketChannel, entry.headerBuffer, entry.bb, keepAlive);
+    }
+    
+    
+    /**
+     * Send a cached response made of <tt>headerBuffer</tt> and <tt>bb</tt>.
+     * The headers, the connection header and the body are written using a 
+     * single gathering write, so a small response only costs one write 
+     * system call.
+     */
+    protected void sendCache(SocketChannel socketChannel, 
+            ByteBuffer headerBuffer, ByteBuffer bb, boolean keepAlive) 
+            throws IOException{
   
-        OutputWriter.flushChannel(socketChannel, entry.headerBuffer.slice());
         ByteBuffer keepAliveBuf = keepAlive ? connectionKaBB.slice():
                connectionCloseBB.slice();
-        OutputWriter.flushChannel(socketChannel, keepAliveBuf);        
-        OutputWriter.flushChannel(socketChannel, entry.bb.slice());
+        OutputWriter.flushChannel(socketChannel, new ByteBuffer[]{
+            headerBuffer.slice(), keepAliveBuf, bb.slice()});
+    }
+
+
+    /**
+     * Send a response made of <tt>headerBuffer</tt> and the <tt>body</tt>
+     * parts, using a single gathering write. The buffers are consumed.
+     */
+    protected void sendCache(SocketChannel socketChannel, 
+            ByteBuffer headerBuffer, ByteBuffer[] body, boolean keepAlive) 
+            throws IOException{
+
+        ByteBuffer[] response = new ByteBuffer[body.length + 2];
+        response[0] = headerBuffer;
+        response[1] = keepAlive ? connectionKaBB.slice():
+               connectionCloseBB.slice();
+        System.arraycopy(body, 0, response, 2, body.length);
+        OutputWriter.flushChannel(socketChannel, response);
     }
 
     
@@ -475,8 +1303,52 @@ public class FileCache{
      * Return a {@link ByteBuffer} contains the server header.
      */
     private void configHeaders(FileCacheEntry entry) {
-        if ( entry.headerBuffer == null ) {
-            entry.headerBuffer = 
+        entry.headerBuffer = configHeaders(entry, entry.headerBuffer, 
+                entry.bb, null, false);
+
+        // The validators used to answer conditional requests.
+        String etag = entry.Etag;
+        if ( etag != null && etag.startsWith("W/") ) {
+            etag = etag.substring(2);
+        }
+        entry.etagBytes = (etag == null ? null : etag.getBytes());
+        entry.lastModifiedBytes = (entry.lastModified == null ? null 
+                : entry.lastModified.getBytes());
+        entry.lastModifiedTime = (entry.lastModified == null ? -1 
+                : FastHttpDateFormat.parseDate(entry.lastModified, null));
+
+        entry.notModifiedHeaderBuffer = configNotModifiedHeaders(entry, false);
+    }
+
+
+    /**
+     * Return the headers of a 304 response for the resource.
+     */
+    private ByteBuffer configNotModifiedHeaders(FileCacheEntry entry, 
+            boolean vary) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(NOT_MODIFIED);
+        if ( entry.Etag != null ) {
+            appendHeaderValue(sb, "ETag", entry.Etag);   
+        }
+        if ( vary ) {
+            appendHeaderValue(sb,"Vary", "Accept-Encoding");
+        }
+        appendHeaderValue(sb,"Date", entry.date);
+        appendHeaderValue(sb,"Server", SelectorThread.SERVER_NAME);
+        return ByteBuffer.wrap(sb.toString().getBytes());
+    }
+
+
+    /**
+     * Write the headers of a variant of the resource into 
+     * <tt>headerBuffer</tt>, allocating it if <tt>null</tt>.
+     */
+    private ByteBuffer configHeaders(FileCacheEntry entry, 
+            ByteBuffer headerBuffer, ByteBuffer bb, String contentEncoding,
+            boolean vary) {
+        if ( headerBuffer == null ) {
+            headerBuffer = 
                     ByteBuffer.allocate(getHeaderBBSize());
         }
         
@@ -488,18 +1360,130 @@ public class FileCache{
         appendHeaderValue(sb, "ETag", entry.Etag);   
         appendHeaderValue(sb,"Last-Modified", entry.lastModified);
         appendHeaderValue(sb,"Content-Type", entry.contentType);
-        appendHeaderValue(sb,"Content-Length", entry.bb.capacity() + "");
+        appendHeaderValue(sb,"Content-Length", bb.capacity() + "");
+        if ( contentEncoding == null ) {
+            appendHeaderValue(sb,"Accept-Ranges", "bytes");
+        }
+        if ( contentEncoding != null ) {
+            appendHeaderValue(sb,"Content-Encoding", contentEncoding);
+        }
+        if ( vary ) {
+            // Make Proxies happy via Vary (from mod_deflate)
+            appendHeaderValue(sb,"Vary", "Accept-Encoding");
+        }
         appendHeaderValue(sb,"Date", entry.date);
         appendHeaderValue(sb,"Server", SelectorThread.SERVER_NAME);
-        entry.headerBuffer.put(sb.toString().getBytes());
-        entry.headerBuffer.flip();
+        headerBuffer.put(sb.toString().getBytes());
+        headerBuffer.flip();
+        return headerBuffer;
     }   
+
+
+    // ------------------------------------------------ Request headers -----/
+
+
+    /**
+     * Return the index of the first byte of the line following 
+     * <tt>start</tt>, or -1 if no line end is found before <tt>end</tt>.
+     */
+    static int nextLine(byte[] req, int start, int end){
+        for (int i = start; i < end; i++){
+            if (req[i] == '\n'){
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Return the index following the empty line ending the headers which
+     * start at <tt>start</tt>, or -1 if it isn't found before <tt>end</tt>.
+     */
+    static int headersEnd(byte[] req, int start, int end){
+        int line = start;
+        while (line != -1 && line < end){
+            if (req[line] == '\n'){
+                return line + 1;
+            } else if (req[line] == '\r' && line + 1 < end 
+                    && req[line + 1] == '\n'){
+                return line + 2;
+            }
+            line = nextLine(req, line, end);
+        }
+        return -1;
+    }
+
+
+    /**
+     * Return the index of the value of the header <tt>name</tt>, given
+     * as lower case bytes, or -1 if the header isn't found in the headers 
+     * between <tt>start</tt> and <tt>end</tt>.
+     */
+    static int findHeader(byte[] req, int start, int end, byte[] name){
+        int line = start;
+        while (line != -1 && line + name.length < end){
+            if (req[line] == '\r' || req[line] == '\n'){
+                // End of the headers
+                return -1;
+            }
+
+            if (req[line + name.length] == ':' 
+                    && indexOf(req, line, line + name.length, name) == line){
+                int value = line + name.length + 1;
+                while (value < end && (req[value] == ' ' || req[value] == '\t')){
+                    value++;
+                }
+                return value;
+            }
+            line = nextLine(req, line, end);
+        }
+        return -1;
+    }
+
+
+    /**
+     * Return the index following the last byte of the header value starting
+     * at <tt>start</tt>.
+     */
+    static int valueEnd(byte[] req, int start, int end){
+        int i = start;
+        while (i < end && req[i] != '\r' && req[i] != '\n'){
+            i++;
+        }
+        while (i > start && (req[i - 1] == ' ' || req[i - 1] == '\t')){
+            i--;
+        }
+        return i;
+    }
+
+
+    /**
+     * Return the index of the first case insensitive occurrence of the 
+     * lower case bytes <tt>b</tt> between <tt>start</tt> and <tt>end</tt>,
+     * or -1.
+     */
+    static int indexOf(byte[] req, int start, int end, byte[] b){
+        for (int i = start; i <= end - b.length; i++){
+            int j = 0;
+            while (j < b.length && Ascii.toLower(req[i + j]) == b[j]){
+                j++;
+            }
+            if (j == b.length){
+                return i;
+            }
+        }
+        return -1;
+    }
        
     
     /**
      * Utility to add headers to the HTTP response.
      */
     private void appendHeaderValue(StringBuilder sb,String name, String value) {
+        if ( value == null ) {
+            return;
+        }
         sb.append(name);
         sb.append(": ");
         sb.append(value);
@@ -517,42 +1501,224 @@ public class FileCache{
         public boolean isInHeap = false;
         public String date;
         public String Etag;
-        public Future future;
+        public volatile Future<?> future;
+        // Set last, once the headers advertising the variant are.
+        public volatile ByteBuffer gzipBb;
+        public ByteBuffer gzipHeaderBuffer;
+        public ByteBuffer notModifiedHeaderBuffer;
+
+        // The validators of the cached resource.
+        private byte[] etagBytes;
+        private byte[] lastModifiedBytes;
+        private long lastModifiedTime;
+
+        // The cached file and its state when it was added.
+        private File file;
+        private long fileLastModified;
+        private long fileLength;
+        private File gzipFile;
+        private long gzipFileLastModified;
+
+        // The cached bytes accounted by the entry's CacheTier.
+        private long size;
+        
+        // The entry's position inside its CacheTier
+        private FileCacheEntry prev;
+        private FileCacheEntry next;
+        private boolean isProtected;
+
+        // Set once the entry has been removed, guarded by policyLock.
+        private boolean isRemoved;
              
         public void run(){                          
-            fileCache.remove(requestURI);
-            
-            if (requestURI == null) return;
-            
-            if (headerBuffer != null) {
-
-                /**
-                 * If the position !=0, it means the ByteBuffer has a view
-                 * that is still used. If that's the case, wait another 10 seconds
-                 * before marking the ByteBuffer for garbage collection
-                 */
-                if ( headerBuffer.position() !=0 || bb.position() != 0 ){        
-                    future = cacheResourcesThread
-                                .schedule(this, 10, TimeUnit.SECONDS);
-                    return;
-                } 
-
-                if ( !isInHeap )
-                    mappedMemorySize -= bb.limit();
-                else
-                    heapSize -= bb.limit();
-
-                bb = null;
-                headerBuffer = null;
-                openCacheEntries--;
+            remove();
+        }
+
+
+        /**
+         * Remove this entry from the cache. The entry is never reused, as
+         * requests being served may still read it.
+         * @return <tt>false</tt> if the entry has already been removed.
+         */
+        boolean remove(){
+            policyLock.lock();
+            try {
+                if ( isRemoved ) return false;
+                isRemoved = true;
+
+                fileCache.remove(requestURI, this);
+                if ( bb != nullByteBuffer ) {
+                    if ( isInHeap )
+                        heapTier.remove(this);
+                    else
+                        mappedTier.remove(this);
+                    openCacheEntries--;
+                } else {
+                    uncacheableEntries--;
+                }
+            } finally {
+                policyLock.unlock();
             }
-            
-            if ( future != null ) {
-                future.cancel(false);
-                future = null;
+
+            Future<?> f = future;
+            if ( f != null ) {
+                f.cancel(false);
+            }
+            return true;
+        }
+    }
+
+
+    /**
+     * A segmented LRU list of the {@link FileCacheEntry} sharing the same
+     * memory (heap or mapped). New entries are added to the probationary 
+     * segment and are promoted to the protected segment when hit again, 
+     * so a scan of resources requested once cannot flush the resources 
+     * that are requested over and over. Victims are taken from the least
+     * recently used end of the probationary segment first.
+     *
+     * All methods must be invoked while holding the <tt>policyLock</tt>.
+     */
+    private final class CacheTier{
+
+        // Sentinels of the circular lists, the next entry being the least
+        // recently used one.
+        private final FileCacheEntry probation = new FileCacheEntry();
+        private final FileCacheEntry protect = new FileCacheEntry();
+
+        private final boolean isHeap;
+        private long protectedSize = 0;
+        private int count = 0;
+
+        CacheTier(boolean isHeap){
+            this.isHeap = isHeap;
+            probation.prev = probation.next = probation;
+            protect.prev = protect.next = protect;
+        }
+
+
+        /**
+         * Return the number of bytes cached in this tier.
+         */
+        long size(){
+            return isHeap ? heapSize : mappedMemorySize;
+        }
+
+
+        /**
+         * Return the maximum number of bytes that can be cached in this tier.
+         */
+        long capacity(){
+            return isHeap ? maxSmallFileCacheSize : maxLargeFileCacheSize;
+        }
+
+
+        /**
+         * Add a new entry in the probationary segment.
+         */
+        void add(FileCacheEntry entry){
+            entry.size = entry.bb.limit();
+            if ( entry.gzipBb != null ) {
+                entry.size += entry.gzipBb.limit();
+            }
+            entry.isProtected = false;
+            linkLast(probation, entry);
+            count++;
+            if ( isHeap )
+                heapSize += entry.size;
+            else
+                mappedMemorySize += entry.size;
+        }
+
+
+        /**
+         * Remove an entry from this tier.
+         */
+        void remove(FileCacheEntry entry){
+            if ( entry.next == null ) return;
+
+            unlink(entry);
+            count--;
+            if ( entry.isProtected ) {
+                protectedSize -= entry.size;
+            }
+            if ( isHeap )
+                heapSize -= entry.size;
+            else
+                mappedMemorySize -= entry.size;
+        }
+
+
+        /**
+         * Move an entry to the most recently used position of the protected
+         * segment, demoting the protected entries which no longer fit.
+         */
+        void onHit(FileCacheEntry entry){
+            if ( entry.next == null ) return;
+
+            unlink(entry);
+            linkLast(protect, entry);
+            if ( !entry.isProtected ) {
+                entry.isProtected = true;
+                protectedSize += entry.size;
             }
-            requestURI = null;
-            cacheManager.offer(this);
+
+            long maxProtectedSize = capacity() - capacity() / 5;
+            while ( protectedSize > maxProtectedSize 
+                    && protect.next != entry ) {
+                FileCacheEntry demoted = protect.next;
+                unlink(demoted);
+                demoted.isProtected = false;
+                protectedSize -= demoted.size;
+                linkLast(probation, demoted);
+            }
+        }
+
+
+        /**
+         * Account <tt>size</tt> more bytes cached by an entry.
+         */
+        void grow(FileCacheEntry entry, long size){
+            if ( entry.next == null ) return;
+
+            entry.size += size;
+            if ( entry.isProtected ) {
+                protectedSize += size;
+            }
+            if ( isHeap )
+                heapSize += size;
+            else
+                mappedMemorySize += size;
+        }
+
+
+        /**
+         * Return the entry to evict after <tt>previous</tt>, or the first 
+         * one to evict when <tt>previous</tt> is null.
+         */
+        FileCacheEntry nextVictim(FileCacheEntry previous){
+            FileCacheEntry victim = 
+                    previous == null ? probation.next : previous.next;
+            if ( victim == probation ) {
+                victim = protect.next;
+            }
+            return victim == protect ? null : victim;
+        }
+
+
+        private void linkLast(FileCacheEntry head, FileCacheEntry entry){
+            entry.prev = head.prev;
+            entry.next = head;
+            head.prev.next = entry;
+            head.prev = entry;
+        }
+
+
+        private void unlink(FileCacheEntry entry){
+            entry.prev.next = entry.next;
+            entry.next.prev = entry.prev;
+            entry.prev = null;
+            entry.next = null;
         }
     }
     
@@ -669,8 +1835,8 @@ public class FileCache{
     
     
     /** 
-     * The Number of hits on cached file info
-     * @return hits on cached file info
+     * The Number of hits on resources cached in the heap
+     * @return hits on heap cached resources
      */
     public long getCountInfoHits() {
         return countCacheHits;
@@ -678,8 +1844,8 @@ public class FileCache{
     
     
     /** 
-     * Return the number of misses on cached file info
-     * @return misses on cache file info
+     * Return the number of misses on resources cached in the heap
+     * @return misses on heap cached resources
      */
     public long getCountInfoMisses() {
         return countCacheMisses;
@@ -687,8 +1853,8 @@ public class FileCache{
     
     
     /** 
-     * Return the Number of hits on cached file content
-     * @return hits on cache file content
+     * Return the Number of hits on resources cached in mapped memory
+     * @return hits on mapped cached resources
      */
     public long getCountContentHits() {
         return countMappedHits;
@@ -696,13 +1862,23 @@ public class FileCache{
     
     
     /** 
-     * Return the Number of misses on cached file content
-     * @return missed on cached file content
+     * Return the Number of misses on resources cached in mapped memory
+     * @return missed on mapped cached resources
      */
     public int getCountContentMisses() {
         return countMappedMisses;
     }
     
+    
+    /** 
+     * Return the number of entries evicted to make room for more 
+     * frequently requested resources.
+     * @return evicted entries
+     */
+    public long getCountEvictions() {
+        return countEvictions;
+    }
+    
     // ---------------------------------------------------- Properties ----- //
     
     
@@ -724,11 +1900,37 @@ public class FileCache{
     }
     
     
+    /**
+     * Return the interval in seconds between two checks of the cached 
+     * files for modifications.
+     */
+    public int getSecondsCheckInterval(){
+        return secondsCheckInterval;
+    }
+    
+    
+    /**
+     * Set the interval in seconds between two checks of the cached files 
+     * for modifications. The entries of the modified files are removed 
+     * from the {@link FileCache}, so the other entries can be kept as long
+     * as they are used instead of expiring after 
+     * {@link #setSecondsMaxAge}. A value <= 0 disables the checks.
+     */
+    public synchronized void setSecondsCheckInterval(int sCheckInterval){
+        secondsCheckInterval = sCheckInterval;
+        if ( modifiedChecker != null ) {
+            modifiedChecker.cancel(false);
+            modifiedChecker = null;
+        }
+    }
+    
+    
     /**
      * Set the maximum entries this cache can contains.
      */
     public void setMaxCacheEntries(int mEntries){
         maxCacheEntries = mEntries;
+        frequencySketch = new FrequencySketch(mEntries);
     }
 
     
@@ -857,4 +2059,54 @@ public class FileCache{
     public void setHeaderBBSize(int headerBBSize) {
         this.headerBBSize = headerBBSize;
     }
+
+
+    /**
+     * Return the MIME types for which a gzip variant is cached.
+     */
+    public String[] getCompressableMimeTypes() {
+        return compressableMimeTypes;
+    }
+
+
+    /**
+     * Set the MIME types for which a gzip variant is cached, and sent to
+     * the clients accepting the gzip encoding. <tt>null</tt> disables
+     * compressed variants.
+     */
+    public void setCompressableMimeTypes(String[] compressableMimeTypes) {
+        this.compressableMimeTypes = compressableMimeTypes;
+    }
+
+
+    /**
+     * Return the minimum size of a resource to cache a gzip variant of it.
+     */
+    public int getCompressionMinSize() {
+        return compressionMinSize;
+    }
+
+
+    /**
+     * Set the minimum size of a resource to cache a gzip variant of it.
+     */
+    public void setCompressionMinSize(int compressionMinSize) {
+        this.compressionMinSize = compressionMinSize;
+    }
+
+
+    /**
+     * Return the user agents which are never sent a gzip variant.
+     */
+    public String[] getNoCompressionUserAgents() {
+        return noCompressionUserAgents;
+    }
+
+
+    /**
+     * Set the user agents which are never sent a gzip variant.
+     */
+    public void setNoCompressionUserAgents(String[] noCompressionUserAgents) {
+        this.noCompressionUserAgents = noCompressionUserAgents;
+    }
 }
@@ -56,6 +56,13 @@ public class FileCacheFactory{
     public int secondsMaxAge = -1;
     
     
+    /**
+     * The interval in seconds between two checks of the cached files
+     * for modifications.
+     */
+    public int secondsCheckInterval = -1;
+    
+    
     /**
      * The maximum entries in the {@link FileCache}
      */
@@ -134,6 +141,24 @@ public class FileCacheFactory{
      * The Header ByteBuffer default size.
      */
     private int headerBBSize = 4096;
+    
+    
+    /**
+     * The MIME types for which a gzip variant is cached.
+     */
+    protected String[] compressableMimeTypes = null;
+    
+    
+    /**
+     * The minimum size of a resource to cache a gzip variant of it.
+     */
+    protected int compressionMinSize = 2048;
+    
+    
+    /**
+     * The user agents which are never sent a gzip variant.
+     */
+    protected String[] noCompressionUserAgents = null;
 
 
     private static Class<? extends FileCache> fileCacheClass = FileCache.class;
@@ -200,6 +225,7 @@ public class FileCacheFactory{
             fileCache.setIsEnabled(isEnabled);
             fileCache.setLargeFileCacheEnabled(isLargeFileCacheEnabled);
             fileCache.setSecondsMaxAge(secondsMaxAge);
+            fileCache.setSecondsCheckInterval(secondsCheckInterval);
             fileCache.setMaxCacheEntries(maxCacheEntries);
             fileCache.setMinEntrySize(minEntrySize);
             fileCache.setMaxEntrySize(maxEntrySize);
@@ -208,6 +234,9 @@ public class FileCacheFactory{
             fileCache.setCacheManager(cacheManager);
             FileCache.setIsMonitoringEnabled(isMonitoringEnabled);
             fileCache.setHeaderBBSize(headerBBSize);
+            fileCache.setCompressableMimeTypes(compressableMimeTypes);
+            fileCache.setCompressionMinSize(compressionMinSize);
+            fileCache.setNoCompressionUserAgents(noCompressionUserAgents);
         }
         
         return fileCache;
@@ -351,8 +380,8 @@ public class FileCacheFactory{
     
     
     /** 
-     * The Number of hits on cached file info
-     * @return hits on cached file info
+     * The Number of hits on resources cached in the heap
+     * @return hits on heap cached resources
      */
     public long getCountInfoHits() {
         if (fileCache == null) return 0L;
@@ -361,8 +390,8 @@ public class FileCacheFactory{
     
     
     /** 
-     * Return the number of misses on cached file info
-     * @return misses on cache file info
+     * Return the number of misses on resources cached in the heap
+     * @return misses on heap cached resources
      */
     public long getCountInfoMisses() {
         if (fileCache == null) return 0L;
@@ -371,8 +400,8 @@ public class FileCacheFactory{
     
     
     /** 
-     * Return the Number of hits on cached file content
-     * @return hits on cache file content
+     * Return the Number of hits on resources cached in mapped memory
+     * @return hits on mapped cached resources
      */
     public long getCountContentHits() {
         if (fileCache == null) return 0L;
@@ -381,14 +410,25 @@ public class FileCacheFactory{
     
     
     /** 
-     * Return the Number of misses on cached file content
-     * @return missed on cached file content
+     * Return the Number of misses on resources cached in mapped memory
+     * @return missed on mapped cached resources
      */
     public long getCountContentMisses() {
         if (fileCache == null) return 0L;
         return fileCache.getCountContentMisses(); 
     }
     
+    
+    /** 
+     * Return the number of entries evicted to make room for more 
+     * frequently requested resources.
+     * @return evicted entries
+     */
+    public long getCountEvictions() {
+        if (fileCache == null) return 0L;
+        return fileCache.getCountEvictions(); 
+    }
+    
     // ---------------------------------------------------- Properties ----- //
     
     
@@ -410,6 +450,24 @@ public class FileCacheFactory{
     }
     
     
+    /**
+     * Return the interval in seconds between two checks of the cached 
+     * files for modifications.
+     */
+    public int getSecondsCheckInterval(){
+        return secondsCheckInterval;
+    }
+    
+    
+    /**
+     * Set the interval in seconds between two checks of the cached files 
+     * for modifications. A value <= 0 disables the checks.
+     */
+    public void setSecondsCheckInterval(int sCheckInterval){
+        secondsCheckInterval = sCheckInterval;
+    }
+    
+    
     /**
      * Set the maximum entries this cache can contains.
      */
@@ -536,4 +594,53 @@ public class FileCacheFactory{
     public void setHeaderBBSize(int headerBBSize) {
         this.headerBBSize = headerBBSize;
     }
+
+
+    /**
+     * Return the MIME types for which a gzip variant is cached.
+     */
+    public String[] getCompressableMimeTypes() {
+        return compressableMimeTypes;
+    }
+
+
+    /**
+     * Set the MIME types for which a gzip variant is cached. <tt>null</tt>
+     * disables compressed variants.
+     */
+    public void setCompressableMimeTypes(String[] compressableMimeTypes) {
+        this.compressableMimeTypes = compressableMimeTypes;
+    }
+
+
+    /**
+     * Return the minimum size of a resource to cache a gzip variant of it.
+     */
+    public int getCompressionMinSize() {
+        return compressionMinSize;
+    }
+
+
+    /**
+     * Set the minimum size of a resource to cache a gzip variant of it.
+     */
+    public void setCompressionMinSize(int compressionMinSize) {
+        this.compressionMinSize = compressionMinSize;
+    }
+
+
+    /**
+     * Return the user agents which are never sent a gzip variant.
+     */
+    public String[] getNoCompressionUserAgents() {
+        return noCompressionUserAgents;
+    }
+
+
+    /**
+     * Set the user agents which are never sent a gzip variant.
+     */
+    public void setNoCompressionUserAgents(String[] noCompressionUserAgents) {
+        this.noCompressionUserAgents = noCompressionUserAgents;
+    }
 }
@@ -0,0 +1,170 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.http;
+
+/**
+ * A small count-min sketch used to estimate how often a resource has been
+ * requested recently. Counters saturate at 15 and are all halved once
+ * enough increments have been recorded, so the estimates age and follow
+ * changes in the traffic mix.
+ *
+ * Increments are deliberately not synchronized: a lost update only makes
+ * an estimate slightly lower, which is acceptable for an admission policy.
+ */
+public class FrequencySketch {
+
+    /**
+     * The number of hash functions (rows) of the sketch.
+     */
+    private final static int DEPTH = 4;
+
+
+    /**
+     * The maximum value of a counter.
+     */
+    private final static int MAX_COUNT = 15;
+
+
+    /**
+     * Seeds used to derive one index per row.
+     */
+    private final static int[] SEEDS = {
+        0x97cb3127, 0x5bd1e995, 0x27d4eb2f, 0x165667b1};
+
+
+    /**
+     * The counters, one row of <tt>width</tt> counters per hash function.
+     */
+    private final int[] table;
+
+
+    /**
+     * <tt>width - 1</tt>, width being a power of two.
+     */
+    private final int mask;
+
+
+    /**
+     * The number of increments before all counters are halved.
+     */
+    private final int sampleSize;
+
+
+    /**
+     * The number of increments since the last reset.
+     */
+    private int additions = 0;
+
+
+    /**
+     * Create a sketch able to track roughly <tt>maximumSize</tt> resources.
+     */
+    public FrequencySketch(int maximumSize){
+        int width = 16;
+        while (width < maximumSize && width < (1 << 24)){
+            width <<= 1;
+        }
+        table = new int[DEPTH * width];
+        mask = width - 1;
+        sampleSize = 10 * width;
+    }
+
+
+    /**
+     * Record one access to <tt>key</tt>.
+     */
+    public void increment(Object key){
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++){
+            int index = indexOf(hash, i);
+            if (table[index] < MAX_COUNT){
+                table[index]++;
+                added = true;
+            }
+        }
+
+        if (added && ++additions >= sampleSize){
+            reset();
+        }
+    }
+
+
+    /**
+     * Return the estimated number of recent accesses to <tt>key</tt>.
+     */
+    public int frequency(Object key){
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++){
+            frequency = Math.min(frequency, table[indexOf(hash, i)]);
+        }
+        return frequency;
+    }
+
+
+    /**
+     * Halve every counter so older accesses weigh less than recent ones.
+     */
+    private void reset(){
+        for (int i = 0; i < table.length; i++){
+            table[i] >>>= 1;
+        }
+        additions = sampleSize >>> 1;
+    }
+
+
+    /**
+     * Return the index of the counter of row <tt>row</tt>.
+     */
+    private int indexOf(int hash, int row){
+        int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+        h ^= h >>> 16;
+        return (row * (mask + 1)) + (h & mask);
+    }
+
+
+    /**
+     * Apply a supplemental hash to defend against poor quality hash codes.
+     */
+    private static int spread(int h){
+        h ^= (h >>> 20) ^ (h >>> 12);
+        return h ^ (h >>> 7) ^ (h >>> 4);
+    }
+}
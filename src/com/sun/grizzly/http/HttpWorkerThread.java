@@ -94,6 +94,20 @@ public class HttpWorkerThread extends WorkerThreadImpl {
         super(threadPool, name, runnable, initialByteBufferSize);
     }
 
+    /**
+     * Create a Thread
+     * @param threadPool {@link StatsThreadPool} instance
+     * @param name thread name
+     * @param runnable task to execute
+     * @param initialByteBufferSize initial size of thread associated
+     * {@link ByteBuffer}
+     * @param stackSize the thread stack size, 0 for the platform default
+     */
+    public HttpWorkerThread(StatsThreadPool threadPool, String name, Runnable runnable,
+            int initialByteBufferSize, long stackSize) {
+        super(threadPool, name, runnable, initialByteBufferSize, stackSize);
+    }
+
     
     public StreamAlgorithm getStreamAlgorithm() {
         return streamAlgorithm;
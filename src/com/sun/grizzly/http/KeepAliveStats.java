@@ -37,6 +37,7 @@
  */
 package com.sun.grizzly.http;
 
+import com.sun.grizzly.util.StripedCounter;
 
 
 /**
@@ -46,16 +47,21 @@ package com.sun.grizzly.http;
  * Each instance exposes its stats as an MBean with an object name of the
  * form "<domain>:type=KeepAlive,name=http<port>", where <port> is replaced
  * with the port number of the associated HTTP listener.
+ *
+ * Counters are striped so worker threads updating them don't contend,
+ * and are kept in a single group so they can be read consistently.
  * 
  * @author Jan Luehe
  */
 public class KeepAliveStats {
 
-    private int countConnections;
-    private int countHits;
-    private int countFlushes;
-    private int countRefusals;
-    private int countTimeouts;
+    private final static int CONNECTIONS = 0;
+    private final static int HITS = 1;
+    private final static int FLUSHES = 2;
+    private final static int REFUSALS = 3;
+    private final static int TIMEOUTS = 4;
+
+    private final StripedCounter counters = new StripedCounter(5);
 
 
 
@@ -64,24 +70,24 @@ public class KeepAliveStats {
      * 
      * @return Number of connections in keep-alive mode
      */    
-    public synchronized int getCountConnections() {
-        return countConnections;
+    public int getCountConnections() {
+        return (int)counters.sum(CONNECTIONS);
     }
 
     
     /** 
      * Increments the number of connections in keep-alive mode.
      */    
-    public synchronized void incrementCountConnections() {
-        countConnections++;
+    public void incrementCountConnections() {
+        counters.increment(CONNECTIONS);
     }
     
     
     /** 
      * Decrement the number of connections in keep-alive mode.
      */    
-    protected synchronized void decrementCountConnections() {
-        countConnections--;
+    protected void decrementCountConnections() {
+        counters.decrement(CONNECTIONS);
     }
 
     
@@ -90,8 +96,8 @@ public class KeepAliveStats {
      *
      * @return Number of requests received by connections in keep-alive mode.
      */    
-    public synchronized int getCountHits() {
-        return countHits;
+    public int getCountHits() {
+        return (int)counters.sum(HITS);
     }
 
 
@@ -99,8 +105,8 @@ public class KeepAliveStats {
      * Increments the number of requests received by connections in
      * keep-alive mode.
      */    
-    public synchronized void incrementCountHits() {
-        countHits++;
+    public void incrementCountHits() {
+        counters.increment(HITS);
     }
 
     
@@ -109,16 +115,16 @@ public class KeepAliveStats {
      *
      * @return Number of keep-alive connections that were closed
      */    
-    public synchronized int getCountFlushes() {
-        return countFlushes;
+    public int getCountFlushes() {
+        return (int)counters.sum(FLUSHES);
     }
 
     
     /** 
      * Increments the number of keep-alive connections that were closed
      */    
-    public synchronized void incrementCountFlushes() {
-        countFlushes++;
+    public void incrementCountFlushes() {
+        counters.increment(FLUSHES);
     }
 
 
@@ -127,16 +133,16 @@ public class KeepAliveStats {
      *
      * @return Number of keep-alive connections that were rejected.
      */    
-    public synchronized int getCountRefusals() {
-        return countRefusals;
+    public int getCountRefusals() {
+        return (int)counters.sum(REFUSALS);
     }
     
 
     /** 
      * Increments the number of keep-alive connections that were rejected.
      */    
-    public synchronized void incrementCountRefusals() {
-        countRefusals++;
+    public void incrementCountRefusals() {
+        counters.increment(REFUSALS);
     }
 
 
@@ -145,15 +151,83 @@ public class KeepAliveStats {
      *
      * @return Number of keep-alive connections that timed out.
      */    
-    public synchronized int getCountTimeouts() {
-        return countTimeouts;
+    public int getCountTimeouts() {
+        return (int)counters.sum(TIMEOUTS);
     }
 
     
     /** 
      * Increments the number of keep-alive connections that timed out.
      */    
-    public synchronized void incrementCountTimeouts() {
-        countTimeouts++;
+    public void incrementCountTimeouts() {
+        counters.increment(TIMEOUTS);
+    }
+
+
+    /**
+     * Return all the counters, read consistently.
+     *
+     * @return a {@link Snapshot} of the counters.
+     */
+    public Snapshot snapshot() {
+        long[] values = counters.snapshot();
+        return new Snapshot((int)values[CONNECTIONS], (int)values[HITS],
+                (int)values[FLUSHES], (int)values[REFUSALS], 
+                (int)values[TIMEOUTS]);
+    }
+
+
+    /**
+     * Reset all the counters, except the number of connections in 
+     * keep-alive mode.
+     */
+    public void reset() {
+        counters.set(HITS, 0);
+        counters.set(FLUSHES, 0);
+        counters.set(REFUSALS, 0);
+        counters.set(TIMEOUTS, 0);
+    }
+
+
+    /**
+     * Immutable values of the keep-alive counters.
+     */
+    public static class Snapshot {
+
+        private final int countConnections;
+        private final int countHits;
+        private final int countFlushes;
+        private final int countRefusals;
+        private final int countTimeouts;
+
+
+        Snapshot(int countConnections, int countHits, int countFlushes,
+                int countRefusals, int countTimeouts) {
+            this.countConnections = countConnections;
+            this.countHits = countHits;
+            this.countFlushes = countFlushes;
+            this.countRefusals = countRefusals;
+            this.countTimeouts = countTimeouts;
+        }
+
+        public int getCountConnections() {
+            return countConnections;
+        }
+
+        public int getCountHits() {
+            return countHits;
+        }
+
+        public int getCountFlushes() {
+            return countFlushes;
+        }
+
+        public int getCountRefusals() {
+            return countRefusals;
+        }
+
+        public int getCountTimeouts() {
+            return countTimeouts;
+        }
     }
 }
@@ -73,6 +73,7 @@ import com.sun.grizzly.tcp.Request;
 import com.sun.grizzly.tcp.RequestGroupInfo;
 import com.sun.grizzly.tcp.RequestInfo;
 import com.sun.grizzly.tcp.Response;
+import com.sun.grizzly.tcp.http11.FastInternalInputBuffer;
 import com.sun.grizzly.tcp.http11.InternalInputBuffer;
 import com.sun.grizzly.tcp.http11.InputFilter;
 import com.sun.grizzly.tcp.http11.OutputFilter;
@@ -385,6 +386,13 @@ public class ProcessorTask extends TaskBase implements Processor,
      * Minimum contentsize to make compression.
      */
     protected int compressionMinSize = 2048;
+
+
+    /**
+     * Compression level and strategy by mime-type, see
+     * {@link GzipOutputFilter#setCompressionLevels(String)}.
+     */
+    protected String compressionLevels = null;
     
     
     /**
@@ -423,6 +431,12 @@ public class ProcessorTask extends TaskBase implements Processor,
     private boolean useChunking = true;
 
 
+    /**
+     * Parse the request with a {@link FastInternalInputBuffer}.
+     */
+    private boolean useFastHttpParser = false;
+
+
     private final static String USE_KEEP_ALIVE =
                 "com.sun.grizzly.useKeepAliveAlgorithm";
 
@@ -477,7 +491,11 @@ public class ProcessorTask extends TaskBase implements Processor,
         response = new Response();
         response.setHook(this);
         
-        inputBuffer = new InternalInputBuffer(request,requestBufferSize); 
+        if (useFastHttpParser) {
+            inputBuffer = new FastInternalInputBuffer(request,requestBufferSize);
+        } else {
+            inputBuffer = new InternalInputBuffer(request,requestBufferSize); 
+        }
         
         outputBuffer = new SocketChannelOutputBuffer(response, 
                                                      maxHttpHeaderSize,
@@ -614,6 +632,20 @@ public class ProcessorTask extends TaskBase implements Processor,
             if ( exitWhile ) return exitWhile;
             invokeAdapter();
             postResponse();
+
+            // Process the pipelined requests already read from the socket
+            // instead of going back to the Selector.
+            while (hasPipelinedRequest()) {
+                // The Response has been recycled by the Adapter.
+                if ( key != null ) {
+                    response.setChannel((SocketChannel)key.channel());
+                }
+                configPreProcess();
+                exitWhile = parseRequest();
+                if ( exitWhile ) break;
+                invokeAdapter();
+                postResponse();
+            }
         } else {
             int soTimeout = ((InputReader)inputStream).getReadTimeout();
             DefaultThreadPool st =(DefaultThreadPool) getThreadPool();
@@ -715,6 +747,35 @@ public class ProcessorTask extends TaskBase implements Processor,
     }
     
     
+    /**
+     * Return <tt>true</tt> if another request has been pipelined and
+     * its bytes are already buffered. Each response is written when its
+     * request ends, before the next request is parsed, as a handler or the
+     * {@link Adapter} may write to the channel directly.
+     */
+    protected boolean hasPipelinedRequest() {
+        if (!started || error || !keepAlive || response.isSuspended()
+                || !inputBuffer.hasBufferedBytes()) {
+            return false;
+        }
+
+        // Count the pipelined request as a keep-alive request.
+        WorkerThread workerThread = (WorkerThread)Thread.currentThread();
+        KeepAliveThreadAttachment k =
+                (KeepAliveThreadAttachment) workerThread.getAttachment();
+        KeepAliveStats ks = selectorThread.getKeepAliveStats();
+        if (k.increaseKeepAliveCount() > selectorThread.getMaxKeepAliveRequests()
+                && ks != null) {
+            // Refuse the request and close the connection, the client
+            // will send it again on a new one.
+            ks.incrementCountRefusals();
+            keepAlive = false;
+            return false;
+        }
+        return true;
+    }
+
+
     /**
      * Invoke the {@link Adapter}, which usualy invoke the Servlet
      * Container.
@@ -760,6 +821,7 @@ public class ProcessorTask extends TaskBase implements Processor,
             }
 
             request.setStartTime(System.currentTimeMillis());
+            request.setStartTimeNanos(System.nanoTime());
             if ( handler != null && 
                     handler.handle(request,Interceptor.REQUEST_LINE_PARSED)
                         == Interceptor.BREAK){
@@ -1098,8 +1160,7 @@ public class ProcessorTask extends TaskBase implements Processor,
                 }
             }
         } else if ( actionCode == ActionCode.ACTION_POST_REQUEST ) { 
-            if (response.getStatus() == 200 && handler != null 
-                    && compressionLevel == 0){
+            if (response.getStatus() == 200 && handler != null){
                 try{
                     handler.handle(request,Interceptor.RESPONSE_PROCEEDED);
                 } catch(IOException ex){
@@ -1550,7 +1611,11 @@ public class ProcessorTask extends TaskBase implements Processor,
 
         // Create and add the chunked filters.
         //inputBuffer.addFilter(new GzipInputFilter());
-        outputBuffer.addFilter(new GzipOutputFilter());
+        GzipOutputFilter gzipOutputFilter = new GzipOutputFilter();
+        if (compressionLevels != null) {
+            gzipOutputFilter.setCompressionLevels(compressionLevels);
+        }
+        outputBuffer.addFilter(gzipOutputFilter);
 
     }
 
@@ -2172,6 +2237,24 @@ public class ProcessorTask extends TaskBase implements Processor,
     }   
 
 
+    public String getCompressionLevels() {
+        return compressionLevels;
+    }
+
+
+    /**
+     * Set the compression level and strategy by mime-type, see
+     * {@link GzipOutputFilter#setCompressionLevels(String)}.
+     */
+    public void setCompressionLevels(String compressionLevels) {
+        this.compressionLevels = compressionLevels;
+        if (compressionLevels != null && outputBuffer != null) {
+            ((GzipOutputFilter) outputBuffer.getFilters()[Constants.GZIP_FILTER])
+                .setCompressionLevels(compressionLevels);
+        }
+    }
+
+
     /**
      * Add restricted user-agent (which will downgrade the connector 
      * to HTTP/1.0 mode). The user agent String given will be exactly matched
@@ -2301,5 +2384,23 @@ public class ProcessorTask extends TaskBase implements Processor,
     public void setUseChunking(boolean useChunking) {
         this.useChunking = useChunking;
     }
+
+    
+    /**
+     * Is the request parsed by a {@link FastInternalInputBuffer}.
+     */
+    public boolean isUseFastHttpParser() {
+        return useFastHttpParser;
+    }
+
+    
+    /**
+     * Parse the request with a {@link FastInternalInputBuffer} instead
+     * of an {@link InternalInputBuffer}. Must be set before
+     * {@link #initialize} is invoked.
+     */
+    public void setUseFastHttpParser(boolean useFastHttpParser) {
+        this.useFastHttpParser = useFastHttpParser;
+    }
 }
 
@@ -44,6 +44,8 @@ import com.sun.grizzly.DefaultProtocolChainInstanceHandler;
 import com.sun.grizzly.ProtocolChain;
 import com.sun.grizzly.ProtocolFilter;
 import com.sun.grizzly.TCPSelectorHandler;
+import com.sun.grizzly.async.AbstractAsyncQueueWriter;
+import com.sun.grizzly.async.TCPAsyncQueueWriter;
 import com.sun.grizzly.arp.AsyncProtocolFilter;
 import com.sun.grizzly.filter.ReadFilter;
 import com.sun.grizzly.http.algorithms.NoParsingAlgorithm;
@@ -69,6 +71,10 @@ import java.nio.channels.SelectionKey;
 import com.sun.grizzly.tcp.Adapter;
 import com.sun.grizzly.tcp.RequestGroupInfo;
 import com.sun.grizzly.tcp.http11.GrizzlyAdapter;
+import com.sun.grizzly.tcp.http11.FastInternalInputBuffer;
+import com.sun.grizzly.util.ByteBufferFactory.ByteBufferType;
+import com.sun.grizzly.util.ByteBufferPool;
+import com.sun.grizzly.util.DefaultThreadPool;
 import com.sun.grizzly.util.ExtendedThreadPool;
 import com.sun.grizzly.util.IntrospectionUtils;
 
@@ -176,6 +182,7 @@ public class SelectorThread implements Runnable, MBeanRegistration{
     private volatile String[] parsedCompressableMimeTypes = null;
     private volatile int parsedComressableMimeTypesHash = -1;
     protected int compressionMinSize    = 2048;
+    protected String compressionLevels = null;
        
     // ------------------------------------------------------ Properties----/
     
@@ -204,6 +211,23 @@ public class SelectorThread implements Runnable, MBeanRegistration{
     protected boolean isAsyncHttpWriteEnabled;
 
 
+    /**
+     * Per connection and global async write queue watermarks, in bytes.
+     * -1 means no limit.
+     */
+    protected int asyncHttpWriteLowWatermark = -1;
+    protected int asyncHttpWriteHighWatermark = -1;
+    protected long asyncHttpWriteGlobalLowWatermark = -1;
+    protected long asyncHttpWriteGlobalHighWatermark = -1;
+
+
+    /**
+     * Maximum time, in milliseconds, a response writer waits for the async
+     * write queue to drain below the watermarks.
+     */
+    protected long asyncHttpWriteTimeout = 30000;
+
+
     protected int maxPostSize = 2 * 1024 * 1024;
 
 
@@ -247,6 +271,12 @@ public class SelectorThread implements Runnable, MBeanRegistration{
      */
     private boolean useChunking = true;
 
+
+    /**
+     * Parse requests with a {@link FastInternalInputBuffer}.
+     */
+    protected boolean useFastHttpParser = false;
+
     
     /**
      * Is the {@link ByteBuffer} used by the <code>ReadTask</code> use
@@ -367,6 +397,13 @@ public class SelectorThread implements Runnable, MBeanRegistration{
     
     
     protected boolean oOBInline = false;
+
+
+    /**
+     * Park worker threads on the main Selector when a blocking read or
+     * write can't make progress, instead of using a temporary Selector.
+     */
+    protected boolean parkBlockingIO = false;
     
     
     /**
@@ -441,6 +478,19 @@ public class SelectorThread implements Runnable, MBeanRegistration{
      * Class name of thread pool implementation
      */
     private String threadPoolClassname;
+
+
+    /**
+     * Run every request on its own thread, see {@link ThreadPerRequestPool}
+     */
+    private boolean threadPerRequest = false;
+
+
+    /**
+     * WorkerThreads borrow their ByteBuffer from the {@link ByteBufferPool}
+     * only while executing a request.
+     */
+    private boolean borrowByteBuffer = false;
     
     
     // ------------------------------------------------- FileCache support --//
@@ -457,6 +507,13 @@ public class SelectorThread implements Runnable, MBeanRegistration{
     protected int secondsMaxAge = -1;
     
     
+    /**
+     * The interval in seconds between two checks of the cached files
+     * for modifications.
+     */
+    protected int secondsCheckInterval = -1;
+    
+    
     /**
      * The maximum entries in the {@link FileCache}
      */
@@ -667,6 +724,20 @@ public class SelectorThread implements Runnable, MBeanRegistration{
         selectorHandler.setSocketTimeout(keepAliveTimeoutInSeconds * 1000);
         selectorHandler.setSsBackLog(ssBackLog);
         selectorHandler.setTcpNoDelay(tcpNoDelay);
+        selectorHandler.setParkBlockingIO(parkBlockingIO);
+
+        if (isAsyncHttpWriteEnabled && (asyncHttpWriteHighWatermark >= 0 
+                || asyncHttpWriteGlobalHighWatermark >= 0)) {
+            TCPAsyncQueueWriter asyncQueueWriter = 
+                    new TCPAsyncQueueWriter(selectorHandler);
+            asyncQueueWriter.setWatermarks(asyncHttpWriteLowWatermark, 
+                    asyncHttpWriteHighWatermark);
+            asyncQueueWriter.setGlobalWatermarks(
+                    asyncHttpWriteGlobalLowWatermark,
+                    asyncHttpWriteGlobalHighWatermark);
+            asyncQueueWriter.setWritableTimeout(asyncHttpWriteTimeout);
+            selectorHandler.setAsyncQueueWriter(asyncQueueWriter);
+        }
     }
     
     /**
@@ -761,7 +832,11 @@ public class SelectorThread implements Runnable, MBeanRegistration{
             int priority) {
         ExecutorService newThreadPool = null;
         
-        if (threadPoolClassname == null) {
+        if (threadPerRequest) {
+            newThreadPool = new ThreadPerRequestPool();
+            ((StatsThreadPool) newThreadPool).setPort(port);
+            ((StatsThreadPool) newThreadPool).setPriority(priority);
+        } else if (threadPoolClassname == null) {
              newThreadPool = new StatsThreadPool(coreThreads,
                     maxThreads, maxQueueSize,
                     StatsThreadPool.DEFAULT_IDLE_THREAD_KEEPALIVE_TIMEOUT,
@@ -803,6 +878,7 @@ public class SelectorThread implements Runnable, MBeanRegistration{
         FileCacheFactory.setIsEnabled(isFileCacheEnabled);
         fileCacheFactory.setLargeFileCacheEnabled(isLargeFileCacheEnabled);
         fileCacheFactory.setSecondsMaxAge(secondsMaxAge);
+        fileCacheFactory.setSecondsCheckInterval(secondsCheckInterval);
         fileCacheFactory.setMaxCacheEntries(maxCacheEntries);
         fileCacheFactory.setMinEntrySize(minEntrySize);
         fileCacheFactory.setMaxEntrySize(maxEntrySize);
@@ -810,6 +886,40 @@ public class SelectorThread implements Runnable, MBeanRegistration{
         fileCacheFactory.setMaxSmallCacheSize(maxSmallFileCacheSize);         
         fileCacheFactory.setIsMonitoringEnabled(isMonitoringEnabled);
         fileCacheFactory.setHeaderBBSize(requestBufferSize);
+        configureFileCacheCompression();
+    }
+    
+    
+    /**
+     * Configure the gzip variants cached by the {@link FileCacheFactory}
+     * using the compression settings of this instance.
+     */
+    protected void configureFileCacheCompression(){
+        if ("off".equals(compression)){
+            fileCacheFactory.setCompressableMimeTypes(null);
+            return;
+        }
+        
+        int minSize = compressionMinSize;
+        if ("force".equals(compression)){
+            minSize = 0;
+        } else if (!"on".equals(compression)){
+            try{
+                // Like ProcessorTask, an int gives the minimum size
+                minSize = Integer.parseInt(compression);
+            } catch (NumberFormatException ex){
+                fileCacheFactory.setCompressableMimeTypes(null);
+                return;
+            }
+        }
+        
+        parseComressableMimeTypes();
+        fileCacheFactory.setCompressableMimeTypes(parsedCompressableMimeTypes);
+        fileCacheFactory.setCompressionMinSize(minSize);
+        if (noCompressionUserAgents != null){
+            fileCacheFactory.setNoCompressionUserAgents(
+                    new String[]{noCompressionUserAgents});
+        }
     }
        
     
@@ -883,7 +993,8 @@ public class SelectorThread implements Runnable, MBeanRegistration{
                 statsThreadPool.setPriority(Thread.MAX_PRIORITY);
             }
 
-            if (threadPool instanceof ExtendedThreadPool) {
+            if (threadPool instanceof ExtendedThreadPool
+                    && !(threadPool instanceof ThreadPerRequestPool)) {
                 ExtendedThreadPool extThreadPool = (ExtendedThreadPool) threadPool;
                 extThreadPool.setCorePoolSize(coreThreads);
                 extThreadPool.setMaximumPoolSize(maxThreads);
@@ -891,6 +1002,16 @@ public class SelectorThread implements Runnable, MBeanRegistration{
             }
         }
         
+        if (threadPool instanceof DefaultThreadPool) {
+            DefaultThreadPool defaultThreadPool = (DefaultThreadPool) threadPool;
+            if (useDirectByteBuffer) {
+                defaultThreadPool.setByteBufferType(ByteBufferType.DIRECT);
+            }
+            if (borrowByteBuffer) {
+                defaultThreadPool.setBorrowByteBuffer(true);
+            }
+        }
+        
         if (isMonitoringEnabled){
             enableThreadPoolStats(); 
         }
@@ -942,6 +1063,7 @@ public class SelectorThread implements Runnable, MBeanRegistration{
         task.setAsyncHttpWriteEnabled(isAsyncHttpWriteEnabled);
         task.setTransactionTimeout(transactionTimeout);
         task.setUseChunking(useChunking);
+        task.setUseFastHttpParser(useFastHttpParser);
         
         // Asynch extentions
         if ( asyncExecution ) {
@@ -1033,7 +1155,10 @@ public class SelectorThread implements Runnable, MBeanRegistration{
         initMonitoringLevel();
         
         int maxPoolSize = StatsThreadPool.DEFAULT_MAX_THREAD_COUNT;
-        if (threadPool instanceof ExtendedThreadPool) {
+        if (threadPool instanceof ThreadPerRequestPool) {
+            // Unbounded: only pre-allocate for the configured maxThreads
+            maxPoolSize = maxThreads;
+        } else if (threadPool instanceof ExtendedThreadPool) {
             maxPoolSize = ((ExtendedThreadPool) threadPool).getMaximumPoolSize();
         }
 
@@ -1613,6 +1738,78 @@ public class SelectorThread implements Runnable, MBeanRegistration{
     public void setAsyncHttpWriteEnabled(boolean isAsyncHttpWriteEnabled) {
         this.isAsyncHttpWriteEnabled = isAsyncHttpWriteEnabled;
     }
+
+
+    /**
+     * Set the per connection async write queue watermarks, in bytes. A 
+     * response writer blocks once <tt>highWatermark</tt> bytes are queued 
+     * for its connection, until the queue is down to <tt>lowWatermark</tt>.
+     */
+    public void setAsyncHttpWriteWatermarks(int lowWatermark, 
+            int highWatermark) {
+        this.asyncHttpWriteLowWatermark = lowWatermark;
+        this.asyncHttpWriteHighWatermark = highWatermark;
+    }
+
+
+    /**
+     * Set the async write queue watermarks, in bytes, for all the 
+     * connections together.
+     */
+    public void setAsyncHttpWriteGlobalWatermarks(long lowWatermark, 
+            long highWatermark) {
+        this.asyncHttpWriteGlobalLowWatermark = lowWatermark;
+        this.asyncHttpWriteGlobalHighWatermark = highWatermark;
+    }
+
+
+    public int getAsyncHttpWriteLowWatermark() {
+        return asyncHttpWriteLowWatermark;
+    }
+
+
+    public int getAsyncHttpWriteHighWatermark() {
+        return asyncHttpWriteHighWatermark;
+    }
+
+
+    public long getAsyncHttpWriteGlobalLowWatermark() {
+        return asyncHttpWriteGlobalLowWatermark;
+    }
+
+
+    public long getAsyncHttpWriteGlobalHighWatermark() {
+        return asyncHttpWriteGlobalHighWatermark;
+    }
+
+
+    public long getAsyncHttpWriteTimeout() {
+        return asyncHttpWriteTimeout;
+    }
+
+
+    /**
+     * Set the maximum time, in milliseconds, a response writer waits for
+     * the async write queue to drain below the watermarks before the 
+     * connection is considered stalled.
+     */
+    public void setAsyncHttpWriteTimeout(long asyncHttpWriteTimeout) {
+        this.asyncHttpWriteTimeout = asyncHttpWriteTimeout;
+    }
+
+
+    /**
+     * Return the number of bytes waiting in the async write queues, 
+     * -1 if unknown.
+     */
+    public long getAsyncHttpWriteQueuedDataSize() {
+        if (selectorHandler != null && selectorHandler.getAsyncQueueWriter() 
+                instanceof AbstractAsyncQueueWriter) {
+            return ((AbstractAsyncQueueWriter) selectorHandler
+                    .getAsyncQueueWriter()).getQueuedDataSize();
+        }
+        return -1;
+    }
             
     /**
      * Set the request input buffer size
@@ -1689,6 +1886,26 @@ public class SelectorThread implements Runnable, MBeanRegistration{
     }
     
     
+    /**
+     * Set the interval in seconds between two checks of the cached files
+     * for modifications. The {@link FileCacheEntry} of the modified files
+     * are removed from the {@link FileCache}. A value <= 0 disables the
+     * checks.
+     */
+    public void setSecondsCheckInterval(int sCheckInterval){
+        secondsCheckInterval = sCheckInterval;
+    }
+    
+    
+    /**
+     * Return the interval in seconds between two checks of the cached 
+     * files for modifications.
+     */
+    public int getSecondsCheckInterval(){
+        return secondsCheckInterval;
+    }
+    
+    
     /**
      * Set the maximum entries this cache can contains.
      */
@@ -1938,6 +2155,24 @@ public class SelectorThread implements Runnable, MBeanRegistration{
     public boolean isRcmSupported() {
         return rcmSupport;
     }
+
+
+    /**
+     * Is blocking I/O parked on the main Selector.
+     */
+    public boolean isParkBlockingIO() {
+        return parkBlockingIO;
+    }
+
+
+    /**
+     * Set to <tt>true</tt> to park worker threads on the main Selector
+     * when a blocking read or write can't make progress, instead of
+     * using a temporary Selector.
+     */
+    public void setParkBlockingIO(boolean parkBlockingIO) {
+        this.parkBlockingIO = parkBlockingIO;
+    }
     
         
    // ------------------------------------------------------ Compression ---//
@@ -1948,6 +2183,7 @@ public class SelectorThread implements Runnable, MBeanRegistration{
         parseComressableMimeTypes();
         processorTask.setCompressableMimeTypes(parsedCompressableMimeTypes);
         processorTask.setCompressionMinSize(compressionMinSize);
+        processorTask.setCompressionLevels(compressionLevels);
         processorTask.setCompression(compression);
         processorTask.addRestrictedUserAgent(restrictedUserAgents);
     }
@@ -2025,6 +2261,20 @@ public class SelectorThread implements Runnable, MBeanRegistration{
         this.compressionMinSize = compressionMinSize;
     }
 
+
+    public String getCompressionLevels() {
+        return compressionLevels;
+    }
+
+
+    /**
+     * Set the gzip compression level and strategy by mime-type, like
+     * <tt>application/json=1,text/html=9/filtered,*=6</tt>.
+     */
+    public void setCompressionLevels(String compressionLevels) {
+        this.compressionLevels = compressionLevels;
+    }
+
     // ------------------------------------------------------------------- //
     
     
@@ -2252,6 +2502,22 @@ public class SelectorThread implements Runnable, MBeanRegistration{
     public void setUseChunking(boolean useChunking) {
         this.useChunking = useChunking;
     }
+
+    /**
+     * Is the request parsed by a {@link FastInternalInputBuffer}.
+     */
+    public boolean isUseFastHttpParser() {
+        return useFastHttpParser;
+    }
+
+    /**
+     * Parse requests with a {@link FastInternalInputBuffer}, which scans
+     * the buffered bytes and resolves well-known header names without
+     * creating Strings. Default is false.
+     */
+    public void setUseFastHttpParser(boolean useFastHttpParser) {
+        this.useFastHttpParser = useFastHttpParser;
+    }
     
     // --------------------------------------------------------------------- //
     
@@ -2301,4 +2567,39 @@ public class SelectorThread implements Runnable, MBeanRegistration{
     public void setThreadPoolClassname(String threadPoolClassname) {
         this.threadPoolClassname = threadPoolClassname;
     }
+
+    public boolean isThreadPerRequest() {
+        return threadPerRequest;
+    }
+
+    /**
+     * Set to <tt>true</tt> to run every request on its own thread
+     * using a {@link ThreadPerRequestPool}, instead of a bounded
+     * {@link StatsThreadPool}. <tt>maxThreads</tt> is then only used to
+     * pre-allocate {@link ProcessorTask}s.
+     */
+    public void setThreadPerRequest(boolean threadPerRequest) {
+        this.threadPerRequest = threadPerRequest;
+    }
+
+    public boolean isBorrowByteBuffer() {
+        return borrowByteBuffer;
+    }
+
+    /**
+     * Set to <tt>true</tt> to let WorkerThreads borrow their ByteBuffer
+     * from the shared {@link ByteBufferPool} while executing a request,
+     * instead of keeping one per thread.
+     */
+    public void setBorrowByteBuffer(boolean borrowByteBuffer) {
+        this.borrowByteBuffer = borrowByteBuffer;
+    }
+
+    /**
+     * Return the {@link ByteBufferPool} WorkerThreads borrow from, which
+     * exposes the allocated, in-use and high-water bytes.
+     */
+    public ByteBufferPool getByteBufferPool() {
+        return ByteBufferPool.getPool(useDirectByteBuffer);
+    }
 }
@@ -106,6 +106,9 @@ public class SelectorThreadConfig{
 
     private final static String ALGORITHM_CLASS_NAME=
         "com.sun.grizzly.algorithmClassName";
+
+    private final static String FAST_HTTP_PARSER =
+        "com.sun.grizzly.useFastHttpParser";
     
     private final static String MAX_SELECTOR = 
         "com.sun.grizzly.maxSelectors";
@@ -271,6 +274,12 @@ public class SelectorThreadConfig{
                                       System.getProperty(ALGORITHM_CLASS_NAME);
         }   
 
+        if (System.getProperty(FAST_HTTP_PARSER)!= null){
+            selectorThread.useFastHttpParser = 
+                Boolean.valueOf(
+                            System.getProperty(FAST_HTTP_PARSER)).booleanValue();
+        }    
+
         if (System.getProperty(BYTE_BUFFER_VIEW)!= null){
             selectorThread.useByteBufferView = 
                 Boolean.valueOf(
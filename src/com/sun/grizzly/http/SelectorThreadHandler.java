@@ -38,6 +38,7 @@
 package com.sun.grizzly.http;
 
 import com.sun.grizzly.Context;
+import com.sun.grizzly.DefaultSelectionKeyHandler;
 import com.sun.grizzly.TCPSelectorHandler;
 import com.sun.grizzly.util.Copyable;
 import java.io.IOException;
@@ -95,6 +96,10 @@ public class SelectorThreadHandler extends TCPSelectorHandler {
             SelectionKey readKey =
                     channel.register(selector, SelectionKey.OP_READ);
             readKey.attach(System.currentTimeMillis());
+            if (selectionKeyHandler instanceof DefaultSelectionKeyHandler) {
+                ((DefaultSelectionKeyHandler) selectionKeyHandler)
+                        .scheduleExpiration(readKey);
+            }
               
             if (selectorThread.getThreadPool() instanceof StatsThreadPool){
                 selectorThread.getRequestGroupInfo().increaseCountOpenConnections();
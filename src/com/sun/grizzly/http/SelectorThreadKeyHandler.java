@@ -43,7 +43,6 @@ import com.sun.grizzly.tcp.Response.ResponseAttachment;
 import com.sun.grizzly.util.Copyable;
 import com.sun.grizzly.util.SelectionKeyAttachment;
 import java.nio.channels.SelectionKey;
-import java.util.Iterator;
 import java.util.logging.Level;
 
 /**
@@ -80,6 +79,7 @@ public class SelectorThreadKeyHandler extends DefaultSelectionKeyHandler {
             }
             KeepAliveThreadAttachment k = (KeepAliveThreadAttachment) attachment;
             k.setTimeout(currentTime);
+            scheduleExpiration(key);
         } else {
             addExpirationStamp(key);
         }
@@ -117,65 +117,61 @@ public class SelectorThreadKeyHandler extends DefaultSelectionKeyHandler {
      * {@inheritDoc}
      */
     @Override
-    public void expire(Iterator<SelectionKey> iterator) {
-        //must check for timeout, attachments can have such interest
-        final long currentTime = System.currentTimeMillis();
-        if (currentTime < nextKeysExpiration) {
-            return;
+    protected long getExpirationTime(SelectionKey key) {
+        Object attachment = key.attachment();
+        if (attachment == null) {
+            return SelectionKeyAttachment.UNLIMITED_TIMEOUT;
+        }
+        
+        long expire = getExpirationStamp(attachment);
+        if (expire == SelectionKeyAttachment.UNLIMITED_TIMEOUT) {
+            return SelectionKeyAttachment.UNLIMITED_TIMEOUT;
         }
-        nextKeysExpiration = currentTime + 1000;
-        while (iterator.hasNext()) {
-            SelectionKey key = iterator.next();
-            if (!key.isValid()) {
-                continue;
-            }
-            Object attachment = key.attachment();
-            if (attachment != null) {
-                long expire = getExpirationStamp(attachment);
-                if (expire == SelectionKeyAttachment.UNLIMITED_TIMEOUT) {
-                    continue;
-                }
 
-                long idleLimit, activeThreadTimeout;
-                if (attachment instanceof KeepAliveThreadAttachment) {
-                    activeThreadTimeout = ((KeepAliveThreadAttachment) attachment).getActiveThreadTimeout();
-
-                    if (activeThreadTimeout != SelectionKeyAttachment.UNLIMITED_TIMEOUT) {
-                        idleLimit = activeThreadTimeout;
-                    } else {
-                        idleLimit = ((SelectionKeyAttachment) attachment).getIdleTimeoutDelay();
-                        if (idleLimit == SelectionKeyAttachment.UNLIMITED_TIMEOUT) {
-                            //this is true when attachment class dont have idletimeoutdelay configured.
-                            idleLimit = timeout;
-                        }
-                    }
-                } else {
+        long idleLimit, activeThreadTimeout;
+        if (attachment instanceof KeepAliveThreadAttachment) {
+            activeThreadTimeout = ((KeepAliveThreadAttachment) attachment).getActiveThreadTimeout();
+
+            if (activeThreadTimeout != SelectionKeyAttachment.UNLIMITED_TIMEOUT) {
+                idleLimit = activeThreadTimeout;
+            } else {
+                idleLimit = ((SelectionKeyAttachment) attachment).getIdleTimeoutDelay();
+                if (idleLimit == SelectionKeyAttachment.UNLIMITED_TIMEOUT) {
+                    //this is true when attachment class dont have idletimeoutdelay configured.
                     idleLimit = timeout;
                 }
-                if (idleLimit == -1) {
-                    continue;
-                }
+            }
+        } else {
+            idleLimit = timeout;
+        }
+        if (idleLimit == -1) {
+            return SelectionKeyAttachment.UNLIMITED_TIMEOUT;
+        }
+        return expire + idleLimit;
+    }
 
-                if (currentTime - expire >= idleLimit) {
-                    if (attachment instanceof Response.ResponseAttachment) {
-                        ((ResponseAttachment) attachment).timeout();
-                        key.attach(null);
-                        continue;
-                    }
-
-                    if (attachment instanceof KeepAliveThreadAttachment) {
-                        KeepAliveThreadAttachment k = (KeepAliveThreadAttachment) attachment;
-                        if (k.activeThread() != null) {
-                            if (logger.isLoggable(Level.WARNING)) {
-                                logger.log(Level.WARNING, "Interrupting idle Thread: " + k.activeThread().getName());
-                            }
-                            k.activeThread().interrupt();
-                        }
-                    }
-                    cancel(key);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void expireKey(SelectionKey key) {
+        Object attachment = key.attachment();
+        if (attachment instanceof Response.ResponseAttachment) {
+            ((ResponseAttachment) attachment).timeout();
+            key.attach(null);
+            return;
+        }
+
+        if (attachment instanceof KeepAliveThreadAttachment) {
+            KeepAliveThreadAttachment k = (KeepAliveThreadAttachment) attachment;
+            if (k.activeThread() != null) {
+                if (logger.isLoggable(Level.WARNING)) {
+                    logger.log(Level.WARNING, "Interrupting idle Thread: " + k.activeThread().getName());
                 }
+                k.activeThread().interrupt();
             }
         }
+        cancel(key);
     }
 
     /**
@@ -38,6 +38,7 @@
 
 package com.sun.grizzly.http;
 
+import com.sun.grizzly.async.AbstractAsyncQueueWriter;
 import com.sun.grizzly.async.AsyncQueueWriteUnit;
 import com.sun.grizzly.async.AsyncQueueWriter;
 import com.sun.grizzly.async.AsyncWriteCallbackHandler;
@@ -309,6 +310,9 @@ public class SocketChannelOutputBuffer extends InternalOutputBuffer
             OutputWriter.flushChannel(((SocketChannel) channel), bb);
             bb.clear();
         } else if (asyncQueueWriter != null) {
+            if (asyncQueueWriter instanceof AbstractAsyncQueueWriter) {
+                waitForWritable((AbstractAsyncQueueWriter) asyncQueueWriter);
+            }
             Future future = asyncQueueWriter.write(selectionKey, bb,
                     asyncHttpWriteCallbackHandler, null,
                     asyncHttpByteBufferCloner);
@@ -325,6 +329,25 @@ public class SocketChannelOutputBuffer extends InternalOutputBuffer
         }
     }
 
+    /**
+     * Block while the connection's async write queue is above its
+     * watermarks, so a slow client can't make us buffer without limit.
+     */
+    private void waitForWritable(AbstractAsyncQueueWriter writer)
+            throws IOException {
+        try {
+            if (!writer.waitForWritable(selectionKey, 
+                    writer.getWritableTimeout())) {
+                throw new IOException("Async write queue is full, " +
+                        writer.getQueuedDataSize(selectionKey) + 
+                        " bytes are waiting");
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while waiting for the async " +
+                    "write queue");
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
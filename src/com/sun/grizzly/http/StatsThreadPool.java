@@ -38,6 +38,7 @@
 package com.sun.grizzly.http;
 
 import com.sun.grizzly.util.DefaultThreadPool;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
@@ -75,6 +76,15 @@ public class StatsThreadPool extends DefaultThreadPool {
         setName("http");
     }
 
+    protected StatsThreadPool(int corePoolSize, int maximumPoolSize,
+            BlockingQueue<Runnable> queue, int maxTasksCount,
+            long keepAliveTime, TimeUnit unit) {
+        super(corePoolSize, maximumPoolSize, queue, maxTasksCount,
+                keepAliveTime, unit);
+        setThreadFactory(new HttpWorkerThreadFactory());
+        setName("http");
+    }
+
     /**
      * Get the port number, which is served by the thread pool
      * @return the port number, which is served by the thread pool
@@ -117,7 +127,7 @@ public class StatsThreadPool extends DefaultThreadPool {
             Thread thread = new HttpWorkerThread(StatsThreadPool.this,
                     name + port + "-WorkerThread(" +
                     workerThreadCounter.getAndIncrement() + ")", r,
-                    initialByteBufferSize);
+                    initialByteBufferSize, threadStackSize);
             thread.setUncaughtExceptionHandler(StatsThreadPool.this);
             thread.setPriority(priority);
             return thread;
@@ -0,0 +1,80 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.http;
+
+import com.sun.grizzly.util.ThreadPerTaskPool;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link StatsThreadPool} which runs every request on its own
+ * {@link HttpWorkerThread}: requests are never queued, and idle threads
+ * are reused until they time out. Threads use a small stack and borrow their
+ * {@link java.nio.ByteBuffer} only while executing a request.
+ *
+ * @see ThreadPerTaskPool
+ */
+public class ThreadPerRequestPool extends StatsThreadPool {
+
+    public ThreadPerRequestPool() {
+        this(ThreadPerTaskPool.DEFAULT_IDLE_THREAD_KEEPALIVE_TIMEOUT,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public ThreadPerRequestPool(long keepAliveTime, TimeUnit unit) {
+        super(0, Integer.MAX_VALUE, new SynchronousQueue<Runnable>(),
+                0, keepAliveTime, unit);
+        setThreadStackSize(ThreadPerTaskPool.DEFAULT_THREAD_STACK_SIZE);
+        setBorrowByteBuffer(true);
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(512);
+        builder.append("ThreadPerRequestPool[");
+        injectToStringAttributes(builder);
+        builder.append(", thread-stack-size=").append(threadStackSize);
+        builder.append(']');
+        return builder.toString();
+    }
+}
@@ -33,6 +33,8 @@ import com.sun.grizzly.ssl.SSLSelectorThread;
 import com.sun.grizzly.tcp.Adapter;
 import com.sun.grizzly.tcp.http11.GrizzlyAdapter;
 import com.sun.grizzly.tcp.http11.GrizzlyAdapterChain;
+import com.sun.grizzly.tcp.http11.DefaultSessionManager;
+import com.sun.grizzly.tcp.http11.SessionManager;
 import com.sun.grizzly.tcp.http11.GrizzlyRequest;
 import com.sun.grizzly.tcp.http11.GrizzlyResponse;
 import com.sun.grizzly.util.net.jsse.JSSEImplementation;
@@ -641,12 +643,19 @@ public class GrizzlyWebServer {
     }
     
     /**
-     * Stop the GrizzlyWebServer.
+     * Stop the GrizzlyWebServer. When the {@link DefaultSessionManager} has
+     * a {@link com.sun.grizzly.tcp.http11.SessionStore}, the sessions are
+     * passivated so they are available after the next start.
      */ 
     public void stop(){
         if (!isStarted) return;
         isStarted = false;
         st.stopEndpoint();
+        
+        SessionManager sessionManager = GrizzlyRequest.getSessionManager();
+        if (sessionManager instanceof DefaultSessionManager){
+            ((DefaultSessionManager)sessionManager).passivateAll();
+        }
     }
     
     
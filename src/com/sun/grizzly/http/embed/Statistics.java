@@ -27,7 +27,15 @@ import com.sun.grizzly.http.KeepAliveStats;
 import com.sun.grizzly.http.StatsThreadPool;
 import com.sun.grizzly.http.ThreadPoolStatistic;
 import com.sun.grizzly.http.SelectorThread;
+import com.sun.grizzly.tcp.Adapter;
 import com.sun.grizzly.tcp.RequestGroupInfo;
+import com.sun.grizzly.tcp.http11.GrizzlyAdapter;
+import com.sun.grizzly.tcp.http11.GrizzlyAdapterChain;
+import com.sun.grizzly.util.LatencyHistogram;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
 
 /**
  * <p>This class can be used to monitor the {@link GrizzlyWebServer}. The statistics
@@ -37,7 +45,9 @@ import com.sun.grizzly.tcp.RequestGroupInfo;
  * how many times a connection was re-used, how many request were using http 1.1 keep-alive, 
  * etc.</li><li>{@link RequestGroupInfo}: Statistics about how many connection are 
  * currently supported by Grizzly, how many many bytes has been read so far, how many
- * http request with status code of 200, 404, etc.</li></ul></p>
+ * http request with status code of 200, 404, etc.</li><li>{@link LatencyHistogram}:
+ * The latency of the requests, for the whole listener and for every mapped 
+ * {@link GrizzlyAdapter}.</li></ul></p>
  * 
  * <p>To use this class, just do:</p><p><pre><code>
     GrizzlyWebServer ws = new GrizzlyWebServer("/var/www");
@@ -105,6 +115,45 @@ public class Statistics {
     }
     
     
+    /**
+     * Return the {@link LatencyHistogram} of all the requests made to Grizzly.
+     * Use {@link LatencyHistogram#intervalSnapshot} to get the percentiles 
+     * of every interval.
+     * @return the {@link LatencyHistogram} of all the requests.
+     */
+    public LatencyHistogram getLatencyHistogram(){
+        return st.getRequestGroupInfo().getLatencyHistogram();
+    }
+    
+    
+    /**
+     * Return the {@link LatencyHistogram} of every mapping added using
+     * {@link GrizzlyWebServer#addGrizzlyAdapter(GrizzlyAdapter, String[])}. 
+     * Histograms are recorded even when statistics are not gathered.
+     * @return a {@link Map} of {@link LatencyHistogram} keyed by mapping.
+     */
+    public Map<String, LatencyHistogram> getAdapterLatencyHistograms(){
+        Adapter adapter = st.getAdapter();
+        if (!(adapter instanceof GrizzlyAdapterChain)){
+            return Collections.emptyMap();
+        }
+        
+        GrizzlyAdapterChain chain = (GrizzlyAdapterChain)adapter;
+        Map<String, LatencyHistogram> histograms = 
+                new HashMap<String, LatencyHistogram>();
+        for (Entry<GrizzlyAdapter,LatencyHistogram> entry: 
+                chain.getLatencyHistograms().entrySet()){
+            String[] mappings = chain.getMappings(entry.getKey());
+            if (mappings == null) continue;
+            
+            for (String mapping: mappings){
+                histograms.put(mapping, entry.getValue());
+            }
+        }
+        return histograms;
+    }
+    
+    
     /**
      * Start gathering statistics.
      */
@@ -98,26 +98,44 @@ public class SSLFileCacheFactory extends FileCacheFactory{
                 
                 @Override
                 protected void sendCache(SocketChannel socketChannel,  
-                        FileCacheEntry entry,
+                        ByteBuffer headerBuffer, ByteBuffer bb,
                     boolean keepAlive) throws IOException{
 
                     SSLOutputWriter.flushChannel(socketChannel, 
-                            entry.headerBuffer.slice());
+                            headerBuffer.slice());
                     ByteBuffer keepAliveBuf = keepAlive ? connectionKaBB.slice():
                     connectionCloseBB.slice();
                     SSLOutputWriter.flushChannel(socketChannel, keepAliveBuf);        
-                    SSLOutputWriter.flushChannel(socketChannel, entry.bb.slice());
+                    SSLOutputWriter.flushChannel(socketChannel, bb.slice());
+                }  
+
+                @Override
+                protected void sendCache(SocketChannel socketChannel,  
+                        ByteBuffer headerBuffer, ByteBuffer[] body,
+                    boolean keepAlive) throws IOException{
+
+                    SSLOutputWriter.flushChannel(socketChannel, headerBuffer);
+                    ByteBuffer keepAliveBuf = keepAlive ? connectionKaBB.slice():
+                    connectionCloseBB.slice();
+                    SSLOutputWriter.flushChannel(socketChannel, keepAliveBuf);        
+                    for (ByteBuffer part: body){
+                        SSLOutputWriter.flushChannel(socketChannel, part);
+                    }
                 }  
             };
             fileCache.setIsEnabled(isEnabled);
             fileCache.setLargeFileCacheEnabled(isLargeFileCacheEnabled);
             fileCache.setSecondsMaxAge(secondsMaxAge);
+            fileCache.setSecondsCheckInterval(secondsCheckInterval);
             fileCache.setMaxCacheEntries(maxCacheEntries);
             fileCache.setMinEntrySize(minEntrySize);
             fileCache.setMaxEntrySize(maxEntrySize);
             fileCache.setMaxLargeCacheSize(maxLargeFileCacheSize);
             fileCache.setMaxSmallCacheSize(maxSmallFileCacheSize);         
             fileCache.setCacheManager(cacheManager);
+            fileCache.setCompressableMimeTypes(compressableMimeTypes);
+            fileCache.setCompressionMinSize(compressionMinSize);
+            fileCache.setNoCompressionUserAgents(noCompressionUserAgents);
             FileCache.setIsMonitoringEnabled(isMonitoringEnabled);
         }
         
@@ -42,9 +42,11 @@ import com.sun.grizzly.ProtocolChain;
 import com.sun.grizzly.ProtocolFilter;
 import com.sun.grizzly.SSLConfig;
 import com.sun.grizzly.TCPSelectorHandler;
+import com.sun.grizzly.filter.SSLHandshakeStats;
 import com.sun.grizzly.filter.SSLReadFilter;
 import com.sun.grizzly.http.ProcessorTask;
 import com.sun.grizzly.http.SelectorThread;
+import com.sun.grizzly.util.SSLUtils;
 import com.sun.grizzly.util.net.SSLImplementation;
 import javax.net.ssl.SSLContext;
 
@@ -100,6 +102,18 @@ public class SSLSelectorThread extends SelectorThread {
      */
     private boolean wantClientAuth = false;    
     
+    
+    /**
+     * The maximum time, in milliseconds, a SSL handshake may take.
+     */
+    private int sslHandshakeTimeout = SSLUtils.getReadTimeout();
+    
+    
+    /**
+     * The {@link SSLReadFilter} of the {@link ProtocolChain}.
+     */
+    private volatile SSLReadFilter sslReadFilter;
+    
     // ---------------------------------------------------------------------/.
     
     /**
@@ -129,6 +143,8 @@ public class SSLSelectorThread extends SelectorThread {
      */
     private ProtocolFilter createSSLReadFilter() {
         SSLReadFilter readFilter = new SSLReadFilter();
+        readFilter.setHandshakeTimeout(sslHandshakeTimeout);
+        sslReadFilter = readFilter;
         readFilter.setSSLContext(sslContext);
         readFilter.setClientMode(clientMode);
         readFilter.setEnabledCipherSuites(enabledCipherSuites);
@@ -173,6 +189,37 @@ public class SSLSelectorThread extends SelectorThread {
     }
     
     
+    /**
+     * Return the SSL handshake statistics, or <tt>null</tt> if the 
+     * {@link SSLReadFilter} wasn't created yet.
+     */
+    public SSLHandshakeStats getSSLHandshakeStats() {
+        SSLReadFilter readFilter = sslReadFilter;
+        return readFilter == null ? null : readFilter.getHandshakeStats();
+    }
+    
+    
+    /**
+     * Return the maximum time, in milliseconds, a SSL handshake may take.
+     */
+    public int getSSLHandshakeTimeout() {
+        return sslHandshakeTimeout;
+    }
+    
+    
+    /**
+     * Set the maximum time, in milliseconds, a SSL handshake may take.
+     * A value of 0 or less disables the timeout.
+     */
+    public void setSSLHandshakeTimeout(int sslHandshakeTimeout) {
+        this.sslHandshakeTimeout = sslHandshakeTimeout;
+        SSLReadFilter readFilter = sslReadFilter;
+        if (readFilter != null) {
+            readFilter.setHandshakeTimeout(sslHandshakeTimeout);
+        }
+    }
+    
+    
     /**
      * Set the SSLContext required to support SSL over NIO.
      */
@@ -316,12 +363,14 @@ public class SSLSelectorThread extends SelectorThread {
         fileCacheFactory = SSLFileCacheFactory.getFactory(port);
         fileCacheFactory.setLargeFileCacheEnabled(isLargeFileCacheEnabled);
         fileCacheFactory.setSecondsMaxAge(secondsMaxAge);
+        fileCacheFactory.setSecondsCheckInterval(secondsCheckInterval);
         fileCacheFactory.setMaxCacheEntries(maxCacheEntries);
         fileCacheFactory.setMinEntrySize(minEntrySize);
         fileCacheFactory.setMaxEntrySize(maxEntrySize);
         fileCacheFactory.setMaxLargeCacheSize(maxLargeFileCacheSize);
         fileCacheFactory.setMaxSmallCacheSize(maxSmallFileCacheSize);         
         fileCacheFactory.setIsMonitoringEnabled(isMonitoringEnabled);
+        configureFileCacheCompression();
     }
 
 }
@@ -47,6 +47,7 @@ import java.io.IOException;
 import java.nio.channels.SocketChannel;
 
 import com.sun.grizzly.tcp.Request;
+import com.sun.grizzly.tcp.http11.InternalInputBuffer;
 import com.sun.grizzly.util.buf.Ascii;
 import com.sun.grizzly.util.buf.ByteChunk;
 import com.sun.grizzly.util.buf.MessageBytes;
@@ -104,8 +105,16 @@ public class StaticHandler implements Interceptor<Request,SocketChannel> {
                           req.getResponse().getMimeHeaders(),false);        
         } else if (handlerCode == Interceptor.REQUEST_LINE_PARSED) {
             ByteChunk requestURI = req.requestURI().getByteChunk(); 
+            
+            // The headers aren't parsed yet, but their bytes follow the
+            // request line inside the input buffer.
+            int end = -1;
+            if (req.getInputBuffer() instanceof InternalInputBuffer){
+                end = ((InternalInputBuffer)req.getInputBuffer()).getLastValid();
+            }
+            
             if (fileCache.sendCache(requestURI.getBytes(), requestURI.getStart(),
-                                requestURI.getLength(), socketChannel,
+                                requestURI.getLength(), end, socketChannel,
                                 keepAlive(req))){
                 return Interceptor.BREAK;   
             }
@@ -195,6 +195,8 @@ public class Request {
     private int bytesRead=0;
     // Time of the request - usefull to avoid repeated calls to System.currentTime
     private long startTime = 0L;
+    // Same as startTime, from System.nanoTime(), to measure the latency
+    private long startTimeNanos = 0L;
 
     private RequestInfo reqProcessorMX=new RequestInfo(this);
     // ------------------------------------------------------------- Properties
@@ -502,6 +504,14 @@ public class Request {
         this.startTime = startTime;
     }
 
+    public long getStartTimeNanos() {
+        return startTimeNanos;
+    }
+
+    public void setStartTimeNanos(long startTimeNanos) {
+        this.startTimeNanos = startTimeNanos;
+    }
+
     // -------------------- Per-Request "notes" --------------------
 
 
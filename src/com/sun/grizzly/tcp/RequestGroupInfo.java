@@ -56,39 +56,48 @@
 
 package com.sun.grizzly.tcp;
 
-import java.util.ArrayList;
+import com.sun.grizzly.util.LatencyHistogram;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /** This can be moved to top level ( eventually with a better name ).
  *  It is currently used only as a JMX artifact, to agregate the data
  *  collected from each RequestProcessor thread.
+ *
+ *  Getters don't lock: they sum the counters of the registered 
+ *  {@link RequestInfo}, which are only updated by their own thread. Use
+ *  {@link #snapshot} to read all the counters in a single pass.
  */
 public class RequestGroupInfo {
-    ArrayList<RequestInfo> processors=new ArrayList<RequestInfo>();
-    private long deadMaxTime = 0;
-    private long deadProcessingTime = 0;
-    private int deadRequestCount = 0;
-    private int deadErrorCount = 0;
-    private long deadBytesReceived = 0;
-    private long deadBytesSent = 0;
+    CopyOnWriteArrayList<RequestInfo> processors=
+            new CopyOnWriteArrayList<RequestInfo>();
+    private volatile long deadMaxTime = 0;
+    private volatile long deadProcessingTime = 0;
+    private volatile int deadRequestCount = 0;
+    private volatile int deadErrorCount = 0;
+    private volatile long deadBytesReceived = 0;
+    private volatile long deadBytesSent = 0;
 
     // START S1AS
-    private long deadCount2xx;
-    private long deadCount3xx;
-    private long deadCount4xx;
-    private long deadCount5xx;
-    private long deadCountOther;
-    private long deadCount200;
-    private long deadCount302;
-    private long deadCount304;
-    private long deadCount400;
-    private long deadCount401;
-    private long deadCount403;
-    private long deadCount404;
-    private long deadCount503;
-    private long countOpenConnections;
-    private long maxOpenConnections;
+    private volatile long deadCount2xx;
+    private volatile long deadCount3xx;
+    private volatile long deadCount4xx;
+    private volatile long deadCount5xx;
+    private volatile long deadCountOther;
+    private volatile long deadCount200;
+    private volatile long deadCount302;
+    private volatile long deadCount304;
+    private volatile long deadCount400;
+    private volatile long deadCount401;
+    private volatile long deadCount403;
+    private volatile long deadCount404;
+    private volatile long deadCount503;
+    private final AtomicLong countOpenConnections = new AtomicLong();
+    private final AtomicLong maxOpenConnections = new AtomicLong();
     // END S1AS
 
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
 
     public synchronized void addRequestProcessor( RequestInfo rp ) {
         processors.add( rp );
@@ -96,6 +105,10 @@ public class RequestGroupInfo {
 
     public synchronized void removeRequestProcessor( RequestInfo rp ) {
         if( rp != null ) {
+            // Removed first so concurrent getters may briefly under count, 
+            // never count twice.
+            processors.remove( rp );
+
             if( deadMaxTime < rp.getMaxTime() )
                 deadMaxTime = rp.getMaxTime();
             deadProcessingTime += rp.getProcessingTime();
@@ -119,15 +132,12 @@ public class RequestGroupInfo {
             deadCount404 += rp.getCount404();
             deadCount503 += rp.getCount503();
             // END S1AS
-
-            processors.remove( rp );
         }
     }
 
-    public synchronized long getMaxTime() {
+    public long getMaxTime() {
         long maxTime=deadMaxTime;
-        for( int i=0; i<processors.size(); i++ ) {
-            RequestInfo rp = processors.get( i );
+        for( RequestInfo rp: processors ) {
             if( maxTime < rp.getMaxTime() ) maxTime=rp.getMaxTime();
         }
         return maxTime;
@@ -136,16 +146,14 @@ public class RequestGroupInfo {
     // Used to reset the times
     public synchronized void setMaxTime(long maxTime) {
         deadMaxTime = maxTime;
-        for( int i=0; i<processors.size(); i++ ) {
-            RequestInfo rp = processors.get( i );
+        for( RequestInfo rp: processors ) {
             rp.setMaxTime(maxTime);
         }
     }
 
-    public synchronized long getProcessingTime() {
+    public long getProcessingTime() {
         long time=deadProcessingTime;
-        for( int i=0; i<processors.size(); i++ ) {
-            RequestInfo rp = processors.get( i );
+        for( RequestInfo rp: processors ) {
             time += rp.getProcessingTime();
         }
         return time;
@@ -153,16 +161,14 @@ public class RequestGroupInfo {
 
     public synchronized void setProcessingTime(long totalTime) {
         deadProcessingTime = totalTime;
-        for( int i=0; i<processors.size(); i++ ) {
-            RequestInfo rp = processors.get( i );
+        for( RequestInfo rp: processors ) {
             rp.setProcessingTime( totalTime );
         }
     }
 
-    public synchronized int getRequestCount() {
+    public int getRequestCount() {
         int requestCount=deadRequestCount;
-        for( int i=0; i<processors.size(); i++ ) {
-            RequestInfo rp = processors.get( i );
+        for( RequestInfo rp: processors ) {
             requestCount += rp.getRequestCount();
         }
         return requestCount;
@@ -170,16 +176,14 @@ public class RequestGroupInfo {
 
     public synchronized void setRequestCount(int requestCount) {
         deadRequestCount = requestCount;
-        for( int i=0; i<processors.size(); i++ ) {
-            RequestInfo rp = processors.get( i );
+        for( RequestInfo rp: processors ) {
             rp.setRequestCount( requestCount );
         }
     }
 
-    public synchronized int getErrorCount() {
+    public int getErrorCount() {
         int requestCount=deadErrorCount;
-        for( int i=0; i<processors.size(); i++ ) {
-            RequestInfo rp = processors.get( i );
+        for( RequestInfo rp: processors ) {
             requestCount += rp.getErrorCount();
         }
         return requestCount;
@@ -187,16 +191,14 @@ public class RequestGroupInfo {
 
     public synchronized void setErrorCount(int errorCount) {
         deadErrorCount = errorCount;
-        for( int i=0; i<processors.size(); i++ ) {
-            RequestInfo rp = processors.get( i );
+        for( RequestInfo rp: processors ) {
             rp.setErrorCount( errorCount);
         }
     }
 
-    public synchronized long getBytesReceived() {
+    public long getBytesReceived() {
         long bytes=deadBytesReceived;
-        for( int i=0; i<processors.size(); i++ ) {
-            RequestInfo rp = processors.get( i );
+        for( RequestInfo rp: processors ) {
             bytes += rp.getBytesReceived();
         }
         return bytes;
@@ -204,16 +206,14 @@ public class RequestGroupInfo {
 
     public synchronized void setBytesReceived(long bytesReceived) {
         deadBytesReceived = bytesReceived;
-        for( int i=0; i<processors.size(); i++ ) {
-            RequestInfo rp = processors.get( i );
+        for( RequestInfo rp: processors ) {
             rp.setBytesReceived( bytesReceived );
         }
     }
 
-    public synchronized long getBytesSent() {
+    public long getBytesSent() {
         long bytes=deadBytesSent;
-        for( int i=0; i<processors.size(); i++ ) {
-            RequestInfo rp = processors.get( i );
+        for( RequestInfo rp: processors ) {
             bytes += rp.getBytesSent();
         }
         return bytes;
@@ -221,17 +221,15 @@ public class RequestGroupInfo {
 
     public synchronized void setBytesSent(long bytesSent) {
         deadBytesSent = bytesSent;
-        for( int i=0; i<processors.size(); i++ ) {
-            RequestInfo rp = processors.get( i );
+        for( RequestInfo rp: processors ) {
             rp.setBytesSent( bytesSent );
         }
     }
 
     // START S1AS
-    public synchronized long getCount2xx() {
+    public long getCount2xx() {
         long ret = deadCount2xx;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             ret += rp.getCount2xx();
         }
         return ret;
@@ -239,16 +237,14 @@ public class RequestGroupInfo {
 
     public synchronized void setCount2xx(long count) {
         deadCount2xx = count;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             rp.setCount2xx(count);
         }
     }
 
-    public synchronized long getCount3xx() {
+    public long getCount3xx() {
         long ret = deadCount3xx;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             ret += rp.getCount3xx();
         }
         return ret;
@@ -256,16 +252,14 @@ public class RequestGroupInfo {
 
     public synchronized void setCount3xx(long count) {
         deadCount3xx = count;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             rp.setCount3xx(count);
         }
     }
 
-    public synchronized long getCount4xx() {
+    public long getCount4xx() {
         long ret = deadCount4xx;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             ret += rp.getCount4xx();
         }
         return ret;
@@ -273,16 +267,14 @@ public class RequestGroupInfo {
 
     public synchronized void setCount4xx(long count) {
         deadCount4xx = count;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             rp.setCount4xx(count);
         }
     }
 
-    public synchronized long getCount5xx() {
+    public long getCount5xx() {
         long ret = deadCount5xx;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             ret += rp.getCount5xx();
         }
         return ret;
@@ -290,16 +282,14 @@ public class RequestGroupInfo {
 
     public synchronized void setCount5xx(long count) {
         deadCount5xx = count;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             rp.setCount5xx(count);
         }
     }
 
-    public synchronized long getCountOther() {
+    public long getCountOther() {
         long ret = deadCountOther;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             ret += rp.getCountOther();
         }
         return ret;
@@ -307,16 +297,14 @@ public class RequestGroupInfo {
 
     public synchronized void setCountOther(long count) {
         deadCountOther = count;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             rp.setCountOther(count);
         }
     }
 
-    public synchronized long getCount200() {
+    public long getCount200() {
         long ret = deadCount200;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             ret += rp.getCount200();
         }
         return ret;
@@ -324,16 +312,14 @@ public class RequestGroupInfo {
 
     public synchronized void setCount200(long count) {
         deadCount200 = count;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             rp.setCount200(count);
         }
     }
 
-    public synchronized long getCount302() {
+    public long getCount302() {
         long ret = deadCount302;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             ret += rp.getCount302();
         }
         return ret;
@@ -341,16 +327,14 @@ public class RequestGroupInfo {
 
     public synchronized void setCount302(long count) {
         deadCount302 = count;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             rp.setCount302(count);
         }
     }
 
-    public synchronized long getCount304() {
+    public long getCount304() {
         long ret = deadCount304;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             ret += rp.getCount304();
         }
         return ret;
@@ -358,16 +342,14 @@ public class RequestGroupInfo {
 
     public synchronized void setCount304(long count) {
         deadCount304 = count;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             rp.setCount304(count);
         }
     }
 
-    public synchronized long getCount400() {
+    public long getCount400() {
         long ret = deadCount400;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             ret += rp.getCount400();
         }
         return ret;
@@ -375,16 +357,14 @@ public class RequestGroupInfo {
 
     public synchronized void setCount400(long count) {
         deadCount400 = count;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             rp.setCount400(count);
         }
     }
 
-    public synchronized long getCount401() {
+    public long getCount401() {
         long ret = deadCount401;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             ret += rp.getCount401();
         }
         return ret;
@@ -392,16 +372,14 @@ public class RequestGroupInfo {
 
     public synchronized void setCount401(long count) {
         deadCount401 = count;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             rp.setCount401(count);
         }
     }
 
-    public synchronized long getCount403() {
+    public long getCount403() {
         long ret = deadCount403;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             ret += rp.getCount403();
         }
         return ret;
@@ -409,16 +387,14 @@ public class RequestGroupInfo {
 
     public synchronized void setCount403(long count) {
         deadCount403 = count;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             rp.setCount403(count);
         }
     }
 
-    public synchronized long getCount404() {
+    public long getCount404() {
         long ret = deadCount404;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             ret += rp.getCount404();
         }
         return ret;
@@ -426,16 +402,14 @@ public class RequestGroupInfo {
 
     public synchronized void setCount404(long count) {
         deadCount404 = count;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             rp.setCount404(count);
         }
     }
 
-    public synchronized long getCount503() {
+    public long getCount503() {
         long ret = deadCount503;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             ret += rp.getCount503();
         }
         return ret;
@@ -443,42 +417,46 @@ public class RequestGroupInfo {
 
     public synchronized void setCount503(long count) {
         deadCount503 = count;
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             rp.setCount503(count);
         }
     }
 
-    public synchronized long getCountOpenConnections() {
-        return countOpenConnections;
+    public long getCountOpenConnections() {
+        return countOpenConnections.get();
     }
 
-    public synchronized void setCountOpenConnections(long count) {
-        countOpenConnections = count;
-        if (countOpenConnections > maxOpenConnections) {
-            maxOpenConnections = countOpenConnections;
-        }
+    public void setCountOpenConnections(long count) {
+        countOpenConnections.set(count);
+        updateMaxOpenConnections(count);
     }
 
-    public synchronized void increaseCountOpenConnections() {
-        countOpenConnections++;
-        if (countOpenConnections > maxOpenConnections) {
-            maxOpenConnections = countOpenConnections;
-        }
+    public void increaseCountOpenConnections() {
+        updateMaxOpenConnections(countOpenConnections.incrementAndGet());
     }
 
-    public synchronized void decreaseCountOpenConnections() {
-        if (countOpenConnections > 0){
-            countOpenConnections--;
-        }
+    public void decreaseCountOpenConnections() {
+        long count;
+        do {
+            count = countOpenConnections.get();
+            if (count <= 0) return;
+        } while (!countOpenConnections.compareAndSet(count, count - 1));
+    }
+
+    public long getMaxOpenConnections() {
+        return maxOpenConnections.get();
     }
 
-    public synchronized long getMaxOpenConnections() {
-        return maxOpenConnections;
+    public void setMaxOpenConnections(long count) {
+        maxOpenConnections.set(count);
     }
 
-    public synchronized void setMaxOpenConnections(long count) {
-        maxOpenConnections = count;
+    private void updateMaxOpenConnections(long count) {
+        long max;
+        do {
+            max = maxOpenConnections.get();
+            if (count <= max) return;
+        } while (!maxOpenConnections.compareAndSet(max, count));
     }
     // END S1AS
 
@@ -494,8 +472,7 @@ public class RequestGroupInfo {
         long lastRequestCompletionTime = 0;
         String lastRequestURI = null;
 
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             if (rp.getLastRequestCompletionTime() > lastRequestCompletionTime) {
                 lastRequestCompletionTime = rp.getLastRequestCompletionTime();
                 lastRequestURI = rp.getLastRequestURI();
@@ -515,8 +492,7 @@ public class RequestGroupInfo {
         long lastRequestCompletionTime = 0;
         String lastRequestMethod = null;
 
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             if (rp.getLastRequestCompletionTime() > lastRequestCompletionTime) {
                 lastRequestCompletionTime = rp.getLastRequestCompletionTime();
                 lastRequestMethod = rp.getLastRequestMethod();
@@ -535,8 +511,7 @@ public class RequestGroupInfo {
 
         long lastRequestCompletionTime = 0;
 
-        for (int i=0; i<processors.size(); i++) {
-            RequestInfo rp = processors.get(i);
+        for (RequestInfo rp: processors) {
             if (rp.getLastRequestCompletionTime() > lastRequestCompletionTime) {
                 lastRequestCompletionTime = rp.getLastRequestCompletionTime();
             }
@@ -547,6 +522,36 @@ public class RequestGroupInfo {
     // END SJSAS 6338793
 
 
+    /**
+     * Return the histogram of the request latencies, in microseconds, 
+     * from the parsing of the request line to the end of the response.
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    /**
+     * Return the median request latency, in microseconds.
+     */
+    public long getLatency50thPercentile() {
+        return latencyHistogram.snapshot().getValueAtPercentile(50);
+    }
+
+    /**
+     * Return the 99th percentile of the request latency, in microseconds.
+     */
+    public long getLatency99thPercentile() {
+        return latencyHistogram.snapshot().getValueAtPercentile(99);
+    }
+
+    /**
+     * Return the 99.9th percentile of the request latency, in microseconds.
+     */
+    public long getLatency999thPercentile() {
+        return latencyHistogram.snapshot().getValueAtPercentile(99.9);
+    }
+
+
     public void resetCounters() {
         this.setBytesReceived(0);
         this.setBytesSent(0);
@@ -571,5 +576,177 @@ public class RequestGroupInfo {
         this.setCountOpenConnections(0);
         this.setMaxOpenConnections(0);
         // END S1AS
+        latencyHistogram.reset();
+    }
+
+
+    /**
+     * Read all the counters in a single pass over the registered 
+     * {@link RequestInfo}.
+     *
+     * @return a {@link Snapshot} of the counters.
+     */
+    public Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        snapshot.maxTime = deadMaxTime;
+        snapshot.processingTime = deadProcessingTime;
+        snapshot.requestCount = deadRequestCount;
+        snapshot.errorCount = deadErrorCount;
+        snapshot.bytesReceived = deadBytesReceived;
+        snapshot.bytesSent = deadBytesSent;
+        snapshot.count2xx = deadCount2xx;
+        snapshot.count3xx = deadCount3xx;
+        snapshot.count4xx = deadCount4xx;
+        snapshot.count5xx = deadCount5xx;
+        snapshot.countOther = deadCountOther;
+        snapshot.count200 = deadCount200;
+        snapshot.count302 = deadCount302;
+        snapshot.count304 = deadCount304;
+        snapshot.count400 = deadCount400;
+        snapshot.count401 = deadCount401;
+        snapshot.count403 = deadCount403;
+        snapshot.count404 = deadCount404;
+        snapshot.count503 = deadCount503;
+        for (RequestInfo rp: processors) {
+            if (snapshot.maxTime < rp.getMaxTime()) {
+                snapshot.maxTime = rp.getMaxTime();
+            }
+            snapshot.processingTime += rp.getProcessingTime();
+            snapshot.requestCount += rp.getRequestCount();
+            snapshot.errorCount += rp.getErrorCount();
+            snapshot.bytesReceived += rp.getBytesReceived();
+            snapshot.bytesSent += rp.getBytesSent();
+            snapshot.count2xx += rp.getCount2xx();
+            snapshot.count3xx += rp.getCount3xx();
+            snapshot.count4xx += rp.getCount4xx();
+            snapshot.count5xx += rp.getCount5xx();
+            snapshot.countOther += rp.getCountOther();
+            snapshot.count200 += rp.getCount200();
+            snapshot.count302 += rp.getCount302();
+            snapshot.count304 += rp.getCount304();
+            snapshot.count400 += rp.getCount400();
+            snapshot.count401 += rp.getCount401();
+            snapshot.count403 += rp.getCount403();
+            snapshot.count404 += rp.getCount404();
+            snapshot.count503 += rp.getCount503();
+        }
+        snapshot.countOpenConnections = countOpenConnections.get();
+        snapshot.maxOpenConnections = maxOpenConnections.get();
+        return snapshot;
+    }
+
+
+    /**
+     * Values of the request counters, see {@link #snapshot}.
+     */
+    public static class Snapshot {
+        private long maxTime;
+        private long processingTime;
+        private long requestCount;
+        private long errorCount;
+        private long bytesReceived;
+        private long bytesSent;
+        private long count2xx;
+        private long count3xx;
+        private long count4xx;
+        private long count5xx;
+        private long countOther;
+        private long count200;
+        private long count302;
+        private long count304;
+        private long count400;
+        private long count401;
+        private long count403;
+        private long count404;
+        private long count503;
+        private long countOpenConnections;
+        private long maxOpenConnections;
+
+        Snapshot() {
+        }
+
+        public long getMaxTime() {
+            return maxTime;
+        }
+
+        public long getProcessingTime() {
+            return processingTime;
+        }
+
+        public long getRequestCount() {
+            return requestCount;
+        }
+
+        public long getErrorCount() {
+            return errorCount;
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        public long getCount2xx() {
+            return count2xx;
+        }
+
+        public long getCount3xx() {
+            return count3xx;
+        }
+
+        public long getCount4xx() {
+            return count4xx;
+        }
+
+        public long getCount5xx() {
+            return count5xx;
+        }
+
+        public long getCountOther() {
+            return countOther;
+        }
+
+        public long getCount200() {
+            return count200;
+        }
+
+        public long getCount302() {
+            return count302;
+        }
+
+        public long getCount304() {
+            return count304;
+        }
+
+        public long getCount400() {
+            return count400;
+        }
+
+        public long getCount401() {
+            return count401;
+        }
+
+        public long getCount403() {
+            return count403;
+        }
+
+        public long getCount404() {
+            return count404;
+        }
+
+        public long getCount503() {
+            return count503;
+        }
+
+        public long getCountOpenConnections() {
+            return countOpenConnections;
+        }
+
+        public long getMaxOpenConnections() {
+            return maxOpenConnections;
+        }
     }
 }
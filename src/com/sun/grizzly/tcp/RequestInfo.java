@@ -282,6 +282,10 @@ public class RequestInfo  {
             errorCount++;
         }
 
+        if (global != null && req.getStartTimeNanos() != 0) {
+            global.getLatencyHistogram().record(
+                    (System.nanoTime() - req.getStartTimeNanos()) / 1000);
+        }
         long t0=req.getStartTime();
         long t1=System.currentTimeMillis();
 
@@ -41,6 +41,8 @@ package com.sun.grizzly.tcp;
 
 import com.sun.grizzly.util.LoggerUtils;
 import com.sun.grizzly.util.buf.ByteChunk;
+import com.sun.grizzly.util.http.ByteRanges;
+import com.sun.grizzly.util.http.FastHttpDateFormat;
 import com.sun.grizzly.util.http.HtmlHelper;
 import java.io.File;
 import java.io.FileInputStream;
@@ -186,45 +188,80 @@ public class StaticResourcesAdapter implements Adapter {
             }        
             res.setStatus(200);
 
+            String contentType = null;
             int dot=uri.lastIndexOf(".");
             if( dot > 0 ) {
                 String ext=uri.substring(dot+1);
-                String ct= MimeType.get(ext);
-                if( ct!=null) {
-                    res.setContentType(ct);
-                }
+                contentType = MimeType.get(ext);
             } else {
-                res.setContentType(MimeType.get("html"));
+                contentType = MimeType.get("html");
+            }
+            if( contentType!=null) {
+                res.setContentType(contentType);
             }
 
             long length = resource.length();
-            res.setContentLengthLong(length);    
+            String lastModified = 
+                    FastHttpDateFormat.formatDate(resource.lastModified(), null);
+            res.setHeader("Last-Modified", lastModified);
+            res.setHeader("Accept-Ranges", "bytes");
+            
+            long[] ranges = null;
+            // Ranges are only honoured if the If-Range validator, when
+            // present, is the current Last-Modified date.
+            String range = req.getHeader("Range");
+            String ifRange = req.getHeader("If-Range");
+            if (range != null 
+                    && (ifRange == null || lastModified.equals(ifRange.trim()))) {
+                ranges = ByteRanges.parse(range, length);
+            }
+            
+            if (ranges == ByteRanges.UNSATISFIABLE) {
+                res.setStatus(416);
+                res.setMessage("Requested Range Not Satisfiable");
+                res.setHeader("Content-Range", 
+                        ByteRanges.unsatisfiedContentRange(length));
+                res.setContentLength(0);
+                res.sendHeaders();
+                return;
+            } else if (ranges != null) {
+                res.setStatus(206);
+                res.setMessage("Partial Content");
+                if (ranges.length == 2) {
+                    res.setHeader("Content-Range", ByteRanges.contentRange(
+                            ranges[0], ranges[1], length));
+                    res.setContentLengthLong(ranges[1] - ranges[0] + 1);
+                } else {
+                    res.setContentType(ByteRanges.MULTIPART_CONTENT_TYPE);
+                    res.setContentLengthLong(ByteRanges.multipartLength(
+                            ranges, contentType, length));
+                }
+            } else {
+                res.setContentLengthLong(length);    
+            }
 
             // Send the header, and flush the bytes as we will now move to use
             // send file.
             res.sendHeaders();
 
             fis = new FileInputStream(resource);
-            OutputBuffer outputBuffer = res.getOutputBuffer();
-
-            if (useSendFile &&
-                    (outputBuffer instanceof FileOutputBuffer) &&
-                    ((FileOutputBuffer) outputBuffer).isSupportFileSend()) {
-                res.flush();
-         
-                long nWrite = 0;
-                while (nWrite < length) {
-                    nWrite += ((FileOutputBuffer) outputBuffer).
-                            sendFile(fis.getChannel(), nWrite, length - nWrite);
-                }    
+            if (ranges == null) {
+                sendResource(fis, res, 0, length);
+            } else if (ranges.length == 2) {
+                sendResource(fis, res, ranges[0], ranges[1] - ranges[0] + 1);
             } else {
-                byte b[] = new byte[8192];
                 ByteChunk chunk = new ByteChunk();
-                int rd = 0;
-                while ((rd = fis.read(b)) > 0) {
-                    chunk.setBytes(b, 0, rd);
+                for (int i = 0; i < ranges.length; i += 2) {
+                    byte[] partHeader = ByteRanges.partHeader(contentType, 
+                            ranges[i], ranges[i + 1], length).getBytes();
+                    chunk.setBytes(partHeader, 0, partHeader.length);
                     res.doWrite(chunk);
-                }   
+                    sendResource(fis, res, ranges[i], 
+                            ranges[i + 1] - ranges[i] + 1);
+                }
+                byte[] end = ByteRanges.MULTIPART_END.getBytes();
+                chunk.setBytes(end, 0, end.length);
+                res.doWrite(chunk);
             }
         } finally {
             if (fis != null){
@@ -236,6 +273,46 @@ public class StaticResourcesAdapter implements Adapter {
     }    
 
 
+    /**
+     * Send <tt>length</tt> bytes of a resource, starting at 
+     * <tt>position</tt>, using send file when supported.
+     * 
+     * @param fis the resource {@link FileInputStream}
+     * @param res the {@link Response}
+     * @param position the position of the first byte to send
+     * @param length the number of bytes to send
+     * @throws java.io.IOException
+     */
+    protected void sendResource(FileInputStream fis, Response<?> res, 
+            long position, long length) throws IOException {
+        OutputBuffer outputBuffer = res.getOutputBuffer();
+
+        if (useSendFile &&
+                (outputBuffer instanceof FileOutputBuffer) &&
+                ((FileOutputBuffer) outputBuffer).isSupportFileSend()) {
+            res.flush();
+
+            long nWrite = 0;
+            while (nWrite < length) {
+                nWrite += ((FileOutputBuffer) outputBuffer).sendFile(
+                        fis.getChannel(), position + nWrite, length - nWrite);
+            }    
+        } else {
+            fis.getChannel().position(position);
+            byte b[] = new byte[8192];
+            ByteChunk chunk = new ByteChunk();
+            long remaining = length;
+            int rd = 0;
+            while (remaining > 0 && (rd = fis.read(b, 0, 
+                    (int) Math.min(b.length, remaining))) > 0) {
+                chunk.setBytes(b, 0, rd);
+                res.doWrite(chunk);
+                remaining -= rd;
+            }   
+        }
+    }
+
+
     /**
      * Customize the error pahe 
      * @param req The {@link Request} object
@@ -0,0 +1,738 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.tcp.http11;
+
+import com.sun.grizzly.util.LoggerUtils;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Default {@link SessionManager}. Sessions are spread over lock striped 
+ * segments so concurrent lookups of different sessions don't contend, and
+ * expire using a hashed timer wheel so every tick only visits the sessions
+ * due at that tick instead of scanning them all. When <tt>maxSessions</tt> 
+ * is set, the least recently used session of a full segment is evicted.
+ * When a {@link SessionStore} is configured, sessions idle for longer than
+ * <tt>passivationThreshold</tt> are moved to the store and activated back
+ * on their next lookup.
+ */
+public class DefaultSessionManager implements SessionManager {
+    
+    private final static Logger logger = LoggerUtils.getLogger();
+    
+    
+    /**
+     * Number of segments. Must be a power of two.
+     */
+    private final static int SEGMENTS = 16;
+    
+    
+    /**
+     * Number of timer wheel buckets. Must be a power of two.
+     */
+    private final static int WHEEL_SIZE = 512;
+    
+    
+    /**
+     * The timer wheel tick, in milliseconds.
+     */
+    private final static long TICK = 1000;
+    
+    
+    /**
+     * The segments holding the sessions, in access order.
+     */
+    private final Segment[] segments = new Segment[SEGMENTS];
+    
+    
+    /**
+     * The timer wheel buckets.
+     */
+    private final ArrayList<ConcurrentLinkedQueue<GrizzlySession>> wheel = 
+            new ArrayList<ConcurrentLinkedQueue<GrizzlySession>>(WHEEL_SIZE);
+    
+    
+    /**
+     * The last tick processed by the timer wheel.
+     */
+    private volatile long currentTick = 0;
+    
+    
+    /**
+     * The time the timer wheel started.
+     */
+    private final long startTime = System.currentTimeMillis();
+    
+    
+    /**
+     * Maximum number of sessions, or -1 if unbounded.
+     */
+    private volatile int maxSessions = -1;
+    
+    
+    /**
+     * The store receiving idle sessions, or null.
+     */
+    private volatile SessionStore sessionStore;
+    
+    
+    /**
+     * Idle time, in milliseconds, after which a session is passivated, 
+     * or -1 to keep sessions in memory.
+     */
+    private volatile long passivationThreshold = -1;
+    
+    
+    /**
+     * Session identifier generator.
+     */
+    private final Random random = new Random();
+    
+    
+    /**
+     * Number of sessions currently stored.
+     */
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    
+    
+    /**
+     * Number of sessions created.
+     */
+    private final AtomicLong createdSessions = new AtomicLong();
+    
+    
+    /**
+     * Number of sessions expired.
+     */
+    private final AtomicLong expiredSessions = new AtomicLong();
+    
+    
+    /**
+     * Number of sessions evicted because <tt>maxSessions</tt> was reached.
+     */
+    private final AtomicLong evictedSessions = new AtomicLong();
+    
+    
+    /**
+     * Number of sessions moved to the {@link SessionStore}.
+     */
+    private final AtomicLong passivatedSessions = new AtomicLong();
+    
+    
+    /**
+     * Number of sessions loaded back from the {@link SessionStore}.
+     */
+    private final AtomicLong activatedSessions = new AtomicLong();
+    
+    
+    /**
+     * Scheduled Thread advancing the timer wheel.
+     */
+    private final ScheduledThreadPoolExecutor sessionExpirer
+        = new ScheduledThreadPoolExecutor(1, new ThreadFactory(){
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r,"Grizzly-SessionExpirer");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+    
+    public DefaultSessionManager() {
+        for (int i = 0; i < SEGMENTS; i++){
+            segments[i] = new Segment();
+        }
+        
+        for (int i = 0; i < WHEEL_SIZE; i++){
+            wheel.add(new ConcurrentLinkedQueue<GrizzlySession>());
+        }
+        
+        sessionExpirer.scheduleAtFixedRate(new Runnable(){
+            public void run(){
+                advance(System.currentTimeMillis());
+            }
+        },TICK,TICK, TimeUnit.MILLISECONDS);
+    }
+    
+    
+    // ---------------------------------------------------------------------//
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    public GrizzlySession getSession(String id) {
+        if (id == null) return null;
+        
+        long currentTime = System.currentTimeMillis();
+        Segment segment = segmentFor(id);
+        GrizzlySession session;
+        boolean activated = false;
+        segment.lock();
+        try{
+            session = segment.sessions.get(id);
+            if (session == null && sessionStore != null){
+                session = activate(id, currentTime);
+                if (session != null){
+                    segment.sessions.put(id, session);
+                    activated = true;
+                }
+            }
+            
+            // Updated under the lock so a passivation in progress sees it.
+            if (session != null && !isExpired(session, currentTime)){
+                session.setTimestamp(currentTime);
+            }
+        } finally {
+            segment.unlock();
+        }
+        
+        if (activated){
+            activeSessions.incrementAndGet();
+            activatedSessions.incrementAndGet();
+        }
+        
+        if (session == null || !session.isValid()) return null;
+        
+        if (isExpired(session, currentTime)){
+            expire(session);
+            return null;
+        }
+        
+        schedule(session);
+        return session;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    public GrizzlySession createSession(String id) {
+        GrizzlySession session;
+        if (id != null){
+            session = new GrizzlySession(id);
+            session.setTimestamp(System.currentTimeMillis());
+            store(session, true);
+        } else {
+            do {
+                id = String.valueOf(Math.abs(random.nextLong()));
+                session = new GrizzlySession(id);
+                session.setTimestamp(System.currentTimeMillis());
+            } while (!store(session, false));
+        }
+        createdSessions.incrementAndGet();
+        schedule(session);
+        return session;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    public GrizzlySession removeSession(String id) {
+        if (id == null) return null;
+        
+        Segment segment = segmentFor(id);
+        GrizzlySession session;
+        segment.lock();
+        try{
+            session = segment.sessions.remove(id);
+        } finally {
+            segment.unlock();
+        }
+        
+        if (session != null){
+            activeSessions.decrementAndGet();
+            session.setIsValid(false);
+        }
+        
+        SessionStore store = sessionStore;
+        if (store != null){
+            store.remove(id);
+        }
+        return session;
+    }
+    
+    
+    /**
+     * Move all the sessions to the {@link SessionStore}, if configured, 
+     * so they survive a restart.
+     */
+    public void passivateAll(){
+        SessionStore store = sessionStore;
+        if (store == null) return;
+        
+        for (Segment segment: segments){
+            ArrayList<GrizzlySession> all;
+            segment.lock();
+            try{
+                all = new ArrayList<GrizzlySession>(segment.sessions.values());
+            } finally {
+                segment.unlock();
+            }
+            
+            for (GrizzlySession session: all){
+                passivate(store, segment, session);
+            }
+        }
+    }
+    
+    
+    /**
+     * Stop expiring sessions.
+     */
+    public void destroy(){
+        sessionExpirer.shutdownNow();
+    }
+    
+    
+    // ---------------------------------------------------------------------//
+    
+    
+    /**
+     * Store the session in its segment, evicting the least recently used 
+     * session if the segment is full.
+     * @param session the session to store.
+     * @param replace replace an existing session with the same identifier.
+     * @return false if the identifier was already used and 
+     *         <tt>replace</tt> is false.
+     */
+    private boolean store(GrizzlySession session, boolean replace){
+        String id = session.getIdInternal();
+        Segment segment = segmentFor(id);
+        GrizzlySession previous;
+        GrizzlySession eldest = null;
+        segment.lock();
+        try{
+            if (!replace && segment.sessions.containsKey(id)){
+                return false;
+            }
+            
+            session.sessionManager = this;
+            previous = segment.sessions.put(id, session);
+            int max = maxSessions;
+            if (previous == null && max > 0 
+                    && segment.sessions.size() > segmentCapacity(max)){
+                Iterator<GrizzlySession> i = 
+                        segment.sessions.values().iterator();
+                eldest = i.next();
+                i.remove();
+            }
+        } finally {
+            segment.unlock();
+        }
+        
+        if (previous != null){
+            previous.setIsValid(false);
+        } else if (eldest != null){
+            eldest.setIsValid(false);
+            evictedSessions.incrementAndGet();
+        } else {
+            activeSessions.incrementAndGet();
+        }
+        return true;
+    }
+    
+    
+    /**
+     * Queue the session in the timer wheel bucket of the tick it expires 
+     * at, unless it is already queued or never expires. Invoked again by
+     * the session when its timeout is set.
+     */
+    void schedule(GrizzlySession session){
+        if (session.getSessionTimeout() <= 0 
+                || session.sessionManager != this) return;
+        
+        if (session.isScheduled.compareAndSet(false, true)){
+            wheel.get((int)(deadline(session) & (WHEEL_SIZE - 1)))
+                    .offer(session);
+        }
+    }
+    
+    
+    /**
+     * Return the tick the session expires at, never earlier than the next 
+     * tick.
+     */
+    private long deadline(GrizzlySession session){
+        long tick = (session.getTimestamp() + session.getSessionTimeout()
+                - startTime) / TICK + 1;
+        return Math.max(tick, currentTick + 1);
+    }
+    
+    
+    /**
+     * Process all the ticks elapsed since the last call.
+     */
+    private void advance(long currentTime){
+        long tick = (currentTime - startTime) / TICK;
+        while (currentTick < tick){
+            currentTick++;
+            expire(currentTick, currentTime);
+        }
+        
+        SessionStore store = sessionStore;
+        if (store == null) return;
+        
+        long threshold = passivationThreshold;
+        if (threshold > 0){
+            passivateIdle(store, currentTime, threshold);
+        }
+        
+        if ((tick & (WHEEL_SIZE - 1)) == 0){
+            store.purge(currentTime);
+        }
+    }
+    
+    
+    /**
+     * Passivate the sessions idle for longer than <tt>threshold</tt>. 
+     * Segments are in access order so only their idle heads are visited.
+     */
+    private void passivateIdle(SessionStore store, long currentTime, 
+            long threshold){
+        for (Segment segment: segments){
+            ArrayList<GrizzlySession> idle = null;
+            segment.lock();
+            try{
+                for (GrizzlySession session: segment.sessions.values()){
+                    if (currentTime - session.getTimestamp() <= threshold){
+                        break;
+                    }
+                    if (idle == null){
+                        idle = new ArrayList<GrizzlySession>();
+                    }
+                    idle.add(session);
+                }
+            } finally {
+                segment.unlock();
+            }
+            
+            if (idle == null) continue;
+            
+            for (GrizzlySession session: idle){
+                passivate(store, segment, session);
+            }
+        }
+    }
+    
+    
+    /**
+     * Save a session in the store and release it, unless it has been 
+     * accessed while being saved. Sessions that can't be saved stay in 
+     * memory, and aren't saved again until their attributes change.
+     */
+    private void passivate(SessionStore store, Segment segment, 
+            GrizzlySession session){
+        if (!session.isValid() || !session.isPassivatable) return;
+        
+        long timestamp = session.getTimestamp();
+        try{
+            store.save(session);
+        } catch (IOException ex){
+            session.isPassivatable = false;
+            if (logger.isLoggable(Level.FINE)){
+                logger.log(Level.FINE, "Unable to passivate session " 
+                        + session.getIdInternal(), ex);
+            }
+            return;
+        }
+        
+        String id = session.getIdInternal();
+        boolean removed = false;
+        segment.lock();
+        try{
+            if (segment.sessions.get(id) == session 
+                    && session.getTimestamp() == timestamp){
+                segment.sessions.remove(id);
+                removed = true;
+            }
+        } finally {
+            segment.unlock();
+        }
+        
+        if (removed){
+            session.setIsValid(false);
+            activeSessions.decrementAndGet();
+            passivatedSessions.incrementAndGet();
+        } else {
+            store.remove(id);
+        }
+    }
+    
+    
+    /**
+     * Load a session from the store. Must be called with the session's 
+     * segment locked.
+     */
+    private GrizzlySession activate(String id, long currentTime){
+        GrizzlySession session;
+        try{
+            session = sessionStore.load(id);
+        } catch (IOException ex){
+            if (logger.isLoggable(Level.FINE)){
+                logger.log(Level.FINE, "Unable to activate session " + id, ex);
+            }
+            return null;
+        }
+        
+        if (session != null && isExpired(session, currentTime)){
+            expiredSessions.incrementAndGet();
+            return null;
+        }
+        if (session != null){
+            session.sessionManager = this;
+        }
+        return session;
+    }
+    
+    
+    /**
+     * Expire the sessions of a bucket. Sessions accessed since they were 
+     * queued are moved to the bucket of their new deadline.
+     */
+    private void expire(long tick, long currentTime){
+        int index = (int)(tick & (WHEEL_SIZE - 1));
+        ConcurrentLinkedQueue<GrizzlySession> bucket = wheel.get(index);
+        ArrayList<GrizzlySession> requeue = null;
+        GrizzlySession session;
+        while ((session = bucket.poll()) != null){
+            if (!session.isValid() || session.getSessionTimeout() <= 0){
+                session.isScheduled.set(false);
+                continue;
+            }
+            
+            if (isExpired(session, currentTime)){
+                session.isScheduled.set(false);
+                expire(session);
+                continue;
+            }
+            
+            long deadline = deadline(session);
+            int next = (int)(deadline & (WHEEL_SIZE - 1));
+            if (next == index){
+                if (requeue == null){
+                    requeue = new ArrayList<GrizzlySession>();
+                }
+                requeue.add(session);
+            } else {
+                wheel.get(next).offer(session);
+            }
+        }
+        
+        if (requeue != null){
+            bucket.addAll(requeue);
+        }
+    }
+    
+    
+    /**
+     * Remove and invalidate an expired session.
+     */
+    private void expire(GrizzlySession session){
+        String id = session.getIdInternal();
+        Segment segment = segmentFor(id);
+        boolean removed = false;
+        segment.lock();
+        try{
+            if (segment.sessions.get(id) == session){
+                segment.sessions.remove(id);
+                removed = true;
+            }
+        } finally {
+            segment.unlock();
+        }
+        
+        session.setIsValid(false);
+        if (removed){
+            activeSessions.decrementAndGet();
+            expiredSessions.incrementAndGet();
+        }
+    }
+    
+    
+    private boolean isExpired(GrizzlySession session, long currentTime){
+        long timeout = session.getSessionTimeout();
+        return timeout > 0 && currentTime - session.getTimestamp() > timeout;
+    }
+    
+    
+    private Segment segmentFor(String id){
+        int h = id.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENTS - 1)];
+    }
+    
+    
+    private static int segmentCapacity(int max){
+        return Math.max(1, (max + SEGMENTS - 1) / SEGMENTS);
+    }
+    
+    
+    // ---------------------------------------------------------------------//
+    
+    
+    /**
+     * Return the maximum number of sessions, or -1 if unbounded.
+     */
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    
+    /**
+     * Set the maximum number of sessions, or -1 for unbounded. The limit
+     * is enforced per segment, so it is approximate.
+     */
+    public void setMaxSessions(int maxSessions) {
+        this.maxSessions = maxSessions;
+    }
+    
+    
+    /**
+     * Return the {@link SessionStore} receiving idle sessions, or null.
+     */
+    public SessionStore getSessionStore() {
+        return sessionStore;
+    }
+
+    
+    /**
+     * Set the {@link SessionStore} receiving idle sessions, or null to keep
+     * all sessions in memory.
+     */
+    public void setSessionStore(SessionStore sessionStore) {
+        this.sessionStore = sessionStore;
+    }
+    
+    
+    /**
+     * Return the idle time, in milliseconds, after which a session is 
+     * passivated, or -1.
+     */
+    public long getPassivationThreshold() {
+        return passivationThreshold;
+    }
+
+    
+    /**
+     * Set the idle time, in milliseconds, after which a session is 
+     * passivated, or -1 to passivate only on {@link #passivateAll}.
+     */
+    public void setPassivationThreshold(long passivationThreshold) {
+        this.passivationThreshold = passivationThreshold;
+    }
+    
+    
+    /**
+     * Return the number of sessions currently stored.
+     */
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+    
+    
+    /**
+     * Return the number of sessions created.
+     */
+    public long getCreatedSessions() {
+        return createdSessions.get();
+    }
+    
+    
+    /**
+     * Return the number of sessions expired.
+     */
+    public long getExpiredSessions() {
+        return expiredSessions.get();
+    }
+    
+    
+    /**
+     * Return the number of sessions evicted because 
+     * <tt>maxSessions</tt> was reached.
+     */
+    public long getEvictedSessions() {
+        return evictedSessions.get();
+    }
+    
+    
+    /**
+     * Return the number of sessions moved to the {@link SessionStore}.
+     */
+    public long getPassivatedSessions() {
+        return passivatedSessions.get();
+    }
+    
+    
+    /**
+     * Return the number of sessions loaded back from the 
+     * {@link SessionStore}.
+     */
+    public long getActivatedSessions() {
+        return activatedSessions.get();
+    }
+    
+    
+    // ---------------------------------------------------------------------//
+    
+    
+    /**
+     * A lock protecting an access ordered map of sessions.
+     */
+    private final static class Segment extends ReentrantLock {
+        
+        private static final long serialVersionUID = 1L;
+        
+        final LinkedHashMap<String,GrizzlySession> sessions = 
+                new LinkedHashMap<String,GrizzlySession>(16, 0.75f, true);
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.tcp.http11;
+
+import com.sun.grizzly.tcp.Request;
+import com.sun.grizzly.util.buf.MessageBytes;
+import com.sun.grizzly.util.http.KnownHeader;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * {@link InternalInputBuffer} which parses the request line and headers by
+ * scanning the bytes already buffered for the next delimiter, refilling
+ * only when the buffer is exhausted. Header values are referenced in place
+ * (bytes are only moved for folded or malformed lines) and well-known
+ * header names are resolved to a shared {@link KnownHeader} name, so no
+ * String is created until the application asks for one.
+ */
+public class FastInternalInputBuffer extends InternalInputBuffer {
+
+    public FastInternalInputBuffer(Request request, int headerBufferSize) {
+        super(request, headerBufferSize);
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Read the request line.
+     */
+    @Override
+    public void parseRequestLine() throws IOException {
+        // Skip blank lines
+        byte chr;
+        while (true) {
+            ensureAvailable();
+            chr = buf[pos];
+            if (chr != Constants.CR && chr != Constants.LF) {
+                break;
+            }
+            pos++;
+        }
+
+        // Method name is always US-ASCII
+        int start = pos;
+        while (true) {
+            final byte[] b = buf;
+            final int limit = lastValid;
+            int p = pos;
+            while (p < limit && b[p] != Constants.SP && b[p] != Constants.HT) {
+                p++;
+            }
+            pos = p;
+            if (p < limit) {
+                break;
+            }
+            ensureAvailable();
+        }
+        request.method().setBytes(buf, start, pos - start);
+        pos++;
+        skipSpaces();
+
+        // Reading the URI
+        start = pos;
+        int questionPos = -1;
+        boolean eol;
+        while (true) {
+            final byte[] b = buf;
+            final int limit = lastValid;
+            int p = pos;
+            chr = 0;
+            for (; p < limit; p++) {
+                chr = b[p];
+                if (chr <= Constants.SP && (chr == Constants.SP
+                        || chr == Constants.HT || chr == Constants.CR
+                        || chr == Constants.LF)) {
+                    break;
+                } else if (chr == Constants.QUESTION && questionPos == -1) {
+                    questionPos = p;
+                }
+            }
+            pos = p;
+            if (p < limit) {
+                // HTTP/0.9 style request
+                eol = chr == Constants.CR || chr == Constants.LF;
+                break;
+            }
+            ensureAvailable();
+        }
+        end = pos;
+
+        request.unparsedURI().setBytes(buf, start, end - start);
+        if (questionPos >= 0) {
+            request.queryString().setBytes(buf, questionPos + 1,
+                                           end - questionPos - 1);
+            request.requestURI().setBytes(buf, start, questionPos - start);
+        } else {
+            request.requestURI().setBytes(buf, start, end - start);
+        }
+        pos++;
+        skipSpaces();
+
+        // Reading the protocol, always US-ASCII
+        start = pos;
+        end = 0;
+        if (!eol) {
+            end = -1;
+            while (true) {
+                final byte[] b = buf;
+                final int limit = lastValid;
+                int p = pos;
+                for (; p < limit; p++) {
+                    chr = b[p];
+                    if (chr == Constants.LF) {
+                        break;
+                    } else if (chr == Constants.CR && end == -1) {
+                        end = p;
+                    }
+                }
+                pos = p;
+                if (p < limit) {
+                    break;
+                }
+                ensureAvailable();
+            }
+            if (end == -1) {
+                end = pos;
+            }
+            pos++;
+        }
+
+        if ((end - start) > 0) {
+            request.protocol().setBytes(buf, start, end - start);
+        } else {
+            request.protocol().setString("");
+        }
+    }
+
+
+    /**
+     * Parse an HTTP header.
+     *
+     * @return false after reading a blank line (which indicates that the
+     * HTTP header parsing is done
+     */
+    @Override
+    public boolean parseHeader() throws IOException {
+        // Check for blank line
+        byte chr;
+        while (true) {
+            ensureAvailable();
+            chr = buf[pos];
+            if (chr == Constants.LF) {
+                pos++;
+                return false;
+            } else if (chr != Constants.CR) {
+                break;
+            }
+            pos++;
+        }
+
+        // Header name is always US-ASCII
+        int start = pos;
+        while (true) {
+            final byte[] b = buf;
+            final int limit = lastValid;
+            int p = pos;
+            for (; p < limit; p++) {
+                chr = b[p];
+                if (chr == Constants.COLON) {
+                    break;
+                } else if (chr >= Constants.A && chr <= Constants.Z) {
+                    b[p] = (byte) (chr - Constants.LC_OFFSET);
+                }
+            }
+            pos = p;
+            if (p < limit) {
+                break;
+            }
+            ensureAvailable();
+        }
+
+        MessageBytes headerValue;
+        KnownHeader knownHeader = KnownHeader.lookup(buf, start, pos - start);
+        if (knownHeader != null) {
+            headerValue = headers.addValue(knownHeader);
+        } else {
+            headerValue = headers.addValue(buf, start, pos - start);
+        }
+        pos++;
+        skipSpaces();
+
+        // Reading the header value until the end of the line
+        start = pos;
+        int firstCR = -1;
+        while (true) {
+            final byte[] b = buf;
+            final int limit = lastValid;
+            int p = pos;
+            for (; p < limit; p++) {
+                chr = b[p];
+                if (chr == Constants.LF) {
+                    break;
+                } else if (chr == Constants.CR && firstCR == -1) {
+                    firstCR = p;
+                }
+            }
+            pos = p;
+            if (p < limit) {
+                break;
+            }
+            ensureAvailable();
+        }
+
+        int realPos = pos++;
+        while (realPos > start && (buf[realPos - 1] == Constants.CR
+                || buf[realPos - 1] == Constants.SP)) {
+            realPos--;
+        }
+
+        // CR are not part of the value
+        if (firstCR != -1 && firstCR < realPos) {
+            int lastSignificantChar = start;
+            int to = realPos;
+            realPos = start;
+            for (int i = start; i < to; i++) {
+                chr = buf[i];
+                if (chr != Constants.CR) {
+                    buf[realPos++] = chr;
+                    if (chr != Constants.SP) {
+                        lastSignificantChar = realPos;
+                    }
+                }
+            }
+            realPos = lastSignificantChar;
+        }
+
+        // If the next line starts with a LWS, then it's a multiline header
+        while (true) {
+            ensureAvailable();
+            chr = buf[pos];
+            if (chr != Constants.SP && chr != Constants.HT) {
+                break;
+            }
+
+            // At least one space is inserted between the lines
+            buf[realPos++] = chr;
+            skipSpaces();
+
+            int lastSignificantChar = realPos;
+            while (true) {
+                ensureAvailable();
+                chr = buf[pos++];
+                if (chr == Constants.LF) {
+                    break;
+                } else if (chr != Constants.CR) {
+                    buf[realPos++] = chr;
+                    if (chr != Constants.SP) {
+                        lastSignificantChar = realPos;
+                    }
+                }
+            }
+            realPos = lastSignificantChar;
+        }
+
+        headerValue.setBytes(buf, start, realPos - start);
+        return true;
+    }
+
+
+    // ------------------------------------------------------ Protected Methods
+
+
+    /**
+     * Make sure at least one byte is available at <tt>pos</tt>.
+     */
+    protected final void ensureAvailable() throws IOException {
+        if (pos >= lastValid && !fill()) {
+            throw new EOFException(sm.getString("iib.eof.error"));
+        }
+    }
+
+
+    /**
+     * Skip SP and HT.
+     */
+    protected final void skipSpaces() throws IOException {
+        while (true) {
+            ensureAvailable();
+            byte chr = buf[pos];
+            if (chr != Constants.SP && chr != Constants.HT) {
+                return;
+            }
+            pos++;
+        }
+    }
+
+
+    /**
+     * Compare the time spent by {@link InternalInputBuffer} and
+     * {@link FastInternalInputBuffer} to parse the same request.
+     * Usage: FastInternalInputBuffer [iterations]
+     */
+    public static void main(String args[]) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        byte[] bytes = ("GET /examples/servlets/index.html?name=value HTTP/1.1\r\n"
+                + "Host: www.example.com\r\n"
+                + "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:10.0) "
+                + "Gecko/20100101 Firefox/10.0\r\n"
+                + "Accept: text/html,application/xhtml+xml,application/xml;"
+                + "q=0.9,*/*;q=0.8\r\n"
+                + "Accept-Language: en-us,en;q=0.5\r\n"
+                + "Accept-Encoding: gzip, deflate\r\n"
+                + "Connection: keep-alive\r\n"
+                + "Cookie: JSESSIONID=2F0C7B1E4A6D8C3B5E9F1A2B3C4D5E6F\r\n"
+                + "X-Custom-Header: some value\r\n"
+                + "\r\n").getBytes();
+
+        for (int i = 0; i < 3; i++) {
+            System.out.println("InternalInputBuffer: " + run(
+                    new InternalInputBuffer(new Request(), 8192),
+                    bytes, iterations) + " ms");
+            System.out.println("FastInternalInputBuffer: " + run(
+                    new FastInternalInputBuffer(new Request(), 8192),
+                    bytes, iterations) + " ms");
+        }
+    }
+
+
+    private static long run(InternalInputBuffer inputBuffer, byte[] bytes,
+            int iterations) throws IOException {
+        ByteArrayInputStream input = new ByteArrayInputStream(bytes);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < iterations; i++) {
+            input.reset();
+            inputBuffer.recycle();
+            inputBuffer.setInputStream(input);
+            inputBuffer.parseRequestLine();
+            inputBuffer.parseHeaders();
+        }
+        return System.currentTimeMillis() - start;
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.tcp.http11;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Map;
+
+/**
+ * {@link SessionStore} saving every session in its own file. Sessions 
+ * saved in the directory survive a restart of the server.
+ */
+public class FileSessionStore implements SessionStore {
+    
+    /**
+     * Extension of the session files.
+     */
+    private final static String EXTENSION = ".session";
+    
+    
+    /**
+     * Longest identifier that fits in a file name once hex encoded.
+     */
+    private final static int MAX_ID_LENGTH = 60;
+    
+    
+    private final static char[] HEX = "0123456789abcdef".toCharArray();
+    
+    
+    /**
+     * The directory holding the session files.
+     */
+    private final File directory;
+    
+    
+    /**
+     * Create a store saving sessions in <tt>directory</tt>. 
+     * @param directory the directory, created if it doesn't exist.
+     * @throws IOException if the directory cannot be created.
+     */
+    public FileSessionStore(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()){
+            throw new IOException("Unable to create " + directory);
+        }
+        this.directory = directory;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    public void save(GrizzlySession session) throws IOException {
+        if (session.getIdInternal().length() > MAX_ID_LENGTH){
+            throw new IOException("Session identifier too long");
+        }
+        
+        // Serialize first so a failure doesn't leave a partial file.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeLong(session.getTimestamp());
+        header.writeLong(session.getSessionTimeout());
+        header.flush();
+        
+        ObjectOutputStream oos = new ObjectOutputStream(bytes);
+        oos.writeUTF(session.getIdInternal());
+        oos.writeInt(session.atttibutes().size());
+        for (Map.Entry<String,Object> entry: 
+                session.atttibutes().entrySet()){
+            oos.writeUTF(entry.getKey());
+            oos.writeObject(entry.getValue());
+        }
+        oos.close();
+        
+        File file = fileFor(session.getIdInternal());
+        File tmp = new File(directory, file.getName() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmp);
+        try{
+            bytes.writeTo(fos);
+        } finally {
+            fos.close();
+        }
+        
+        if (!tmp.renameTo(file)){
+            file.delete();
+            if (!tmp.renameTo(file)){
+                tmp.delete();
+                throw new IOException("Unable to rename " + tmp);
+            }
+        }
+    }
+
+    
+    /**
+     * {@inheritDoc}
+     */
+    public GrizzlySession load(String id) throws IOException {
+        if (id.length() > MAX_ID_LENGTH) return null;
+        
+        File file = fileFor(id);
+        if (!file.isFile()) return null;
+        
+        GrizzlySession session;
+        DataInputStream dis = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try{
+            long timestamp = dis.readLong();
+            long sessionTimeout = dis.readLong();
+            ObjectInputStream ois = new ObjectInputStream(dis);
+            session = new GrizzlySession(ois.readUTF());
+            session.setTimestamp(timestamp);
+            session.setSessionTimeout(sessionTimeout);
+            int count = ois.readInt();
+            for (int i = 0; i < count; i++){
+                session.setAttribute(ois.readUTF(), ois.readObject());
+            }
+        } catch (ClassNotFoundException ex){
+            throw new IOException(ex.getMessage());
+        } finally {
+            dis.close();
+        }
+        
+        if (!id.equals(session.getIdInternal())) return null;
+        
+        // The session is back in memory, unless it couldn't be read.
+        file.delete();
+        return session;
+    }
+
+    
+    /**
+     * {@inheritDoc}
+     */
+    public void remove(String id) {
+        if (id.length() > MAX_ID_LENGTH) return;
+        
+        fileFor(id).delete();
+    }
+
+    
+    /**
+     * {@inheritDoc}
+     */
+    public int purge(long currentTime) {
+        File[] files = directory.listFiles();
+        if (files == null) return 0;
+        
+        int purged = 0;
+        for (File file: files){
+            if (!file.getName().endsWith(EXTENSION)) continue;
+            
+            boolean expired;
+            try{
+                DataInputStream dis = 
+                        new DataInputStream(new FileInputStream(file));
+                try{
+                    long timestamp = dis.readLong();
+                    long sessionTimeout = dis.readLong();
+                    expired = sessionTimeout > 0 
+                            && currentTime - timestamp > sessionTimeout;
+                } finally {
+                    dis.close();
+                }
+            } catch (IOException ex){
+                expired = true;
+            }
+            
+            if (expired && file.delete()){
+                purged++;
+            }
+        }
+        return purged;
+    }
+    
+    
+    /**
+     * Return the directory holding the session files.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+    
+    
+    /**
+     * Return the file of a session. The identifier is hex encoded as it 
+     * may come from the client.
+     */
+    private File fileFor(String id){
+        StringBuilder sb = new StringBuilder(id.length() * 4 
+                + EXTENSION.length());
+        for (int i = 0; i < id.length(); i++){
+            char c = id.charAt(i);
+            sb.append(HEX[(c >> 12) & 0xF]).append(HEX[(c >> 8) & 0xF])
+              .append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+        }
+        return new File(directory, sb.append(EXTENSION).toString());
+    }
+}
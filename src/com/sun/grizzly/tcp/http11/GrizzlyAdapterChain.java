@@ -39,12 +39,15 @@
 package com.sun.grizzly.tcp.http11;
 
 import com.sun.grizzly.tcp.Request;
+import com.sun.grizzly.util.LatencyHistogram;
 import com.sun.grizzly.util.buf.ByteChunk;
 import com.sun.grizzly.util.buf.MessageBytes;
 import com.sun.grizzly.util.buf.UDecoder;
 import com.sun.grizzly.util.http.HttpRequestURIDecoder;
 import com.sun.grizzly.util.http.mapper.Mapper;
 import com.sun.grizzly.util.http.mapper.MappingData;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
@@ -92,6 +95,12 @@ public class GrizzlyAdapterChain extends GrizzlyAdapter{
     private ConcurrentHashMap<GrizzlyAdapter, String[]> adapters = 
             new ConcurrentHashMap<GrizzlyAdapter, String[]>();
 
+    /**
+     * The latency of each mapped {@link GrizzlyAdapter}.
+     */
+    private ConcurrentHashMap<GrizzlyAdapter, LatencyHistogram> latencyHistograms = 
+            new ConcurrentHashMap<GrizzlyAdapter, LatencyHistogram>();
+
     /**
      * Internal {@link Mapper} used to Map request to their associated {@link GrizzlyAdapter}
      */
@@ -103,6 +112,12 @@ public class GrizzlyAdapterChain extends GrizzlyAdapter{
      */
     private final static String LOCAL_HOST="localhost";
 
+
+    /**
+     * The number of request URIs whose mapping is cached.
+     */
+    private final static int MAPPING_CACHE_SIZE = 1024;
+
     /**
      * Use the deprecated mechanism.
      */
@@ -111,6 +126,7 @@ public class GrizzlyAdapterChain extends GrizzlyAdapter{
     
     public GrizzlyAdapterChain(){
         mapper.setDefaultHostName(LOCAL_HOST);
+        mapper.setMappingCacheSize(MAPPING_CACHE_SIZE);
         setHandleStaticResources(false);
         // We will decode it
         setDecodeUrl(false);
@@ -182,7 +198,12 @@ public class GrizzlyAdapterChain extends GrizzlyAdapter{
                     }
                     // We already decoded the URL.
                     adapter.setDecodeUrl(false);
+                    long t0 = System.nanoTime();
                     adapter.service(request.getRequest(), response.getResponse());
+                    LatencyHistogram histogram = latencyHistograms.get(adapter);
+                    if (histogram != null){
+                        histogram.record((System.nanoTime() - t0) / 1000);
+                    }
                 } else {
                     response.getResponse().setStatus(404);
                     customizedErrorPage(req,response.getResponse());
@@ -230,6 +251,7 @@ public class GrizzlyAdapterChain extends GrizzlyAdapter{
             addGrizzlyAdapter(adapter);
         } else {
             adapters.put(adapter,mappings);
+            latencyHistograms.putIfAbsent(adapter, new LatencyHistogram());
             for(String mapping: mappings){   
                 String ctx = getContextPath(mapping);
                 mapper.addContext(LOCAL_HOST, ctx, adapter,
@@ -273,6 +295,7 @@ public class GrizzlyAdapterChain extends GrizzlyAdapter{
     public boolean removeAdapter(GrizzlyAdapter adapter){
         if (adapter == null) throw new IllegalStateException();
         String[] mappings = adapters.remove(adapter);
+        latencyHistograms.remove(adapter);
         if (mappings != null){
             for (String mapping : mappings){
                 String ctx = getContextPath(mapping);
@@ -283,5 +306,23 @@ public class GrizzlyAdapterChain extends GrizzlyAdapter{
 
         return (mappings != null);
     }
-       
+
+
+    /**
+     * Return the histogram of the time, in microseconds, spent in the 
+     * <tt>service</tt> method of each mapped {@link GrizzlyAdapter}.
+     * @return an unmodifiable {@link Map} of {@link LatencyHistogram}
+     */
+    public Map<GrizzlyAdapter, LatencyHistogram> getLatencyHistograms(){
+        return Collections.unmodifiableMap(latencyHistograms);
+    }
+
+
+    /**
+     * Return the mappings of a {@link GrizzlyAdapter}.
+     * @return the mappings, or <tt>null</tt> if not added to this chain.
+     */
+    public String[] getMappings(GrizzlyAdapter adapter){
+        return adapters.get(adapter);
+    }
 }
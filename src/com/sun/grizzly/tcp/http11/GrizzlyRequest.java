@@ -91,12 +91,8 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Random;
 import java.util.TimeZone;
 import java.util.TreeMap;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Wrapper object for the Coyote request.
@@ -141,58 +137,28 @@ public class GrizzlyRequest{
     
     
     /**
-     * Not Good. We need a better mechanism.
-     * TODO: Move Session Management out of here
+     * The {@link SessionManager} shared by all requests.
      */
-    private static Map<String,GrizzlySession> sessions = new
-            HashMap<String, GrizzlySession>();    
+    private static volatile SessionManager sessionManager = 
+            new DefaultSessionManager();
     
     
     /**
-     * Scheduled Thread that clean the cache every XX seconds.
+     * Return the {@link SessionManager} shared by all requests.
      */
-    private static ScheduledThreadPoolExecutor sessionExpirer
-        = new ScheduledThreadPoolExecutor(1, new ThreadFactory(){
-            public Thread newThread(Runnable r) {
-                return new SchedulerThread(r,"Grizzly");
-            }
-        });
-
-
-    /**
-     * Simple daemon thread.
-     */
-    private static class SchedulerThread extends Thread{
-        public SchedulerThread(Runnable r, String name){
-            super(r, name);
-            setDaemon(true);
-        }
+    public static SessionManager getSessionManager() {
+        return sessionManager;
     }
     
     
     /**
-     * That code is far from optimal and needs to be rewrite appropriately. 
-     */ 
-    static{
-        sessionExpirer.scheduleAtFixedRate(new Runnable(){
-            public void run(){
-                long currentTime = System.currentTimeMillis();
-                Iterator<Map.Entry<String,GrizzlySession>> iterator = sessions.entrySet().iterator();
-                Map.Entry<String,GrizzlySession> entry;
-                while (iterator.hasNext()){
-                    entry = iterator.next();
-                    
-                    if (entry.getValue().getSessionTimeout() == -1) continue;
-                    
-                    if (currentTime - entry.getValue().getTimestamp() > 
-                            entry.getValue().getSessionTimeout()){
-                        entry.getValue().setIsValid(false);
-                        iterator.remove();
-                    }
-                }
-            }
-            
-        },5,5, TimeUnit.SECONDS);   
+     * Set the {@link SessionManager} shared by all requests.
+     */
+    public static void setSessionManager(SessionManager sessionManager) {
+        if (sessionManager == null){
+            throw new IllegalArgumentException("sessionManager");
+        }
+        GrizzlyRequest.sessionManager = sessionManager;
     }
 
     
@@ -1224,7 +1190,8 @@ public class GrizzlyRequest{
             return session.isValid();
         }
         
-        GrizzlySession localSession = sessions.put(requestedSessionId,session);
+        GrizzlySession localSession = 
+                sessionManager.getSession(requestedSessionId);
         if ((localSession != null) && localSession.isValid())
             return (true);
         else
@@ -2202,7 +2169,7 @@ public class GrizzlyRequest{
             return (session);
 
         if (requestedSessionId != null) {
-            session = sessions.get(requestedSessionId);
+            session = sessionManager.getSession(requestedSessionId);
             if ((session != null) && !session.isValid())
                 session = null;
             if (session != null) {
@@ -2214,15 +2181,8 @@ public class GrizzlyRequest{
         if (!create)
             return (null);
 
-        if (requestedSessionId != null) {
-            session = new GrizzlySession(requestedSessionId);
-            
-        } else {
-            Random r = new Random();
-            requestedSessionId = String.valueOf(Math.abs(r.nextLong()));
-            session = new GrizzlySession(requestedSessionId);
-        }
-        sessions.put(requestedSessionId,session);
+        session = sessionManager.createSession(requestedSessionId);
+        requestedSessionId = session.getIdInternal();
 
         // Creating a new session cookie based on the newly created session
         if (session != null) {
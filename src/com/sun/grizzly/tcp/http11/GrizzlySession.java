@@ -39,6 +39,7 @@
 package com.sun.grizzly.tcp.http11;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Simple session object used.
@@ -62,19 +63,38 @@ public class GrizzlySession {
     /**
      * Is this Session valid.
      */
-    private boolean isValid = true;
+    private volatile boolean isValid = true;
     
     
     /**
      * Timeout
      */
-    private long sessionTimeout = -1;
+    private volatile long sessionTimeout = -1;
     
     
      /**
-     * Creation time stamp.
+     * Last access time stamp.
      */
-    private long timestamp = -1;
+    private volatile long timestamp = -1;
+    
+    
+    /**
+     * Is this session queued for expiration by its {@link SessionManager}.
+     */
+    final AtomicBoolean isScheduled = new AtomicBoolean();
+    
+    
+    /**
+     * The {@link DefaultSessionManager} expiring this session, or null.
+     */
+    volatile DefaultSessionManager sessionManager;
+    
+    
+    /**
+     * <tt>false</tt> once saving this session in a {@link SessionStore} 
+     * failed, until its attributes change.
+     */
+    volatile boolean isPassivatable = true;
     
     
     
@@ -136,6 +156,7 @@ public class GrizzlySession {
      */
     public void setAttribute(String key, Object value){
         attributes.put(key, value);
+        isPassivatable = true;
     }
     
     
@@ -155,6 +176,7 @@ public class GrizzlySession {
      * @return true if successful.
      */
     public Object removeAttribute(String key){
+        isPassivatable = true;
         return attributes.remove(key);
     }  
     
@@ -183,11 +205,16 @@ public class GrizzlySession {
      */   
     public void setSessionTimeout(long sessionTimeout) {
         this.sessionTimeout = sessionTimeout;
+        DefaultSessionManager manager = sessionManager;
+        if (manager != null){
+            manager.schedule(this);
+        }
     }
 
     
     /**
-     * Return the timespam when this session has been created.
+     * Return the timespam when this session has been created or last 
+     * accessed.
      * @return
      */
     public long getTimestamp() {
@@ -196,8 +223,8 @@ public class GrizzlySession {
 
     
     /**
-     * Set the timespam when this session has been created.
-     * @param timestamp a long representin when the session has been created.
+     * Set the timespam when this session has been created or last accessed.
+     * @param timestamp a long representin when the session has been accessed.
      */   
     public void setTimestamp(long timestamp) {
         this.timestamp = timestamp;
@@ -232,6 +232,17 @@ public class InternalInputBuffer implements InputBuffer {
     }
 
 
+    /**
+     * Return the index following the last valid byte of the internal
+     * buffer. Once the request line has been parsed, the bytes between
+     * the end of the request line and this index are the request headers
+     * read so far.
+     */
+    public int getLastValid() {
+        return lastValid;
+    }
+
+
     /**
      * Add an input filter to the filter library.
      */
@@ -295,6 +306,23 @@ public class InternalInputBuffer implements InputBuffer {
     // --------------------------------------------------------- Public Methods
 
 
+    /**
+     * Return <tt>true</tt> if bytes of a following (pipelined) request are
+     * already buffered, and can be parsed without reading the socket.
+     */
+    public boolean hasBufferedBytes() {
+        if (lastValid > pos) {
+            return true;
+        }
+
+        try {
+            return inputStream != null && inputStream.available() > 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+
     /**
      * Recycle the input buffer. This should be called when closing the 
      * connection.
@@ -0,0 +1,73 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.tcp.http11;
+
+/**
+ * Store the {@link GrizzlySession} used by {@link GrizzlyRequest}. 
+ * Implementations must be thread safe as they are shared by all the 
+ * worker threads.
+ */
+public interface SessionManager {
+
+    /**
+     * Return the valid {@link GrizzlySession} associated with 
+     * <tt>id</tt>, and mark it as accessed.
+     * @param id the session identifier
+     * @return the session, or <tt>null</tt> if there is no valid session 
+     *         with that identifier.
+     */
+    public GrizzlySession getSession(String id);
+
+
+    /**
+     * Create and store a new {@link GrizzlySession}.
+     * @param id the session identifier, or <tt>null</tt> to generate one.
+     * @return the new session.
+     */
+    public GrizzlySession createSession(String id);
+
+
+    /**
+     * Invalidate and remove the {@link GrizzlySession} associated with
+     * <tt>id</tt>.
+     * @param id the session identifier
+     * @return the removed session, or <tt>null</tt>.
+     */
+    public GrizzlySession removeSession(String id);
+}
@@ -0,0 +1,81 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.tcp.http11;
+
+import java.io.IOException;
+
+/**
+ * Secondary storage for idle {@link GrizzlySession}. The 
+ * {@link DefaultSessionManager} passivates idle sessions into the store
+ * to release their heap and activates them back when they are requested.
+ */
+public interface SessionStore {
+
+    /**
+     * Save a session, replacing any previously saved copy.
+     * @param session the session to save.
+     * @throws IOException if the session cannot be saved, for example if
+     *         one of its attributes is not {@link java.io.Serializable}.
+     */
+    public void save(GrizzlySession session) throws IOException;
+
+
+    /**
+     * Load and remove a session from the store.
+     * @param id the session identifier
+     * @return the session, or <tt>null</tt> if not stored.
+     * @throws IOException if the session cannot be read.
+     */
+    public GrizzlySession load(String id) throws IOException;
+
+
+    /**
+     * Remove a session from the store.
+     * @param id the session identifier
+     */
+    public void remove(String id);
+
+
+    /**
+     * Remove the stored sessions that have expired.
+     * @param currentTime the current time, in milliseconds.
+     * @return the number of sessions removed.
+     */
+    public int purge(long currentTime);
+}
@@ -54,10 +54,16 @@
 
 package com.sun.grizzly.tcp.http11.filters;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.StringTokenizer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 
+import com.sun.grizzly.util.ConcurrentLinkedQueuePool;
+import com.sun.grizzly.util.ObjectPool;
 import com.sun.grizzly.util.buf.ByteChunk;
 
 import com.sun.grizzly.tcp.OutputBuffer;
@@ -66,6 +72,12 @@ import com.sun.grizzly.tcp.http11.OutputFilter;
 
 /**
  * Gzip output filter.
+ *
+ * The deflated bytes are written to the next buffer without an intermediate
+ * stream. {@link Deflater}s are pooled and reset between responses instead of
+ * being created, and finalized, for each compressed response. The compression
+ * level and strategy can be set per response mime-type, see 
+ * {@link #setCompressionLevels(String)}.
  * 
  * @author Remy Maucherat
  */
@@ -80,6 +92,33 @@ public class GzipOutputFilter implements OutputFilter {
     protected static final ByteChunk ENCODING = new ByteChunk();
 
 
+    /**
+     * Gzip header: magic number, deflate method, no flag, no time, 
+     * no extra flag, unknown OS.
+     */
+    private static final byte[] GZIP_HEADER = new byte[] {
+        (byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+
+    /**
+     * Size of the deflate output buffer.
+     */
+    protected static final int BUFFER_SIZE = 8192;
+
+
+    /**
+     * Pooled {@link Deflater}s, in nowrap mode as the gzip header and trailer
+     * are written by this filter.
+     */
+    protected static final ObjectPool<Deflater> deflaterPool = 
+        new ConcurrentLinkedQueuePool<Deflater>() {
+            @Override
+            public Deflater newInstance() {
+                return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            }
+        };
+
+
     // ----------------------------------------------------- Static Initializer
 
 
@@ -98,15 +137,151 @@ public class GzipOutputFilter implements OutputFilter {
 
 
     /**
-     * Compression output stream.
+     * The {@link Deflater} of the current response, <tt>null</tt> until
+     * the first write.
+     */
+    protected Deflater deflater = null;
+
+
+    /**
+     * Checksum of the uncompressed bytes.
+     */
+    protected final CRC32 crc = new CRC32();
+
+
+    /**
+     * Deflated bytes, before they are written to the next buffer.
+     */
+    protected final byte[] deflateBuffer = new byte[BUFFER_SIZE];
+
+
+    /**
+     * Chunk wrapping the deflated bytes.
+     */
+    protected final ByteChunk outputChunk = new ByteChunk();
+
+
+    /**
+     * Default compression level.
+     */
+    protected int level = Deflater.DEFAULT_COMPRESSION;
+
+
+    /**
+     * Default compression strategy.
+     */
+    protected int strategy = Deflater.DEFAULT_STRATEGY;
+
+
+    /**
+     * Level and strategy by mime-type, <tt>null</tt> if none is set.
+     */
+    protected HashMap<String, int[]> mimeTypeSettings = null;
+
+
+    /**
+     * Level and strategy of the current response.
+     */
+    protected int responseLevel = level;
+    protected int responseStrategy = strategy;
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    /**
+     * Return the default compression level.
+     */
+    public int getLevel() {
+        return level;
+    }
+
+
+    /**
+     * Set the default compression level, from 
+     * {@link Deflater#NO_COMPRESSION} to {@link Deflater#BEST_COMPRESSION}.
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+
+    /**
+     * Return the default compression strategy.
+     */
+    public int getStrategy() {
+        return strategy;
+    }
+
+
+    /**
+     * Set the default compression strategy, {@link Deflater#DEFAULT_STRATEGY},
+     * {@link Deflater#FILTERED} or {@link Deflater#HUFFMAN_ONLY}.
+     */
+    public void setStrategy(int strategy) {
+        this.strategy = strategy;
+    }
+
+
+    /**
+     * Set the compression level and strategy of a mime-type.
      */
-    protected GZIPOutputStream compressionStream = null;
+    public void setCompressionLevel(String mimeType, int level, int strategy) {
+        if (mimeTypeSettings == null) {
+            mimeTypeSettings = new HashMap<String, int[]>();
+        }
+        mimeTypeSettings.put(mimeType.toLowerCase(), 
+                new int[] { level, strategy });
+    }
 
 
     /**
-     * Fake internal output stream.
+     * Set the compression levels from a comma separated list of 
+     * <tt>mime-type=level</tt> or <tt>mime-type=level/strategy</tt> entries,
+     * where the strategy is <tt>default</tt>, <tt>filtered</tt> or 
+     * <tt>huffman</tt>. The <tt>*</tt> mime-type sets the default level, 
+     * like <tt>application/json=1,text/html=9/filtered,*=6</tt>.
      */
-    protected OutputStream fakeOutputStream = new FakeOutputStream();
+    public void setCompressionLevels(String compressionLevels) {
+        mimeTypeSettings = null;
+        StringTokenizer st = new StringTokenizer(compressionLevels, ",");
+        while (st.hasMoreTokens()) {
+            String token = st.nextToken().trim();
+            int eq = token.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Invalid compression level: " 
+                        + token);
+            }
+            String mimeType = token.substring(0, eq).trim();
+            String value = token.substring(eq + 1).trim();
+            int newStrategy = Deflater.DEFAULT_STRATEGY;
+            int slash = value.indexOf('/');
+            if (slash >= 0) {
+                newStrategy = parseStrategy(value.substring(slash + 1).trim());
+                value = value.substring(0, slash).trim();
+            }
+            int newLevel = Integer.parseInt(value);
+            if ("*".equals(mimeType)) {
+                level = newLevel;
+                strategy = newStrategy;
+            } else {
+                setCompressionLevel(mimeType, newLevel, newStrategy);
+            }
+        }
+    }
+
+
+    private static int parseStrategy(String name) {
+        if ("filtered".equalsIgnoreCase(name)) {
+            return Deflater.FILTERED;
+        } else if ("huffman".equalsIgnoreCase(name)) {
+            return Deflater.HUFFMAN_ONLY;
+        } else if ("default".equalsIgnoreCase(name)) {
+            return Deflater.DEFAULT_STRATEGY;
+        }
+        throw new IllegalArgumentException("Invalid compression strategy: " 
+                + name);
+    }
 
 
     // --------------------------------------------------- OutputBuffer Methods
@@ -119,12 +294,18 @@ public class GzipOutputFilter implements OutputFilter {
      */
     public int doWrite(ByteChunk chunk, Response res)
         throws IOException {
-        if (compressionStream == null) {
-            compressionStream = new GZIPOutputStream(fakeOutputStream);
+        if (deflater == null) {
+            start();
+        }
+        int length = chunk.getLength();
+        if (length > 0) {
+            crc.update(chunk.getBytes(), chunk.getStart(), length);
+            deflater.setInput(chunk.getBytes(), chunk.getStart(), length);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
         }
-        compressionStream.write(chunk.getBytes(), chunk.getStart(), 
-                                chunk.getLength());
-        return chunk.getLength();
+        return length;
     }
 
 
@@ -137,6 +318,24 @@ public class GzipOutputFilter implements OutputFilter {
      * after the response header processing is complete.
      */
     public void setResponse(Response response) {
+        responseLevel = level;
+        responseStrategy = strategy;
+        if (mimeTypeSettings == null || response == null) {
+            return;
+        }
+
+        String contentType = response.getContentType();
+        if (contentType != null) {
+            int semicolon = contentType.indexOf(';');
+            if (semicolon >= 0) {
+                contentType = contentType.substring(0, semicolon).trim();
+            }
+            int[] settings = mimeTypeSettings.get(contentType.toLowerCase());
+            if (settings != null) {
+                responseLevel = settings[0];
+                responseStrategy = settings[1];
+            }
+        }
     }
 
 
@@ -154,10 +353,18 @@ public class GzipOutputFilter implements OutputFilter {
      */
     public long end()
         throws IOException {
-        if (compressionStream == null) {
-            compressionStream = new GZIPOutputStream(fakeOutputStream);
+        if (deflater == null) {
+            start();
         }
-        compressionStream.finish();
+        deflater.finish();
+        while (!deflater.finished()) {
+            deflate();
+        }
+
+        // Trailer: CRC-32 and uncompressed size, little endian
+        writeInt(deflateBuffer, 0, (int) crc.getValue());
+        writeInt(deflateBuffer, 4, (int) deflater.getBytesRead());
+        write(deflateBuffer, 0, 8);
         return ((OutputFilter) buffer).end();
     }
 
@@ -166,13 +373,14 @@ public class GzipOutputFilter implements OutputFilter {
      * Make the filter ready to process the next request.
      */
     public void recycle() {
-        try{
-            compressionStream.close();
-        } catch (IOException ex){
-            ;
+        if (deflater != null) {
+            deflater.reset();
+            deflaterPool.offer(deflater);
+            deflater = null;
         }
-        // Set compression stream to null
-        compressionStream = null;
+        crc.reset();
+        responseLevel = level;
+        responseStrategy = strategy;
     }
 
 
@@ -185,28 +393,114 @@ public class GzipOutputFilter implements OutputFilter {
     }
 
 
-    // ------------------------------------------- FakeOutputStream Inner Class
+    // -------------------------------------------------------- Private Methods
 
 
-    protected class FakeOutputStream
-        extends OutputStream {
-        protected ByteChunk outputChunk = new ByteChunk();
-        protected byte[] singleByteBuffer = new byte[1];
-        public void write(int b)
-            throws IOException {
-            // Shouldn't get used for good performance, but is needed for 
-            // compatibility with Sun JDK 1.4.0
-            singleByteBuffer[0] = (byte) (b & 0xff);
-            outputChunk.setBytes(singleByteBuffer, 0, 1);
-            buffer.doWrite(outputChunk, null);
+    /**
+     * Take a {@link Deflater} from the pool and write the gzip header.
+     */
+    private void start() throws IOException {
+        deflater = deflaterPool.poll();
+        deflater.setLevel(responseLevel);
+        deflater.setStrategy(responseStrategy);
+        crc.reset();
+        write(GZIP_HEADER, 0, GZIP_HEADER.length);
+    }
+
+
+    /**
+     * Deflate the pending input and write the result to the next buffer.
+     */
+    private void deflate() throws IOException {
+        int n = deflater.deflate(deflateBuffer, 0, deflateBuffer.length);
+        if (n > 0) {
+            write(deflateBuffer, 0, n);
+        }
+    }
+
+
+    private void write(byte[] b, int off, int len) throws IOException {
+        outputChunk.setBytes(b, off, len);
+        buffer.doWrite(outputChunk, null);
+    }
+
+
+    private static void writeInt(byte[] b, int off, int i) {
+        b[off] = (byte) i;
+        b[off + 1] = (byte) (i >> 8);
+        b[off + 2] = (byte) (i >> 16);
+        b[off + 3] = (byte) (i >> 24);
+    }
+
+
+    // ------------------------------------------------------------- Benchmark
+
+
+    /**
+     * Compare this filter against a {@link GZIPOutputStream} per response.
+     */
+    public static void main(String args[]) throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        StringBuilder html = new StringBuilder("<html><body><table>");
+        for (int i = 0; i < 200; i++) {
+            json.append("{\"id\":").append(i)
+                .append(",\"name\":\"item").append(i)
+                .append("\",\"tags\":[\"a\",\"b\"],\"price\":")
+                .append(i * 3 / 2.0).append("},");
+            html.append("<tr class=\"row\"><td>").append(i)
+                .append("</td><td>item ").append(i).append("</td></tr>\n");
         }
-        public void write(byte[] b, int off, int len)
-            throws IOException {
-            outputChunk.setBytes(b, off, len);
-            buffer.doWrite(outputChunk, null);
+        json.append("{}]");
+        html.append("</table></body></html>");
+
+        String[] names = { "json", "html" };
+        byte[][] payloads = { json.toString().getBytes("UTF-8"), 
+                              html.toString().getBytes("UTF-8") };
+        final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        // end() casts the next buffer to an OutputFilter.
+        @SuppressWarnings("rawtypes")
+        OutputFilter next = new OutputFilter() {
+            public int doWrite(ByteChunk chunk, Response res) {
+                sink.write(chunk.getBytes(), chunk.getStart(), 
+                        chunk.getLength());
+                return chunk.getLength();
+            }
+            public void setResponse(Response response) {}
+            public void recycle() {}
+            public ByteChunk getEncodingName() { return null; }
+            public void setBuffer(OutputBuffer buffer) {}
+            public long end() { return 0; }
+        };
+
+        int iterations = 20000;
+        for (int p = 0; p < payloads.length; p++) {
+            ByteChunk chunk = new ByteChunk();
+            GzipOutputFilter filter = new GzipOutputFilter();
+            filter.setBuffer(next);
+            for (int round = 0; round < 3; round++) {
+                long t1 = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    sink.reset();
+                    chunk.setBytes(payloads[p], 0, payloads[p].length);
+                    filter.doWrite(chunk, null);
+                    filter.end();
+                    filter.recycle();
+                }
+                long t2 = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    sink.reset();
+                    GZIPOutputStream gzip = new GZIPOutputStream(sink);
+                    gzip.write(payloads[p]);
+                    gzip.finish();
+                    gzip.close();
+                }
+                long t3 = System.nanoTime();
+                System.out.println(names[p] + " (" + payloads[p].length 
+                        + " bytes) pooled: " + (t2 - t1) / iterations 
+                        + " ns, GZIPOutputStream: " + (t3 - t2) / iterations 
+                        + " ns");
+            }
         }
-        public void flush() throws IOException {}
-        public void close() throws IOException {}
     }
 
 
@@ -0,0 +1,352 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Size-classed {@link ByteBuffer} allocator. Buffers are sliced out of
+ * large slabs and kept on a lock-free free list, so a {@link ByteBuffer}
+ * is only held while it contains data. Sizes between {@link #MIN_SIZE}
+ * and {@link #MAX_SIZE} are rounded up to the next power of two; larger
+ * buffers are not pooled. Only the slices of the pool are taken back by
+ * {@link #release}, once per borrowing.
+ *
+ * When the <tt>com.sun.grizzly.util.ByteBufferPool.debug</tt> system
+ * property is set, the allocation site of every borrowed buffer is kept
+ * so leaks can be reported with {@link #logLeaks}.
+ */
+public class ByteBufferPool {
+
+    /**
+     * The smallest pooled size.
+     */
+    public final static int MIN_SIZE = 1024;
+
+    /**
+     * The largest pooled size.
+     */
+    public final static int MAX_SIZE = 64 * 1024;
+
+    /**
+     * The default size of a slab.
+     */
+    public final static int DEFAULT_SLAB_SIZE = 1024 * 1024;
+
+    private final static boolean DEBUG =
+            Boolean.getBoolean("com.sun.grizzly.util.ByteBufferPool.debug");
+
+    private final static Logger logger = LoggerUtils.getLogger();
+
+    private final static int MIN_SHIFT =
+            Integer.numberOfTrailingZeros(MIN_SIZE);
+
+    private final static ByteBufferPool directPool = new ByteBufferPool(true);
+
+    private final static ByteBufferPool heapPool = new ByteBufferPool(false);
+
+    private final boolean direct;
+
+    private final int slabSize;
+
+    private final SizeClass[] sizeClasses;
+
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    private final AtomicLong inUseBytes = new AtomicLong();
+
+    private final AtomicLong highWaterBytes = new AtomicLong();
+
+    /**
+     * Allocation sites of the borrowed buffers, in debug mode only.
+     */
+    private final Map<ByteBuffer, Throwable> borrowed = DEBUG
+            ? Collections.synchronizedMap(
+                    new IdentityHashMap<ByteBuffer, Throwable>())
+            : null;
+
+
+    public ByteBufferPool(boolean direct) {
+        this(direct, DEFAULT_SLAB_SIZE);
+    }
+
+
+    public ByteBufferPool(boolean direct, int slabSize) {
+        if (slabSize < MAX_SIZE) {
+            throw new IllegalArgumentException("slabSize < " + MAX_SIZE);
+        }
+        this.direct = direct;
+        this.slabSize = slabSize;
+
+        int count = Integer.numberOfTrailingZeros(MAX_SIZE) - MIN_SHIFT + 1;
+        sizeClasses = new SizeClass[count];
+        for (int i = 0; i < count; i++) {
+            sizeClasses[i] = new SizeClass(MIN_SIZE << i);
+        }
+    }
+
+
+    /**
+     * Return the shared pool of direct or heap {@link ByteBuffer}s.
+     */
+    public static ByteBufferPool getPool(boolean direct) {
+        return direct ? directPool : heapPool;
+    }
+
+
+    /**
+     * Borrow a cleared {@link ByteBuffer} of at least <tt>size</tt> bytes.
+     * The buffer must be given back with {@link #release}.
+     */
+    public ByteBuffer allocate(int size) {
+        int index = indexOf(size);
+        if (index < 0) {
+            return direct ? ByteBuffer.allocateDirect(size)
+                    : ByteBuffer.allocate(size);
+        }
+
+        SizeClass sizeClass = sizeClasses[index];
+        ByteBuffer bb = sizeClass.poll();
+        sizeClass.slices.get(bb).set(true);
+
+        long inUse = inUseBytes.addAndGet(bb.capacity());
+        long highWater;
+        while (inUse > (highWater = highWaterBytes.get())) {
+            if (highWaterBytes.compareAndSet(highWater, inUse)) {
+                break;
+            }
+        }
+
+        if (borrowed != null) {
+            borrowed.put(bb, new Throwable("ByteBuffer allocated by "
+                    + Thread.currentThread().getName()));
+        }
+        return bb;
+    }
+
+
+    /**
+     * Give back a {@link ByteBuffer} obtained from {@link #allocate}.
+     * Buffers which haven't been borrowed from this pool are ignored.
+     */
+    public void release(ByteBuffer bb) {
+        if (bb == null || bb.isDirect() != direct) {
+            return;
+        }
+
+        int capacity = bb.capacity();
+        int index = indexOf(capacity);
+        if (index < 0 || sizeClasses[index].size != capacity) {
+            return;
+        }
+
+        SizeClass sizeClass = sizeClasses[index];
+        AtomicBoolean isBorrowed = sizeClass.slices.get(bb);
+        if (isBorrowed == null || !isBorrowed.compareAndSet(true, false)) {
+            if (borrowed != null) {
+                logger.log(Level.WARNING, "ByteBuffer released twice or not "
+                        + "allocated by this pool", new Throwable());
+            }
+            return;
+        }
+
+        if (borrowed != null) {
+            borrowed.remove(bb);
+        }
+        inUseBytes.addAndGet(-capacity);
+        bb.clear();
+        sizeClass.offer(bb);
+    }
+
+
+    /**
+     * Return the number of bytes reserved by slabs.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+
+    /**
+     * Return the number of bytes currently borrowed.
+     */
+    public long getInUseBytes() {
+        return inUseBytes.get();
+    }
+
+
+    /**
+     * Return the highest number of bytes borrowed at the same time.
+     */
+    public long getHighWaterBytes() {
+        return highWaterBytes.get();
+    }
+
+
+    /**
+     * Reset the high-water mark to the current number of borrowed bytes.
+     */
+    public void resetHighWaterBytes() {
+        highWaterBytes.set(inUseBytes.get());
+    }
+
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+
+    /**
+     * Log the allocation site of every buffer which hasn't been released.
+     * Only available in debug mode.
+     * @return the number of buffers not released
+     */
+    public int logLeaks() {
+        if (borrowed == null) {
+            return 0;
+        }
+
+        synchronized (borrowed) {
+            for (Throwable site : borrowed.values()) {
+                logger.log(Level.WARNING, "ByteBuffer not released", site);
+            }
+            return borrowed.size();
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return "ByteBufferPool[direct=" + direct
+                + ", allocated=" + allocatedBytes.get()
+                + ", in-use=" + inUseBytes.get()
+                + ", high-water=" + highWaterBytes.get() + "]";
+    }
+
+
+    /**
+     * Return the size class index of <tt>size</tt>, or -1 if not pooled.
+     */
+    private static int indexOf(int size) {
+        if (size > MAX_SIZE) {
+            return -1;
+        }
+        if (size <= MIN_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+
+
+    /**
+     * Free list of a single buffer size.
+     */
+    private final class SizeClass {
+
+        final int size;
+
+        final LinkedTransferQueue<ByteBuffer> freeList =
+                new LinkedTransferQueue<ByteBuffer>();
+
+        /**
+         * The slices of this size class and whether they are borrowed.
+         * Replaced, never modified, when a slab is carved so it can be
+         * read without locking.
+         */
+        volatile Map<ByteBuffer, AtomicBoolean> slices =
+                new IdentityHashMap<ByteBuffer, AtomicBoolean>();
+
+        SizeClass(int size) {
+            this.size = size;
+        }
+
+        ByteBuffer poll() {
+            ByteBuffer bb = freeList.poll();
+            if (bb == null) {
+                bb = carveSlab();
+            }
+            return bb;
+        }
+
+        void offer(ByteBuffer bb) {
+            freeList.offer(bb);
+        }
+
+        /**
+         * Slice a new slab into buffers of this size.
+         */
+        private ByteBuffer carveSlab() {
+            ByteBuffer slab = direct ? ByteBuffer.allocateDirect(slabSize)
+                    : ByteBuffer.allocate(slabSize);
+            allocatedBytes.addAndGet(slabSize);
+
+            ArrayList<ByteBuffer> carved = new ArrayList<ByteBuffer>();
+            for (int position = 0; position + size <= slabSize;
+                    position += size) {
+                slab.limit(position + size);
+                slab.position(position);
+                carved.add(slab.slice());
+            }
+
+            synchronized (this) {
+                Map<ByteBuffer, AtomicBoolean> copy =
+                        new IdentityHashMap<ByteBuffer, AtomicBoolean>(
+                        slices.size() + carved.size());
+                copy.putAll(slices);
+                for (ByteBuffer bb : carved) {
+                    copy.put(bb, new AtomicBoolean());
+                }
+                slices = copy;
+            }
+
+            for (int i = 1; i < carved.size(); i++) {
+                freeList.offer(carved.get(i));
+            }
+            return carved.get(0);
+        }
+    }
+}
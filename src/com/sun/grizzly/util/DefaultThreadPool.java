@@ -39,6 +39,8 @@
 package com.sun.grizzly.util;
 
 import com.sun.grizzly.util.ByteBufferFactory.ByteBufferType;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
@@ -88,6 +90,18 @@ public class DefaultThreadPool extends ThreadPoolExecutor
      */
     protected ByteBufferType byteBufferType = ByteBufferType.HEAP_VIEW;
 
+    /**
+     * The stack size of newly created WorkerThread instances, 0 to use the
+     * platform default.
+     */
+    protected long threadStackSize = 0;
+
+    /**
+     * When not null, WorkerThreads borrow their ByteBuffer from this pool
+     * for the duration of a task instead of keeping one for their lifetime.
+     */
+    protected volatile ObjectPool<ByteBuffer> byteBufferPool;
+
     public DefaultThreadPool() {
         this(DEFAULT_MIN_THREAD_COUNT, DEFAULT_MAX_THREAD_COUNT,
                 DEFAULT_MAX_TASKS_QUEUED, DEFAULT_IDLE_THREAD_KEEPALIVE_TIMEOUT,
@@ -96,8 +110,15 @@ public class DefaultThreadPool extends ThreadPoolExecutor
 
     public DefaultThreadPool(int corePoolSize, int maximumPoolSize,
             int maxTasksCount, long keepAliveTime, TimeUnit unit) {
-        super(corePoolSize, maximumPoolSize, keepAliveTime, unit,
-                new LinkedBlockingQueue<Runnable>(maxTasksCount));
+        this(corePoolSize, maximumPoolSize,
+                new LinkedBlockingQueue<Runnable>(maxTasksCount),
+                maxTasksCount, keepAliveTime, unit);
+    }
+
+    protected DefaultThreadPool(int corePoolSize, int maximumPoolSize,
+            BlockingQueue<Runnable> queue, int maxTasksCount,
+            long keepAliveTime, TimeUnit unit) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, queue);
         setThreadFactory(new DefaultWorkerThreadFactory());
         this.maxTasksCount = maxTasksCount;
     }
@@ -150,6 +171,52 @@ public class DefaultThreadPool extends ThreadPoolExecutor
         this.initialByteBufferSize = initialByteBufferSize;
     }
 
+    public long getThreadStackSize() {
+        return threadStackSize;
+    }
+
+    /**
+     * Set the stack size of WorkerThreads created from now on.
+     * @param threadStackSize the stack size, 0 for the platform default
+     */
+    public void setThreadStackSize(long threadStackSize) {
+        this.threadStackSize = threadStackSize;
+    }
+
+    public ObjectPool<ByteBuffer> getByteBufferPool() {
+        return byteBufferPool;
+    }
+
+    public boolean isBorrowByteBuffer() {
+        return byteBufferPool != null;
+    }
+
+    /**
+     * If <tt>true</tt>, WorkerThreads borrow their {@link ByteBuffer} from
+     * the shared {@link ByteBufferPool} when a task starts and return it when
+     * the task completes, so idle threads don't retain any buffer.
+     * Direct buffers are used if the {@link ByteBufferType} is direct.
+     */
+    public void setBorrowByteBuffer(boolean borrowByteBuffer) {
+        if (!borrowByteBuffer) {
+            byteBufferPool = null;
+        } else if (byteBufferPool == null) {
+            byteBufferPool = new ObjectPool<ByteBuffer>() {
+                public ByteBuffer poll() {
+                    return ByteBufferPool.getPool(
+                            byteBufferType == ByteBufferType.DIRECT
+                            || byteBufferType == ByteBufferType.DIRECT_VIEW)
+                            .allocate(initialByteBufferSize);
+                }
+
+                public void offer(ByteBuffer byteBuffer) {
+                    ByteBufferPool.getPool(byteBuffer.isDirect())
+                            .release(byteBuffer);
+                }
+            };
+        }
+    }
+
     public void start() {
         this.prestartCoreThread();
     }
@@ -170,7 +237,9 @@ public class DefaultThreadPool extends ThreadPoolExecutor
 
     @Override
     protected void afterExecute(Runnable r, Throwable t) {
-        ((WorkerThreadImpl) Thread.currentThread()).reset();
+        WorkerThreadImpl workerThread = (WorkerThreadImpl) Thread.currentThread();
+        workerThread.reset();
+        workerThread.releaseByteBuffer();
     }
 
     private class DefaultWorkerThreadFactory implements ThreadFactory {
@@ -178,7 +247,7 @@ public class DefaultThreadPool extends ThreadPoolExecutor
             Thread thread = new WorkerThreadImpl(DefaultThreadPool.this,
                     name + "-WorkerThread(" +
                     workerThreadCounter.getAndIncrement() + ")", r,
-                    initialByteBufferSize);
+                    initialByteBufferSize, threadStackSize);
             thread.setUncaughtExceptionHandler(DefaultThreadPool.this);
             thread.setPriority(priority);
             return thread;
@@ -202,6 +271,7 @@ public class DefaultThreadPool extends ThreadPoolExecutor
         sb.append(", max-queue-size=").append(getMaxQueuedTasksCount());
         sb.append(", initial-byte-buffer-size=").append(initialByteBufferSize);
         sb.append(", byte-buffer-type=").append(byteBufferType);
+        sb.append(", borrow-byte-buffer=").append(isBorrowByteBuffer());
         sb.append(", is-shutdown=").append(isShutdown());
     }
 }
@@ -0,0 +1,260 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A log bucketed histogram of latencies, in microseconds. Every power of 
+ * two is split in {@link #SUB_BUCKETS} linear buckets, so recorded values 
+ * are kept with a relative error below 1 / {@link #SUB_BUCKETS}. Recording
+ * is lock free and doesn't allocate.
+ */
+public class LatencyHistogram {
+    
+    /**
+     * Number of bits used to index the linear buckets.
+     */
+    private final static int SUB_BUCKET_BITS = 3;
+    
+    
+    /**
+     * Number of linear buckets per power of two.
+     */
+    public final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    
+    
+    /**
+     * Number of buckets, enough to index any positive long.
+     */
+    private final static int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    
+    
+    private final AtomicLong max = new AtomicLong();
+    
+    
+    private final AtomicLong sum = new AtomicLong();
+    
+    
+    /**
+     * The counts at the last {@link #intervalSnapshot}.
+     */
+    private Snapshot lastInterval = new Snapshot(new long[BUCKETS], 0, 0);
+    
+    
+    /**
+     * Record a latency.
+     * @param micros the latency in microseconds. Negative values are 
+     *        recorded as zero.
+     */
+    public void record(long micros){
+        if (micros < 0){
+            micros = 0;
+        }
+        counts.incrementAndGet(bucket(micros));
+        sum.addAndGet(micros);
+        
+        long current;
+        do {
+            current = max.get();
+            if (micros <= current) return;
+        } while (!max.compareAndSet(current, micros));
+    }
+    
+    
+    /**
+     * Return the values recorded since the creation or the last
+     * {@link #reset}.
+     */
+    public Snapshot snapshot(){
+        long[] values = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++){
+            values[i] = counts.get(i);
+        }
+        return new Snapshot(values, sum.get(), max.get());
+    }
+    
+    
+    /**
+     * Return the values recorded since the previous call to this method. 
+     * The maximum is the one recorded since the last {@link #reset}.
+     */
+    public synchronized Snapshot intervalSnapshot(){
+        Snapshot current = snapshot();
+        Snapshot interval = current.minus(lastInterval);
+        lastInterval = current;
+        return interval;
+    }
+    
+    
+    /**
+     * Discard all the recorded values. Values recorded concurrently may be 
+     * lost.
+     */
+    public synchronized void reset(){
+        for (int i = 0; i < BUCKETS; i++){
+            counts.set(i, 0);
+        }
+        sum.set(0);
+        max.set(0);
+        lastInterval = new Snapshot(new long[BUCKETS], 0, 0);
+    }
+    
+    
+    /**
+     * Return the bucket of a value.
+     */
+    static int bucket(long value){
+        if (value < SUB_BUCKETS){
+            return (int)value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) 
+                + (int)((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+    
+    
+    /**
+     * Return the highest value of a bucket.
+     */
+    static long highestValue(int bucket){
+        if (bucket < SUB_BUCKETS){
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long lowest = (long)(SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) 
+                << shift;
+        return lowest + (1L << shift) - 1;
+    }
+    
+    
+    /**
+     * Immutable copy of a {@link LatencyHistogram}.
+     */
+    public static class Snapshot {
+        
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+        
+        
+        Snapshot(long[] counts, long sum, long max){
+            this.counts = counts;
+            this.sum = sum;
+            this.max = max;
+            long total = 0;
+            for (long c: counts){
+                total += c;
+            }
+            this.count = total;
+        }
+        
+        
+        Snapshot minus(Snapshot previous){
+            long[] values = new long[counts.length];
+            for (int i = 0; i < values.length; i++){
+                values[i] = Math.max(0, counts[i] - previous.counts[i]);
+            }
+            return new Snapshot(values, Math.max(0, sum - previous.sum), max);
+        }
+        
+        
+        /**
+         * Return the number of recorded values.
+         */
+        public long getCount(){
+            return count;
+        }
+        
+        
+        /**
+         * Return the mean, in microseconds.
+         */
+        public double getMean(){
+            return count == 0 ? 0 : (double)sum / count;
+        }
+        
+        
+        /**
+         * Return the maximum, in microseconds.
+         */
+        public long getMax(){
+            return max;
+        }
+        
+        
+        /**
+         * Return the value, in microseconds, below which 
+         * <tt>percentile</tt> percent of the values fall.
+         * @param percentile between 0 and 100.
+         */
+        public long getValueAtPercentile(double percentile){
+            if (count == 0) return 0;
+            
+            long rank = (long)Math.ceil(percentile / 100 * count);
+            if (rank < 1){
+                rank = 1;
+            }
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++){
+                seen += counts[i];
+                if (seen >= rank){
+                    return Math.min(highestValue(i), max);
+                }
+            }
+            return max;
+        }
+        
+        
+        @Override
+        public String toString(){
+            return "count=" + count 
+                    + " mean=" + (long)getMean()
+                    + " p50=" + getValueAtPercentile(50)
+                    + " p99=" + getValueAtPercentile(99)
+                    + " p999=" + getValueAtPercentile(99.9)
+                    + " max=" + max;
+        }
+    }
+}
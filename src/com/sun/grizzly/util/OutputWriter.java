@@ -110,6 +110,17 @@ public class OutputWriter {
                 } else {
                     attempts++;
                     if ( writeSelector == null ){
+                        // Wait on the main Selector when the worker owns the key.
+                        int parked = ParkedIO.park(channel,
+                                SelectionKey.OP_WRITE, writeTimeout);
+                        if (parked != SelectorParker.UNAVAILABLE) {
+                            if (parked == SelectorParker.TIMEOUT
+                                    && attempts > 2) {
+                                throw new IOException("Client disconnected");
+                            }
+                            continue;
+                        }
+
                         writeSelector = SelectorFactory.getSelector();
                         if ( writeSelector == null){
                             // Continue using the main one.
@@ -205,17 +216,28 @@ public class OutputWriter {
                     attempts = 0;
                     nWrite += len;
                 } else {
+                    attempts++;
                     if ( writeSelector == null ){
+                        // Wait on the main Selector when the worker owns the key.
+                        int parked = ParkedIO.park(socketChannel,
+                                SelectionKey.OP_WRITE, writeTimeout);
+                        if (parked != SelectorParker.UNAVAILABLE) {
+                            if (parked == SelectorParker.TIMEOUT
+                                    && attempts > 2) {
+                                throw new IOException("Client disconnected");
+                            }
+                            continue;
+                        }
+
                         writeSelector = SelectorFactory.getSelector();
                         if ( writeSelector == null){
                             // Continue using the main one.
                             continue;
                         }
+                        key = socketChannel.register(writeSelector,  
+                                                     SelectionKey.OP_WRITE);
                     }
                     
-                    key = socketChannel.register(writeSelector,  
-                                                 SelectionKey.OP_WRITE);
-                    
                     if (writeSelector.select(writeTimeout) == 0) {
                         if (attempts > 2)
                             throw new IOException("Client disconnected");
@@ -0,0 +1,110 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.util;
+
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+
+/**
+ * Binds the {@link SelectionKey} being processed by the current worker thread
+ * to the {@link SelectorParker} that owns it, so blocking reads and writes
+ * (see {@link Utils#readWithTemporarySelector} and {@link OutputWriter})
+ * can wait on the main {@link java.nio.channels.Selector} instead of
+ * a temporary one.
+ */
+public class ParkedIO {
+
+    private final static ThreadLocal<Binding> binding =
+            new ThreadLocal<Binding>() {
+        @Override
+        protected Binding initialValue() {
+            return new Binding();
+        }
+    };
+
+
+    private ParkedIO() {
+    }
+
+
+    /**
+     * Bind <tt>key</tt> to the current thread.
+     */
+    public static void bind(SelectorParker parker, SelectionKey key) {
+        Binding b = binding.get();
+        b.parker = parker;
+        b.key = key;
+    }
+
+
+    /**
+     * Remove the current thread binding, if any.
+     */
+    public static void unbind() {
+        Binding b = binding.get();
+        b.parker = null;
+        b.key = null;
+    }
+
+
+    /**
+     * Wait for <tt>channel</tt> to be ready for <tt>ops</tt> using the
+     * {@link SelectorParker} bound to the current thread.
+     * @return {@link SelectorParker#READY}, {@link SelectorParker#TIMEOUT},
+     *         or {@link SelectorParker#UNAVAILABLE} if no key for
+     *         <tt>channel</tt> is bound to the current thread.
+     */
+    public static int park(SelectableChannel channel, int ops, long timeout)
+            throws IOException {
+        Binding b = binding.get();
+        SelectionKey key = b.key;
+        if (key == null || b.parker == null || key.channel() != channel
+                || !key.isValid()) {
+            return SelectorParker.UNAVAILABLE;
+        }
+        return b.parker.park(key, ops, timeout);
+    }
+
+
+    private final static class Binding {
+        SelectorParker parker;
+        SelectionKey key;
+    }
+}
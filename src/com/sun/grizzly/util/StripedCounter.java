@@ -0,0 +1,289 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A group of counters updated by many threads without contention. Each 
+ * thread adds to one of several padded stripes, selected by its thread 
+ * id, and readers sum all the stripes.
+ *
+ * {@link #snapshot} reads all the counters of the group consistently:
+ * each stripe of a group with more than one counter is guarded by a 
+ * sequence lock, so every update, and the updates made before it by the
+ * same thread, are either all seen or not at all. {@link #sum} reads a 
+ * single counter, updates made while summing may or may not be seen.
+ */
+public class StripedCounter {
+    
+    /**
+     * Distance, in longs, between two stripes so they don't share a 
+     * cache line.
+     */
+    private final static int PAD = 16;
+    
+    
+    /**
+     * Number of stripes, a power of two.
+     */
+    private final static int STRIPES;
+    
+    static{
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int stripes = 1;
+        while (stripes < cpus * 2 && stripes < 64){
+            stripes <<= 1;
+        }
+        STRIPES = stripes;
+    }
+    
+    
+    /**
+     * Offsets, inside a stripe, of the number of started and finished 
+     * updates, and of the first counter of a group.
+     */
+    private final static int STARTED = 0;
+    private final static int FINISHED = 1;
+    private final static int GROUP_COUNTERS = 2;
+    
+    
+    /**
+     * The number of counters.
+     */
+    private final int width;
+    
+    
+    /**
+     * The offset of the first counter inside a stripe.
+     */
+    private final int first;
+    
+    
+    /**
+     * The number of longs used by a stripe, a multiple of {@link #PAD}.
+     */
+    private final int stride;
+    
+    
+    /**
+     * The padded stripes.
+     */
+    private final AtomicLongArray cells;
+    
+    
+    /**
+     * Create a single counter.
+     */
+    public StripedCounter(){
+        this(1);
+    }
+    
+    
+    /**
+     * Create a group of <tt>width</tt> counters, numbered from 0.
+     */
+    public StripedCounter(int width){
+        if (width < 1){
+            throw new IllegalArgumentException("width < 1");
+        }
+        this.width = width;
+        // A single counter is always consistent, it doesn't need a lock.
+        first = (width == 1) ? 0 : GROUP_COUNTERS;
+        stride = (first + width + PAD - 1) / PAD * PAD;
+        cells = new AtomicLongArray(STRIPES * stride);
+    }
+    
+    
+    /**
+     * Return the number of counters.
+     */
+    public int width(){
+        return width;
+    }
+    
+    
+    /**
+     * Add <tt>delta</tt> to the first counter.
+     */
+    public void add(long delta){
+        add(0, delta);
+    }
+    
+    
+    /**
+     * Add <tt>delta</tt> to <tt>counter</tt>.
+     */
+    public void add(int counter, long delta){
+        int stripe = index();
+        if (first == 0){
+            cells.addAndGet(stripe + counter, delta);
+            return;
+        }
+        
+        cells.incrementAndGet(stripe + STARTED);
+        cells.addAndGet(stripe + first + counter, delta);
+        cells.incrementAndGet(stripe + FINISHED);
+    }
+    
+    
+    /**
+     * Add one to the first counter.
+     */
+    public void increment(){
+        add(0, 1);
+    }
+    
+    
+    /**
+     * Add one to <tt>counter</tt>.
+     */
+    public void increment(int counter){
+        add(counter, 1);
+    }
+    
+    
+    /**
+     * Subtract one from the first counter.
+     */
+    public void decrement(){
+        add(0, -1);
+    }
+    
+    
+    /**
+     * Subtract one from <tt>counter</tt>.
+     */
+    public void decrement(int counter){
+        add(counter, -1);
+    }
+    
+    
+    /**
+     * Return the value of the first counter.
+     */
+    public long sum(){
+        return sum(0);
+    }
+    
+    
+    /**
+     * Return the value of <tt>counter</tt>.
+     */
+    public long sum(int counter){
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++){
+            sum += cells.get(i * stride + first + counter);
+        }
+        return sum;
+    }
+    
+    
+    /**
+     * Return the values of all the counters, read consistently.
+     */
+    public long[] snapshot(){
+        long[] sums = new long[width];
+        long[] values = new long[width];
+        for (int i = 0; i < STRIPES; i++){
+            int stripe = i * stride;
+            long started;
+            boolean isConsistent;
+            do {
+                started = cells.get(stripe + STARTED);
+                for (int j = 0; j < width; j++){
+                    values[j] = cells.get(stripe + first + j);
+                }
+                // No update started while reading, and the ones started
+                // before are all finished.
+                isConsistent = (first == 0) 
+                        || (cells.get(stripe + FINISHED) == started 
+                            && cells.get(stripe + STARTED) == started);
+            } while (!isConsistent);
+            
+            for (int j = 0; j < width; j++){
+                sums[j] += values[j];
+            }
+        }
+        return sums;
+    }
+    
+    
+    /**
+     * Set the first counter to <tt>value</tt>.
+     */
+    public void set(long value){
+        set(0, value);
+    }
+    
+    
+    /**
+     * Set <tt>counter</tt> to <tt>value</tt>. Updates made concurrently 
+     * may be lost.
+     */
+    public void set(int counter, long value){
+        for (int i = 1; i < STRIPES; i++){
+            cells.set(i * stride + first + counter, 0);
+        }
+        cells.set(first + counter, value);
+    }
+    
+    
+    /**
+     * Reset all the counters to zero.
+     */
+    public void reset(){
+        for (int i = 0; i < width; i++){
+            set(i, 0);
+        }
+    }
+    
+    
+    private int index(){
+        long id = Thread.currentThread().getId();
+        int h = (int)(id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((h >>> 16) & (STRIPES - 1)) * stride;
+    }
+    
+    
+    @Override
+    public String toString(){
+        return Long.toString(sum());
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DefaultThreadPool} which runs every task on its own WorkerThread:
+ * tasks are never queued, and idle threads are reused until they time out.
+ * Threads use a small stack and borrow their {@link java.nio.ByteBuffer}
+ * from a shared pool only while executing a task, so blocking tasks can
+ * scale with the number of concurrent requests without sizing the pool.
+ */
+public class ThreadPerTaskPool extends DefaultThreadPool {
+
+    // Stack size of worker threads
+    public static long DEFAULT_THREAD_STACK_SIZE = 256 * 1024;
+
+    // Timeout, after which idle thread will be stopped and excluded from pool
+    public static int DEFAULT_IDLE_THREAD_KEEPALIVE_TIMEOUT = 60000;
+
+    public ThreadPerTaskPool() {
+        this(DEFAULT_IDLE_THREAD_KEEPALIVE_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    public ThreadPerTaskPool(long keepAliveTime, TimeUnit unit) {
+        super(0, Integer.MAX_VALUE, new SynchronousQueue<Runnable>(),
+                0, keepAliveTime, unit);
+        setThreadStackSize(DEFAULT_THREAD_STACK_SIZE);
+        setBorrowByteBuffer(true);
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(512);
+        builder.append("ThreadPerTaskPool[");
+        injectToStringAttributes(builder);
+        builder.append(", thread-stack-size=").append(threadStackSize);
+        builder.append(']');
+        return builder.toString();
+    }
+
+
+    /**
+     * Compare a fixed size {@link DefaultThreadPool} and a
+     * {@link ThreadPerTaskPool} executing blocking tasks.
+     * Usage: ThreadPerTaskPool [tasks] [fixed-threads] [block-millis]
+     */
+    public static void main(String args[]) throws Exception {
+        int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        long blockTime = args.length > 2 ? Long.parseLong(args[2]) : 50;
+
+        DefaultThreadPool fixed = new DefaultThreadPool(threads, threads,
+                Integer.MAX_VALUE, DEFAULT_IDLE_THREAD_KEEPALIVE_TIMEOUT,
+                TimeUnit.MILLISECONDS);
+        DefaultThreadPool perTask = new ThreadPerTaskPool();
+
+        for (int i = 0; i < 2; i++) {
+            System.out.println("fixed(" + threads + "): "
+                    + run(fixed, tasks, blockTime) + " ms");
+            System.out.println("per-task: "
+                    + run(perTask, tasks, blockTime) + " ms, largest pool size "
+                    + perTask.getLargestPoolSize());
+        }
+
+        fixed.stop();
+        perTask.stop();
+    }
+
+
+    private static long run(DefaultThreadPool threadPool, int tasks,
+            final long blockTime) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(tasks);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < tasks; i++) {
+            threadPool.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    try {
+                        ((WorkerThread) Thread.currentThread())
+                                .getByteBuffer().put((byte) 0);
+                        Thread.sleep(blockTime);
+                    } finally {
+                        latch.countDown();
+                    }
+                    return null;
+                }
+            });
+        }
+        latch.await();
+        return System.currentTimeMillis() - start;
+    }
+}
@@ -106,22 +106,29 @@ public class Utils {
             }
             
             if (byteRead == 0 && byteBuffer.position() == preReadInputBBPos) {
-                readSelector = SelectorFactory.getSelector();
-
-                if ( readSelector == null ){
+                // Wait on the main Selector when the worker owns the key.
+                int parked = ParkedIO.park(channel, SelectionKey.OP_READ,
+                        readTimeout);
+                if (parked == SelectorParker.TIMEOUT) {
                     return 0;
-                }
-                count = 1;
-                
-                tmpKey = channel.register(readSelector, SelectionKey.OP_READ);
-                tmpKey.interestOps(tmpKey.interestOps() | SelectionKey.OP_READ);
-                int code = readSelector.select(readTimeout);
-                tmpKey.interestOps(
-                    tmpKey.interestOps() & (~SelectionKey.OP_READ));
+                } else if (parked == SelectorParker.UNAVAILABLE) {
+                    readSelector = SelectorFactory.getSelector();
+
+                    if ( readSelector == null ){
+                        return 0;
+                    }
+
+                    tmpKey = channel.register(readSelector, SelectionKey.OP_READ);
+                    tmpKey.interestOps(tmpKey.interestOps() | SelectionKey.OP_READ);
+                    int code = readSelector.select(readTimeout);
+                    tmpKey.interestOps(
+                        tmpKey.interestOps() & (~SelectionKey.OP_READ));
 
-                if ( code == 0 ){
-                    return 0; // Return on the main Selector and try again.
+                    if ( code == 0 ){
+                        return 0; // Return on the main Selector and try again.
+                    }
                 }
+                count = 1;
 
                 while (count > 0){
                     count = readableChannel.read(byteBuffer);
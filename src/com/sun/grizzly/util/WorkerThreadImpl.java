@@ -37,6 +37,7 @@
  */
 package com.sun.grizzly.util;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.Callable;
 import com.sun.grizzly.util.ByteBufferFactory.ByteBufferType;
 import com.sun.grizzly.util.ThreadAttachment.Mode;
@@ -139,7 +140,20 @@ public class WorkerThreadImpl extends WorkerThread {
      */
     public WorkerThreadImpl(DefaultThreadPool threadPool, String name,
             Runnable runnable, int initialByteBufferSize){
-        super(threadGroup, runnable, name);
+        this(threadPool, name, runnable, initialByteBufferSize, 0);
+    }
+
+    /**
+     * Create a Thread that will synchronizes/block on
+     * {@link DefaultThreadPool} instance.
+     * @param threadPool {@link DefaultThreadPool}
+     * @param name <code>String</code>
+     * @param initialByteBufferSize initial {@link ByteBuffer} size
+     * @param stackSize the thread stack size, 0 for the platform default
+     */
+    public WorkerThreadImpl(DefaultThreadPool threadPool, String name,
+            Runnable runnable, int initialByteBufferSize, long stackSize){
+        super(threadGroup, runnable, name, stackSize);
         this.threadPool = threadPool;
         setDaemon(true);
         this.initialByteBufferSize = initialByteBufferSize;
@@ -151,12 +165,36 @@ public class WorkerThreadImpl extends WorkerThread {
      */
     protected void createByteBuffer(boolean force){
         if (force || byteBuffer == null){
-            byteBuffer = ByteBufferFactory.allocate(byteBufferType,
-                    initialByteBufferSize);
+            ObjectPool<ByteBuffer> pool = getByteBufferPool();
+            if (pool != null) {
+                byteBuffer = pool.poll();
+            } else {
+                byteBuffer = ByteBufferFactory.allocate(byteBufferType,
+                        initialByteBufferSize);
+            }
         }
     }
     
     
+    /**
+     * Return the {@link ByteBuffer} to the {@link DefaultThreadPool}
+     * pool, if the thread borrows its {@link ByteBuffer}.
+     */
+    protected void releaseByteBuffer(){
+        ObjectPool<ByteBuffer> pool = getByteBufferPool();
+        if (pool != null && byteBuffer != null) {
+            byteBuffer.clear();
+            pool.offer(byteBuffer);
+            byteBuffer = null;
+        }
+    }
+    
+    
+    private ObjectPool<ByteBuffer> getByteBufferPool(){
+        return threadPool != null ? threadPool.getByteBufferPool() : null;
+    }
+    
+    
     public ThreadAttachment updateAttachment(int mode) {
         ThreadAttachment currentAttachment = getAttachment();
         currentAttachment.reset();
@@ -226,7 +264,16 @@ public class WorkerThreadImpl extends WorkerThread {
         int mode = threadAttachment.getMode();
         
         if ((mode & Mode.BYTE_BUFFER) != 0) {
+            ByteBuffer oldByteBuffer = byteBuffer;
             byteBuffer = threadAttachment.getByteBuffer();
+            
+            // Give back the borrowed ByteBuffer being replaced
+            ObjectPool<ByteBuffer> pool = getByteBufferPool();
+            if (pool != null && oldByteBuffer != null
+                    && oldByteBuffer != byteBuffer) {
+                oldByteBuffer.clear();
+                pool.offer(oldByteBuffer);
+            }
         }
         
         if ((mode & Mode.SSL_ENGINE) != 0) {
@@ -59,22 +59,25 @@ package com.sun.grizzly.util.buf;
 
 import com.sun.grizzly.util.LoggerUtils;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /** Efficient conversion of bytes  to character .
  *  
- *  This uses the standard JDK mechansim - a reader - but provides mechanisms
- *  to recycle all the objects that are used. It is compatible with JDK1.1
- *  and up,
- *  ( nio is better, but it's not available even in 1.2 or 1.3 )
- *
- *  Not used in the current code, the performance gain is not very big
- *  in the current case ( since String is created anyway ), but it will
- *  be used in a later version or after the remaining optimizations.
+ *  Bytes are decoded straight from the {@link ByteChunk} by a 
+ *  {@link CharsetDecoder}. ISO-8859-1 is converted byte per byte, and 
+ *  the ASCII runs of US-ASCII and UTF-8 content bypass the decoder. An 
+ *  incomplete sequence at the end of a chunk is kept until the next 
+ *  conversion. Malformed input is replaced, as an InputStreamReader does.
  */
 public class B2CConverter {
     /**
@@ -82,9 +85,52 @@ public class B2CConverter {
      */
     private final static Logger logger = LoggerUtils.getLogger();
 
-    private IntermediateInputStream iis;
-    private ReadConvertor conv;
+    /**
+     * Resolved {@link Charset}s, by encoding name.
+     */
+    private final static ConcurrentHashMap<String, Charset> charsets =
+        new ConcurrentHashMap<String, Charset>();
+
+    /**
+     * Converters cached per thread, by encoding name.
+     */
+    private final static ThreadLocal<HashMap<String, B2CConverter>> 
+        threadConverters = new ThreadLocal<HashMap<String, B2CConverter>>() {
+            @Override
+            protected HashMap<String, B2CConverter> initialValue() {
+                return new HashMap<String, B2CConverter>();
+            }
+        };
+
+    private final static Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private final static Charset US_ASCII = Charset.forName("US-ASCII");
+    private final static Charset UTF_8 = Charset.forName("UTF-8");
+
     private String encoding;
+    private CharsetDecoder decoder;
+
+    /**
+     * Every byte is a char of the same value.
+     */
+    private boolean singleByte;
+
+    /**
+     * Bytes 0 to 127 are the ASCII chars.
+     */
+    private boolean asciiCompatible;
+
+    /**
+     * Bytes of an incomplete sequence, waiting for the next conversion.
+     */
+    private final ByteBuffer leftovers = ByteBuffer.allocate(LEFTOVERS_SIZE);
+
+    private final static int LEFTOVERS_SIZE = 16;
+
+    /**
+     * Longer ISO-8859-1 chunks go to the decoder, which is faster on 
+     * large arrays.
+     */
+    private final static int SINGLE_BYTE_LOOP_LIMIT = 256;
 
     protected B2CConverter() {
     }
@@ -95,7 +141,48 @@ public class B2CConverter {
 	throws IOException
     {
 	this.encoding=encoding;
-	reset();
+        Charset charset = getCharset(encoding);
+        decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        singleByte = ISO_8859_1.equals(charset);
+        asciiCompatible = UTF_8.equals(charset) || US_ASCII.equals(charset);
+    }
+
+    
+    /** Return a converter for <tt>encoding</tt>, cached and recycled for
+     *  the calling thread.
+     */
+    public static B2CConverter getThreadConverter(String encoding)
+        throws IOException
+    {
+        HashMap<String, B2CConverter> converters = threadConverters.get();
+        B2CConverter converter = converters.get(encoding);
+        if (converter == null) {
+            converter = new B2CConverter(encoding);
+            converters.put(encoding, converter);
+        } else {
+            converter.recycle();
+        }
+        return converter;
+    }
+
+    
+    /** Return the {@link Charset} of <tt>encoding</tt>.
+     */
+    private static Charset getCharset(String encoding)
+        throws UnsupportedEncodingException
+    {
+        Charset charset = charsets.get(encoding);
+        if (charset == null) {
+            try {
+                charset = Charset.forName(encoding);
+            } catch (IllegalArgumentException e) {
+                throw new UnsupportedEncodingException(encoding);
+            }
+            charsets.put(encoding, charset);
+        }
+        return charset;
     }
 
     
@@ -103,7 +190,8 @@ public class B2CConverter {
      *  The encoding remain in effect, the internal buffers remain allocated.
      */
     public  void recycle() {
-	conv.recycle();
+        decoder.reset();
+        leftovers.clear();
     }
 
     static final int BUFFER_SIZE=8192;
@@ -119,27 +207,56 @@ public class B2CConverter {
         convert(bb, cb, cb.getBuffer().length - cb.getEnd());
     }
 
+    /** Convert at most <tt>limit</tt> bytes of <tt>bb</tt>, appending the
+     *  chars to <tt>cb</tt>. The converted bytes are consumed from 
+     *  <tt>bb</tt>.
+     */
     public void convert( ByteChunk bb, CharChunk cb, int limit) 
         throws IOException
     {
-	iis.setByteChunk( bb );
 	try {
-	    // read from the reader
-            int bbLengthBeforeRead = 0;
-	    while( limit > 0 ) { // conv.ready() ) {
-                int size = limit < BUFFER_SIZE ? limit : BUFFER_SIZE;
-                bbLengthBeforeRead = bb.getLength();
-		int cnt=conv.read( result, 0, size );
-		if( cnt <= 0 ) {
-		    // End of stream ! - we may be in a bad state
-		    if( debug>0)
-			log( "EOF" );
-		    return;
-		}
+	    while( limit > 0 && bb.getLength() > 0 ) {
+                if (leftovers.position() > 0) {
+                    limit -= convertLeftovers(bb, cb, limit);
+                    continue;
+                }
+
+                byte[] b = bb.getBuffer();
+                int start = bb.getStart();
+                int len = Math.min(limit, Math.min(bb.getLength(), BUFFER_SIZE));
+                int n = 0;
+                if (singleByte && len < SINGLE_BYTE_LOOP_LIMIT) {
+                    for (; n < len; n++) {
+                        result[n] = (char) (b[start + n] & 0xff);
+                    }
+                } else if (asciiCompatible) {
+                    for (; n < len && b[start + n] >= 0; n++) {
+                        result[n] = (char) b[start + n];
+                    }
+                }
+
+                int consumed = n;
+                int chars = n;
+                if (consumed < len) {
+                    ByteBuffer in = ByteBuffer.wrap(b, start + n, len - n);
+                    CharBuffer out = CharBuffer.wrap(result, n, BUFFER_SIZE - n);
+                    CoderResult cr = decoder.decode(in, out, false);
+                    if (cr.isError()) {
+                        cr.throwException();
+                    }
+                    if (cr.isUnderflow() && in.hasRemaining()) {
+                        // Incomplete sequence, wait for more bytes
+                        leftovers.put(in);
+                    }
+                    consumed = in.position() - start;
+                    chars = out.position();
+                }
+
 		if( debug > 1 )
-		    log("Converted: " + new String( result, 0, cnt ));
-		cb.append( result, 0, cnt );
-                limit = limit - (bbLengthBeforeRead - bb.getLength());
+		    log("Converted: " + new String( result, 0, chars ));
+		cb.append( result, 0, chars );
+                bb.setOffset(start + consumed);
+                limit -= consumed;
 	    }
 	} catch( IOException ex) {
 	    if( debug>0)
@@ -149,6 +266,33 @@ public class B2CConverter {
 	}
     }
 
+    /** Complete the pending incomplete sequence, a byte at a time.
+     *  @return the number of bytes consumed from <tt>bb</tt>
+     */
+    private int convertLeftovers( ByteChunk bb, CharChunk cb, int limit)
+        throws IOException
+    {
+        byte[] b = bb.getBuffer();
+        int start = bb.getStart();
+        int max = Math.min(limit, bb.getLength());
+        CharBuffer out = CharBuffer.wrap(result);
+        int n = 0;
+        do {
+            leftovers.put(b[start + n++]);
+            leftovers.flip();
+            CoderResult cr = decoder.decode(leftovers, out, false);
+            leftovers.compact();
+            if (cr.isError()) {
+                cr.throwException();
+            }
+        } while (out.position() == 0 && leftovers.position() > 0
+                 && leftovers.hasRemaining() && n < max);
+
+        cb.append(result, 0, out.position());
+        bb.setOffset(start + n);
+        return n;
+    }
+
     // START CR 6309511
     /**
      * Character conversion of a US-ASCII MessageBytes.
@@ -179,9 +323,7 @@ public class B2CConverter {
     public void reset()
 	throws IOException
     {
-	// destroy the reader/iis
-	iis=new IntermediateInputStream();
-	conv=new ReadConvertor( iis, encoding );
+        recycle();
     }
 
     private final int debug=0;
@@ -245,92 +387,3 @@ public class B2CConverter {
 
     */
 }
-
-// -------------------- Private implementation --------------------
-
-
-
-/**
- * 
- */
-final class  ReadConvertor extends InputStreamReader {
-    
-    /** Create a converter.
-     */
-    public ReadConvertor( IntermediateInputStream in, String enc )
-	throws UnsupportedEncodingException
-    {
-	super( in, enc );
-    }
-    
-    /** Overriden - will do nothing but reset internal state.
-     */
-    public  final void close() throws IOException {
-	// NOTHING
-	// Calling super.close() would reset out and cb.
-    }
-    
-    public  final int read(char cbuf[], int off, int len)
-	throws IOException
-    {
-	// will do the conversion and call write on the output stream
-	return super.read( cbuf, off, len );
-    }
-    
-    /** Reset the buffer
-     */
-    public  final void recycle() {
-        try {
-            // Must clear super's buffer.
-            while (ready()) {
-                // InputStreamReader#skip(long) will allocate buffer to skip.
-                read();
-            }
-        } catch(IOException ioe){
-        }
-    }
-}
-
-
-/** Special output stream where close() is overriden, so super.close()
-    is never called.
-    
-    This allows recycling. It can also be disabled, so callbacks will
-    not be called if recycling the converter and if data was not flushed.
-*/
-final class IntermediateInputStream extends InputStream {
-    ByteChunk bc = null;
-    boolean initialized = false;
-    
-    public IntermediateInputStream() {
-    }
-    
-    public  final void close() throws IOException {
-	// shouldn't be called - we filter it out in writer
-	throw new IOException("close() called - shouldn't happen ");
-    }
-    
-    public  final  int read(byte cbuf[], int off, int len) throws IOException {
-        if (!initialized) return -1;
-        return bc.substract(cbuf, off, len);
-    }
-    
-    public  final int read() throws IOException {
-        if (!initialized) return -1;
-        return bc.substract();
-    }
-
-    public int available() throws IOException {
-        if (!initialized)  return 0;
-        return bc.getLength();
-    }
-
-    // -------------------- Internal methods --------------------
-
-    void setByteChunk( ByteChunk mb ) {
-        initialized = (mb != null);
-        bc = mb;
-    }
-
-}
-
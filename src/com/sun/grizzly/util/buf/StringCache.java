@@ -57,16 +57,28 @@
 package com.sun.grizzly.util.buf;
 
 import com.sun.grizzly.util.LoggerUtils;
+import com.sun.grizzly.util.StripedCounter;
+import com.sun.grizzly.util.ThreadLocalRandom;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.TreeMap;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * This class implements a String cache for ByteChunk and CharChunk.
  *
+ * Lookups go to an immutable, open addressed table and never lock. A sample
+ * of the toString invocations is counted in a {@link ConcurrentHashMap};
+ * every <tt>trainThreshold</tt> invocations the most frequent strings are
+ * compiled into a new table, which replaces the previous one, so the cache
+ * follows changes in the traffic.
+ *
  * @author Remy Maucherat
  */
 public class StringCache {
@@ -100,53 +112,79 @@ public class StringCache {
     
 
     /**
-     * Statistics hash map for byte chunk.
+     * Once a table is built, one toString invocation out of 
+     * <tt>sampleRate</tt> is counted.
+     */
+    protected static int sampleRate = 
+        Integer.parseInt(System.getProperty("tomcat.util.buf.StringCache.sampleRate", "16"));
+
+
+    /**
+     * Maximum number of distinct strings counted between two rebuilds.
+     */
+    protected static final int MAX_STATS_FACTOR = 16;
+
+
+    /**
+     * Statistics for byte chunk.
      */
-    protected static final HashMap<ByteEntry, int[]> bcStats =
-        new HashMap<ByteEntry, int[]>(cacheSize);
+    protected static final ConcurrentHashMap<ByteEntry, AtomicInteger> bcStats =
+        new ConcurrentHashMap<ByteEntry, AtomicInteger>(cacheSize);
 
     
     /**
-     * toString count for byte chunk.
+     * Sampled toString count for byte chunk, since the last rebuild.
+     */
+    protected static final AtomicInteger bcCount = new AtomicInteger();
+
+
+    /**
+     * Guard the byte chunk table rebuild.
      */
-    protected static int bcCount = 0;
+    protected static final AtomicBoolean bcRebuilding = new AtomicBoolean();
     
     
     /**
      * Cache for byte chunk.
      */
-    protected static ByteEntry[] bcCache = null;
+    protected static volatile ByteEntry[] bcCache = null;
     
 
     /**
-     * Statistics hash map for char chunk.
+     * Statistics for char chunk.
+     */
+    protected static final ConcurrentHashMap<CharEntry, AtomicInteger> ccStats =
+        new ConcurrentHashMap<CharEntry, AtomicInteger>(cacheSize);
+
+
+    /**
+     * Sampled toString count for char chunk, since the last rebuild.
      */
-    protected static final HashMap<CharEntry, int[]> ccStats =
-        new HashMap<CharEntry, int[]>(cacheSize);
+    protected static final AtomicInteger ccCount = new AtomicInteger();
 
 
     /**
-     * toString count for char chunk.
+     * Guard the char chunk table rebuild.
      */
-    protected static int ccCount = 0; 
+    protected static final AtomicBoolean ccRebuilding = new AtomicBoolean();
     
 
     /**
      * Cache for char chunk.
      */
-    protected static CharEntry[] ccCache = null;
+    protected static volatile CharEntry[] ccCache = null;
 
     
     /**
      * Access count.
      */
-    protected static int accessCount = 0;
+    protected static final StripedCounter accessCount = new StripedCounter();
     
 
     /**
      * Hit count.
      */
-    protected static int hitCount = 0;
+    protected static final StripedCounter hitCount = new StripedCounter();
     
 
     // ------------------------------------------------------------ Properties
@@ -215,12 +253,28 @@ public class StringCache {
         StringCache.trainThreshold = trainThreshold;
     }
 
+
+    /**
+     * @return Returns the sampleRate.
+     */
+    public static int getSampleRate() {
+        return sampleRate;
+    }
+
+
+    /**
+     * @param sampleRate The sampleRate to set.
+     */
+    public static void setSampleRate(int sampleRate) {
+        StringCache.sampleRate = Math.max(1, sampleRate);
+    }
+
     
     /**
      * @return Returns the accessCount.
      */
     public static int getAccessCount() {
-        return accessCount;
+        return (int) accessCount.sum();
     }
     
     
@@ -228,7 +282,33 @@ public class StringCache {
      * @return Returns the hitCount.
      */
     public static int getHitCount() {
-        return hitCount;
+        return (int) hitCount.sum();
+    }
+
+
+    /**
+     * @return the ratio of cache lookups which found their String, 
+     * between 0 and 1.
+     */
+    public static double getHitRatio() {
+        long accesses = accessCount.sum();
+        return accesses == 0 ? 0 : (double) hitCount.sum() / accesses;
+    }
+
+
+    /**
+     * @return the number of Strings cached for byte chunk.
+     */
+    public static int getByteCacheSize() {
+        return size(bcCache);
+    }
+
+
+    /**
+     * @return the number of Strings cached for char chunk.
+     */
+    public static int getCharCacheSize() {
+        return size(ccCache);
     }
 
     
@@ -236,241 +316,127 @@ public class StringCache {
 
     
     public static void reset() {
-        hitCount = 0;
-        accessCount = 0;
-        synchronized (bcStats) {
-            bcCache = null;
-            bcCount = 0;
-        }
-        synchronized (ccStats) {
-            ccCache = null;
-            ccCount = 0;
-        }
+        hitCount.reset();
+        accessCount.reset();
+        bcCache = null;
+        bcStats.clear();
+        bcCount.set(0);
+        ccCache = null;
+        ccStats.clear();
+        ccCount.set(0);
     }
     
     
     public static String toString(ByteChunk bc) {
+        ByteEntry[] cache = bcCache;
+        if (cache == null && !byteEnabled) {
+            return bc.toStringInternal();
+        }
+
+        int hash = hash(bc);
+        ByteEntry entry = null;
+        String value = null;
+        if (cache != null) {
+            accessCount.increment();
+            entry = find(cache, bc, hash);
+            if (entry != null) {
+                hitCount.increment();
+                value = entry.value;
+            }
+        }
+        if (value == null) {
+            value = bc.toStringInternal();
+        }
 
-        // If the cache is null, then either caching is disabled, or we're
-        // still training
-        if (bcCache == null) {
-            String value = bc.toStringInternal();
-            if (byteEnabled) {
-                // If training, everything is synced
-                synchronized (bcStats) {
-                    // If the cache has been generated on a previous invocation
-                    // while waiting fot the lock, just return the toString value
-                    // we just calculated
-                    if (bcCache != null) {
-                        return value;
-                    }
-                    // Two cases: either we just exceeded the train count, in which
-                    // case the cache must be created, or we just update the count for
-                    // the string
-                    if (bcCount > trainThreshold) {
-                        long t1 = System.currentTimeMillis();
-                        // Sort the entries according to occurrence
-                        TreeMap<Integer, ArrayList<ByteEntry>> tempMap =
-                            new TreeMap<Integer, ArrayList<ByteEntry>>();
-                        Iterator<ByteEntry> entries =
-                            bcStats.keySet().iterator();
-                        while (entries.hasNext()) {
-                            ByteEntry entry = entries.next();
-                            int[] countA = bcStats.get(entry);
-                            Integer count = Integer.valueOf(countA[0]);
-                            // Add to the list for that count
-                            ArrayList<ByteEntry> list = tempMap.get(count);
-                            if (list == null) {
-                                // Create list
-                                list = new ArrayList<ByteEntry>();
-                                tempMap.put(count, list);
-                            }
-                            list.add(entry);
-                        }
-                        // Allocate array of the right size
-                        int size = bcStats.size();
-                        if (size > cacheSize) {
-                            size = cacheSize;
-                        }
-                        ByteEntry[] tempbcCache = new ByteEntry[size];
-                        // Fill it up using an alphabetical order
-                        // and a dumb insert sort
-                        ByteChunk tempChunk = new ByteChunk();
-                        int n = 0;
-                        while (n < size) {
-                            Object key = tempMap.lastKey();
-                            ArrayList<ByteEntry> list = tempMap.get(key);
-                            for (int i = 0; i < list.size() && n < size; i++) {
-                                ByteEntry entry = (ByteEntry) list.get(i);
-                                tempChunk.setBytes(entry.name, 0, entry.name.length);
-                                int insertPos = findClosest(tempChunk, tempbcCache, n);
-                                if (insertPos == n) {
-                                    tempbcCache[n + 1] = entry;
-                                } else {
-                                    System.arraycopy(tempbcCache, insertPos + 1, tempbcCache, 
-                                            insertPos + 2, n - insertPos - 1);
-                                    tempbcCache[insertPos + 1] = entry;
-                                }
-                                n++;
-                            }
-                            tempMap.remove(key);
-                        }
-                        bcCount = 0;
-                        bcStats.clear();
-                        bcCache = tempbcCache;
-                        if (logger.isLoggable(Level.FINEST)) {
-                            long t2 = System.currentTimeMillis();
-                            logger.log(Level.FINEST,"ByteCache generation time: " + (t2 - t1) + "ms");
-                        }
-                    } else {
-                        bcCount++;
-                        // Allocate new ByteEntry for the lookup
-                        ByteEntry entry = new ByteEntry();
-                        entry.value = value;
-                        int[] count = bcStats.get(entry);
-                        if (count == null) {
-                            int end = bc.getEnd();
-                            int start = bc.getStart();
-                            // Create byte array and copy bytes
-                            entry.name = new byte[bc.getLength()];
-                            System.arraycopy(bc.getBuffer(), start, entry.name, 0, end - start);
-                            // Set encoding
-                            entry.enc = bc.getEncoding();
-                            // Initialize occurrence count to one 
-                            count = new int[1];
-                            count[0] = 1;
-                            // Set in the stats hash map
-                            bcStats.put(entry, count);
-                        } else {
-                            count[0] = count[0] + 1;
-                        }
-                    }
+        // Count every invocation until a first table exists, then a sample
+        if (byteEnabled && (cache == null 
+                || ThreadLocalRandom.current().nextInt(sampleRate) == 0)) {
+            if (entry == null) {
+                entry = new ByteEntry();
+                entry.value = value;
+            }
+            AtomicInteger count = bcStats.get(entry);
+            if (count == null && bcStats.size() < cacheSize * MAX_STATS_FACTOR) {
+                if (entry.name == null) {
+                    entry.name = new byte[bc.getLength()];
+                    System.arraycopy(bc.getBuffer(), bc.getStart(), 
+                            entry.name, 0, entry.name.length);
+                    entry.enc = bc.getEncoding();
+                    entry.hash = hash;
                 }
+                count = bcStats.putIfAbsent(entry, new AtomicInteger(1));
             }
-            return value;
-        } else {
-            accessCount++;
-            // Find the corresponding String
-            String result = find(bc);
-            if (result == null) {
-                return bc.toStringInternal();
+            if (count != null) {
+                count.incrementAndGet();
+            }
+
+            int threshold = cache == null ? trainThreshold : trainThreshold / sampleRate;
+            if (bcCount.incrementAndGet() > threshold 
+                    && bcRebuilding.compareAndSet(false, true)) {
+                try {
+                    rebuildByteCache();
+                } finally {
+                    bcRebuilding.set(false);
+                }
             }
-            // Note: We don't care about safety for the stats
-            hitCount++;
-            return result;
         }
-        
+        return value;
     }
 
 
     public static String toString(CharChunk cc) {
-        
-        // If the cache is null, then either caching is disabled, or we're
-        // still training
-        if (ccCache == null) {
-            String value = cc.toStringInternal();
-            if (charEnabled) {
-                // If training, everything is synced
-                synchronized (ccStats) {
-                    // If the cache has been generated on a previous invocation
-                    // while waiting fot the lock, just return the toString value
-                    // we just calculated
-                    if (ccCache != null) {
-                        return value;
-                    }
-                    // Two cases: either we just exceeded the train count, in which
-                    // case the cache must be created, or we just update the count for
-                    // the string
-                    if (ccCount > trainThreshold) {
-                        long t1 = System.currentTimeMillis();
-                        // Sort the entries according to occurrence
-                        TreeMap<Integer, ArrayList<CharEntry>> tempMap =
-                            new TreeMap<Integer, ArrayList<CharEntry>>();
-                        Iterator<CharEntry> entries = ccStats.keySet().iterator();
-                        while (entries.hasNext()) {
-                            CharEntry entry = entries.next();
-                            int[] countA = ccStats.get(entry);
-                            Integer count = Integer.valueOf(countA[0]);
-                            // Add to the list for that count
-                            ArrayList<CharEntry> list = tempMap.get(count);
-                            if (list == null) {
-                                // Create list
-                                list = new ArrayList<CharEntry>();
-                                tempMap.put(count, list);
-                            }
-                            list.add(entry);
-                        }
-                        // Allocate array of the right size
-                        int size = ccStats.size();
-                        if (size > cacheSize) {
-                            size = cacheSize;
-                        }
-                        CharEntry[] tempccCache = new CharEntry[size];
-                        // Fill it up using an alphabetical order
-                        // and a dumb insert sort
-                        CharChunk tempChunk = new CharChunk();
-                        int n = 0;
-                        while (n < size) {
-                            Object key = tempMap.lastKey();
-                            ArrayList<CharEntry> list = tempMap.get(key);
-                            for (int i = 0; i < list.size() && n < size; i++) {
-                                CharEntry entry = (CharEntry) list.get(i);
-                                tempChunk.setChars(entry.name, 0, entry.name.length);
-                                int insertPos = findClosest(tempChunk, tempccCache, n);
-                                if (insertPos == n) {
-                                    tempccCache[n + 1] = entry;
-                                } else {
-                                    System.arraycopy(tempccCache, insertPos + 1, tempccCache, 
-                                            insertPos + 2, n - insertPos - 1);
-                                    tempccCache[insertPos + 1] = entry;
-                                }
-                                n++;
-                            }
-                            tempMap.remove(key);
-                        }
-                        ccCount = 0;
-                        ccStats.clear();
-                        ccCache = tempccCache;
-                        if (logger.isLoggable(Level.FINEST)) {
-                            long t2 = System.currentTimeMillis();
-                            logger.log(Level.FINEST,"CharCache generation time: " + (t2 - t1) + "ms");
-                        }
-                    } else {
-                        ccCount++;
-                        // Allocate new CharEntry for the lookup
-                        CharEntry entry = new CharEntry();
-                        entry.value = value;
-                        int[] count = ccStats.get(entry);
-                        if (count == null) {
-                            int end = cc.getEnd();
-                            int start = cc.getStart();
-                            // Create char array and copy chars
-                            entry.name = new char[cc.getLength()];
-                            System.arraycopy(cc.getBuffer(), start, entry.name, 0, end - start);
-                            // Initialize occurrence count to one 
-                            count = new int[1];
-                            count[0] = 1;
-                            // Set in the stats hash map
-                            ccStats.put(entry, count);
-                        } else {
-                            count[0] = count[0] + 1;
-                        }
-                    }
+        CharEntry[] cache = ccCache;
+        if (cache == null && !charEnabled) {
+            return cc.toStringInternal();
+        }
+
+        int hash = hash(cc);
+        CharEntry entry = null;
+        String value = null;
+        if (cache != null) {
+            accessCount.increment();
+            entry = find(cache, cc, hash);
+            if (entry != null) {
+                hitCount.increment();
+                value = entry.value;
+            }
+        }
+        if (value == null) {
+            value = cc.toStringInternal();
+        }
+
+        // Count every invocation until a first table exists, then a sample
+        if (charEnabled && (cache == null 
+                || ThreadLocalRandom.current().nextInt(sampleRate) == 0)) {
+            if (entry == null) {
+                entry = new CharEntry();
+                entry.value = value;
+            }
+            AtomicInteger count = ccStats.get(entry);
+            if (count == null && ccStats.size() < cacheSize * MAX_STATS_FACTOR) {
+                if (entry.name == null) {
+                    entry.name = new char[cc.getLength()];
+                    System.arraycopy(cc.getBuffer(), cc.getStart(), 
+                            entry.name, 0, entry.name.length);
+                    entry.hash = hash;
                 }
+                count = ccStats.putIfAbsent(entry, new AtomicInteger(1));
             }
-            return value;
-        } else {
-            accessCount++;
-            // Find the corresponding String
-            String result = find(cc);
-            if (result == null) {
-                return cc.toStringInternal();
+            if (count != null) {
+                count.incrementAndGet();
+            }
+
+            int threshold = cache == null ? trainThreshold : trainThreshold / sampleRate;
+            if (ccCount.incrementAndGet() > threshold 
+                    && ccRebuilding.compareAndSet(false, true)) {
+                try {
+                    rebuildCharCache();
+                } finally {
+                    ccRebuilding.set(false);
+                }
             }
-            // Note: We don't care about safety for the stats
-            hitCount++;
-            return result;
         }
-        
+        return value;
     }
     
     
@@ -478,187 +444,188 @@ public class StringCache {
 
 
     /**
-     * Compare given byte chunk with byte array.
-     * Return -1, 0 or +1 if inferior, equal, or superior to the String.
+     * Replace the byte chunk table by the most frequent Strings counted 
+     * since the last rebuild. Readers keep using the previous table
+     * until the new one is published.
      */
-    protected static final int compare(ByteChunk name, byte[] compareTo) {
-        int result = 0;
+    protected static void rebuildByteCache() {
+        long t1 = System.currentTimeMillis();
+        List<ByteEntry> entries = mostFrequent(bcStats, cacheSize);
+        ByteEntry[] table = new ByteEntry[tableSize(entries.size())];
+        for (ByteEntry entry : entries) {
+            int pos = entry.hash & (table.length - 1);
+            while (table[pos] != null) {
+                pos = (pos + 1) & (table.length - 1);
+            }
+            table[pos] = entry;
+        }
+        bcStats.clear();
+        bcCount.set(0);
+        bcCache = table;
+        if (logger.isLoggable(Level.FINEST)) {
+            long t2 = System.currentTimeMillis();
+            logger.log(Level.FINEST,"ByteCache generation time: " + (t2 - t1) + "ms");
+        }
+    }
 
-        byte[] b = name.getBuffer();
-        int start = name.getStart();
-        int end = name.getEnd();
-        int len = compareTo.length;
 
-        if ((end - start) < len) {
-            len = end - start;
-        }
-        for (int i = 0; (i < len) && (result == 0); i++) {
-            if (b[i + start] > compareTo[i]) {
-                result = 1;
-            } else if (b[i + start] < compareTo[i]) {
-                result = -1;
+    /**
+     * Replace the char chunk table by the most frequent Strings counted 
+     * since the last rebuild. Readers keep using the previous table
+     * until the new one is published.
+     */
+    protected static void rebuildCharCache() {
+        long t1 = System.currentTimeMillis();
+        List<CharEntry> entries = mostFrequent(ccStats, cacheSize);
+        CharEntry[] table = new CharEntry[tableSize(entries.size())];
+        for (CharEntry entry : entries) {
+            int pos = entry.hash & (table.length - 1);
+            while (table[pos] != null) {
+                pos = (pos + 1) & (table.length - 1);
             }
+            table[pos] = entry;
+        }
+        ccStats.clear();
+        ccCount.set(0);
+        ccCache = table;
+        if (logger.isLoggable(Level.FINEST)) {
+            long t2 = System.currentTimeMillis();
+            logger.log(Level.FINEST,"CharCache generation time: " + (t2 - t1) + "ms");
         }
-        if (result == 0) {
-            if (compareTo.length > (end - start)) {
-                result = -1;
-            } else if (compareTo.length < (end - start)) {
-                result = 1;
+    }
+
+
+    /**
+     * Return at most <tt>size</tt> keys of <tt>stats</tt>, by decreasing
+     * count.
+     */
+    protected static <T> List<T> mostFrequent(Map<T, AtomicInteger> stats, 
+                                              int size) {
+        List<Map.Entry<T, AtomicInteger>> counts = 
+            new ArrayList<Map.Entry<T, AtomicInteger>>(stats.entrySet());
+        Collections.sort(counts, new Comparator<Map.Entry<T, AtomicInteger>>() {
+            public int compare(Map.Entry<T, AtomicInteger> e1, 
+                               Map.Entry<T, AtomicInteger> e2) {
+                int c1 = e1.getValue().get();
+                int c2 = e2.getValue().get();
+                return c1 > c2 ? -1 : (c1 == c2 ? 0 : 1);
             }
+        });
+
+        List<T> result = new ArrayList<T>(Math.min(size, counts.size()));
+        for (int i = 0; i < counts.size() && i < size; i++) {
+            result.add(counts.get(i).getKey());
         }
         return result;
     }
 
-    
+
     /**
-     * Find an entry given its name in the cache and return the associated String.
+     * Find an entry given its name in the cache.
      */
-    protected static final String find(ByteChunk name) {
-        int pos = findClosest(name, bcCache, bcCache.length);
-        if ((pos < 0) || (compare(name, bcCache[pos].name) != 0)
-                || !(name.getEncoding().equals(bcCache[pos].enc))) {
-            return null;
-        } else {
-            return bcCache[pos].value;
+    protected static final ByteEntry find(ByteEntry[] cache, ByteChunk name, 
+                                          int hash) {
+        int mask = cache.length - 1;
+        for (int pos = hash & mask; cache[pos] != null; pos = (pos + 1) & mask) {
+            ByteEntry entry = cache[pos];
+            if (entry.hash == hash && equals(name, entry.name)
+                    && name.getEncoding().equals(entry.enc)) {
+                return entry;
+            }
         }
+        return null;
     }
 
-    
+
     /**
-     * Find an entry given its name in a sorted array of map elements.
-     * This will return the index for the closest inferior or equal item in the
-     * given array.
+     * Find an entry given its name in the cache.
      */
-    protected static final int findClosest(ByteChunk name, ByteEntry[] array, int len) {
+    protected static final CharEntry find(CharEntry[] cache, CharChunk name, 
+                                          int hash) {
+        int mask = cache.length - 1;
+        for (int pos = hash & mask; cache[pos] != null; pos = (pos + 1) & mask) {
+            CharEntry entry = cache[pos];
+            if (entry.hash == hash && equals(name, entry.name)) {
+                return entry;
+            }
+        }
+        return null;
+    }
 
-        int a = 0;
-        int b = len - 1;
 
-        // Special cases: -1 and 0
-        if (b == -1) {
-            return -1;
+    protected static final int hash(ByteChunk bc) {
+        byte[] b = bc.getBuffer();
+        int h = 0;
+        for (int i = bc.getStart(); i < bc.getEnd(); i++) {
+            h = 31 * h + b[i];
         }
-        
-        if (compare(name, array[0].name) < 0) {
-            return -1;
-        }         
-        if (b == 0) {
-            return 0;
+        return h ^ (h >>> 16);
+    }
+
+
+    protected static final int hash(CharChunk cc) {
+        char[] c = cc.getBuffer();
+        int h = 0;
+        for (int i = cc.getStart(); i < cc.getEnd(); i++) {
+            h = 31 * h + c[i];
         }
+        return h ^ (h >>> 16);
+    }
 
-        int i = 0;
-        while (true) {
-            i = (b + a) / 2;
-            int result = compare(name, array[i].name);
-            if (result == 1) {
-                a = i;
-            } else if (result == 0) {
-                return i;
-            } else {
-                b = i;
-            }
-            if ((b - a) == 1) {
-                int result2 = compare(name, array[b].name);
-                if (result2 < 0) {
-                    return a;
-                } else {
-                    return b;
-                }
+
+    protected static final boolean equals(ByteChunk name, byte[] compareTo) {
+        if (name.getLength() != compareTo.length) {
+            return false;
+        }
+        byte[] b = name.getBuffer();
+        int start = name.getStart();
+        for (int i = 0; i < compareTo.length; i++) {
+            if (b[start + i] != compareTo[i]) {
+                return false;
             }
         }
-
+        return true;
     }
 
 
-    /**
-     * Compare given char chunk with char array.
-     * Return -1, 0 or +1 if inferior, equal, or superior to the String.
-     */
-    protected static final int compare(CharChunk name, char[] compareTo) {
-        int result = 0;
-
+    protected static final boolean equals(CharChunk name, char[] compareTo) {
+        if (name.getLength() != compareTo.length) {
+            return false;
+        }
         char[] c = name.getBuffer();
         int start = name.getStart();
-        int end = name.getEnd();
-        int len = compareTo.length;
-
-        if ((end - start) < len) {
-            len = end - start;
-        }
-        for (int i = 0; (i < len) && (result == 0); i++) {
-            if (c[i + start] > compareTo[i]) {
-                result = 1;
-            } else if (c[i + start] < compareTo[i]) {
-                result = -1;
-            }
-        }
-        if (result == 0) {
-            if (compareTo.length > (end - start)) {
-                result = -1;
-            } else if (compareTo.length < (end - start)) {
-                result = 1;
+        for (int i = 0; i < compareTo.length; i++) {
+            if (c[start + i] != compareTo[i]) {
+                return false;
             }
         }
-        return result;
+        return true;
     }
 
-    
+
     /**
-     * Find an entry given its name in the cache and return the associated String.
+     * Return a power of two table size, at most half full.
      */
-    protected static final String find(CharChunk name) {
-        int pos = findClosest(name, ccCache, ccCache.length);
-        if ((pos < 0) || (compare(name, ccCache[pos].name) != 0)) {
-            return null;
-        } else {
-            return ccCache[pos].value;
+    private static int tableSize(int entries) {
+        int size = 2;
+        while (size < entries * 2) {
+            size <<= 1;
         }
+        return size;
     }
 
-    
-    /**
-     * Find an entry given its name in a sorted array of map elements.
-     * This will return the index for the closest inferior or equal item in the
-     * given array.
-     */
-    protected static final int findClosest(CharChunk name, CharEntry[] array, int len) {
-
-        int a = 0;
-        int b = len - 1;
 
-        // Special cases: -1 and 0
-        if (b == -1) {
-            return -1;
-        }
-        
-        if (compare(name, array[0].name) < 0 ) {
-            return -1;
-        }         
-        if (b == 0) {
+    private static int size(Object[] table) {
+        if (table == null) {
             return 0;
         }
-
-        int i = 0;
-        while (true) {
-            i = (b + a) / 2;
-            int result = compare(name, array[i].name);
-            if (result == 1) {
-                a = i;
-            } else if (result == 0) {
-                return i;
-            } else {
-                b = i;
-            }
-            if ((b - a) == 1) {
-                int result2 = compare(name, array[b].name);
-                if (result2 < 0) {
-                    return a;
-                } else {
-                    return b;
-                }
+        int size = 0;
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] != null) {
+                size++;
             }
         }
-
+        return size;
     }
 
 
@@ -670,6 +637,7 @@ public class StringCache {
         public byte[] name = null;
         public String enc = null;
         public String value = null;
+        public int hash = 0;
 
         public String toString() {
             return value;
@@ -694,6 +662,7 @@ public class StringCache {
 
         public char[] name = null;
         public String value = null;
+        public int hash = 0;
 
         public String toString() {
             return value;
@@ -0,0 +1,330 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.util.http;
+
+/**
+ * Utility class used to parse the <tt>Range</tt> request header and to 
+ * generate the headers of <tt>206 Partial Content</tt> responses.
+ *
+ * Ranges are represented as a <tt>long[]</tt> holding the first and last 
+ * byte positions, both inclusive, of every satisfiable range. Overlapping
+ * and adjacent ranges are coalesced and sorted by position.
+ */
+public class ByteRanges {
+
+    /**
+     * Returned when none of the requested ranges can be satisfied.
+     */
+    public final static long[] UNSATISFIABLE = new long[0];
+
+
+    /**
+     * The maximum number of ranges honoured in one request. Requests asking
+     * for more ranges are served the whole resource.
+     */
+    public final static int MAX_RANGES = 16;
+
+
+    /**
+     * The boundary separating the parts of a multipart/byteranges body.
+     */
+    public final static String BOUNDARY = "GRIZZLY_BYTERANGES_BOUNDARY";
+
+
+    /**
+     * The Content-Type of a response made of several ranges.
+     */
+    public final static String MULTIPART_CONTENT_TYPE = 
+            "multipart/byteranges; boundary=" + BOUNDARY;
+
+
+    /**
+     * The end of a multipart/byteranges body.
+     */
+    public final static String MULTIPART_END = "\r\n--" + BOUNDARY + "--\r\n";
+
+
+    /**
+     * The lower case range unit.
+     */
+    private final static byte[] BYTES_UNIT = "bytes".getBytes();
+
+
+    private ByteRanges(){
+    }
+
+
+    /**
+     * Parse a <tt>Range</tt> header value for a resource of 
+     * <tt>length</tt> bytes.
+     * @return <tt>null</tt> if the header is invalid and must be ignored,
+     *         {@link #UNSATISFIABLE} if no range can be satisfied, or the 
+     *         first and last positions of each range.
+     */
+    public static long[] parse(String value, long length){
+        if (value == null){
+            return null;
+        }
+        byte[] b = value.getBytes();
+        return parse(b, 0, b.length, length);
+    }
+
+
+    /**
+     * Parse a <tt>Range</tt> header value, stored between <tt>start</tt> 
+     * and <tt>end</tt>, for a resource of <tt>length</tt> bytes.
+     * @return <tt>null</tt> if the header is invalid and must be ignored,
+     *         {@link #UNSATISFIABLE} if no range can be satisfied, or the 
+     *         first and last positions of each range.
+     */
+    public static long[] parse(byte[] b, int start, int end, long length){
+        int i = skipSpaces(b, start, end);
+        if (end - i < BYTES_UNIT.length + 1){
+            return null;
+        }
+        for (int j = 0; j < BYTES_UNIT.length; j++){
+            if ((b[i + j] | 0x20) != BYTES_UNIT[j]){
+                return null;
+            }
+        }
+        i = skipSpaces(b, i + BYTES_UNIT.length, end);
+        if (i == end || b[i] != '='){
+            return null;
+        }
+        i++;
+
+        long[] ranges = new long[2 * MAX_RANGES];
+        int count = 0;
+        int specs = 0;
+        while (true){
+            i = skipSpaces(b, i, end);
+            if (i == end){
+                break;
+            } else if (b[i] == ','){
+                i++;
+                continue;
+            }
+
+            if (++specs > MAX_RANGES){
+                return null;
+            }
+
+            long first = -1;
+            if (b[i] != '-'){
+                int digitsEnd = skipDigits(b, i, end);
+                first = parseLong(b, i, digitsEnd);
+                if (first < 0){
+                    return null;
+                }
+                i = skipSpaces(b, digitsEnd, end);
+            }
+
+            if (i == end || b[i] != '-'){
+                return null;
+            }
+            i = skipSpaces(b, i + 1, end);
+
+            long last = -1;
+            int digitsEnd = skipDigits(b, i, end);
+            if (digitsEnd != i){
+                last = parseLong(b, i, digitsEnd);
+                if (last < 0){
+                    return null;
+                }
+                i = digitsEnd;
+            }
+
+            if (first == -1){
+                // suffix-byte-range-spec
+                if (last == -1){
+                    return null;
+                }
+                if (last == 0 || length == 0){
+                    continue;
+                }
+                first = Math.max(0, length - last);
+                last = length - 1;
+            } else {
+                if (last != -1 && last < first){
+                    return null;
+                }
+                if (first >= length){
+                    continue;
+                }
+                if (last == -1 || last >= length){
+                    last = length - 1;
+                }
+            }
+            ranges[count++] = first;
+            ranges[count++] = last;
+
+            i = skipSpaces(b, i, end);
+            if (i != end && b[i] != ','){
+                return null;
+            }
+        }
+
+        if (specs == 0){
+            return null;
+        } else if (count == 0){
+            return UNSATISFIABLE;
+        }
+
+        count = coalesce(ranges, count);
+        long[] result = new long[count];
+        System.arraycopy(ranges, 0, result, 0, count);
+        return result;
+    }
+
+
+    /**
+     * Sort the first <tt>count</tt> positions of <tt>ranges</tt> and merge 
+     * the ranges that overlap or are adjacent, so no byte is sent twice.
+     * @return the number of positions left.
+     */
+    private static int coalesce(long[] ranges, int count){
+        // Insertion sort, there are at most MAX_RANGES ranges.
+        for (int i = 2; i < count; i += 2){
+            long first = ranges[i];
+            long last = ranges[i + 1];
+            int j = i - 2;
+            while (j >= 0 && ranges[j] > first){
+                ranges[j + 2] = ranges[j];
+                ranges[j + 3] = ranges[j + 1];
+                j -= 2;
+            }
+            ranges[j + 2] = first;
+            ranges[j + 3] = last;
+        }
+
+        int merged = 2;
+        for (int i = 2; i < count; i += 2){
+            if (ranges[i] <= ranges[merged - 1] + 1){
+                ranges[merged - 1] = Math.max(ranges[merged - 1], 
+                        ranges[i + 1]);
+            } else {
+                ranges[merged++] = ranges[i];
+                ranges[merged++] = ranges[i + 1];
+            }
+        }
+        return merged;
+    }
+
+
+    /**
+     * Return the value of the <tt>Content-Range</tt> header of a range.
+     */
+    public static String contentRange(long first, long last, long length){
+        return "bytes " + first + "-" + last + "/" + length;
+    }
+
+
+    /**
+     * Return the value of the <tt>Content-Range</tt> header of a 
+     * <tt>416 Requested Range Not Satisfiable</tt> response.
+     */
+    public static String unsatisfiedContentRange(long length){
+        return "bytes */" + length;
+    }
+
+
+    /**
+     * Return the headers preceding the bytes of a range inside a 
+     * multipart/byteranges body.
+     */
+    public static String partHeader(String contentType, long first, 
+            long last, long length){
+        StringBuilder sb = new StringBuilder();
+        sb.append("\r\n--").append(BOUNDARY).append("\r\n");
+        if (contentType != null){
+            sb.append("Content-Type: ").append(contentType).append("\r\n");
+        }
+        sb.append("Content-Range: ")
+          .append(contentRange(first, last, length)).append("\r\n\r\n");
+        return sb.toString();
+    }
+
+
+    /**
+     * Return the length of the multipart/byteranges body of 
+     * <tt>ranges</tt>.
+     */
+    public static long multipartLength(long[] ranges, String contentType, 
+            long length){
+        long total = MULTIPART_END.length();
+        for (int i = 0; i < ranges.length; i += 2){
+            total += partHeader(contentType, ranges[i], ranges[i + 1], 
+                    length).length();
+            total += ranges[i + 1] - ranges[i] + 1;
+        }
+        return total;
+    }
+
+
+    private static int skipSpaces(byte[] b, int i, int end){
+        while (i < end && (b[i] == ' ' || b[i] == '\t')){
+            i++;
+        }
+        return i;
+    }
+
+
+    private static int skipDigits(byte[] b, int i, int end){
+        while (i < end && b[i] >= '0' && b[i] <= '9'){
+            i++;
+        }
+        return i;
+    }
+
+
+    /**
+     * Parse the digits between <tt>start</tt> and <tt>end</tt>.
+     * @return the value, or -1 if there are no digits or on overflow.
+     */
+    private static long parseLong(byte[] b, int start, int end){
+        if (start == end || end - start > 18){
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++){
+            value = value * 10 + (b[i] - '0');
+        }
+        return value;
+    }
+}
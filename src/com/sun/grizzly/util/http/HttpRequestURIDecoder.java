@@ -115,7 +115,7 @@ public class HttpRequestURIDecoder {
         if (encoding != null) {
             try {
                 if (b2cConverter == null) {
-                    b2cConverter = new B2CConverter(encoding);
+                    b2cConverter = B2CConverter.getThreadConverter(encoding);
                 }
             } catch (IOException e) {
                 // Ignore
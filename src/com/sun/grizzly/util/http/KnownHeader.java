@@ -0,0 +1,195 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.util.http;
+
+/**
+ * Well-known HTTP header names. The parser resolves a header name to its
+ * {@link KnownHeader} without allocating, so the name is shared by every
+ * request instead of being decoded from the request bytes.
+ */
+public enum KnownHeader {
+    HOST("host"),
+    CONNECTION("connection"),
+    CONTENT_LENGTH("content-length"),
+    CONTENT_TYPE("content-type"),
+    CONTENT_ENCODING("content-encoding"),
+    TRANSFER_ENCODING("transfer-encoding"),
+    ACCEPT("accept"),
+    ACCEPT_CHARSET("accept-charset"),
+    ACCEPT_ENCODING("accept-encoding"),
+    ACCEPT_LANGUAGE("accept-language"),
+    USER_AGENT("user-agent"),
+    COOKIE("cookie"),
+    REFERER("referer"),
+    AUTHORIZATION("authorization"),
+    CACHE_CONTROL("cache-control"),
+    PRAGMA("pragma"),
+    KEEP_ALIVE("keep-alive"),
+    EXPECT("expect"),
+    IF_MODIFIED_SINCE("if-modified-since"),
+    IF_NONE_MATCH("if-none-match"),
+    RANGE("range"),
+    ORIGIN("origin"),
+    UPGRADE("upgrade"),
+    X_FORWARDED_FOR("x-forwarded-for");
+
+    /**
+     * The {@link KnownHeader}s, indexed by name length.
+     */
+    private final static KnownHeader[][] byLength;
+
+    static {
+        int maxLength = 0;
+        for (KnownHeader header : values()) {
+            maxLength = Math.max(maxLength, header.bytes.length);
+        }
+
+        int[] counts = new int[maxLength + 1];
+        for (KnownHeader header : values()) {
+            counts[header.bytes.length]++;
+        }
+
+        byLength = new KnownHeader[maxLength + 1][];
+        for (int i = 0; i <= maxLength; i++) {
+            byLength[i] = new KnownHeader[counts[i]];
+            counts[i] = 0;
+        }
+        for (KnownHeader header : values()) {
+            int length = header.bytes.length;
+            byLength[length][counts[length]++] = header;
+        }
+    }
+
+    private final String name;
+
+    private final byte[] bytes;
+
+    KnownHeader(String name) {
+        this.name = name;
+        this.bytes = name.getBytes();
+    }
+
+    /**
+     * Return the lower case header name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Return the {@link KnownHeader} whose name matches the bytes,
+     * ignoring case, or <tt>null</tt>.
+     */
+    public static KnownHeader lookup(byte[] b, int start, int length) {
+        if (length >= byLength.length) {
+            return null;
+        }
+
+        KnownHeader[] candidates = byLength[length];
+        for (int i = 0; i < candidates.length; i++) {
+            if (candidates[i].matches(b, start)) {
+                return candidates[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the {@link KnownHeader} whose name matches the chars,
+     * ignoring case, or <tt>null</tt>.
+     */
+    public static KnownHeader lookup(char[] c, int start, int length) {
+        if (length >= byLength.length) {
+            return null;
+        }
+
+        KnownHeader[] candidates = byLength[length];
+        for (int i = 0; i < candidates.length; i++) {
+            if (candidates[i].matches(c, start)) {
+                return candidates[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the {@link KnownHeader} whose name matches <tt>name</tt>,
+     * ignoring case, or <tt>null</tt>.
+     */
+    public static KnownHeader lookup(String name) {
+        int length = name.length();
+        if (length >= byLength.length) {
+            return null;
+        }
+
+        KnownHeader[] candidates = byLength[length];
+        for (int i = 0; i < candidates.length; i++) {
+            if (candidates[i].name.equalsIgnoreCase(name)) {
+                return candidates[i];
+            }
+        }
+        return null;
+    }
+
+    private boolean matches(byte[] b, int start) {
+        for (int i = 0; i < bytes.length; i++) {
+            int c = b[start + i];
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (c != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(char[] c, int start) {
+        for (int i = 0; i < bytes.length; i++) {
+            int ch = c[start + i];
+            if (ch >= 'A' && ch <= 'Z') {
+                ch += 'a' - 'A';
+            }
+            if (ch != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
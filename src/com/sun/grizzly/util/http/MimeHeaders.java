@@ -145,6 +145,12 @@ public class MimeHeaders {
      */
     private int count;
 
+    /**
+     * Position + 1 of the first field of each {@link KnownHeader},
+     * 0 if absent. Built as headers are added, reset in {@link #clear}.
+     */
+    private final int[] knownIndex = new int[KnownHeader.values().length];
+
     /**
      * Creates a new MimeHeaders object using a default buffer size.
      */
@@ -167,6 +173,7 @@ public class MimeHeaders {
 	    headers[i].recycle();
 	}
 	count = 0;
+        Arrays.fill(knownIndex, 0);
     }
 
     /**
@@ -212,13 +219,11 @@ public class MimeHeaders {
     /** Find the index of a header with the given name.
      */
     public int findHeader( String name, int starting ) {
-	// We can use a hash - but it's not clear how much
-	// benefit you can get - there is an  overhead 
-	// and the number of headers is small (4-5 ?)
-	// Another problem is that we'll pay the overhead
-	// of constructing the hashtable
+        KnownHeader knownHeader = KnownHeader.lookup(name);
+        if (knownHeader != null) {
+            return findHeader(knownHeader, starting);
+        }
 
-	// A custom search tree may be better
         for (int i = starting; i < count; i++) {
 	    if (headers[i].getName().equalsIgnoreCase(name)) {
                 return i;
@@ -227,6 +232,24 @@ public class MimeHeaders {
         return -1;
     }
     
+    /** Find the index of a {@link KnownHeader}, without comparing names.
+     */
+    public int findHeader( KnownHeader knownHeader, int starting ) {
+        int first = knownIndex[knownHeader.ordinal()] - 1;
+        if (first < 0) {
+            return -1;
+        } else if (first >= starting) {
+            return first;
+        }
+
+        for (int i = starting; i < count; i++) {
+            if (headers[i].knownHeader == knownHeader) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
     // -------------------- --------------------
 
     /**
@@ -265,12 +288,46 @@ public class MimeHeaders {
 	return mh;
     }
 
+    /**
+     * Index the last created field as <tt>knownHeader</tt>.
+     */
+    private void index(MimeHeaderField mh, KnownHeader knownHeader) {
+        mh.knownHeader = knownHeader;
+        if (knownHeader != null && knownIndex[knownHeader.ordinal()] == 0) {
+            knownIndex[knownHeader.ordinal()] = count;
+        }
+    }
+
+    /**
+     * Rebuild the {@link KnownHeader} index after fields were moved.
+     */
+    private void reindex() {
+        Arrays.fill(knownIndex, 0);
+        for (int i = 0; i < count; i++) {
+            KnownHeader knownHeader = headers[i].knownHeader;
+            if (knownHeader != null && knownIndex[knownHeader.ordinal()] == 0) {
+                knownIndex[knownHeader.ordinal()] = i + 1;
+            }
+        }
+    }
+
     /** Create a new named header , return the MessageBytes
 	container for the new value
     */
     public MessageBytes addValue( String name ) {
  	MimeHeaderField mh = createHeader();
 	mh.getName().setString(name);
+        index(mh, KnownHeader.lookup(name));
+	return mh.getValue();
+    }
+
+    /** Create a new header named after a {@link KnownHeader}, return the
+        MessageBytes container for the new value
+    */
+    public MessageBytes addValue( KnownHeader knownHeader ) {
+ 	MimeHeaderField mh = createHeader();
+	mh.getName().setString(knownHeader.getName());
+        index(mh, knownHeader);
 	return mh.getValue();
     }
 
@@ -282,6 +339,7 @@ public class MimeHeaders {
     {
 	MimeHeaderField mhf=createHeader();
 	mhf.getName().setBytes(b, startN, len);
+        index(mhf, KnownHeader.lookup(b, startN, len));
 	return mhf.getValue();
     }
 
@@ -291,6 +349,7 @@ public class MimeHeaders {
     {
 	MimeHeaderField mhf=createHeader();
 	mhf.getName().setChars(c, startN, len);
+        index(mhf, KnownHeader.lookup(c, startN, len));
 	return mhf.getValue();
     }
 
@@ -300,6 +359,19 @@ public class MimeHeaders {
 	if this .
     */
     public MessageBytes setValue( String name ) {
+        KnownHeader knownHeader = KnownHeader.lookup(name);
+        if (knownHeader != null) {
+            int i = findHeader(knownHeader, 0);
+            if (i < 0) {
+                return addValue(knownHeader);
+            }
+            for ( int j = findHeader(knownHeader, i + 1); j >= 0;
+                    j = findHeader(knownHeader, j)) {
+                removeHeader(j);
+            }
+            return headers[i].getValue();
+        }
+
         for ( int i = 0; i < count; i++ ) {
             if(headers[i].getName().equalsIgnoreCase(name)) {
                 for ( int j=i+1; j < count; j++ ) {
@@ -322,6 +394,11 @@ public class MimeHeaders {
      * in the header, an arbitrary one is returned.
      */
     public MessageBytes getValue(String name) {
+        KnownHeader knownHeader = KnownHeader.lookup(name);
+        if (knownHeader != null) {
+            return getValue(knownHeader);
+        }
+
         for (int i = 0; i < count; i++) {
 	    if (headers[i].getName().equalsIgnoreCase(name)) {
                 return headers[i].getValue();
@@ -330,6 +407,15 @@ public class MimeHeaders {
         return null;
     }
 
+    /**
+     * Returns the first header field named after <tt>knownHeader</tt>,
+     * or null. Constant time.
+     */
+    public MessageBytes getValue(KnownHeader knownHeader) {
+        int i = knownIndex[knownHeader.ordinal()] - 1;
+        return i >= 0 ? headers[i].getValue() : null;
+    }
+
     // bad shortcut - it'll convert to string ( too early probably,
     // encoding is guessed very late )
     public String getHeader(String name) {
@@ -379,10 +465,15 @@ public class MimeHeaders {
     private void removeHeader(int idx) {
         MimeHeaderField mh = headers[idx];
         
+        KnownHeader knownHeader = mh.knownHeader;
+        boolean moved = headers[count - 1].knownHeader != null;
         mh.recycle();
         headers[idx] = headers[count - 1];
         headers[count - 1] = mh;
         count--;
+        if (knownHeader != null || moved) {
+            reindex();
+        }
     }
 
 }
@@ -485,6 +576,11 @@ class MimeHeaderField {
     protected final MessageBytes nameB = MessageBytes.newInstance();
     protected final MessageBytes valueB = MessageBytes.newInstance();
 
+    /**
+     * The {@link KnownHeader} this field is named after, or null.
+     */
+    KnownHeader knownHeader;
+
     /**
      * Creates a new, uninitialized header field.
      */
@@ -494,6 +590,7 @@ class MimeHeaderField {
     public void recycle() {
 	nameB.recycle();
 	valueB.recycle();
+        knownHeader = null;
     }
 
     public MessageBytes getName() {
@@ -112,6 +112,20 @@ public class Mapper {
      * Allow replacement of already added {@link Host}, {@link #Context} and {@link #Wrapper}
      */
     private static boolean allowReplacement = false;
+
+
+    /**
+     * Cache of {@link #map(MessageBytes, MessageBytes, MappingData)} results,
+     * <tt>null</tt> when disabled.
+     */
+    private volatile MappingCache mappingCache = null;
+
+
+    /**
+     * <tt>true</tt> once a context with static resources was added. Mapping
+     * such context depends on the resources, so results are no longer cached.
+     */
+    private volatile boolean hasResources = false;
     
     // --------------------------------------------------------- Public Methods
     
@@ -171,6 +185,37 @@ public class Mapper {
      */
     public void setDefaultHostName(String defaultHostName) {
         this.defaultHostName = defaultHostName;
+        invalidateMappingCache();
+    }
+
+
+    /**
+     * Set the number of host and URI mapping results to cache. A value of 0
+     * disables the cache. Default is 0.
+     */
+    public synchronized void setMappingCacheSize(int mappingCacheSize) {
+        mappingCache = mappingCacheSize > 0 ?
+            new MappingCache(mappingCacheSize) : null;
+    }
+
+
+    /**
+     * Return the number of cached mapping results, 0 if disabled.
+     */
+    public int getMappingCacheSize() {
+        MappingCache cache = mappingCache;
+        return cache == null ? 0 : cache.size();
+    }
+
+
+    /**
+     * Drop all cached mapping results. Invoked each time the hosts,
+     * contexts or wrappers are updated.
+     */
+    protected synchronized void invalidateMappingCache() {
+        if (mappingCache != null) {
+            mappingCache = new MappingCache(mappingCache.size());
+        }
     }
 
     /**
@@ -223,6 +268,7 @@ public class Mapper {
         if (defaultContextPath != null) {
             newHost.defaultContextPaths[0] = defaultContextPath;
 	}
+        invalidateMappingCache();
     }
 
 
@@ -255,6 +301,7 @@ public class Mapper {
         // START GlassFish 1024
         defaultContextPathsMap.remove(name);
         // END GlassFish 1024
+        invalidateMappingCache();
     }
 
     public String[] getHosts() {
@@ -332,7 +379,11 @@ public class Mapper {
                     oldElem.resources = resources;
                 }
             }
+            if (resources != null) {
+                hasResources = true;
+            }
         }
+        invalidateMappingCache();
     }
 
 
@@ -369,6 +420,7 @@ public class Mapper {
                 }
             }
         }
+        invalidateMappingCache();
     }
 
 
@@ -515,6 +567,7 @@ public class Mapper {
                 }
             }
         }
+        invalidateMappingCache();
     }
 
 
@@ -598,6 +651,7 @@ public class Mapper {
                 }
             }
         }
+        invalidateMappingCache();
     }
 
     public String getWrappersString( String host, String context ) {
@@ -670,6 +724,7 @@ public class Mapper {
             hosts[pos].defaultContexts[0] = null;
             defaultContextPathsMap.remove(hostName);
         }
+        invalidateMappingCache();
     }
 
 
@@ -726,7 +781,26 @@ public class Mapper {
         }
         host.toChars();
         uri.toChars();
-        internalMap(host.getCharChunk(), uri.getCharChunk(), mappingData);
+
+        MappingCache cache = mappingCache;
+        if (cache == null || hasResources || mappingData.host != null
+                || mappingData.context != null || mappingData.wrapper != null) {
+            internalMap(host.getCharChunk(), uri.getCharChunk(), mappingData);
+            return;
+        }
+
+        CharChunk hostCC = host.getCharChunk();
+        CharChunk uriCC = uri.getCharChunk();
+        int hash = MappingCache.hash(hostCC, uriCC);
+        if (cache.get(hash, hostCC, uriCC, mappingData)) {
+            return;
+        }
+
+        // internalMap may append to the URI, copy the key first
+        char[] hostChars = MappingCache.copy(hostCC);
+        char[] uriChars = MappingCache.copy(uriCC);
+        internalMap(hostCC, uriCC, mappingData);
+        cache.put(hash, hostChars, uriChars, mappingData);
 
     }
 
@@ -0,0 +1,202 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.util.http.mapper;
+
+import com.sun.grizzly.util.buf.CharChunk;
+import com.sun.grizzly.util.buf.MessageBytes;
+
+/**
+ * Bounded, direct-mapped cache of {@link Mapper} results, keyed by the host
+ * and decoded URI chars. Lookups don't allocate; a miss replaces whatever
+ * entry shared the slot. Entries are immutable, so the table can be read and
+ * written without locking. The {@link Mapper} drops the whole cache when its
+ * hosts, contexts or wrappers change.
+ */
+public class MappingCache {
+
+    private final Entry[] entries;
+
+    private final int mask;
+
+
+    /**
+     * Create a cache holding at most <tt>size</tt> entries, rounded up
+     * to a power of two.
+     */
+    public MappingCache(int size) {
+        int capacity = 1;
+        while (capacity < size) {
+            capacity <<= 1;
+        }
+        entries = new Entry[capacity];
+        mask = capacity - 1;
+    }
+
+
+    /**
+     * Return the number of slots.
+     */
+    public int size() {
+        return entries.length;
+    }
+
+
+    /**
+     * Hash the host and the URI chars.
+     */
+    public static int hash(CharChunk host, CharChunk uri) {
+        int h = hash(1, host.getBuffer(), host.getStart(), host.getEnd());
+        h = hash(h, uri.getBuffer(), uri.getStart(), uri.getEnd());
+        return h ^ (h >>> 16);
+    }
+
+
+    /**
+     * Fill <tt>mappingData</tt> from the cache.
+     *
+     * @return <tt>true</tt> if the host and URI were found
+     */
+    public boolean get(int hash, CharChunk host, CharChunk uri,
+                       MappingData mappingData) {
+        Entry entry = entries[hash & mask];
+        if (entry == null || entry.hash != hash
+                || !equals(entry.hostChars, host)
+                || !equals(entry.uriChars, uri)) {
+            return false;
+        }
+
+        mappingData.host = entry.host;
+        mappingData.context = entry.context;
+        mappingData.wrapper = entry.wrapper;
+        mappingData.jspWildCard = entry.jspWildCard;
+        mappingData.isDefaultContext = entry.isDefaultContext;
+        set(mappingData.contextPath, entry.contextPath);
+        set(mappingData.requestPath, entry.requestPath);
+        set(mappingData.wrapperPath, entry.wrapperPath);
+        set(mappingData.pathInfo, entry.pathInfo);
+        set(mappingData.redirectPath, entry.redirectPath);
+        return true;
+    }
+
+
+    /**
+     * Store the result of mapping <tt>hostChars</tt> and <tt>uriChars</tt>.
+     */
+    public void put(int hash, char[] hostChars, char[] uriChars,
+                    MappingData mappingData) {
+        entries[hash & mask] = new Entry(hash, hostChars, uriChars,
+                mappingData);
+    }
+
+
+    /**
+     * Copy the chars of <tt>cc</tt>, to be used as a key once the
+     * {@link CharChunk} has been mutated by the mapping.
+     */
+    public static char[] copy(CharChunk cc) {
+        char[] chars = new char[cc.getLength()];
+        System.arraycopy(cc.getBuffer(), cc.getStart(), chars, 0,
+                chars.length);
+        return chars;
+    }
+
+
+    private static int hash(int h, char[] c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            h = 31 * h + c[i];
+        }
+        return 31 * h + (end - start);
+    }
+
+
+    private static boolean equals(char[] chars, CharChunk cc) {
+        if (chars.length != cc.getLength()) {
+            return false;
+        }
+        char[] c = cc.getBuffer();
+        int start = cc.getStart();
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] != c[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static void set(MessageBytes mb, String value) {
+        if (value != null) {
+            mb.setString(value);
+        }
+    }
+
+
+    private static final class Entry {
+        final int hash;
+        final char[] hostChars;
+        final char[] uriChars;
+        final Object host;
+        final Object context;
+        final Object wrapper;
+        final boolean jspWildCard;
+        final boolean isDefaultContext;
+        final String contextPath;
+        final String requestPath;
+        final String wrapperPath;
+        final String pathInfo;
+        final String redirectPath;
+
+        Entry(int hash, char[] hostChars, char[] uriChars,
+              MappingData mappingData) {
+            this.hash = hash;
+            this.hostChars = hostChars;
+            this.uriChars = uriChars;
+            host = mappingData.host;
+            context = mappingData.context;
+            wrapper = mappingData.wrapper;
+            jspWildCard = mappingData.jspWildCard;
+            isDefaultContext = mappingData.isDefaultContext;
+            contextPath = mappingData.contextPath.toString();
+            requestPath = mappingData.requestPath.toString();
+            wrapperPath = mappingData.wrapperPath.toString();
+            pathInfo = mappingData.pathInfo.toString();
+            redirectPath = mappingData.redirectPath.toString();
+        }
+    }
+}
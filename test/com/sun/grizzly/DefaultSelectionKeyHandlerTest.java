@@ -0,0 +1,142 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly;
+
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Tests the expiration timer wheel of {@link DefaultSelectionKeyHandler}.
+ */
+public class DefaultSelectionKeyHandlerTest extends TestCase {
+
+    private static final long TICK = DefaultSelectionKeyHandler.EXPIRATION_TICK;
+    
+    private Selector selector;
+    private Pipe pipe;
+    private SelectionKey key;
+    private RecordingHandler handler;
+    private long start;
+
+    
+    @Override
+    protected void setUp() throws Exception {
+        selector = Selector.open();
+        pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        key = pipe.source().register(selector, SelectionKey.OP_READ);
+        handler = new RecordingHandler();
+        start = System.currentTimeMillis();
+        key.attach(start);
+    }
+
+    
+    @Override
+    protected void tearDown() throws Exception {
+        pipe.source().close();
+        pipe.sink().close();
+        selector.close();
+    }
+
+    
+    public void testShortTimeout() {
+        handler.setTimeout(5 * TICK);
+        handler.scheduleExpiration(key);
+        
+        handler.expireKeys(start + 3 * TICK);
+        assertTrue(handler.expired.isEmpty());
+        handler.expireKeys(start + 7 * TICK);
+        assertEquals(1, handler.expired.size());
+    }
+
+    
+    public void testTimeoutLongerThanWheelRevolution() {
+        long timeout = 1500 * TICK;
+        handler.setTimeout(timeout);
+        handler.scheduleExpiration(key);
+        
+        for (long time = start; time < start + timeout; time += TICK) {
+            handler.expireKeys(time);
+            assertTrue("Expired at " + (time - start), 
+                    handler.expired.isEmpty());
+        }
+        handler.expireKeys(start + timeout + 2 * TICK);
+        assertEquals(1, handler.expired.size());
+        assertSame(key, handler.expired.get(0));
+    }
+
+    
+    public void testLongPause() {
+        handler.setTimeout(10 * TICK);
+        handler.scheduleExpiration(key);
+        handler.expireKeys(start + TICK);
+        
+        // The selector thread was not woken up for several revolutions.
+        handler.expireKeys(start + 2000 * TICK);
+        assertEquals(1, handler.expired.size());
+    }
+
+    
+    public void testRestampedKeyIsNotExpired() {
+        handler.setTimeout(10 * TICK);
+        handler.scheduleExpiration(key);
+        handler.expireKeys(start + 5 * TICK);
+        
+        key.attach(start + 8 * TICK);
+        handler.scheduleExpiration(key);
+        handler.expireKeys(start + 12 * TICK);
+        assertTrue(handler.expired.isEmpty());
+        handler.expireKeys(start + 20 * TICK);
+        assertEquals(1, handler.expired.size());
+    }
+
+    
+    private static class RecordingHandler extends DefaultSelectionKeyHandler {
+        final List<SelectionKey> expired = new ArrayList<SelectionKey>();
+        
+        @Override
+        protected void expireKey(SelectionKey key) {
+            expired.add(key);
+        }
+    }
+}
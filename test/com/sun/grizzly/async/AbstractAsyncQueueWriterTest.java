@@ -0,0 +1,142 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.async;
+
+import com.sun.grizzly.util.ParkedIO;
+import com.sun.grizzly.util.SelectorParker;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.WritableByteChannel;
+import junit.framework.TestCase;
+
+/**
+ * Tests the gathering write of {@link AbstractAsyncQueueWriter} when it
+ * isn't overridden, and the wait for a writable channel.
+ */
+public class AbstractAsyncQueueWriterTest extends TestCase {
+
+    /**
+     * Write at most <tt>capacity</tt> bytes in total.
+     */
+    private static class LimitedWriter extends AbstractAsyncQueueWriter {
+        private int capacity;
+
+        LimitedWriter(int capacity) {
+            super(null);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected OperationResult doWrite(WritableByteChannel channel,
+                SocketAddress dstAddress, ByteBuffer byteBuffer,
+                OperationResult dstResult) throws IOException {
+            int written = Math.min(capacity, byteBuffer.remaining());
+            byteBuffer.position(byteBuffer.position() + written);
+            capacity -= written;
+            dstResult.bytesProcessed = written;
+            return dstResult;
+        }
+    }
+
+    public void testAllBuffersWritten() throws IOException {
+        ByteBuffer[] buffers = {ByteBuffer.allocate(10),
+            ByteBuffer.allocate(20), ByteBuffer.allocate(30)};
+        OperationResult result = new LimitedWriter(100).doWrite(null,
+                buffers, 2, new OperationResult());
+
+        assertEquals(30, result.bytesProcessed);
+        assertFalse(buffers[0].hasRemaining());
+        assertFalse(buffers[1].hasRemaining());
+        assertEquals(30, buffers[2].remaining());
+    }
+
+    public void testStopsAtPartialWrite() throws IOException {
+        ByteBuffer[] buffers = {ByteBuffer.allocate(10),
+            ByteBuffer.allocate(20), ByteBuffer.allocate(30)};
+        OperationResult result = new LimitedWriter(15).doWrite(null,
+                buffers, 3, new OperationResult());
+
+        assertEquals(15, result.bytesProcessed);
+        assertFalse(buffers[0].hasRemaining());
+        assertEquals(15, buffers[1].remaining());
+        assertEquals(30, buffers[2].remaining());
+    }
+
+    public void testWaitForWritableParksTheKey() throws Exception {
+        Pipe pipe = Pipe.open();
+        Selector selector = Selector.open();
+        try {
+            pipe.sink().configureBlocking(false);
+            SelectionKey key = pipe.sink().register(selector, 0);
+            TCPAsyncQueueWriter writer = new TCPAsyncQueueWriter(null) {
+                @Override
+                protected void registerForWriting(SelectionKey key) {
+                }
+            };
+            writer.setWatermarks(0, 1);
+            // Fill the pipe, so the last buffer stays queued.
+            while (writer.getQueuedDataSize(key) == 0) {
+                writer.write(key, ByteBuffer.allocate(8192));
+            }
+            assertFalse(writer.isWritable(key));
+
+            final int[] parkedOps = new int[1];
+            ParkedIO.bind(new SelectorParker() {
+                public int park(SelectionKey key, int ops, long timeout) {
+                    parkedOps[0] = ops;
+                    return SelectorParker.TIMEOUT;
+                }
+            }, key);
+            try {
+                assertFalse(writer.waitForWritable(key, 100));
+            } finally {
+                ParkedIO.unbind();
+            }
+            assertEquals(SelectionKey.OP_WRITE, parkedOps[0]);
+        } finally {
+            selector.close();
+            pipe.sink().close();
+            pipe.source().close();
+        }
+    }
+}
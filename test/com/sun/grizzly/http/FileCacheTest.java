@@ -0,0 +1,384 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.http;
+
+import com.sun.grizzly.util.http.ByteRanges;
+import com.sun.grizzly.util.http.MimeHeaders;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import junit.framework.TestCase;
+
+/**
+ * Tests the responses sent by the {@link FileCache}.
+ */
+public class FileCacheTest extends TestCase {
+
+    private static final String URI = "/test.txt";
+    
+    private static final String LAST_MODIFIED = 
+            "Sat, 06 Jan 2001 12:00:00 GMT";
+    
+    private File dir;
+    private byte[] content;
+    private FileCache fileCache;
+    private ServerSocketChannel server;
+    private SocketChannel client;
+    private SocketChannel peer;
+
+    
+    @Override
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("filecache", "");
+        dir.delete();
+        dir.mkdir();
+        
+        content = new byte[1000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + i % 26);
+        }
+        FileOutputStream out = new FileOutputStream(new File(dir, URI));
+        out.write(content);
+        out.close();
+        
+        fileCache = new FileCache();
+        fileCache.setIsEnabled(true);
+        fileCache.setMinEntrySize(64 * 1024);
+        fileCache.setCacheManager(
+                new ConcurrentLinkedQueue<FileCache.FileCacheEntry>());
+        MimeHeaders headers = new MimeHeaders();
+        headers.addValue("content-type").setString("text/plain");
+        fileCache.add(FileCache.DEFAULT_SERVLET_NAME, dir.getPath(), URI,
+                headers, false);
+        assertNotNull(fileCache.getCache().get(URI));
+        
+        server = ServerSocketChannel.open();
+        server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+        client = SocketChannel.open(server.socket().getLocalSocketAddress());
+        peer = server.accept();
+        peer.configureBlocking(false);
+    }
+
+    
+    @Override
+    protected void tearDown() throws Exception {
+        // The cache sizes are shared by all the instances.
+        for (FileCache.FileCacheEntry entry : fileCache.getCache().values()) {
+            entry.run();
+        }
+        client.close();
+        peer.close();
+        server.close();
+        new File(dir, URI).delete();
+        dir.delete();
+    }
+
+    
+    public void testSingleRange() throws IOException {
+        String response = send("Range: bytes=10-19\r\n");
+        assertTrue(response, response.startsWith("HTTP/1.1 206"));
+        assertTrue(response, response.contains("Content-Length: 10\r\n"));
+        assertTrue(response, response.contains(
+                "Content-Range: bytes 10-19/1000\r\n"));
+        assertTrue(response, response.endsWith(
+                "\r\n\r\n" + new String(content, 10, 10)));
+    }
+
+    
+    public void testMultipleRanges() throws IOException {
+        String response = send("Range: bytes=0-9,900-,5-14\r\n");
+        assertTrue(response, response.startsWith("HTTP/1.1 206"));
+        assertTrue(response, response.contains(
+                ByteRanges.MULTIPART_CONTENT_TYPE));
+        
+        String body = ByteRanges.partHeader("text/plain", 0, 14, 1000) 
+                + new String(content, 0, 15)
+                + ByteRanges.partHeader("text/plain", 900, 999, 1000)
+                + new String(content, 900, 100)
+                + ByteRanges.MULTIPART_END;
+        assertTrue(response, response.contains(
+                "Content-Length: " + body.length() + "\r\n"));
+        assertTrue(response, response.endsWith("\r\n\r\n" + body));
+    }
+
+    
+    public void testUnsatisfiableRange() throws IOException {
+        String response = send("Range: bytes=5000-\r\n");
+        assertTrue(response, response.startsWith("HTTP/1.1 416"));
+        assertTrue(response, response.contains("Content-Length: 0\r\n"));
+    }
+
+    
+    public void testRangesUseOverridableSend() throws IOException {
+        fileCache.getCache().get(URI).run();
+        final int[] calls = new int[1];
+        fileCache = new FileCache() {
+            @Override
+            protected void sendCache(SocketChannel socketChannel,
+                    ByteBuffer headerBuffer, ByteBuffer[] body,
+                    boolean keepAlive) throws IOException {
+                calls[0]++;
+                super.sendCache(socketChannel, headerBuffer, body, keepAlive);
+            }
+        };
+        fileCache.setIsEnabled(true);
+        fileCache.setMinEntrySize(64 * 1024);
+        fileCache.setCacheManager(
+                new ConcurrentLinkedQueue<FileCache.FileCacheEntry>());
+        MimeHeaders headers = new MimeHeaders();
+        headers.addValue("content-type").setString("text/plain");
+        fileCache.add(FileCache.DEFAULT_SERVLET_NAME, dir.getPath(), URI,
+                headers, false);
+        
+        String response = send("Range: bytes=10-19\r\n");
+        assertTrue(response, response.startsWith("HTTP/1.1 206"));
+        assertEquals(1, calls[0]);
+    }
+
+    
+    public void testRemoveIsIdempotent() {
+        FileCache.FileCacheEntry entry = fileCache.getCache().get(URI);
+        assertEquals(1, fileCache.getCountOpenEntries());
+        assertEquals(content.length, fileCache.getSizeHeapCache());
+        
+        entry.run();
+        entry.run();
+        assertNull(fileCache.getCache().get(URI));
+        assertEquals(0, fileCache.getCountOpenEntries());
+        assertEquals(0, fileCache.getSizeHeapCache());
+    }
+
+    
+    public void testEviction() throws IOException {
+        String other = "/other.txt";
+        FileOutputStream out = new FileOutputStream(new File(dir, other));
+        out.write(content);
+        out.close();
+        
+        try {
+            fileCache.setMaxSmallCacheSize(content.length + content.length / 2);
+            MimeHeaders headers = new MimeHeaders();
+            headers.addValue("content-type").setString("text/plain");
+            // Admitted once requested more often than the cached resource.
+            for (int i = 0; i < 5 && fileCache.getCache().get(other) == null; 
+                    i++) {
+                fileCache.add(FileCache.DEFAULT_SERVLET_NAME, dir.getPath(), 
+                        other, headers, false);
+            }
+            
+            assertNotNull(fileCache.getCache().get(other));
+            assertNull(fileCache.getCache().get(URI));
+            assertEquals(1, fileCache.getCountOpenEntries());
+            assertEquals(content.length, fileCache.getSizeHeapCache());
+        } finally {
+            new File(dir, other).delete();
+        }
+    }
+
+    
+    public void testModifiedFile() throws Exception {
+        FileCache.FileCacheEntry entry = fileCache.getCache().get(URI);
+        File file = new File(dir, URI);
+        file.setLastModified(file.lastModified() - 10000);
+        
+        fileCache.checkModified();
+        entry.run();
+        assertNull(fileCache.getCache().get(URI));
+        assertEquals(0, fileCache.getCountOpenEntries());
+        assertEquals(0, fileCache.getSizeHeapCache());
+    }
+
+    
+    public void testIfNoneMatch() throws IOException {
+        addWithValidators();
+        String response = send("If-None-Match: \"other\", W/\"v1\"\r\n");
+        assertTrue(response, response.startsWith("HTTP/1.1 304"));
+        assertTrue(response, response.contains("ETag: \"v1\"\r\n"));
+        assertTrue(response, response.endsWith("\r\n\r\n"));
+    }
+
+    
+    public void testIfNoneMatchTakesPrecedence() throws IOException {
+        addWithValidators();
+        String response = send("If-None-Match: \"other\"\r\n" 
+                + "If-Modified-Since: " + LAST_MODIFIED + "\r\n");
+        assertTrue(response, response.startsWith("HTTP/1.1 200"));
+        assertTrue(response, response.endsWith(new String(content)));
+    }
+
+    
+    public void testIfModifiedSince() throws IOException {
+        addWithValidators();
+        String response = send("If-Modified-Since: " + LAST_MODIFIED 
+                + "\r\n");
+        assertTrue(response, response.startsWith("HTTP/1.1 304"));
+    }
+
+    
+    public void testIfModifiedSinceParsed() throws IOException {
+        addWithValidators();
+        String response = send(
+                "If-Modified-Since: Sun, 07 Jan 2001 00:00:00 GMT\r\n");
+        assertTrue(response, response.startsWith("HTTP/1.1 304"));
+    }
+
+    
+    public void testModifiedSince() throws IOException {
+        addWithValidators();
+        String response = send(
+                "If-Modified-Since: Sat, 06 Jan 2001 00:00:00 GMT\r\n");
+        assertTrue(response, response.startsWith("HTTP/1.1 200"));
+        assertTrue(response, response.endsWith(new String(content)));
+    }
+
+    
+    public void testGzipVariant() throws IOException {
+        fileCache.getCache().get(URI).run();
+        fileCache.setCompressableMimeTypes(new String[]{"text/plain"});
+        fileCache.setCompressionMinSize(0);
+        MimeHeaders headers = new MimeHeaders();
+        headers.addValue("content-type").setString("text/plain");
+        fileCache.add(FileCache.DEFAULT_SERVLET_NAME, dir.getPath(), URI,
+                headers, false);
+        
+        FileCache.FileCacheEntry entry = fileCache.getCache().get(URI);
+        assertNotNull(entry.gzipBb);
+        assertEquals(content.length + entry.gzipBb.limit(), 
+                fileCache.getSizeHeapCache());
+        
+        String response = send("Accept-Encoding: deflate, gzip\r\n");
+        assertTrue(response, response.contains("Content-Encoding: gzip\r\n"));
+        assertTrue(response, response.contains("Vary: Accept-Encoding\r\n"));
+    }
+
+    
+    public void testGzipVariantDroppedWhenFull() throws IOException {
+        fileCache.getCache().get(URI).run();
+        fileCache.setCompressableMimeTypes(new String[]{"text/plain"});
+        fileCache.setCompressionMinSize(0);
+        fileCache.setMaxSmallCacheSize(content.length + 1);
+        MimeHeaders headers = new MimeHeaders();
+        headers.addValue("content-type").setString("text/plain");
+        fileCache.add(FileCache.DEFAULT_SERVLET_NAME, dir.getPath(), URI,
+                headers, false);
+        
+        FileCache.FileCacheEntry entry = fileCache.getCache().get(URI);
+        assertNotNull(entry);
+        assertNull(entry.gzipBb);
+        assertEquals(content.length, fileCache.getSizeHeapCache());
+        
+        String response = send("Accept-Encoding: gzip\r\n");
+        assertFalse(response, response.contains("Content-Encoding"));
+        assertTrue(response, response.endsWith(new String(content)));
+    }
+
+    
+    public void testGzipRefused() throws IOException {
+        fileCache.getCache().get(URI).run();
+        fileCache.setCompressableMimeTypes(new String[]{"text/plain"});
+        fileCache.setCompressionMinSize(0);
+        MimeHeaders headers = new MimeHeaders();
+        headers.addValue("content-type").setString("text/plain");
+        fileCache.add(FileCache.DEFAULT_SERVLET_NAME, dir.getPath(), URI,
+                headers, false);
+        
+        String response = send("Accept-Encoding: gzip;q=0, *\r\n");
+        assertFalse(response, response.contains("Content-Encoding"));
+        assertTrue(response, response.contains("Vary: Accept-Encoding\r\n"));
+        assertTrue(response, response.endsWith(new String(content)));
+    }
+
+    
+    public void testAcceptsCoding() {
+        byte[] gzip = "gzip".getBytes();
+        assertTrue(acceptsCoding("gzip", gzip));
+        assertTrue(acceptsCoding("deflate, GZIP;q=0.5", gzip));
+        assertTrue(acceptsCoding("*", gzip));
+        assertTrue(acceptsCoding("gzip;q=0.001", gzip));
+        assertFalse(acceptsCoding("gzip;q=0", gzip));
+        assertFalse(acceptsCoding("gzip ; q=0.000, deflate", gzip));
+        assertFalse(acceptsCoding("*;q=0", gzip));
+        assertFalse(acceptsCoding("x-gzip, deflate", gzip));
+        assertFalse(acceptsCoding("identity", gzip));
+        assertFalse(acceptsCoding("*, gzip;q=0", gzip));
+    }
+
+    
+    /**
+     * Cache the resource again, with an entity tag and a modification date.
+     */
+    private void addWithValidators() {
+        fileCache.getCache().get(URI).run();
+        MimeHeaders headers = new MimeHeaders();
+        headers.addValue("content-type").setString("text/plain");
+        headers.addValue("Etag").setString("\"v1\"");
+        headers.addValue("Last-Modified").setString(LAST_MODIFIED);
+        fileCache.add(FileCache.DEFAULT_SERVLET_NAME, dir.getPath(), URI,
+                headers, false);
+    }
+
+    
+    private static boolean acceptsCoding(String value, byte[] coding) {
+        byte[] req = value.getBytes();
+        return FileCache.acceptsCoding(req, 0, req.length, coding);
+    }
+
+    
+    private String send(String headers) throws IOException {
+        byte[] req = ("GET " + URI + " HTTP/1.1\r\nHost: localhost\r\n" 
+                + headers + "\r\n").getBytes();
+        assertTrue(fileCache.sendCache(req, 4, URI.length(), req.length, 
+                peer, false));
+        peer.close();
+        
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        ByteBuffer bb = ByteBuffer.allocate(8192);
+        while (client.read(bb) != -1) {
+            response.write(bb.array(), 0, bb.position());
+            bb.clear();
+        }
+        return response.toString();
+    }
+}
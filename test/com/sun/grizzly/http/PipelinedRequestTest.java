@@ -0,0 +1,181 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.http;
+
+import com.sun.grizzly.tcp.Adapter;
+import com.sun.grizzly.tcp.Request;
+import com.sun.grizzly.tcp.Response;
+import com.sun.grizzly.util.buf.ByteChunk;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import junit.framework.TestCase;
+
+/**
+ * Tests the processing of pipelined requests by {@link ProcessorTask}.
+ */
+public class PipelinedRequestTest extends TestCase {
+
+    private static final int PORT = 18890;
+    
+    private SelectorThread selectorThread;
+
+    
+    @Override
+    protected void setUp() throws Exception {
+        selectorThread = new SelectorThread();
+        selectorThread.setPort(PORT);
+        selectorThread.setAdapter(new EchoAdapter());
+        selectorThread.listen();
+    }
+
+    
+    @Override
+    protected void tearDown() throws Exception {
+        selectorThread.stopEndpoint();
+    }
+
+    
+    public void testResponsesOrder() throws IOException {
+        String response = send(request("/a") + request("/b") 
+                + request("/c", true));
+        assertOrder(response, "/a", "/b", "/c");
+    }
+
+    
+    public void testDirectWriteIsNotReordered() throws IOException {
+        String response = send(request("/a") + request("/direct") 
+                + request("/b", true));
+        assertOrder(response, "/a", "/direct", "/b");
+    }
+
+    
+    public void testMaxKeepAliveRequests() throws IOException {
+        selectorThread.enableMonitoring();
+        selectorThread.setMaxKeepAliveRequests(2);
+        
+        String response = send(request("/a") + request("/b") + request("/c"));
+        assertOrder(response, "/a", "/b");
+        assertEquals(-1, response.indexOf("/c"));
+    }
+
+    
+    private static String request(String uri) {
+        return request(uri, false);
+    }
+
+    
+    private static String request(String uri, boolean close) {
+        return "GET " + uri + " HTTP/1.1\r\nHost: localhost\r\n" 
+                + (close ? "Connection: close\r\n" : "") + "\r\n";
+    }
+
+    
+    private static void assertOrder(String response, String... bodies) {
+        int index = 0;
+        for (String body : bodies) {
+            int found = response.indexOf("\r\n\r\n" + body, index);
+            assertTrue(body + " not found after " + index + " in " + response,
+                    found != -1);
+            index = found + 1;
+        }
+    }
+
+    
+    /**
+     * Write all the requests at once, and read the responses until the 
+     * server closes the connection.
+     */
+    private static String send(String requests) throws IOException {
+        Socket socket = new Socket("localhost", PORT);
+        try {
+            socket.setSoTimeout(10000);
+            socket.getOutputStream().write(requests.getBytes());
+            
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            InputStream in = socket.getInputStream();
+            byte[] b = new byte[8192];
+            int read;
+            while ((read = in.read(b)) != -1) {
+                response.write(b, 0, read);
+            }
+            return response.toString();
+        } finally {
+            socket.close();
+        }
+    }
+
+    
+    /**
+     * Send the request URI as the response body. The response of 
+     * <tt>/direct</tt> is written to the channel without Grizzly.
+     */
+    private static class EchoAdapter implements Adapter {
+        
+        public void service(Request req, Response res) throws Exception {
+            byte[] body = req.requestURI().toString().getBytes();
+            if ("/direct".equals(req.requestURI().toString())) {
+                res.setCommitted(true);
+                ByteBuffer bb = ByteBuffer.wrap(("HTTP/1.1 200 OK\r\n" 
+                        + "Content-Length: " + body.length + "\r\n\r\n"
+                        + new String(body)).getBytes());
+                while (bb.hasRemaining()) {
+                    res.getChannel().write(bb);
+                }
+                return;
+            }
+            res.setContentLength(body.length);
+            ByteChunk chunk = new ByteChunk();
+            chunk.setBytes(body, 0, body.length);
+            res.doWrite(chunk);
+        }
+
+        
+        public void afterService(Request req, Response res) throws Exception {
+            req.recycle();
+            res.recycle();
+        }
+
+        
+        public void fireAdapterEvent(String type, Object data) {
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.tcp.http11;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.Serializable;
+import junit.framework.TestCase;
+
+/**
+ * Tests the expiration of the sessions of a {@link DefaultSessionManager}.
+ */
+public class DefaultSessionManagerTest extends TestCase {
+
+    private DefaultSessionManager sessionManager;
+
+    
+    @Override
+    protected void setUp() {
+        sessionManager = new DefaultSessionManager();
+    }
+
+    
+    @Override
+    protected void tearDown() {
+        sessionManager.destroy();
+    }
+
+    
+    public void testSessionWithoutTimeoutNeverExpires() throws Exception {
+        GrizzlySession session = sessionManager.createSession(null);
+        Thread.sleep(2500);
+        
+        assertEquals(0, sessionManager.getExpiredSessions());
+        assertSame(session, sessionManager.getSession(session.getIdInternal()));
+    }
+
+    
+    public void testTimeoutSetAfterCreation() throws Exception {
+        GrizzlySession session = sessionManager.createSession(null);
+        session.setSessionTimeout(500);
+        
+        waitForExpiration(1);
+        assertFalse(session.isValid());
+        assertEquals(0, sessionManager.getActiveSessions());
+        assertNull(sessionManager.getSession(session.getIdInternal()));
+    }
+
+    
+    public void testAccessDelaysExpiration() throws Exception {
+        GrizzlySession session = sessionManager.createSession("id");
+        session.setSessionTimeout(2500);
+        
+        for (int i = 0; i < 4; i++) {
+            Thread.sleep(1000);
+            assertSame(session, sessionManager.getSession("id"));
+        }
+        assertEquals(0, sessionManager.getExpiredSessions());
+        
+        waitForExpiration(1);
+        assertNull(sessionManager.getSession("id"));
+    }
+
+    
+    public void testRemovedSession() {
+        GrizzlySession session = sessionManager.createSession("id");
+        assertSame(session, sessionManager.removeSession("id"));
+        assertFalse(session.isValid());
+        assertNull(sessionManager.getSession("id"));
+        assertEquals(0, sessionManager.getActiveSessions());
+    }
+
+    
+    public void testUnserializableSessionIsSavedOnce() throws Exception {
+        CountingStore store = new CountingStore();
+        sessionManager.setSessionStore(store);
+        sessionManager.setPassivationThreshold(100);
+        
+        GrizzlySession session = sessionManager.createSession("id");
+        session.setAttribute("name", new Object());
+        Thread.sleep(3500);
+        
+        assertEquals(1, store.saves);
+        assertEquals(0, sessionManager.getPassivatedSessions());
+        assertSame(session, sessionManager.getSession("id"));
+    }
+
+    
+    /**
+     * Wait until the expirer thread has expired <tt>count</tt> sessions.
+     */
+    private void waitForExpiration(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (sessionManager.getExpiredSessions() < count 
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertEquals(count, sessionManager.getExpiredSessions());
+    }
+
+    
+    /**
+     * A {@link SessionStore} refusing sessions with unserializable 
+     * attributes, as a real store would.
+     */
+    private static class CountingStore implements SessionStore {
+        volatile int saves;
+
+        public void save(GrizzlySession session) throws IOException {
+            saves++;
+            for (Object value : session.atttibutes().values()) {
+                if (!(value instanceof Serializable)) {
+                    throw new NotSerializableException();
+                }
+            }
+        }
+
+        public GrizzlySession load(String id) {
+            return null;
+        }
+
+        public void remove(String id) {
+        }
+
+        public int purge(long currentTime) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.tcp.http11;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link FileSessionStore}.
+ */
+public class FileSessionStoreTest extends TestCase {
+
+    private File directory;
+    private FileSessionStore store;
+
+    
+    @Override
+    protected void setUp() throws IOException {
+        directory = File.createTempFile("sessions", "");
+        directory.delete();
+        store = new FileSessionStore(directory);
+    }
+
+    
+    @Override
+    protected void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    
+    public void testSaveAndLoad() throws IOException {
+        GrizzlySession session = new GrizzlySession("id");
+        session.setTimestamp(1000);
+        session.setSessionTimeout(2000);
+        session.setAttribute("name", "value");
+        store.save(session);
+        
+        GrizzlySession loaded = store.load("id");
+        assertEquals("id", loaded.getIdInternal());
+        assertEquals(1000, loaded.getTimestamp());
+        assertEquals(2000, loaded.getSessionTimeout());
+        assertEquals("value", loaded.getAttribute("name"));
+        
+        // Loaded sessions are back in memory only.
+        assertNull(store.load("id"));
+    }
+
+    
+    public void testUnreadableFileIsKept() throws IOException {
+        GrizzlySession session = new GrizzlySession("id");
+        session.setAttribute("name", "value");
+        store.save(session);
+        
+        File file = directory.listFiles()[0];
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[4]);
+        out.close();
+        
+        try {
+            store.load("id");
+            fail();
+        } catch (IOException expected) {
+        }
+        assertTrue(file.exists());
+    }
+
+    
+    public void testUnserializableAttribute() {
+        GrizzlySession session = new GrizzlySession("id");
+        session.setAttribute("name", new Object());
+        try {
+            store.save(session);
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(0, directory.listFiles().length);
+    }
+}
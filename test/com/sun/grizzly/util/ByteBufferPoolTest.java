@@ -0,0 +1,109 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Tests the accounting of {@link ByteBufferPool}.
+ */
+public class ByteBufferPoolTest extends TestCase {
+
+    private ByteBufferPool pool;
+
+    @Override
+    protected void setUp() {
+        pool = new ByteBufferPool(false);
+    }
+
+    public void testAllocateAndRelease() {
+        ByteBuffer bb = pool.allocate(1000);
+        assertEquals(ByteBufferPool.MIN_SIZE, bb.capacity());
+        assertEquals(ByteBufferPool.MIN_SIZE, pool.getInUseBytes());
+        assertEquals(ByteBufferPool.DEFAULT_SLAB_SIZE,
+                pool.getAllocatedBytes());
+
+        pool.release(bb);
+        assertEquals(0, pool.getInUseBytes());
+    }
+
+    public void testForeignBufferIsIgnored() {
+        ByteBuffer bb = pool.allocate(ByteBufferPool.MIN_SIZE);
+        pool.release(ByteBuffer.allocate(ByteBufferPool.MIN_SIZE));
+        assertEquals(ByteBufferPool.MIN_SIZE, pool.getInUseBytes());
+
+        pool.release(bb);
+        pool.release(ByteBuffer.allocate(ByteBufferPool.MIN_SIZE));
+        assertEquals(0, pool.getInUseBytes());
+    }
+
+    public void testDoubleReleaseIsIgnored() {
+        ByteBuffer bb = pool.allocate(ByteBufferPool.MIN_SIZE);
+        pool.release(bb);
+        pool.release(bb);
+        assertEquals(0, pool.getInUseBytes());
+    }
+
+    public void testBuffersAreReusedAcrossThreads() throws Exception {
+        final List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 8; i++) {
+                    buffers.add(pool.allocate(ByteBufferPool.MIN_SIZE));
+                }
+                for (ByteBuffer bb : buffers) {
+                    pool.release(bb);
+                }
+            }
+        };
+        t.start();
+        t.join();
+
+        int slices = ByteBufferPool.DEFAULT_SLAB_SIZE / ByteBufferPool.MIN_SIZE;
+        for (int i = 0; i < slices; i++) {
+            pool.allocate(ByteBufferPool.MIN_SIZE);
+        }
+        assertEquals(ByteBufferPool.DEFAULT_SLAB_SIZE,
+                pool.getAllocatedBytes());
+    }
+}
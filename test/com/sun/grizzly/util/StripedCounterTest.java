@@ -0,0 +1,116 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.util;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link StripedCounter}.
+ */
+public class StripedCounterTest extends TestCase {
+
+    public void testSum() {
+        StripedCounter counter = new StripedCounter();
+        counter.add(10);
+        counter.increment();
+        counter.decrement();
+        assertEquals(10, counter.sum());
+        assertEquals(10, counter.snapshot()[0]);
+
+        counter.set(3);
+        assertEquals(3, counter.sum());
+        counter.reset();
+        assertEquals(0, counter.sum());
+    }
+
+    public void testGroup() {
+        StripedCounter counters = new StripedCounter(3);
+        counters.increment(0);
+        counters.add(2, 5);
+        counters.decrement(1);
+
+        long[] values = counters.snapshot();
+        assertEquals(1, values[0]);
+        assertEquals(-1, values[1]);
+        assertEquals(5, values[2]);
+        assertEquals(5, counters.sum(2));
+
+        counters.set(2, 0);
+        assertEquals(0, counters.sum(2));
+        assertEquals(1, counters.sum(0));
+    }
+
+    public void testSnapshotIsConsistent() throws Exception {
+        final StripedCounter counters = new StripedCounter(2);
+        final int threadCount = 4;
+        final int updates = 200000;
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < updates; j++) {
+                        counters.increment(0);
+                        counters.increment(1);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        boolean isRunning = true;
+        while (isRunning) {
+            isRunning = false;
+            for (Thread t : threads) {
+                isRunning |= t.isAlive();
+            }
+            // The second counter of a thread is always incremented last.
+            long[] values = counters.snapshot();
+            long lag = values[0] - values[1];
+            assertTrue("lag " + lag, lag >= 0 && lag <= threadCount);
+        }
+
+        for (Thread t : threads) {
+            t.join();
+        }
+        long[] values = counters.snapshot();
+        assertEquals(threadCount * updates, values[0]);
+        assertEquals(threadCount * updates, values[1]);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.util.buf;
+
+import java.io.IOException;
+import junit.framework.TestCase;
+
+/**
+ * Compares {@link B2CConverter} with {@link String} decoding, with the
+ * input split into chunks of various sizes.
+ */
+public class B2CConverterTest extends TestCase {
+
+    private static final String[] ENCODINGS = { "UTF-8", "ISO-8859-1",
+        "US-ASCII", "UTF-16BE", "Shift_JIS" };
+
+    private static final int[] CHUNK_SIZES = { 1, 2, 3, 5, 7, 16, 255, 256,
+        4096, 100000 };
+
+    private String text;
+
+    @Override
+    protected void setUp() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("ascii ").append(i).append(" h\u00e9llo w\u00f6rld ")
+                .append("\u65e5\u672c\u8a9e \u30c6\u30ad\u30b9\u30c8 ")
+                .append("\ud83d\ude00 \u00ff\u0080");
+        }
+        text = sb.toString();
+    }
+
+    public void testChunkedInput() throws IOException {
+        for (String encoding : ENCODINGS) {
+            byte[] bytes = text.getBytes(encoding);
+            String expected = new String(bytes, encoding);
+            for (int size : CHUNK_SIZES) {
+                assertEquals(encoding + " in chunks of " + size, expected,
+                        convert(encoding, bytes, size));
+            }
+        }
+    }
+
+    public void testMalformedInputIsReplaced() throws IOException {
+        byte[] bytes = { 'a', (byte) 0xc3, 'b', (byte) 0xff, 'c' };
+        assertEquals(new String(bytes, "UTF-8"), 
+                convert("UTF-8", bytes, bytes.length));
+    }
+
+    public void testThreadConverterIsRecycled() throws IOException {
+        B2CConverter converter = B2CConverter.getThreadConverter("UTF-8");
+        assertSame(converter, B2CConverter.getThreadConverter("UTF-8"));
+
+        // An incomplete sequence doesn't leak into the next conversion.
+        byte[] bytes = "\u00e9".getBytes("UTF-8");
+        ByteChunk bb = new ByteChunk();
+        bb.setBytes(bytes, 0, 1);
+        CharChunk cb = new CharChunk();
+        cb.allocate(16, -1);
+        converter.convert(bb, cb, 1);
+        converter.recycle();
+
+        bb.setBytes("a".getBytes("UTF-8"), 0, 1);
+        cb.recycle();
+        converter.convert(bb, cb, 1);
+        assertEquals("a", cb.toString());
+    }
+
+    private static String convert(String encoding, byte[] bytes,
+            int chunkSize) throws IOException {
+        B2CConverter converter = new B2CConverter(encoding);
+        ByteChunk bb = new ByteChunk();
+        CharChunk cb = new CharChunk();
+        cb.allocate(1024, -1);
+        for (int off = 0; off < bytes.length; off += chunkSize) {
+            int len = Math.min(chunkSize, bytes.length - off);
+            bb.setBytes(bytes, off, len);
+            converter.convert(bb, cb, len);
+            assertEquals(0, bb.getLength());
+        }
+        return cb.toString();
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.util.buf;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the rebuilds of the {@link StringCache} tables.
+ */
+public class StringCacheTest extends TestCase {
+
+    private int cacheSize;
+    private int trainThreshold;
+    private int sampleRate;
+    private boolean byteEnabled;
+    private boolean charEnabled;
+
+    @Override
+    protected void setUp() {
+        cacheSize = StringCache.getCacheSize();
+        trainThreshold = StringCache.getTrainThreshold();
+        sampleRate = StringCache.getSampleRate();
+        byteEnabled = StringCache.getByteEnabled();
+        charEnabled = StringCache.getCharEnabled();
+
+        StringCache.setCacheSize(2);
+        StringCache.setTrainThreshold(100);
+        StringCache.setSampleRate(1);
+        StringCache.setByteEnabled(true);
+        StringCache.setCharEnabled(true);
+        StringCache.reset();
+    }
+
+    @Override
+    protected void tearDown() {
+        StringCache.setCacheSize(cacheSize);
+        StringCache.setTrainThreshold(trainThreshold);
+        StringCache.setSampleRate(sampleRate);
+        StringCache.setByteEnabled(byteEnabled);
+        StringCache.setCharEnabled(charEnabled);
+        StringCache.reset();
+    }
+
+    public void testByteCacheKeepsMostFrequent() {
+        train("frequent", 150, "rare", 10);
+        assertTrue(StringCache.getByteCacheSize() > 0);
+
+        String first = StringCache.toString(bytes("frequent0"));
+        assertEquals("frequent0", first);
+        assertSame(first, StringCache.toString(bytes("frequent0")));
+        assertTrue(StringCache.getHitCount() > 0);
+        assertEquals("rare0", StringCache.toString(bytes("rare0")));
+        assertNotSame(StringCache.toString(bytes("rare0")), 
+                StringCache.toString(bytes("rare0")));
+    }
+
+    public void testByteCacheFollowsTraffic() {
+        train("old", 150, "unused", 0);
+        String cached = StringCache.toString(bytes("old0"));
+        assertSame(cached, StringCache.toString(bytes("old0")));
+
+        // Enough new traffic to rebuild the table more than once.
+        train("new", 300, "unused", 0);
+        String value = StringCache.toString(bytes("new0"));
+        assertSame(value, StringCache.toString(bytes("new0")));
+        assertNotSame(StringCache.toString(bytes("old0")), 
+                StringCache.toString(bytes("old0")));
+        assertTrue(StringCache.getByteCacheSize() <= 2);
+    }
+
+    public void testCharCache() {
+        for (int i = 0; i < 150; i++) {
+            StringCache.toString(chars("header" + (i % 2)));
+        }
+        assertTrue(StringCache.getCharCacheSize() > 0);
+        String value = StringCache.toString(chars("header1"));
+        assertEquals("header1", value);
+        assertSame(value, StringCache.toString(chars("header1")));
+    }
+
+    /**
+     * Convert <tt>count</tt> times each of two frequent strings, and 
+     * <tt>rareCount</tt> times each of two others, interleaved.
+     */
+    private static void train(String frequent, int count, String rare, 
+            int rareCount) {
+        for (int i = 0; i < count; i++) {
+            StringCache.toString(bytes(frequent + (i % 2)));
+            if (i < rareCount) {
+                StringCache.toString(bytes(rare + (i % 2)));
+            }
+        }
+    }
+
+    private static ByteChunk bytes(String s) {
+        byte[] b = s.getBytes();
+        ByteChunk bc = new ByteChunk();
+        bc.setBytes(b, 0, b.length);
+        return bc;
+    }
+
+    private static CharChunk chars(String s) {
+        char[] c = s.toCharArray();
+        CharChunk cc = new CharChunk();
+        cc.setChars(c, 0, c.length);
+        return cc;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2007-2008 Sun Microsystems, Inc. All rights reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ *
+ */
+
+package com.sun.grizzly.util.http;
+
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+/**
+ * Tests the parsing of the <tt>Range</tt> header by {@link ByteRanges}.
+ */
+public class ByteRangesTest extends TestCase {
+
+    public void testSingleRange() {
+        assertRanges(new long[]{0, 99}, ByteRanges.parse("bytes=0-99", 1000));
+        assertRanges(new long[]{500, 999}, ByteRanges.parse("bytes=500-", 1000));
+        assertRanges(new long[]{900, 999}, ByteRanges.parse("bytes=-100", 1000));
+        assertRanges(new long[]{990, 999}, 
+                ByteRanges.parse("bytes=990-2000", 1000));
+    }
+
+    
+    public void testMultipleRanges() {
+        assertRanges(new long[]{0, 9, 100, 199}, 
+                ByteRanges.parse("bytes=0-9, 100-199", 1000));
+    }
+
+    
+    public void testOverlappingRangesAreCoalesced() {
+        assertRanges(new long[]{0, 199}, 
+                ByteRanges.parse("bytes=0-99,50-199", 1000));
+        assertRanges(new long[]{0, 99}, 
+                ByteRanges.parse("bytes=0-99,0-99,0-99", 1000));
+        assertRanges(new long[]{0, 199}, 
+                ByteRanges.parse("bytes=100-199,0-99", 1000));
+        assertRanges(new long[]{0, 9, 500, 999}, 
+                ByteRanges.parse("bytes=-500,600-700,0-9", 1000));
+    }
+
+    
+    public void testUnsatisfiable() {
+        assertSame(ByteRanges.UNSATISFIABLE, 
+                ByteRanges.parse("bytes=1000-", 1000));
+        assertSame(ByteRanges.UNSATISFIABLE, 
+                ByteRanges.parse("bytes=-0", 1000));
+    }
+
+    
+    public void testInvalid() {
+        assertNull(ByteRanges.parse("bytes=100-0", 1000));
+        assertNull(ByteRanges.parse("items=0-1", 1000));
+        assertNull(ByteRanges.parse("bytes=", 1000));
+        assertNull(ByteRanges.parse("bytes=a-b", 1000));
+        
+        StringBuilder sb = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= ByteRanges.MAX_RANGES; i++) {
+            sb.append(',').append(2 * i).append('-').append(2 * i);
+        }
+        assertNull(ByteRanges.parse(sb.toString(), 1000));
+    }
+
+    
+    private static void assertRanges(long[] expected, long[] ranges) {
+        assertNotNull(ranges);
+        assertEquals(Arrays.toString(expected), Arrays.toString(ranges));
+    }
+}